@@ -0,0 +1,251 @@
+package com.baidu.swan.videoplayer;
+
+import android.os.SystemClock;
+
+/**
+ * 播放时钟：以偶尔采样的native播放位置为锚点，按播放速度和系统时钟推算当前位置。
+ * <p>
+ * 播放中每帧读取位置也只会按{@link #setResampleInterval(long)}的间隔调用一次native接口；
+ * seek、卡顿、暂停和变速时重新锚定。两次锚定之间位置单调递增，native位置略微落后时保持不动而不是回退。
+ * 只在主线程使用
+ *
+ * @author machao10
+ * @since 2019-03-11
+ */
+public final class PlaybackClock {
+
+    /** 默认的native位置采样间隔，单位：ms */
+    public static final long DEFAULT_RESAMPLE_INTERVAL_MS = 1000;
+    /** native位置落后推算位置超过此值时直接回退，单位：ms */
+    private static final long MAX_HOLD_MS = 1000;
+
+    /**
+     * native播放位置来源
+     */
+    public interface Source {
+        /**
+         * 采样native播放位置
+         *
+         * @return 播放位置，单位：ms；无法获取时返回-1
+         */
+        long samplePositionMs();
+    }
+
+    /** native播放位置来源 */
+    private final Source mSource;
+    /** 锚点位置，单位：ms */
+    private long mAnchorPositionMs;
+    /** 锚点时间，SystemClock.elapsedRealtime */
+    private long mAnchorTimeMs;
+    /** 播放速度 */
+    private float mRate = 1f;
+    /** 是否处于播放状态 */
+    private boolean mPlaying;
+    /** 是否卡顿缓冲中 */
+    private boolean mStalled;
+    /** 视频总时长，单位：ms，未知时为0 */
+    private long mDurationMs;
+    /** 上次采样native位置的时间 */
+    private long mLastSampleTimeMs;
+    /** 上次返回的位置，用于保证单调 */
+    private long mLastPositionMs;
+    /** native位置采样间隔，单位：ms */
+    private long mResampleIntervalMs = DEFAULT_RESAMPLE_INTERVAL_MS;
+    /** native位置采样次数 */
+    private long mNativeSamples;
+
+    /**
+     * 构造器
+     *
+     * @param source native播放位置来源
+     */
+    public PlaybackClock(Source source) {
+        mSource = source;
+    }
+
+    /**
+     * 获取当前播放位置
+     *
+     * @return 播放位置，单位：ms
+     */
+    public long getPositionMs() {
+        long now = SystemClock.elapsedRealtime();
+        if (isRunning() && now - mLastSampleTimeMs >= mResampleIntervalMs) {
+            resample(now);
+        }
+        long position = computeAt(now);
+        if (isRunning() && position < mLastPositionMs) {
+            position = mLastPositionMs;
+        }
+        mLastPositionMs = position;
+        return position;
+    }
+
+    /**
+     * 锚定到指定位置，允许回退，用于seek和状态变化
+     *
+     * @param positionMs 播放位置，单位：ms
+     */
+    public void anchor(long positionMs) {
+        long now = SystemClock.elapsedRealtime();
+        setAnchor(positionMs, now);
+        mLastPositionMs = positionMs;
+        mLastSampleTimeMs = now;
+    }
+
+    /**
+     * 立即采样native位置并锚定
+     */
+    public void sync() {
+        long sample = mSource.samplePositionMs();
+        mNativeSamples++;
+        if (sample >= 0) {
+            anchor(sample);
+        }
+    }
+
+    /**
+     * 设置是否处于播放状态
+     *
+     * @param playing 是否播放中
+     */
+    public void setPlaying(boolean playing) {
+        if (mPlaying != playing) {
+            freeze();
+            mPlaying = playing;
+        }
+    }
+
+    /**
+     * 设置是否卡顿缓冲中，卡顿期间位置不前进
+     *
+     * @param stalled 是否卡顿
+     */
+    public void setStalled(boolean stalled) {
+        if (mStalled != stalled) {
+            freeze();
+            mStalled = stalled;
+        }
+    }
+
+    /**
+     * 设置播放速度
+     *
+     * @param rate 播放速度
+     */
+    public void setRate(float rate) {
+        if (rate > 0 && rate != mRate) {
+            freeze();
+            mRate = rate;
+        }
+    }
+
+    /**
+     * 获取播放速度
+     *
+     * @return 播放速度
+     */
+    public float getRate() {
+        return mRate;
+    }
+
+    /**
+     * 位置是否在前进，即播放中且没有卡顿
+     *
+     * @return true：前进中
+     */
+    public boolean isRunning() {
+        return mPlaying && !mStalled;
+    }
+
+    /**
+     * 设置视频总时长，推算位置不会超过总时长
+     *
+     * @param durationMs 总时长，单位：ms；未知时传0
+     */
+    public void setDurationMs(long durationMs) {
+        mDurationMs = Math.max(0, durationMs);
+    }
+
+    /**
+     * 获取视频总时长
+     *
+     * @return 总时长，单位：ms；未知时为0
+     */
+    public long getDurationMs() {
+        return mDurationMs;
+    }
+
+    /**
+     * 设置native位置采样间隔
+     *
+     * @param intervalMs 间隔，单位：ms
+     */
+    public void setResampleInterval(long intervalMs) {
+        mResampleIntervalMs = Math.max(0, intervalMs);
+    }
+
+    /**
+     * 获取native位置采样次数，用于评估native调用开销
+     *
+     * @return 采样次数
+     */
+    public long getNativeSampleCount() {
+        return mNativeSamples;
+    }
+
+    /**
+     * 重置为初始状态，在打开新视频时调用
+     */
+    public void reset() {
+        mPlaying = false;
+        mStalled = false;
+        mRate = 1f;
+        mDurationMs = 0;
+        anchor(0);
+    }
+
+    /**
+     * 以当前推算位置重新锚定，在改变推算参数之前调用
+     */
+    private void freeze() {
+        long now = SystemClock.elapsedRealtime();
+        setAnchor(computeAt(now), now);
+    }
+
+    /**
+     * 采样native位置修正漂移
+     */
+    private void resample(long now) {
+        mLastSampleTimeMs = now;
+        long sample = mSource.samplePositionMs();
+        mNativeSamples++;
+        if (sample < 0) {
+            return;
+        }
+        if (computeAt(now) - sample > MAX_HOLD_MS) {
+            // 差距过大说明发生了未通知的跳转，直接回退
+            mLastPositionMs = sample;
+        }
+        setAnchor(sample, now);
+    }
+
+    /**
+     * 推算指定时间的位置
+     */
+    private long computeAt(long now) {
+        long position = mAnchorPositionMs;
+        if (isRunning()) {
+            position += (long) ((now - mAnchorTimeMs) * mRate);
+        }
+        return mDurationMs > 0 ? Math.min(position, mDurationMs) : position;
+    }
+
+    /**
+     * 设置锚点
+     */
+    private void setAnchor(long positionMs, long timeMs) {
+        mAnchorPositionMs = positionMs;
+        mAnchorTimeMs = timeMs;
+    }
+}
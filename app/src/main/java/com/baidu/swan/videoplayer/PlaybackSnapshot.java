@@ -0,0 +1,117 @@
+package com.baidu.swan.videoplayer;
+
+import android.os.SystemClock;
+
+/**
+ * 播放状态快照，不可变。由主线程在状态或进度变化时整体发布，任意线程都可以无锁读取到一致的状态、
+ * 进度和时长，参见{@link SwanVideoView#getSnapshot()}
+ *
+ * @author machao10
+ * @since 2019-03-08
+ */
+public final class PlaybackSnapshot {
+
+    /** 初始快照 */
+    static final PlaybackSnapshot IDLE =
+            new PlaybackSnapshot(SwanVideoView.STATE_IDLE, 0, 0, 0, 0f, 0);
+
+    /** 播放器状态 */
+    private final int mState;
+    /** 发布时的播放位置，单位：ms */
+    private final long mPositionMs;
+    /** 视频总时长，单位：ms */
+    private final long mDurationMs;
+    /** 缓冲进度百分比 */
+    private final int mBufferPercent;
+    /** 位置前进的速度，暂停或卡顿时为0 */
+    private final float mRate;
+    /** 发布时间，SystemClock.elapsedRealtime */
+    private final long mTimestampMs;
+
+    /**
+     * 构造器
+     */
+    PlaybackSnapshot(int state, long positionMs, long durationMs, int bufferPercent,
+                     float rate, long timestampMs) {
+        mState = state;
+        mPositionMs = positionMs;
+        mDurationMs = durationMs;
+        mBufferPercent = bufferPercent;
+        mRate = rate;
+        mTimestampMs = timestampMs;
+    }
+
+    /**
+     * 获取播放器状态
+     *
+     * @return 状态，取值见{@link SwanVideoView}中的STATE_*
+     */
+    public int getState() {
+        return mState;
+    }
+
+    /**
+     * 是否正在播放
+     *
+     * @return true：播放中
+     */
+    public boolean isPlaying() {
+        return mState == SwanVideoView.STATE_PLAYING;
+    }
+
+    /**
+     * 获取发布快照时的播放位置
+     *
+     * @return 播放位置，单位：ms
+     */
+    public long getPositionMs() {
+        return mPositionMs;
+    }
+
+    /**
+     * 按发布后经过的时间和播放速度推算当前播放位置，暂停或卡顿时不前进，不超过总时长
+     *
+     * @return 推算的播放位置，单位：ms
+     */
+    public long getEstimatedPositionMs() {
+        if (mRate <= 0f) {
+            return mPositionMs;
+        }
+        long position = mPositionMs
+                + (long) ((SystemClock.elapsedRealtime() - mTimestampMs) * mRate);
+        return mDurationMs > 0 ? Math.min(position, mDurationMs) : position;
+    }
+
+    /**
+     * 获取视频总时长
+     *
+     * @return 总时长，单位：ms；未知时为0
+     */
+    public long getDurationMs() {
+        return mDurationMs;
+    }
+
+    /**
+     * 获取缓冲进度
+     *
+     * @return 缓冲进度百分比
+     */
+    public int getBufferPercent() {
+        return mBufferPercent;
+    }
+
+    /**
+     * 获取快照发布时间
+     *
+     * @return 发布时间，SystemClock.elapsedRealtime
+     */
+    public long getTimestampMs() {
+        return mTimestampMs;
+    }
+
+    @Override
+    public String toString() {
+        return "PlaybackSnapshot{state=" + mState + ", position=" + mPositionMs + "/"
+                + mDurationMs + "ms, buffer=" + mBufferPercent + "%}";
+    }
+}
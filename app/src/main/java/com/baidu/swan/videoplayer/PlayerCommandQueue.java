@@ -0,0 +1,182 @@
+package com.baidu.swan.videoplayer;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 播放器指令队列，可以在任意线程调用，不会阻塞调用线程。
+ * <p>
+ * 指令按入队顺序在主线程串行执行，播放器内部状态只在主线程修改；读取状态请使用
+ * {@link SwanVideoView#getSnapshot()}。主线程直接调用SwanVideoView的方法时立即执行，
+ * 不经过队列，因此与队列中尚未执行的指令之间不保证顺序
+ *
+ * @author machao10
+ * @since 2019-03-08
+ */
+public final class PlayerCommandQueue {
+
+    /** 指令：播放 */
+    private static final int CMD_PLAY = 1;
+    /** 指令：暂停 */
+    private static final int CMD_PAUSE = 2;
+    /** 指令：seek */
+    private static final int CMD_SEEK = 3;
+    /** 指令：音量 */
+    private static final int CMD_VOLUME = 4;
+    /** 指令：停止 */
+    private static final int CMD_STOP = 5;
+    /** 指令：设置视频源 */
+    private static final int CMD_SET_PATH = 6;
+    /** 指令：执行自定义任务 */
+    private static final int CMD_RUN = 7;
+
+    /**
+     * 单条指令
+     */
+    private static final class Command {
+        /** 指令 */
+        final int code;
+        /** 整数参数 */
+        final long longArg;
+        /** 浮点参数 */
+        final float floatArg;
+        /** 对象参数 */
+        final Object objArg;
+
+        Command(int code, long longArg, float floatArg, Object objArg) {
+            this.code = code;
+            this.longArg = longArg;
+            this.floatArg = floatArg;
+            this.objArg = objArg;
+        }
+    }
+
+    /** 播放器 */
+    private final SwanVideoView mVideoView;
+    /** 待执行的指令 */
+    private final ConcurrentLinkedQueue<Command> mCommands = new ConcurrentLinkedQueue<>();
+    /** 是否已经安排了主线程执行 */
+    private final AtomicBoolean mDrainScheduled = new AtomicBoolean();
+
+    /**
+     * 构造器
+     *
+     * @param videoView 播放器
+     */
+    PlayerCommandQueue(SwanVideoView videoView) {
+        mVideoView = videoView;
+    }
+
+    /**
+     * 开始播放
+     */
+    public void play() {
+        enqueue(new Command(CMD_PLAY, 0, 0f, null));
+    }
+
+    /**
+     * 暂停播放
+     */
+    public void pause() {
+        enqueue(new Command(CMD_PAUSE, 0, 0f, null));
+    }
+
+    /**
+     * 定位到指定位置
+     *
+     * @param positionMs 位置，单位：ms
+     */
+    public void seekTo(long positionMs) {
+        enqueue(new Command(CMD_SEEK, positionMs, 0f, null));
+    }
+
+    /**
+     * 设置音量
+     *
+     * @param volume 音量，0~1
+     */
+    public void setVolume(float volume) {
+        enqueue(new Command(CMD_VOLUME, 0, volume, null));
+    }
+
+    /**
+     * 停止播放
+     */
+    public void stop() {
+        enqueue(new Command(CMD_STOP, 0, 0f, null));
+    }
+
+    /**
+     * 设置视频源并开始加载
+     *
+     * @param path 视频源路径
+     */
+    public void setVideoPath(String path) {
+        enqueue(new Command(CMD_SET_PATH, 0, 0f, path));
+    }
+
+    /**
+     * 在之前入队的指令执行完之后，在主线程执行任务
+     *
+     * @param action 任务
+     */
+    public void post(Runnable action) {
+        enqueue(new Command(CMD_RUN, 0, 0f, action));
+    }
+
+    /**
+     * 指令入队，需要时安排主线程执行
+     */
+    private void enqueue(Command command) {
+        mCommands.offer(command);
+        if (mDrainScheduled.compareAndSet(false, true)) {
+            VideoUtils.getMainHandler().post(mDrainRunnable);
+        }
+    }
+
+    /**
+     * 在主线程按顺序执行全部待执行的指令
+     */
+    private final Runnable mDrainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            // 先清除标记再取指令，保证之后入队的指令一定会再次安排执行
+            mDrainScheduled.set(false);
+            Command command;
+            while ((command = mCommands.poll()) != null) {
+                execute(command);
+            }
+        }
+    };
+
+    /**
+     * 在主线程执行单条指令
+     */
+    private void execute(Command command) {
+        switch (command.code) {
+            case CMD_PLAY:
+                mVideoView.start();
+                break;
+            case CMD_PAUSE:
+                mVideoView.pause();
+                break;
+            case CMD_SEEK:
+                mVideoView.seekTo((int) command.longArg);
+                break;
+            case CMD_VOLUME:
+                mVideoView.setVolume(command.floatArg);
+                break;
+            case CMD_STOP:
+                mVideoView.stopPlayback();
+                break;
+            case CMD_SET_PATH:
+                mVideoView.setVideoPath((String) command.objArg);
+                break;
+            case CMD_RUN:
+                ((Runnable) command.objArg).run();
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -1,30 +1,71 @@
 package com.baidu.swan.videoplayer;
 
+import android.app.Activity;
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.graphics.Bitmap;
 import android.media.AudioManager;
 import android.media.MediaPlayer;
 import android.net.Uri;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.Gravity;
 import android.view.Surface;
 import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.widget.FrameLayout;
 import android.widget.ProgressBar;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
 
 import com.baidu.cloud.media.player.BDCloudMediaPlayer;
+import com.baidu.cloud.media.player.BDTimedText;
 import com.baidu.cloud.media.player.IMediaPlayer;
+import com.baidu.cloud.media.player.misc.IMediaFormat;
+import com.baidu.cloud.media.player.misc.ITrackInfo;
 import com.baidu.cloud.videoplayer.demo.BuildConfig;
 import com.baidu.cloud.videoplayer.demo.R;
+import com.baidu.swan.videoplayer.cache.PrefetchScheduler;
+import com.baidu.swan.videoplayer.cache.PreparedPlayerPool;
+import com.baidu.swan.videoplayer.cache.RangeCacheDataSource;
+import com.baidu.swan.videoplayer.cache.SparseFileCache;
 import com.baidu.swan.videoplayer.callback.IVideoPlayerCallback;
 import com.baidu.swan.videoplayer.callback.SurfaceTextureCallback;
+import com.baidu.swan.videoplayer.callback.VideoEventDispatcher;
+import com.baidu.swan.videoplayer.decoder.DecoderCapabilities;
+import com.baidu.swan.videoplayer.decoder.FirstFrameStats;
+import com.baidu.swan.videoplayer.hls.HlsPlaylistParser;
+import com.baidu.swan.videoplayer.hls.HlsProxySession;
+import com.baidu.swan.videoplayer.live.LiveConfig;
+import com.baidu.swan.videoplayer.live.LiveLatencyController;
+import com.baidu.swan.videoplayer.live.OnLiveLatencyListener;
+import com.baidu.swan.videoplayer.local.LocalDataSource;
+import com.baidu.swan.videoplayer.local.LocalSource;
+import com.baidu.swan.videoplayer.meta.KeyframeIndex;
+import com.baidu.swan.videoplayer.meta.KeyframeIndexCache;
+import com.baidu.swan.videoplayer.meta.MediaMetadata;
+import com.baidu.swan.videoplayer.meta.MetadataCache;
+import com.baidu.swan.videoplayer.monitor.CpuUsageTracker;
+import com.baidu.swan.videoplayer.monitor.FrameTimingMonitor;
+import com.baidu.swan.videoplayer.monitor.QoeRecord;
+import com.baidu.swan.videoplayer.monitor.QoeRecorder;
+import com.baidu.swan.videoplayer.net.HostPrewarmer;
+import com.baidu.swan.videoplayer.net.HttpFetcher;
+import com.baidu.swan.videoplayer.recovery.ErrorClassifier;
+import com.baidu.swan.videoplayer.recovery.RecoveryEngine;
+import com.baidu.swan.videoplayer.recovery.RecoveryStats;
+import com.baidu.swan.videoplayer.recovery.RetryPolicy;
+import com.baidu.swan.videoplayer.rendition.Rendition;
+import com.baidu.swan.videoplayer.rendition.RenditionSelector;
+import com.baidu.swan.videoplayer.subtitle.SubtitleController;
 import com.baidu.swan.videoplayer.widget.MediaController;
 import com.baidu.swan.videoplayer.widget.VideoTextureView;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -59,10 +100,29 @@ public class SwanVideoView extends FrameLayout {
     public static final int STATE_PLAYBACK_COMPLETED = 5;
     /* ================ 播放器状态 END ============== */
 
+    /* ================ seek吸附方式 START ============== */
+    /** 按指定位置精确seek */
+    public static final int SEEK_EXACT = 0;
+    /** 吸附到不晚于指定位置的关键帧 */
+    public static final int SEEK_PREVIOUS_KEYFRAME = 1;
+    /** 吸附到离指定位置最近的关键帧 */
+    public static final int SEEK_NEAREST_KEYFRAME = 2;
+    /* ================ seek吸附方式 END ============== */
+
     /** 最大缓冲大小为500M */
     private static final int MAX_CACHE = 500 * 1000;
     /** 设置播放器建立连接和数据下载过程中的超时时长，单位：us */
     private static final int PLAYER_TIME_OUT_US = 15000000;
+    /** 本地视频的读取超时，本地读取不会因为网络抖动变慢，单位：us */
+    private static final int LOCAL_TIME_OUT_US = 3000000;
+    /** 本地视频起播前的缓冲时长，本地读取不会断流，不需要按网络的标准攒数据，单位：ms */
+    private static final int LOCAL_BUFFER_TIME_MS = 100;
+    /** 本地视频prepare超过这个时长仍未完成时才显示加载提示，单位：ms */
+    private static final long LOCAL_LOADING_DELAY_MS = 300;
+    /** 字幕距离底部的距离，单位：dp */
+    private static final int SUBTITLE_MARGIN_DP = 48;
+    /** 一帧的时长（60fps），全屏切换耗时的目标值，单位：ns */
+    private static final long FRAME_INTERVAL_NS = 16666667L;
 
     /** 播放器当前的状态 */
     private int mCurrentState = STATE_IDLE;
@@ -89,6 +149,120 @@ public class SwanVideoView extends FrameLayout {
     private boolean mLooping;
     /** 标记是否使用控件 */
     private boolean mControllerEnabled = true;
+    /** 外挂字幕控制器 */
+    private SubtitleController mSubtitleController;
+    /** 字幕显示view */
+    private TextView mSubtitleView;
+    /** 绘制视频的surface，播放器重建时复用 */
+    private Surface mSurface;
+    /** 是否处于全屏状态 */
+    private boolean mFullscreen;
+    /** 进入全屏前的父布局 */
+    private ViewGroup mInlineParent;
+    /** 进入全屏前在父布局中的位置 */
+    private int mInlineIndex;
+    /** 进入全屏前的布局参数 */
+    private ViewGroup.LayoutParams mInlineLayoutParams;
+    /** 是否正在全屏切换中移动view，移动时的窗口可见性变化不是真实的前后台切换 */
+    private boolean mReparenting;
+    /** 最近一次全屏/非全屏切换的耗时，从开始切换到新位置第一次绘制，单位：ns */
+    private long mLastScreenTransitionNs = -1;
+    /** 直播延迟控制器，为null时表示点播模式 */
+    private LiveLatencyController mLiveController;
+    /** 直播延迟监听 */
+    private OnLiveLatencyListener mLiveLatencyListener;
+    /** 镜像地址列表，主地址失败时按顺序切换 */
+    private List<String> mMirrorUrls;
+    /** 错误恢复引擎，为null时不自动恢复 */
+    private RecoveryEngine mRecoveryEngine;
+    /** 最后一次获取到的有效播放位置，用于出错后续播，单位：ms */
+    private long mLastPositionMs;
+    /** 是否开启已prepare播放器的缓存 */
+    private boolean mWarmCacheEnabled;
+    /** 是否对渐进式视频开启稀疏磁盘缓存 */
+    private boolean mRangeCacheEnabled;
+    /** 本次会话是否还没有统计预取命中，重试和切换清晰度时重新打开不重复统计 */
+    private boolean mPrefetchStatsPending;
+    /** 是否对本地视频直接打开文件描述符 */
+    private boolean mLocalFastPathEnabled = true;
+    /** 当前视频是否为本地视频 */
+    private boolean mLocalSource;
+    /** 当前视频是否走了本地快速路径 */
+    private boolean mLocalFastPath;
+    /** seek吸附方式 */
+    private int mSeekSnapMode = SEEK_EXACT;
+    /** 当前播放器对应的缓存key，即业务方设置的原始视频地址 */
+    private String mPlayerKey;
+    /** 视频格式提示：MIME类型，用于提前选择解码模式 */
+    private String mFormatMime;
+    /** 视频格式提示：宽度 */
+    private int mFormatWidth;
+    /** 视频格式提示：高度 */
+    private int mFormatHeight;
+    /** 视频格式提示：帧率 */
+    private int mFormatFps;
+    /** 格式提示是否为下一个视频源设置，设置视频源时没有新的提示则清空旧的提示 */
+    private boolean mFormatHintPending;
+    /** 当前播放器选择解码模式时依据的MIME类型，硬解失败时记到这个格式上 */
+    private String mDecodeMime;
+    /** 当前播放器使用的解码模式 */
+    private int mDecodeMode = BDCloudMediaPlayer.DECODE_AUTO;
+    /** 打开视频的时间，用于统计首帧耗时 */
+    private long mOpenStartMs;
+    /** 当前播放器是否已经渲染出首帧 */
+    private boolean mFirstFrameRendered;
+    /** 是否允许在不可见时继续播放声音 */
+    private boolean mBackgroundAudioEnabled;
+    /** 是否处于纯音频模式 */
+    private boolean mAudioOnly;
+    /** 纯音频模式下被关闭的视频轨道，-1表示没有关闭 */
+    private int mDeselectedVideoTrack = -1;
+    /** 是否有退出纯音频模式时发起的内部seek还没有完成，完成时不回调业务方、不计入QoE */
+    private boolean mInternalSeekPending;
+    /** 是否有seek还没有完成，包括内部seek */
+    private boolean mSeeking;
+    /** 分模式CPU占用统计 */
+    private final CpuUsageTracker mCpuUsageTracker = new CpuUsageTracker();
+    /** 渲染帧间隔统计 */
+    private final FrameTimingMonitor mFrameTimingMonitor = new FrameTimingMonitor();
+    /** 播放会话QoE采集 */
+    private QoeRecorder mQoeRecorder;
+    /** 清晰度选择策略 */
+    private final RenditionSelector mRenditionSelector = new RenditionSelector();
+    /** 是否按显示尺寸自动选择HLS多码率播放列表中的清晰度 */
+    private boolean mAdaptiveRenditionEnabled;
+    /** 当前视频的可选清晰度，没有时为null */
+    private List<Rendition> mRenditions;
+    /** 当前播放的清晰度 */
+    private Rendition mCurrentRendition;
+    /** 每次设置新的视频源递增，用于丢弃过期的异步加载结果 */
+    private int mSourceToken;
+    /** 点播HLS起播时并行预取的分片数，为0时关闭 */
+    private int mHlsPrefetchSegments;
+    /** 当前的HLS起播预取会话，没有预取时为null */
+    private HlsProxySession mHlsSession;
+    /** 提供给预取调度的播放缓冲，缓冲不足时预取让出带宽 */
+    private final PrefetchScheduler.BufferSource mBufferSource =
+            new PrefetchScheduler.BufferSource() {
+                @Override
+                public long getBufferedMs() {
+                    return getBufferedAheadMs();
+                }
+            };
+    /** 设置点播HLS视频源的时间，用于统计包括播放列表下载在内的起播耗时，已统计或不是HLS时为0 */
+    private long mHlsStartMs;
+    /** 元信息缓存使用的地址，即设置的视频源地址 */
+    private String mMetadataKey;
+    /** 视频显示宽度，已按像素宽高比换算，旋转之前，未知时为0 */
+    private int mVideoWidth;
+    /** 视频显示高度，旋转之前，未知时为0 */
+    private int mVideoHeight;
+    /** 视频顺时针旋转角度 */
+    private int mVideoRotation;
+    /** 视频编码，未知时为null */
+    private String mVideoCodec;
+    /** 元信息缓存中的时长，prepare之前用于显示，未知时为0 */
+    private long mDurationHintMs;
 
 
     /* ============ 加载中状态view START ========= */
@@ -103,11 +277,32 @@ public class SwanVideoView extends FrameLayout {
     /** 视频view根布局 */
     private FrameLayout mVideoRootView;
     private SurfaceTextureCallback mSurfaceCallback;
+    /** 非主线程调用的指令队列 */
+    private final PlayerCommandQueue mCommandQueue = new PlayerCommandQueue(this);
+    /** 播放时钟，减少native位置查询并提供平滑进度 */
+    private final PlaybackClock mPlaybackClock = new PlaybackClock(new PlaybackClock.Source() {
+        @Override
+        public long samplePositionMs() {
+            return isInPlaybackState() ? mMediaPlayer.getCurrentPosition() : -1;
+        }
+    });
+    /** 最近发布的播放状态快照，任意线程可读 */
+    private volatile PlaybackSnapshot mSnapshot = PlaybackSnapshot.IDLE;
+    /** 通过setVideoPlayerCallback设置的回调 */
     private IVideoPlayerCallback mVideoPlayerCallback;
+    /** 播放器事件分发 */
+    private final VideoEventDispatcher mEventDispatcher =
+            new VideoEventDispatcher(new VideoEventDispatcher.PositionSource() {
+                @Override
+                public long getCurrentPosition() {
+                    return SwanVideoView.this.getCurrentPosition();
+                }
 
-    static {
-        BDCloudMediaPlayer.setAK("5989e435183e42c5a3f7da72dbac006c");
-    }
+                @Override
+                public long getDuration() {
+                    return SwanVideoView.this.getDuration();
+                }
+            });
 
 
     /**
@@ -151,6 +346,9 @@ public class SwanVideoView extends FrameLayout {
     private void initVideoView(Context context) {
 
         mAppContext = context.getApplicationContext();
+        // 宿主已经调用过VideoPlayerInitializer.warmUp时，这里不会有额外开销
+        VideoPlayerInitializer.ensureInitialized();
+        DecoderCapabilities.getInstance(mAppContext).probeAsync();
 
         mVideoRootView = new FrameLayout(context);
         LayoutParams rootViewParams = new LayoutParams(-1, -1);
@@ -163,10 +361,25 @@ public class SwanVideoView extends FrameLayout {
         mController.setVisibility(GONE);
         addView(mController, controllerParams);
         mController.bindMediaControl(this);
+        mController.setToggleScreenListener(mEventDispatcher);
 
         initTextureView();
+        addSubtitleView();
         addCachingHintView();
 
+        mRecoveryEngine = new RecoveryEngine(new RetryPolicy(), mRecoveryHost);
+        mQoeRecorder = new QoeRecorder(context, new QoeRecorder.Source() {
+            @Override
+            public long getDownloadSpeed() {
+                return mMediaPlayer == null ? 0 : mMediaPlayer.getDownloadSpeed();
+            }
+
+            @Override
+            public long getBitRate() {
+                return mMediaPlayer == null ? 0 : mMediaPlayer.getBitRate();
+            }
+        });
+
         setFocusable(true);
         setFocusableInTouchMode(true);
         requestFocus();
@@ -194,7 +407,384 @@ public class SwanVideoView extends FrameLayout {
      * @param surface 用于绘制视频图像的surface对象
      */
     public void setSurface(Surface surface) {
-        mMediaPlayer.setSurface(surface);
+        mSurface = surface;
+        if (mMediaPlayer != null && !mAudioOnly) {
+            mMediaPlayer.setSurface(surface);
+        }
+    }
+
+    /**
+     * 设置是否允许后台播放声音。开启后，页面进入后台时自动切换到纯音频模式，回到前台时恢复画面
+     *
+     * @param enable 是否允许
+     */
+    public void setBackgroundAudioEnabled(boolean enable) {
+        mBackgroundAudioEnabled = enable;
+        if (mMediaPlayer != null) {
+            mMediaPlayer.setKeepInBackground(enable);
+        }
+        if (!enable) {
+            setAudioOnly(false);
+        }
+    }
+
+    /**
+     * 切换纯音频模式。纯音频模式下解除surface并关闭视频轨道，不再解码视频，声音继续播放；
+     * 退出时重新绑定surface，并从当前位置seek，内核从前一个关键帧开始解码，画面与声音重新同步。
+     * <p>
+     * 页面前后台切换在开启{@link #setBackgroundAudioEnabled(boolean)}后会自动处理；
+     * 列表中滑出屏幕等宿主才能感知的场景需要宿主调用此方法
+     *
+     * @param audioOnly 是否纯音频
+     */
+    public void setAudioOnly(boolean audioOnly) {
+        if (mAudioOnly == audioOnly) {
+            return;
+        }
+        mAudioOnly = audioOnly;
+        mCpuUsageTracker.setMode(audioOnly
+                ? CpuUsageTracker.MODE_AUDIO_ONLY : CpuUsageTracker.MODE_VIDEO);
+        if (isInPlaybackState()) {
+            applyAudioOnly(audioOnly);
+        }
+        updateFrameTiming();
+        if (DEBUG) {
+            Log.d(TAG, "audio only = " + audioOnly + ", " + mCpuUsageTracker);
+        }
+    }
+
+    /**
+     * 是否处于纯音频模式
+     *
+     * @return true：纯音频
+     */
+    public boolean isAudioOnly() {
+        return mAudioOnly;
+    }
+
+    /**
+     * 获取分模式CPU占用统计，可用于量化纯音频模式节省的CPU
+     *
+     * @return CPU占用统计
+     */
+    public CpuUsageTracker getCpuUsageTracker() {
+        return mCpuUsageTracker;
+    }
+
+    /**
+     * 获取当前播放会话的渲染帧统计，可以读取有效帧率、卡帧数和抖动分位数
+     *
+     * @return 渲染帧统计
+     */
+    public FrameTimingMonitor getFrameTimingMonitor() {
+        return mFrameTimingMonitor;
+    }
+
+    /**
+     * 设置是否统计渲染帧间隔，可以在播放中随时切换。默认开启
+     *
+     * @param enable 是否开启
+     */
+    public void setFrameTimingEnabled(boolean enable) {
+        mFrameTimingMonitor.setEnabled(enable);
+    }
+
+    /**
+     * 对当前播放器应用纯音频模式
+     *
+     * @param audioOnly 是否纯音频
+     */
+    private void applyAudioOnly(boolean audioOnly) {
+        if (audioOnly) {
+            mMediaPlayer.setSurface(null);
+            int track = findVideoTrack();
+            if (track >= 0) {
+                try {
+                    mMediaPlayer.deselectTrack(track);
+                    mDeselectedVideoTrack = track;
+                } catch (RuntimeException ex) {
+                    // 内核不支持关闭视频轨道时，至少不再向surface输出
+                    if (DEBUG) {
+                        Log.w(TAG, "deselect video track failed", ex);
+                    }
+                }
+            }
+        } else {
+            if (mDeselectedVideoTrack >= 0) {
+                try {
+                    mMediaPlayer.selectTrack(mDeselectedVideoTrack);
+                } catch (RuntimeException ex) {
+                    if (DEBUG) {
+                        Log.w(TAG, "select video track failed", ex);
+                    }
+                }
+                mDeselectedVideoTrack = -1;
+            }
+            if (mSurface != null) {
+                mMediaPlayer.setSurface(mSurface);
+            }
+            seekInternal(mMediaPlayer.getCurrentPosition());
+        }
+    }
+
+    /**
+     * 内部seek，用于重新同步画面。不回调业务方的seek监听，也不计入QoE的seek次数
+     *
+     * @param mSec 待定位的位置
+     */
+    private void seekInternal(long mSec) {
+        mInternalSeekPending = true;
+        mSeeking = true;
+        mMediaPlayer.seekTo(mSec);
+    }
+
+    /**
+     * 按当前状态开始或停止渲染帧间隔统计。只在画面正常推进时统计，暂停、卡顿、
+     * 纯音频和seek期间没有新帧，统计进去会被当成掉帧
+     */
+    private void updateFrameTiming() {
+        if (mPlaybackClock.isRunning() && !mAudioOnly && !mSeeking) {
+            mFrameTimingMonitor.start();
+        } else {
+            mFrameTimingMonitor.stop();
+        }
+    }
+
+    /**
+     * 查找视频轨道
+     *
+     * @return 视频轨道下标，没有时返回-1
+     */
+    private int findVideoTrack() {
+        ITrackInfo[] tracks = mMediaPlayer.getTrackInfo();
+        if (tracks == null) {
+            return -1;
+        }
+        for (int i = 0; i < tracks.length; i++) {
+            if (tracks[i] != null
+                    && tracks[i].getTrackType() == ITrackInfo.MEDIA_TRACK_TYPE_VIDEO) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        // 全屏切换时先detach再attach，会依次收到GONE和VISIBLE，不能因此切换纯音频模式
+        if (mBackgroundAudioEnabled && !mReparenting) {
+            setAudioOnly(visibility != VISIBLE);
+        }
+    }
+
+    /**
+     * 进入全屏，将播放器整体移动到activity的decorView上。
+     * <p>
+     * 切换过程中SurfaceTexture保持存活，播放器不会重新prepare，也不会出现黑屏
+     *
+     * @param activity 当前activity
+     * @return 是否切换成功
+     */
+    public boolean enterFullscreen(Activity activity) {
+        if (mFullscreen || activity == null) {
+            return false;
+        }
+        ViewGroup decorView = (ViewGroup) activity.getWindow().getDecorView();
+        if (decorView == null) {
+            return false;
+        }
+        long start = SystemClock.elapsedRealtimeNanos();
+        if (getParent() instanceof ViewGroup) {
+            mInlineParent = (ViewGroup) getParent();
+            mInlineIndex = mInlineParent.indexOfChild(this);
+            mInlineLayoutParams = getLayoutParams();
+        }
+        mReparenting = true;
+        try {
+            VideoUtils.removeFromParent(this);
+            prepareReattach();
+            decorView.addView(this, new LayoutParams(LayoutParams.MATCH_PARENT,
+                    LayoutParams.MATCH_PARENT));
+        } finally {
+            mReparenting = false;
+        }
+        onScreenTransition(true, start);
+        return true;
+    }
+
+    /**
+     * 退出全屏，将播放器放回进入全屏前的位置
+     *
+     * @return 是否切换成功
+     */
+    public boolean exitFullscreen() {
+        if (!mFullscreen) {
+            return false;
+        }
+        long start = SystemClock.elapsedRealtimeNanos();
+        mReparenting = true;
+        try {
+            VideoUtils.removeFromParent(this);
+            if (mInlineParent != null) {
+                prepareReattach();
+                int index = Math.min(mInlineIndex, mInlineParent.getChildCount());
+                if (mInlineLayoutParams != null) {
+                    mInlineParent.addView(this, index, mInlineLayoutParams);
+                } else {
+                    mInlineParent.addView(this, index);
+                }
+            }
+        } finally {
+            mReparenting = false;
+        }
+        mInlineParent = null;
+        mInlineLayoutParams = null;
+        onScreenTransition(false, start);
+        return true;
+    }
+
+    /**
+     * 是否处于全屏状态
+     *
+     * @return true：全屏
+     */
+    public boolean isFullscreen() {
+        return mFullscreen;
+    }
+
+    /**
+     * 获取最近一次全屏切换的耗时，从开始切换到新位置第一次绘制
+     *
+     * @return 切换耗时，单位：ns；还没有切换过时返回-1
+     */
+    public long getLastScreenTransitionNs() {
+        return mLastScreenTransitionNs;
+    }
+
+    /**
+     * 在播放器被移出父布局之后、加入新的父布局之前调用，保证重新attach时复用SurfaceTexture。
+     * 自行移动播放器的宿主也需要调用此方法，参见{@link VideoUtils#attachDecor(Activity, View)}
+     */
+    public void prepareReattach() {
+        if (mSurfaceCallback != null) {
+            mSurfaceCallback.prepareReattach();
+        }
+    }
+
+    /**
+     * 全屏状态切换完成，等待新位置第一次绘制时统计耗时
+     *
+     * @param fullscreen 是否全屏
+     * @param startNs    开始切换的时间，单位：ns
+     */
+    private void onScreenTransition(boolean fullscreen, final long startNs) {
+        mFullscreen = fullscreen;
+        if (mController != null) {
+            mController.updateFullscreenState(fullscreen);
+        }
+        final ViewTreeObserver observer = getViewTreeObserver();
+        observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                if (observer.isAlive()) {
+                    observer.removeOnPreDrawListener(this);
+                }
+                mLastScreenTransitionNs = SystemClock.elapsedRealtimeNanos() - startNs;
+                if (DEBUG) {
+                    Log.d(TAG, "screen transition cost " + mLastScreenTransitionNs / 1000 + "us"
+                            + (mLastScreenTransitionNs > FRAME_INTERVAL_NS
+                            ? ", over one frame" : ""));
+                }
+                return true;
+            }
+        });
+    }
+
+    /**
+     * 添加字幕显示控件，位于视频之上、播放控件之下
+     */
+    private void addSubtitleView() {
+        mSubtitleView = new TextView(getContext());
+        mSubtitleView.setTextColor(0xffffffff);
+        mSubtitleView.setShadowLayer(2, 1, 1, 0xff000000);
+        mSubtitleView.setGravity(Gravity.CENTER_HORIZONTAL);
+        mSubtitleView.setVisibility(View.GONE);
+        LayoutParams subtitleParams =
+                new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.WRAP_CONTENT);
+        subtitleParams.gravity = Gravity.BOTTOM;
+        subtitleParams.bottomMargin = (int) (SUBTITLE_MARGIN_DP
+                * getResources().getDisplayMetrics().density);
+        addView(mSubtitleView, indexOfChild(mController), subtitleParams);
+
+        mSubtitleController = new SubtitleController(getContext(),
+                new SubtitleController.PositionProvider() {
+                    @Override
+                    public int getCurrentPosition() {
+                        return SwanVideoView.this.getCurrentPosition();
+                    }
+
+                    @Override
+                    public boolean isPlaying() {
+                        return SwanVideoView.this.isPlaying();
+                    }
+                });
+        mSubtitleController.setRenderer(new SubtitleController.SubtitleRenderer() {
+            @Override
+            public void onSubtitle(String text) {
+                showSubtitle(text);
+            }
+        });
+    }
+
+    /**
+     * 显示字幕
+     *
+     * @param text 字幕文本，为空时隐藏字幕
+     */
+    private void showSubtitle(String text) {
+        if (mSubtitleView == null) {
+            return;
+        }
+        if (text == null || text.length() == 0) {
+            mSubtitleView.setVisibility(View.GONE);
+            mSubtitleView.setText(null);
+        } else {
+            mSubtitleView.setText(text);
+            mSubtitleView.setVisibility(View.VISIBLE);
+        }
+    }
+
+    /**
+     * 添加外挂字幕轨道（SRT/WebVTT），在后台线程解析，解析过程中即可显示
+     *
+     * @param name 轨道名称，同名轨道会被替换
+     * @param url  字幕地址，支持网络和本地
+     */
+    public void addSubtitleTrack(String name, String url) {
+        if (mSubtitleController != null) {
+            mSubtitleController.addTrack(name, Uri.parse(url));
+        }
+    }
+
+    /**
+     * 选择外挂字幕轨道，已加载的轨道切换时不会重新解析
+     *
+     * @param name 轨道名称，为null时关闭外挂字幕
+     */
+    public void selectSubtitleTrack(String name) {
+        if (mSubtitleController != null) {
+            mSubtitleController.selectTrack(name);
+        }
+    }
+
+    /**
+     * 获取外挂字幕控制器
+     *
+     * @return 字幕控制器
+     */
+    public SubtitleController getSubtitleController() {
+        return mSubtitleController;
     }
 
     /**
@@ -231,26 +821,111 @@ public class SwanVideoView extends FrameLayout {
     }
 
     /**
-     * 设置播放器回调
+     * 设置播放器回调，替换之前通过此方法设置的回调，不影响通过
+     * {@link #addVideoPlayerCallback(IVideoPlayerCallback, int)}添加的回调
      *
      * @param callback 播放器回调
      */
     public void setVideoPlayerCallback(IVideoPlayerCallback callback) {
+        if (mVideoPlayerCallback != null) {
+            mEventDispatcher.removeCallback(mVideoPlayerCallback);
+        }
         mVideoPlayerCallback = callback;
-        if (mController != null) {
-            mController.setToggleScreenListener(callback);
+        mEventDispatcher.addCallback(callback);
+    }
+
+    /**
+     * 添加播放器回调，只接收订阅的事件
+     *
+     * @param callback 播放器回调
+     * @param events   订阅的事件，{@link VideoEventDispatcher}中EVENT_*的组合
+     */
+    public void addVideoPlayerCallback(IVideoPlayerCallback callback, int events) {
+        mEventDispatcher.addCallback(callback, events);
+    }
+
+    /**
+     * 移除播放器回调
+     *
+     * @param callback 播放器回调
+     */
+    public void removeVideoPlayerCallback(IVideoPlayerCallback callback) {
+        if (callback == mVideoPlayerCallback) {
+            mVideoPlayerCallback = null;
         }
+        mEventDispatcher.removeCallback(callback);
+    }
+
+    /**
+     * 获取事件分发器，可以添加播放进度监听、调整高频事件的分发间隔
+     *
+     * @return 事件分发器
+     */
+    public VideoEventDispatcher getEventDispatcher() {
+        return mEventDispatcher;
     }
 
     /**
-     * 获取播放器当前状态
+     * 获取播放器当前状态，非主线程调用时返回最近发布的快照中的状态
      *
      * @return 播放器状态
      */
     public int getCurrentPlayerState() {
+        if (!VideoUtils.isMainThread()) {
+            return mSnapshot.getState();
+        }
         return mCurrentState;
     }
 
+    /**
+     * 获取播放状态快照，可以在任意线程调用，不会阻塞
+     *
+     * @return 最近发布的快照
+     */
+    public PlaybackSnapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    /**
+     * 获取指令队列，用于在非主线程控制播放器
+     *
+     * @return 指令队列
+     */
+    public PlayerCommandQueue getCommandQueue() {
+        return mCommandQueue;
+    }
+
+    /**
+     * 获取播放时钟，在主线程按帧读取平滑的播放位置
+     *
+     * @return 播放时钟
+     */
+    public PlaybackClock getPlaybackClock() {
+        return mPlaybackClock;
+    }
+
+    /**
+     * 在主线程按播放时钟发布播放状态快照，播放时钟重新锚定后调用
+     */
+    private void publishSnapshot() {
+        mSnapshot = new PlaybackSnapshot(mCurrentState, mPlaybackClock.getPositionMs(),
+                mPlaybackClock.getDurationMs(), mCurrentBufferPercentage,
+                mPlaybackClock.isRunning() ? mPlaybackClock.getRate() : 0f,
+                SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * 采样native播放位置并重新锚定播放时钟
+     */
+    private void syncPlaybackClock() {
+        if (isInPlaybackState()) {
+            mPlaybackClock.sync();
+        } else {
+            mPlaybackClock.anchor(0);
+        }
+        publishSnapshot();
+    }
+
     /**
      * 设置播放器状态
      *
@@ -259,9 +934,23 @@ public class SwanVideoView extends FrameLayout {
     private void setCurrentState(int newState) {
         if (mCurrentState != newState) {
             mCurrentState = newState;
+            mPlaybackClock.setPlaying(newState == STATE_PLAYING);
+            syncPlaybackClock();
+            updateFrameTiming();
+            if (newState == STATE_PLAYING) {
+                PrefetchScheduler.getInstance(mAppContext).setActivePlayer(mBufferSource,
+                        mUri == null ? null : mUri.toString());
+            }
+            if (mQoeRecorder != null) {
+                mQoeRecorder.onPlaying(newState == STATE_PLAYING);
+            }
+            mEventDispatcher.onStateChanged(newState);
             if (mController != null) {
                 mController.updateState();
             }
+            if (mSubtitleController != null) {
+                mSubtitleController.onPlaybackChanged();
+            }
         }
     }
 
@@ -291,29 +980,514 @@ public class SwanVideoView extends FrameLayout {
             mTextureView = null;
         }
 
-        mTextureView = new VideoTextureView(getContext());
+        mTextureView = new VideoTextureView(getContext());
+
+        LayoutParams params = new LayoutParams(
+                LayoutParams.WRAP_CONTENT,
+                LayoutParams.WRAP_CONTENT,
+                Gravity.CENTER);
+        mTextureView.setLayoutParams(params);
+        mTextureView.setVideoSize(mVideoWidth, mVideoHeight);
+        mTextureView.setVideoRotation(mVideoRotation);
+        mVideoRootView.addView(mTextureView);
+
+        mSurfaceCallback = new SurfaceTextureCallback(this, mTextureView);
+        mSurfaceCallback.setFrameTimingMonitor(mFrameTimingMonitor);
+        mTextureView.setSurfaceTextureListener(mSurfaceCallback);
+    }
+
+    /**
+     * 设置视频源路径，非主线程调用时经由指令队列在主线程执行
+     *
+     * @param path 视频源路径，支持本地和网络
+     */
+    public void setVideoPath(String path) {
+        if (!VideoUtils.isMainThread()) {
+            mCommandQueue.setVideoPath(path);
+            return;
+        }
+        mSourceToken++;
+        mRenditions = null;
+        mCurrentRendition = null;
+        closeHlsSession();
+        consumeFormatHint();
+        startQoeSession(path);
+        applyMetadataHint(path);
+        boolean vodHls = isVodHls(path);
+        mHlsStartMs = vodHls ? SystemClock.elapsedRealtime() : 0;
+        if (mAdaptiveRenditionEnabled && vodHls) {
+            loadRenditions(path, mSourceToken);
+        } else {
+            startSource(path, null);
+        }
+    }
+
+    /**
+     * 判断是否为点播模式下的网络HLS地址
+     *
+     * @param path 视频源路径
+     * @return true：点播HLS
+     */
+    private boolean isVodHls(String path) {
+        String scheme = Uri.parse(path).getScheme();
+        return mLiveController == null && ("http".equals(scheme) || "https".equals(scheme))
+                && HlsPlaylistParser.isHlsUrl(path);
+    }
+
+    /**
+     * 播放视频源，点播HLS开启起播预取时先在后台下载播放列表和前几个分片
+     *
+     * @param path     视频源路径
+     * @param playlist 已下载的媒体播放列表内容，没有时为null
+     */
+    private void startSource(String path, String playlist) {
+        if (mHlsPrefetchSegments > 0 && isVodHls(path)) {
+            prefetchHls(path, playlist, mSourceToken);
+        } else {
+            startSession(path);
+        }
+    }
+
+    /**
+     * 在后台下载媒体播放列表并开始并行预取前几个分片，完成后播放本地服务提供的播放列表；
+     * 不支持或失败时直接播放原地址
+     *
+     * @param url      媒体播放列表地址
+     * @param playlist 已下载的媒体播放列表内容，为null时重新下载
+     * @param token    发起预取时的视频源序号
+     */
+    private void prefetchHls(final String url, final String playlist, final int token) {
+        setCacheViewVisibility(true);
+        final Map<String, String> headers = mHeaders;
+        final int segments = mHlsPrefetchSegments;
+        VideoUtils.getStartupExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                HlsProxySession session = null;
+                try {
+                    session = HlsProxySession.open(url, headers, segments, playlist);
+                } catch (IOException ex) {
+                    if (DEBUG) {
+                        Log.w(TAG, "hls prefetch unavailable : " + url, ex);
+                    }
+                }
+                final HlsProxySession result = session;
+                VideoUtils.getMainHandler().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (token != mSourceToken) {
+                            if (result != null) {
+                                result.close();
+                            }
+                            return;
+                        }
+                        if (result == null) {
+                            startSession(url);
+                        } else {
+                            mHlsSession = result;
+                            startSession(result.getLocalUrl());
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 释放HLS起播预取的数据
+     */
+    private void closeHlsSession() {
+        if (mHlsSession != null) {
+            mHlsSession.close();
+            mHlsSession = null;
+        }
+    }
+
+    /**
+     * 设置点播HLS起播时并行预取的分片数，需要在setVideoPath之前调用。
+     * 开启后由组件下载媒体播放列表并同时下载前几个分片，播放器通过本地服务读取，不再串行等待每个分片。
+     * 起播耗时可以通过{@link FirstFrameStats#getHls(boolean)}与不预取时对比。
+     * AES-128加密的播放列表同时由组件解密后提供明文，密钥缓存在内存中，重播和seek不再请求密钥。默认关闭
+     *
+     * @param segments 预取的分片数，为0时关闭，推荐{@link HlsProxySession#DEFAULT_PREFETCH_SEGMENTS}
+     */
+    public void setHlsPrefetchSegments(int segments) {
+        mHlsPrefetchSegments = Math.max(0, segments);
+    }
+
+    /**
+     * 获取当前的HLS起播预取会话，可以读取预取字节数和命中情况
+     *
+     * @return 预取会话，没有预取时返回null
+     */
+    public HlsProxySession getHlsSession() {
+        return mHlsSession;
+    }
+
+    /**
+     * 设置同一视频的多个清晰度，按播放器显示尺寸选择能覆盖显示像素的最小清晰度播放，
+     * 之后显示区域变大（如进入全屏）时自动切换到更高清晰度
+     *
+     * @param renditions 可选清晰度
+     */
+    public void setVideoRenditions(List<Rendition> renditions) {
+        mSourceToken++;
+        mHlsStartMs = 0;
+        closeHlsSession();
+        if (renditions == null || renditions.isEmpty()) {
+            mRenditions = null;
+            mCurrentRendition = null;
+            return;
+        }
+        mRenditions = new ArrayList<>(renditions);
+        mCurrentRendition = selectRendition();
+        consumeFormatHint();
+        startQoeSession(mCurrentRendition.getUrl());
+        applyMetadataHint(mCurrentRendition.getUrl());
+        startSession(mCurrentRendition.getUrl());
+    }
+
+    /**
+     * 设置是否按显示尺寸自动选择HLS多码率播放列表中的清晰度，需要在setVideoPath之前调用。
+     * 开启后起播前要先下载一次播放列表，声明了独立音轨、字幕等备选媒体组的多码率播放列表仍播放原地址。
+     * 默认关闭
+     *
+     * @param enable 是否开启
+     */
+    public void setAdaptiveRenditionEnabled(boolean enable) {
+        mAdaptiveRenditionEnabled = enable;
+    }
+
+    /**
+     * 获取清晰度选择策略，可以调整最大有效屏幕密度
+     *
+     * @return 清晰度选择策略
+     */
+    public RenditionSelector getRenditionSelector() {
+        return mRenditionSelector;
+    }
+
+    /**
+     * 获取当前播放的清晰度
+     *
+     * @return 当前清晰度，没有多个清晰度时返回null
+     */
+    public Rendition getCurrentRendition() {
+        return mCurrentRendition;
+    }
+
+    /**
+     * 在后台加载HLS多码率播放列表，加载完成后按显示尺寸选择清晰度播放；
+     * 不是多码率播放列表、有备选媒体组或加载失败时直接播放原地址，
+     * 媒体播放列表的内容交给起播预取复用，不再重复下载
+     *
+     * @param url   播放列表地址
+     * @param token 发起加载时的视频源序号
+     */
+    private void loadRenditions(final String url, final int token) {
+        setCacheViewVisibility(true);
+        final Map<String, String> headers = mHeaders;
+        VideoUtils.getStartupExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                List<Rendition> renditions = null;
+                String text = null;
+                try {
+                    text = HttpFetcher.readText(url, headers);
+                    if (!HlsPlaylistParser.hasAlternativeMedia(text)) {
+                        renditions = HlsPlaylistParser.parseMaster(url, text);
+                    }
+                } catch (IOException ex) {
+                    if (DEBUG) {
+                        Log.w(TAG, "load master playlist failed : " + url, ex);
+                    }
+                }
+                final List<Rendition> result = renditions;
+                final String media = text;
+                VideoUtils.getMainHandler().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (token != mSourceToken) {
+                            return;
+                        }
+                        if (HlsPlaylistParser.isMasterPlaylist(media)
+                                && (result == null || result.isEmpty())) {
+                            // 起播预取只支持媒体播放列表，多码率播放列表整个交给播放器
+                            startSession(url);
+                        } else if (result == null || result.isEmpty()) {
+                            startSource(url, media);
+                        } else {
+                            mRenditions = result;
+                            mCurrentRendition = selectRendition();
+                            startSource(mCurrentRendition.getUrl(), null);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 按当前显示尺寸选择清晰度
+     *
+     * @return 选中的清晰度
+     */
+    private Rendition selectRendition() {
+        // TextureView按视频比例居中显示在播放器区域内，选择策略会按同样的方式计算实际显示像素
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0) {
+            // 还没有布局时按屏幕宽度和16:9估算
+            width = getResources().getDisplayMetrics().widthPixels;
+            height = width * 9 / 16;
+        }
+        Rendition rendition = mRenditionSelector.select(mRenditions, width, height,
+                getResources().getDisplayMetrics().density);
+        if (DEBUG) {
+            Log.d(TAG, "select " + rendition + " for view " + width + "x" + height);
+        }
+        return rendition;
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        if (mRenditions != null && mCurrentRendition != null
+                && !mRenditionSelector.covers(mCurrentRendition, w, h,
+                getResources().getDisplayMetrics().density)) {
+            // 布局过程中不重建播放器，等布局完成后再切换
+            post(mSwitchRenditionRunnable);
+        }
+    }
+
+    /**
+     * 显示区域变大后切换到更高清晰度。只升不降，缩小时继续使用已缓冲的高清晰度
+     */
+    private final Runnable mSwitchRenditionRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mRenditions == null || mCurrentRendition == null) {
+                return;
+            }
+            Rendition target = selectRendition();
+            if (target == null || !RenditionSelector.isHigher(target, mCurrentRendition)) {
+                return;
+            }
+            mCurrentRendition = target;
+            if (mRecoveryEngine != null) {
+                mRecoveryEngine.startSession(target.getUrl(), null);
+            }
+            if (mMediaPlayer == null) {
+                mUri = Uri.parse(target.getUrl());
+                return;
+            }
+            long position = mLiveController == null && isInPlaybackState()
+                    ? getCurrentPosition() : mLastPositionMs;
+            reopen(target.getUrl(), position);
+        }
+    };
+
+    /**
+     * 开始新的播放会话
+     *
+     * @param path 视频源路径
+     */
+    private void startSession(String path) {
+        mUri = Uri.parse(path);
+        mLastPositionMs = 0;
+        mFrameTimingMonitor.reset();
+        if (mRecoveryEngine != null) {
+            mRecoveryEngine.startSession(path, mMirrorUrls);
+        }
+        openVideo();
+        requestLayout();
+        invalidate();
+    }
+
+    /**
+     * 结束上一次QoE会话并开始新的会话
+     *
+     * @param url 视频地址
+     */
+    private void startQoeSession(String url) {
+        mQoeRecorder.endSession(QoeRecord.END_SWITCHED);
+        mQoeRecorder.startSession(url);
+        mQoeRecorder.onHostPrewarm(HostPrewarmer.getInstance().onOpen(url));
+        mPrefetchStatsPending = true;
+    }
+
+    /**
+     * 从元信息缓存中读取新视频源的尺寸和时长，prepare之前就能按视频比例布局、显示时长；
+     * 没有缓存时清空上一个视频的尺寸
+     *
+     * @param url 视频源地址
+     */
+    private void applyMetadataHint(String url) {
+        mMetadataKey = url;
+        mVideoCodec = null;
+        MediaMetadata metadata = MetadataCache.getInstance().get(url);
+        if (metadata != null) {
+            setVideoLayout(metadata.getWidth(), metadata.getHeight(), metadata.getRotation());
+            mVideoCodec = metadata.getCodec();
+            mDurationHintMs = metadata.getDurationMs();
+        } else {
+            setVideoLayout(0, 0, 0);
+            mDurationHintMs = 0;
+        }
+    }
+
+    /**
+     * 更新视频显示尺寸和旋转角度
+     *
+     * @param width    显示宽度，旋转之前
+     * @param height   显示高度，旋转之前
+     * @param rotation 顺时针旋转角度
+     */
+    private void setVideoLayout(int width, int height, int rotation) {
+        mVideoWidth = width;
+        mVideoHeight = height;
+        mVideoRotation = rotation;
+        if (mTextureView != null) {
+            mTextureView.setVideoSize(width, height);
+            mTextureView.setVideoRotation(rotation);
+        }
+    }
+
+    /**
+     * 把播放器回调得到的元信息写入缓存，下次播放同一地址时在prepare之前使用
+     */
+    private void saveMetadata() {
+        if (mMetadataKey == null || mVideoWidth <= 0 || mVideoHeight <= 0) {
+            return;
+        }
+        long duration = mLiveController == null ? mPlaybackClock.getDurationMs() : 0;
+        MetadataCache.getInstance().put(mMetadataKey, new MediaMetadata(mVideoWidth,
+                mVideoHeight, mVideoRotation, Math.max(0, duration), mVideoCodec));
+    }
+
+    /**
+     * 获取视频时长，prepare之前返回元信息缓存中的时长，用于提前显示
+     *
+     * @return 时长，单位：ms，未知时返回0
+     */
+    public int getDurationHint() {
+        int duration = getDuration();
+        return duration > 0 ? duration : (int) mDurationHintMs;
+    }
+
+    /**
+     * 在后台读取MP4视频的头部信息并缓存，之后播放时prepare之前就能确定画面尺寸和时长，
+     * 列表中的视频进入屏幕之前调用，可以在任意线程调用
+     *
+     * @param url     视频地址
+     * @param headers 请求header，可以为null
+     */
+    public static void probeMetadata(String url, Map<String, String> headers) {
+        MetadataCache.getInstance().probe(url, headers);
+    }
+
+    /**
+     * 获取QoE采集器
+     *
+     * @return QoE采集器
+     */
+    public QoeRecorder getQoeRecorder() {
+        return mQoeRecorder;
+    }
+
+    /**
+     * 设置是否采集播放会话的QoE数据，采集结果通过{@link com.baidu.swan.videoplayer.monitor.QoeStore}
+     * 读取和导出。默认开启
+     *
+     * @param enable 是否开启
+     */
+    public void setQoeEnabled(boolean enable) {
+        mQoeRecorder.setEnabled(enable);
+    }
+
+    /**
+     * 设置镜像地址，主地址播放失败时按顺序切换，需要在setVideoPath之前调用
+     *
+     * @param mirrorUrls 镜像地址列表，按优先级排列
+     */
+    public void setMirrorUrls(List<String> mirrorUrls) {
+        mMirrorUrls = mirrorUrls;
+    }
+
+    /**
+     * 设置错误重试策略。默认开启自动恢复
+     *
+     * @param policy 重试策略，为null时关闭自动恢复，出错直接回调
+     */
+    public void setRetryPolicy(RetryPolicy policy) {
+        if (mRecoveryEngine != null) {
+            mRecoveryEngine.cancel();
+        }
+        mRecoveryEngine = policy == null ? null : new RecoveryEngine(policy, mRecoveryHost);
+    }
+
+    /**
+     * 获取本次播放会话的错误恢复统计
+     *
+     * @return 恢复统计，关闭自动恢复时返回null
+     */
+    public RecoveryStats getRecoveryStats() {
+        return mRecoveryEngine == null ? null : mRecoveryEngine.getStats();
+    }
+
+    /**
+     * 错误恢复执行者：用新的地址重建播放器，并从出错前的位置续播
+     */
+    private final RecoveryEngine.Host mRecoveryHost = new RecoveryEngine.Host() {
+        @Override
+        public void reopen(String url, long positionMs) {
+            SwanVideoView.this.reopen(url, positionMs);
+        }
+    };
+
+    /**
+     * 在同一次播放会话内用新的地址重建播放器，并从指定位置续播
+     *
+     * @param url        播放地址
+     * @param positionMs 续播位置，单位：ms
+     */
+    private void reopen(String url, long positionMs) {
+        mUri = Uri.parse(url);
+        mInitPlayPositionInMSec = positionMs > 0 ? positionMs : -1;
+        openVideo();
+    }
 
-        LayoutParams params = new LayoutParams(
-                LayoutParams.WRAP_CONTENT,
-                LayoutParams.WRAP_CONTENT,
-                Gravity.CENTER);
-        mTextureView.setLayoutParams(params);
-        mVideoRootView.addView(mTextureView);
+    /**
+     * 提前预热视频地址所在的域名，列表滑动到视频之前调用，可以在任意线程调用。
+     * 预热会解析DNS并建立keep-alive连接，之后起播时省去DNS解析，组件自己的请求还可以省去握手
+     *
+     * @param url 视频地址，只处理http(s)
+     */
+    public static void preconnect(String url) {
+        preconnect(url, null);
+    }
 
-        mSurfaceCallback = new SurfaceTextureCallback(this, mTextureView);
-        mTextureView.setSurfaceTextureListener(mSurfaceCallback);
+    /**
+     * 提前预热视频地址所在的域名，用于需要鉴权header的地址
+     *
+     * @param url     视频地址，只处理http(s)
+     * @param headers 请求header，可以为null
+     */
+    public static void preconnect(String url, Map<String, String> headers) {
+        HostPrewarmer.getInstance().preconnect(url, headers);
     }
 
     /**
-     * 设置视频源路径
+     * 获取已缓冲但还没播放的时长，只能在主线程调用
      *
-     * @param path 视频源路径，支持本地和网络
+     * @return 时长，单位：ms；没有在播放时返回0
      */
-    public void setVideoPath(String path) {
-        mUri = Uri.parse(path);
-        openVideo();
-        requestLayout();
-        invalidate();
+    public long getBufferedAheadMs() {
+        if (mMediaPlayer == null || !isInPlaybackState()) {
+            return 0;
+        }
+        return mAudioOnly ? mMediaPlayer.getAudioCachedDuration()
+                : mMediaPlayer.getVideoCachedDuration();
     }
 
     /**
@@ -326,9 +1500,20 @@ public class SwanVideoView extends FrameLayout {
     }
 
     /**
-     * 停止播放并释放资源。如果想再次播放，需要重新create
+     * 停止播放并释放资源。如果想再次播放，需要重新create。非主线程调用时经由指令队列在主线程执行
      */
     public void stopPlayback() {
+        if (!VideoUtils.isMainThread()) {
+            mCommandQueue.stop();
+            return;
+        }
+        mSourceToken++;
+        if (mRecoveryEngine != null) {
+            mRecoveryEngine.cancel();
+        }
+        closeHlsSession();
+        PrefetchScheduler.getInstance(mAppContext).clearActivePlayer(mBufferSource);
+        mQoeRecorder.endSession(QoeRecord.END_STOPPED);
         if (mMediaPlayer != null) {
             mMediaPlayer.stop();
             releasePlayer();
@@ -344,22 +1529,70 @@ public class SwanVideoView extends FrameLayout {
             return;
         }
 
+        parkPlayer();
         releasePlayer();
 
+        // HLS预取时mUri是带会话id和token的本地地址，每次都不同，缓存要按原始地址索引
+        mPlayerKey = mMetadataKey != null ? mMetadataKey : mUri.toString();
+        mOpenStartMs = SystemClock.elapsedRealtime();
+        mFirstFrameRendered = false;
+        mInternalSeekPending = false;
+        mSeeking = false;
+        mLocalSource = false;
+        mLocalFastPath = false;
+        removeCallbacks(mLocalLoadingRunnable);
+        mEventDispatcher.reset();
+        mPlaybackClock.reset();
+        if (mWarmCacheEnabled && mLiveController == null) {
+            PreparedPlayerPool.Entry entry = PreparedPlayerPool.getInstance(mAppContext)
+                    .acquire(mPlayerKey);
+            if (entry != null) {
+                adoptPreparedPlayer(entry);
+                return;
+            }
+        }
+
         try {
             mMediaPlayer = createPlayer();
-            mMediaPlayer.setOnPreparedListener(mPreparedListener);
-            mMediaPlayer.setOnCompletionListener(mCompletionListener);
-            mMediaPlayer.setOnErrorListener(mErrorListener);
-            mMediaPlayer.setOnBufferingUpdateListener(mBufferingUpdateListener);
-            mMediaPlayer.setOnSeekCompleteListener(mSeekCompleteListener);
+            if (mSurface != null && !mAudioOnly) {
+                mMediaPlayer.setSurface(mSurface);
+            }
+            attachPlayerListeners(mMediaPlayer);
             mCurrentBufferPercentage = 0;
-            mMediaPlayer.setDataSource(mAppContext, mUri, mHeaders);
+            String url = mUri.toString();
+            // 本地播放列表按路径打开，不计入本地视频的首帧统计
+            mLocalSource = mLiveController == null && LocalSource.isLocal(mUri)
+                    && LocalSource.canOpenFd(url);
+            mLocalFastPath = mLocalSource && mLocalFastPathEnabled
+                    && setLocalDataSource(mMediaPlayer);
+            if (mLocalFastPath) {
+                mMediaPlayer.setBufferTimeInMs(LOCAL_BUFFER_TIME_MS);
+            } else if (mRangeCacheEnabled && mLiveController == null
+                    && RangeCacheDataSource.isCacheable(url)) {
+                if (mPrefetchStatsPending) {
+                    mPrefetchStatsPending = false;
+                    PrefetchScheduler.getInstance(mAppContext).onOpen(url);
+                }
+                mMediaPlayer.setDataSource(new RangeCacheDataSource(
+                        SparseFileCache.getInstance(mAppContext), url, mHeaders));
+            } else {
+                mMediaPlayer.setDataSource(mAppContext, mUri, mHeaders);
+            }
             mMediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
             mMediaPlayer.setScreenOnWhilePlaying(true);
-            mMediaPlayer.setTimeoutInUs(PLAYER_TIME_OUT_US);
+            if (mLiveController != null) {
+                mMediaPlayer.setTimeoutInUs(mLiveController.getConfig().getTimeoutUs());
+            } else {
+                mMediaPlayer.setTimeoutInUs(mLocalFastPath ? LOCAL_TIME_OUT_US
+                        : PLAYER_TIME_OUT_US);
+            }
             mMediaPlayer.prepareAsync();
-            setCacheViewVisibility(true);
+            if (mLocalFastPath) {
+                // 本地视频一般很快就能prepare完成，立即显示加载提示只会造成一次闪烁
+                postDelayed(mLocalLoadingRunnable, LOCAL_LOADING_DELAY_MS);
+            } else {
+                setCacheViewVisibility(true);
+            }
 
             setCurrentState(STATE_PREPARING);
 
@@ -368,33 +1601,247 @@ public class SwanVideoView extends FrameLayout {
                 Log.w(TAG, "Unable to open content: " + mUri, ex);
             }
             setCurrentState(STATE_ERROR);
-            mReadyToPlay = false;
+            // mReadyToPlay由错误回调处理，恢复引擎接管时需要保留播放意图
             mErrorListener.onError(mMediaPlayer, MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
         }
     }
 
+    /**
+     * 直接打开本地视频的文件描述符设置给播放器。整个文件直接交给播放器读取，
+     * asset等只占文件一部分的按偏移和长度读取
+     *
+     * @param player 播放器
+     * @return 是否设置成功，打开失败时返回false，由通用流程处理
+     */
+    private boolean setLocalDataSource(BDCloudMediaPlayer player) {
+        AssetFileDescriptor fd;
+        try {
+            fd = LocalSource.openFd(mAppContext, mUri);
+        } catch (IOException ex) {
+            if (DEBUG) {
+                Log.w(TAG, "open local fd failed, fallback : " + mUri, ex);
+            }
+            return false;
+        }
+        try {
+            if (LocalSource.isWholeFile(fd)) {
+                // 播放器会复制一份文件描述符，设置完即可关闭
+                player.setDataSource(fd.getFileDescriptor());
+                closeQuietly(fd);
+            } else {
+                player.setDataSource(new LocalDataSource(fd));
+            }
+            return true;
+        } catch (IOException | IllegalArgumentException | IllegalStateException ex) {
+            closeQuietly(fd);
+            if (DEBUG) {
+                Log.w(TAG, "set local fd failed, fallback : " + mUri, ex);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 关闭文件描述符，忽略异常
+     */
+    private static void closeQuietly(AssetFileDescriptor fd) {
+        try {
+            fd.close();
+        } catch (IOException ex) {
+            // ignore
+        }
+    }
+
+    /**
+     * 本地视频prepare较慢时延迟显示加载提示
+     */
+    private final Runnable mLocalLoadingRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mCurrentState == STATE_PREPARING) {
+                setCacheViewVisibility(true);
+            }
+        }
+    };
+
+    /**
+     * 为播放器设置全部回调
+     *
+     * @param player 播放器
+     */
+    private void attachPlayerListeners(BDCloudMediaPlayer player) {
+        player.setOnPreparedListener(mPreparedListener);
+        player.setOnCompletionListener(mCompletionListener);
+        player.setOnErrorListener(mErrorListener);
+        player.setOnBufferingUpdateListener(mBufferingUpdateListener);
+        player.setOnSeekCompleteListener(mSeekCompleteListener);
+        player.setOnTimedTextListener(mTimedTextListener);
+        player.setOnInfoListener(mInfoListener);
+        player.setOnVideoSizeChangedListener(mVideoSizeChangedListener);
+    }
+
+    /**
+     * 复用缓存中已prepare的播放器，直接进入prepared状态，不再走打开、解析和缓冲流程
+     *
+     * @param entry 缓存项
+     */
+    private void adoptPreparedPlayer(PreparedPlayerPool.Entry entry) {
+        mMediaPlayer = entry.player;
+        mMediaPlayer.setLooping(mLooping);
+        mMediaPlayer.setKeepInBackground(mBackgroundAudioEnabled);
+        if (mSurface != null && !mAudioOnly) {
+            mMediaPlayer.setSurface(mSurface);
+        }
+        attachPlayerListeners(mMediaPlayer);
+        mCurrentBufferPercentage = 0;
+        mLastPositionMs = entry.positionMs;
+        if (mInitPlayPositionInMSec > 0) {
+            mMediaPlayer.seekTo(mInitPlayPositionInMSec);
+            mInitPlayPositionInMSec = -1;
+        }
+        if (mMediaPlayer.getVideoWidth() > 0) {
+            // 缓存的播放器已经回调过尺寸，不会再次回调
+            mVideoSizeChangedListener.onVideoSizeChanged(mMediaPlayer,
+                    mMediaPlayer.getVideoWidth(), mMediaPlayer.getVideoHeight(),
+                    mMediaPlayer.getVideoSarNum(), mMediaPlayer.getVideoSarDen());
+        }
+        if (DEBUG) {
+            Log.d(TAG, "reuse prepared player : " + mUri + " at " + entry.positionMs + "ms");
+        }
+        mPreparedListener.onPrepared(mMediaPlayer);
+    }
+
+    /**
+     * 将当前已prepare的播放器暂停后放入缓存，之后回到同一个视频时可以直接复用
+     *
+     * @return true：已放入缓存
+     */
+    private boolean parkPlayer() {
+        if (!mWarmCacheEnabled || mMediaPlayer == null || mPlayerKey == null
+                || mLiveController != null || !isInPlaybackState()
+                || mCurrentState == STATE_PLAYBACK_COMPLETED) {
+            return false;
+        }
+        BDCloudMediaPlayer player = mMediaPlayer;
+        long position = player.getCurrentPosition();
+        if (player.isPlaying()) {
+            player.pause();
+        }
+        player.resetListeners();
+        player.setSurface(null);
+        if (!PreparedPlayerPool.getInstance(mAppContext).put(mPlayerKey, player, position)) {
+            // 缓存不接收时恢复回调，交给releasePlayer正常释放
+            attachPlayerListeners(player);
+            return false;
+        }
+        mMediaPlayer = null;
+        setCurrentState(STATE_IDLE);
+        return true;
+    }
+
+    /**
+     * 设置是否开启已prepare播放器的缓存。开启后切换视频或释放时，已prepare的播放器会暂停并缓存，
+     * 再次播放同一地址时直接从暂停位置继续，不需要重新打开、解析和缓冲
+     *
+     * @param enable 是否开启
+     */
+    public void setWarmCacheEnabled(boolean enable) {
+        mWarmCacheEnabled = enable;
+    }
+
+    /**
+     * 设置是否对http(s)的渐进式视频（mp4等）开启稀疏磁盘缓存，需要在setVideoPath之前调用。
+     * 开启后已经下载过的区间保存在磁盘上，往回seek和再次播放同一地址时不再重复下载。默认关闭
+     *
+     * @param enable 是否开启
+     */
+    public void setRangeCacheEnabled(boolean enable) {
+        mRangeCacheEnabled = enable;
+    }
+
+    /**
+     * 设置是否对本地视频（本地路径、file://、content://、android.resource://和asset）
+     * 直接打开文件描述符，使用较短的超时和缓冲，并且只在prepare较慢时显示加载提示。默认开启。
+     * 两种方式的首帧耗时可以通过{@link FirstFrameStats#getLocal(boolean)}对比
+     *
+     * @param enable 是否开启
+     */
+    public void setLocalFastPathEnabled(boolean enable) {
+        mLocalFastPathEnabled = enable;
+    }
+
     /**
      * 创建播放器
      *
      * @return 百度云播放器
      */
     public BDCloudMediaPlayer createPlayer() {
-        BDCloudMediaPlayer bdCloudMediaPlayer = new BDCloudMediaPlayer(this.getContext());
+        BDCloudMediaPlayer bdCloudMediaPlayer = VideoPlayerInitializer.takeSparePlayer();
+        if (bdCloudMediaPlayer == null) {
+            // 播放器可能被放进全局的预加载缓存，不能持有activity
+            bdCloudMediaPlayer = new BDCloudMediaPlayer(mAppContext);
+        }
 
         bdCloudMediaPlayer.setLogEnabled(DEBUG);
-        bdCloudMediaPlayer.setDecodeMode(BDCloudMediaPlayer.DECODE_AUTO);
+        if (mFormatMime != null) {
+            mDecodeMime = mFormatMime;
+            mDecodeMode = DecoderCapabilities.getInstance(mAppContext)
+                    .selectDecodeMode(mFormatMime, mFormatWidth, mFormatHeight, mFormatFps);
+        } else {
+            // 没有格式提示时按元信息缓存中记录的编码和尺寸选择
+            mDecodeMime = DecoderCapabilities.mimeOfCodec(mVideoCodec);
+            mDecodeMode = DecoderCapabilities.getInstance(mAppContext)
+                    .selectDecodeMode(mDecodeMime, mVideoWidth, mVideoHeight, 0);
+        }
+        bdCloudMediaPlayer.setDecodeMode(mDecodeMode);
 
         if (mInitPlayPositionInMSec > 0) {
             bdCloudMediaPlayer.setInitPlayPosition(mInitPlayPositionInMSec); // 设置初始播放位置
             mInitPlayPositionInMSec = -1;
         }
 
-        bdCloudMediaPlayer.setMaxCacheSizeInBytes(MAX_CACHE);
+        if (mLiveController != null) {
+            mLiveController.configurePlayer(bdCloudMediaPlayer);
+        } else {
+            bdCloudMediaPlayer.setMaxCacheSizeInBytes(MAX_CACHE);
+        }
         bdCloudMediaPlayer.setLooping(mLooping);
+        bdCloudMediaPlayer.setKeepInBackground(mBackgroundAudioEnabled);
 
         return bdCloudMediaPlayer;
     }
 
+    /**
+     * 设置视频格式提示，需要在setVideoPath之前调用，只对紧接着设置的视频源有效。
+     * 创建播放器时会根据设备硬解能力，提前为该格式选择硬解或软解
+     *
+     * @param mime   视频MIME类型，如video/avc、video/hevc
+     * @param width  视频宽度，未知时传0
+     * @param height 视频高度，未知时传0
+     * @param fps    视频帧率，未知时传0
+     */
+    public void setVideoFormatHint(String mime, int width, int height, int fps) {
+        mFormatMime = mime;
+        mFormatWidth = width;
+        mFormatHeight = height;
+        mFormatFps = fps;
+        mFormatHintPending = true;
+    }
+
+    /**
+     * 设置新的视频源时调用，上一个视频源的格式提示不能用于这个视频源，
+     * 否则这个视频源的错误会记到上一个格式的硬解能力上
+     */
+    private void consumeFormatHint() {
+        if (!mFormatHintPending) {
+            mFormatMime = null;
+            mFormatWidth = 0;
+            mFormatHeight = 0;
+            mFormatFps = 0;
+        }
+        mFormatHintPending = false;
+    }
+
     /**
      * 设置是否循环播放
      *
@@ -408,11 +1855,76 @@ public class SwanVideoView extends FrameLayout {
     }
 
     /**
-     * 设置音量
+     * 设置直播模式，需要在setVideoPath之前调用。
+     * <p>
+     * 直播模式下使用小缓冲，并通过微调播放速度保持目标延迟，延迟超过上限时直接跳到直播点附近
+     *
+     * @param config 直播配置，为null时恢复点播模式
+     */
+    public void setLiveMode(LiveConfig config) {
+        if (mLiveController != null) {
+            mLiveController.stop();
+        }
+        mLiveController = config == null ? null : new LiveLatencyController(config);
+        if (mLiveController != null) {
+            mLiveController.setListener(mLiveRateListener);
+            if (isPlaying()) {
+                mLiveController.start(mMediaPlayer);
+            }
+        }
+    }
+
+    /**
+     * 设置直播延迟监听，仅在直播模式下回调
+     *
+     * @param listener 直播延迟监听
+     */
+    public void setLiveLatencyListener(OnLiveLatencyListener listener) {
+        mLiveLatencyListener = listener;
+    }
+
+    /**
+     * 直播追帧变速时同步播放时钟的速度，再转发给业务方的直播延迟监听
+     */
+    private final OnLiveLatencyListener mLiveRateListener = new OnLiveLatencyListener() {
+        @Override
+        public void onLiveLatencyUpdate(long latencyMs, float speed) {
+            if (speed != mPlaybackClock.getRate()) {
+                mPlaybackClock.setRate(speed);
+                publishSnapshot();
+            }
+            if (mLiveLatencyListener != null) {
+                mLiveLatencyListener.onLiveLatencyUpdate(latencyMs, speed);
+            }
+        }
+
+        @Override
+        public void onLiveEdgeJump(long fromLatencyMs) {
+            if (mLiveLatencyListener != null) {
+                mLiveLatencyListener.onLiveEdgeJump(fromLatencyMs);
+            }
+        }
+    };
+
+    /**
+     * 是否处于直播模式
+     *
+     * @return true：直播模式
+     */
+    public boolean isLiveMode() {
+        return mLiveController != null;
+    }
+
+    /**
+     * 设置音量，非主线程调用时经由指令队列在主线程执行
      *
      * @param volume 音量值
      */
     public void setVolume(float volume) {
+        if (!VideoUtils.isMainThread()) {
+            mCommandQueue.setVolume(volume);
+            return;
+        }
         if (mMediaPlayer != null) {
             mMediaPlayer.setVolume(volume, volume);
         }
@@ -449,33 +1961,90 @@ public class SwanVideoView extends FrameLayout {
             if (DEBUG) {
                 Log.d(TAG, "onPrepared");
             }
+            mPlaybackClock.setDurationMs(mp.getDuration());
+            String codec = videoCodecOf(mp);
+            if (codec != null) {
+                mVideoCodec = codec;
+            }
+            saveMetadata();
             setCurrentState(STATE_PREPARED);
 
             setCacheViewVisibility(false);
+            loadKeyframeIndex();
+
+            if (mRecoveryEngine != null) {
+                mRecoveryEngine.onPrepared();
+            }
 
-            if (mVideoPlayerCallback != null) {
-                mVideoPlayerCallback.onPrepared(mMediaPlayer);
+            mDeselectedVideoTrack = -1;
+            if (mAudioOnly) {
+                applyAudioOnly(true);
             }
 
+            mEventDispatcher.onPrepared(mMediaPlayer);
+
             if (mReadyToPlay) {
                 start();
             }
         }
     };
 
+    /**
+     * 读取视频轨道的编码
+     *
+     * @param player 已prepare的播放器
+     * @return 编码，没有视频轨道时返回null
+     */
+    private static String videoCodecOf(IMediaPlayer player) {
+        ITrackInfo[] tracks = player.getTrackInfo();
+        if (tracks == null) {
+            return null;
+        }
+        for (ITrackInfo track : tracks) {
+            if (track != null && track.getTrackType() == ITrackInfo.MEDIA_TRACK_TYPE_VIDEO
+                    && track.getFormat() != null) {
+                return track.getFormat().getString(IMediaFormat.KEY_MIME);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 视频尺寸回调，按显示比例调整画面并写入元信息缓存
+     */
+    private IMediaPlayer.OnVideoSizeChangedListener mVideoSizeChangedListener =
+            new IMediaPlayer.OnVideoSizeChangedListener() {
+                @Override
+                public void onVideoSizeChanged(IMediaPlayer mp, int width, int height,
+                                               int sarNum, int sarDen) {
+                    if (width > 0 && height > 0) {
+                        int displayWidth = sarNum > 0 && sarDen > 0
+                                ? (int) ((long) width * sarNum / sarDen) : width;
+                        setVideoLayout(displayWidth, height, mVideoRotation);
+                        saveMetadata();
+                    }
+                    mEventDispatcher.onVideoSizeChanged(mp, width, height, sarNum, sarDen);
+                }
+            };
+
     /**
      * 视频播放结束回调
      */
     private IMediaPlayer.OnCompletionListener mCompletionListener =
             new IMediaPlayer.OnCompletionListener() {
                 public void onCompletion(IMediaPlayer mp) {
-                    Log.d(TAG, "onCompletion");
+                    if (DEBUG) {
+                        Log.d(TAG, "onCompletion");
+                    }
                     setCacheViewVisibility(false);
                     setCurrentState(STATE_PLAYBACK_COMPLETED);
-                    mReadyToPlay = false;
-                    if (mVideoPlayerCallback != null) {
-                        mVideoPlayerCallback.onCompletion(mMediaPlayer);
+                    mQoeRecorder.endSession(QoeRecord.END_COMPLETED);
+                    if (DEBUG) {
+                        Log.d(TAG, "completed, " + mFrameTimingMonitor.getStats());
                     }
+                    mCpuUsageTracker.stop();
+                    mReadyToPlay = false;
+                    mEventDispatcher.onCompletion(mMediaPlayer);
                 }
             };
 
@@ -485,14 +2054,34 @@ public class SwanVideoView extends FrameLayout {
     private IMediaPlayer.OnErrorListener mErrorListener =
             new IMediaPlayer.OnErrorListener() {
                 public boolean onError(IMediaPlayer mp, int what, int extra) {
-                    Log.d(TAG, "onError: " + what + "," + extra);
+                    if (DEBUG) {
+                        Log.d(TAG, "onError: " + what + "," + extra);
+                    }
+                    if (mLiveController != null) {
+                        mLiveController.stop();
+                    }
+                    mQoeRecorder.onError(what, extra);
+                    if (!mFirstFrameRendered && mDecodeMode == BDCloudMediaPlayer.DECODE_AUTO
+                            && ErrorClassifier.isDecoderError(what, extra)) {
+                        // 首帧前的解码器错误很可能是硬解不支持，记录下来，之后该格式直接走软解。
+                        // 网络、地址和内容损坏的错误与解码器无关，不能记录
+                        DecoderCapabilities.getInstance(mAppContext)
+                                .reportHardwareFailure(mDecodeMime);
+                    }
+                    long position = mLiveController != null ? 0 : mLastPositionMs;
+                    if (mRecoveryEngine != null && mRecoveryEngine.onError(what, extra, position)) {
+                        // 已交给恢复引擎重试，保持加载状态，不上报错误
+                        setCacheViewVisibility(true);
+                        setCurrentState(STATE_PREPARING);
+                        return true;
+                    }
                     setCurrentState(STATE_ERROR);
+                    mQoeRecorder.endSession(QoeRecord.END_ERROR);
                     mReadyToPlay = false;
 
                     setCacheViewVisibility(false);
 
-                    return mVideoPlayerCallback == null
-                            || mVideoPlayerCallback.onError(mMediaPlayer, what, extra);
+                    return mEventDispatcher.onError(mMediaPlayer, what, extra);
 
                 }
             };
@@ -503,11 +2092,9 @@ public class SwanVideoView extends FrameLayout {
     private IMediaPlayer.OnBufferingUpdateListener mBufferingUpdateListener =
             new IMediaPlayer.OnBufferingUpdateListener() {
                 public void onBufferingUpdate(IMediaPlayer mp, int percent) {
-                    Log.d(TAG, "onBufferingUpdate: percent=" + percent);
                     mCurrentBufferPercentage = percent;
-                    if (mVideoPlayerCallback != null) {
-                        mVideoPlayerCallback.onBufferingUpdate(mp, percent);
-                    }
+                    publishSnapshot();
+                    mEventDispatcher.onBufferingUpdate(mp, percent);
 
                     if (mController != null) {
                         mController.onTotalCacheUpdate(percent * getDuration() / 100);
@@ -523,31 +2110,131 @@ public class SwanVideoView extends FrameLayout {
 
         @Override
         public void onSeekComplete(IMediaPlayer mp) {
-            Log.d(TAG, "onSeekComplete");
+            if (DEBUG) {
+                Log.d(TAG, "onSeekComplete");
+            }
             setCacheViewVisibility(false);
-            if (mVideoPlayerCallback != null) {
-                mVideoPlayerCallback.onSeekComplete(mp);
+            syncPlaybackClock();
+            mSeeking = false;
+            updateFrameTiming();
+            if (mSubtitleController != null) {
+                mSubtitleController.onPlaybackChanged();
+            }
+            if (mInternalSeekPending) {
+                mInternalSeekPending = false;
+                return;
             }
+            mQoeRecorder.onSeekComplete();
+            mEventDispatcher.onSeekComplete(mp);
         }
     };
 
+    /**
+     * 播放器信息回调，包括缓冲开始/结束、首帧渲染等
+     */
+    private IMediaPlayer.OnInfoListener mInfoListener = new IMediaPlayer.OnInfoListener() {
+        @Override
+        public boolean onInfo(IMediaPlayer mp, int what, int extra) {
+            if (what == IMediaPlayer.MEDIA_INFO_VIDEO_RENDERING_START && !mFirstFrameRendered) {
+                mFirstFrameRendered = true;
+                long cost = SystemClock.elapsedRealtime() - mOpenStartMs;
+                FirstFrameStats.record(mDecodeMode, cost);
+                if (mHlsStartMs > 0) {
+                    long hlsCost = SystemClock.elapsedRealtime() - mHlsStartMs;
+                    FirstFrameStats.recordHls(mHlsSession != null, hlsCost);
+                    mHlsStartMs = 0;
+                    if (DEBUG) {
+                        Log.d(TAG, "hls startup in " + hlsCost + "ms, " + mHlsSession
+                                + ", gain " + FirstFrameStats.getHlsPrefetchGainMs() + "ms");
+                    }
+                }
+                if (mLocalSource) {
+                    FirstFrameStats.recordLocal(mLocalFastPath, cost);
+                    if (DEBUG) {
+                        Log.d(TAG, "local first frame in " + cost + "ms, fast path = "
+                                + mLocalFastPath + ", gain "
+                                + FirstFrameStats.getLocalFastPathGainMs() + "ms");
+                    }
+                }
+                VideoPlayerInitializer.onFirstFrame(cost);
+                mQoeRecorder.onFirstFrame();
+                if (DEBUG) {
+                    Log.d(TAG, "first frame in " + cost + "ms, decode mode = " + mDecodeMode);
+                }
+            }
+            if (what == IMediaPlayer.MEDIA_INFO_VIDEO_ROTATION_CHANGED) {
+                setVideoLayout(mVideoWidth, mVideoHeight, extra);
+                saveMetadata();
+            }
+            if (what == IMediaPlayer.MEDIA_INFO_BUFFERING_START
+                    || what == IMediaPlayer.MEDIA_INFO_BUFFERING_END) {
+                boolean stalled = what == IMediaPlayer.MEDIA_INFO_BUFFERING_START;
+                mPlaybackClock.setStalled(stalled);
+                syncPlaybackClock();
+                mQoeRecorder.onStall(stalled);
+                updateFrameTiming();
+                if (mSubtitleController != null) {
+                    // 字幕按播放时钟排期，卡顿时钟停止后需要重新排期
+                    mSubtitleController.onPlaybackChanged();
+                }
+                if (mLiveController != null) {
+                    mLiveController.onStall(stalled);
+                }
+            }
+            return mEventDispatcher.onInfo(mp, what, extra);
+        }
+    };
+
+    /**
+     * 内嵌字幕回调，没有选中外挂字幕时显示内嵌字幕
+     */
+    private IMediaPlayer.OnTimedTextListener mTimedTextListener =
+            new IMediaPlayer.OnTimedTextListener() {
+                @Override
+                public void onTimedText(IMediaPlayer mp, BDTimedText text) {
+                    if (mSubtitleController != null
+                            && mSubtitleController.getSelectedTrackName() != null) {
+                        return;
+                    }
+                    showSubtitle(text == null ? null : text.getText());
+                }
+            };
+
     /**
      * 释放全部资源，释放之后不可再使用播放器
      */
     public void release() {
-        // 释放播放器player
+        mSourceToken++;
+        closeHlsSession();
+        PrefetchScheduler.getInstance(mAppContext).clearActivePlayer(mBufferSource);
+        mQoeRecorder.endSession(QoeRecord.END_STOPPED);
+        removeCallbacks(mSwitchRenditionRunnable);
+        removeCallbacks(mLocalLoadingRunnable);
+        if (mRecoveryEngine != null) {
+            mRecoveryEngine.cancel();
+        }
+        // 释放播放器player，开启缓存时优先放入缓存
+        parkPlayer();
         releasePlayer();
         mReadyToPlay = false;
+        mEventDispatcher.reset();
 
         // 释放textView相关资源
         if (mTextureView != null) {
             if (mTextureView.isAvailable()) {
                 mSurfaceCallback.setNeedReleaseSurface(true);
             } else {
-                mTextureView.release();
+                // 已经detach的TextureView不再持有SurfaceTexture，由callback释放保存的对象
+                mSurfaceCallback.release();
             }
             mTextureView = null;
         }
+        mSurface = null;
+        // 释放字幕相关资源
+        if (mSubtitleController != null) {
+            mSubtitleController.release();
+            mSubtitleController = null;
+        }
         // 释放控件相关资源
         if (mController != null) {
             mController.setToggleScreenListener(null);
@@ -560,6 +2247,10 @@ public class SwanVideoView extends FrameLayout {
      * 重置播放器
      */
     private void releasePlayer() {
+        mCpuUsageTracker.stop();
+        if (mLiveController != null) {
+            mLiveController.stop();
+        }
         if (mMediaPlayer != null) {
             mMediaPlayer.reset();
             mMediaPlayer.setDisplay(null);
@@ -567,21 +2258,25 @@ public class SwanVideoView extends FrameLayout {
             mMediaPlayer = null;
             setCurrentState(STATE_IDLE);
         }
-
-        if (mVideoPlayerCallback != null) {
-            mVideoPlayerCallback = null;
-        }
     }
 
 
     /**
-     * 开始播放/在暂停状态下继续播放
+     * 开始播放/在暂停状态下继续播放，非主线程调用时经由指令队列在主线程执行
      */
     public void start() {
+        if (!VideoUtils.isMainThread()) {
+            mCommandQueue.play();
+            return;
+        }
         if (mMediaPlayer == null) {
             return;
         }
         if (mCurrentState == STATE_ERROR || mCurrentState == STATE_PLAYBACK_COMPLETED) {
+            if (!mQoeRecorder.isActive()) {
+                // 播放结束或失败后重新播放，算作新的会话
+                mQoeRecorder.startSession(mUri.toString());
+            }
 
             if (mCurrentState == STATE_PLAYBACK_COMPLETED) {
                 mMediaPlayer.stop();
@@ -596,18 +2291,30 @@ public class SwanVideoView extends FrameLayout {
                 Log.d(TAG, "start video : " + mUri);
             }
             setCurrentState(STATE_PLAYING);
+            mCpuUsageTracker.start();
+            if (mLiveController != null) {
+                mLiveController.start(mMediaPlayer);
+            }
         }
         mReadyToPlay = true;
     }
 
     /**
-     * 暂停播放
+     * 暂停播放，非主线程调用时经由指令队列在主线程执行
      */
     public void pause() {
+        if (!VideoUtils.isMainThread()) {
+            mCommandQueue.pause();
+            return;
+        }
         if (isInPlaybackState()) {
             if (mMediaPlayer.isPlaying()) {
                 mMediaPlayer.pause();
                 setCurrentState(STATE_PAUSED);
+                mCpuUsageTracker.stop();
+                if (mLiveController != null) {
+                    mLiveController.stop();
+                }
             }
         }
         mReadyToPlay = false;
@@ -619,6 +2326,9 @@ public class SwanVideoView extends FrameLayout {
      * @return 当前播放进度百分比
      */
     public int getBufferPercentage() {
+        if (!VideoUtils.isMainThread()) {
+            return mSnapshot.getBufferPercent();
+        }
         if (mMediaPlayer != null) {
             return mCurrentBufferPercentage;
         }
@@ -638,48 +2348,125 @@ public class SwanVideoView extends FrameLayout {
     }
 
     /**
-     * 获得视频时长。单位：ms
+     * 获得视频时长。单位：ms。非主线程调用时返回最近发布的快照中的时长
      *
      * @return 视频总时长
      */
     public int getDuration() {
+        if (!VideoUtils.isMainThread()) {
+            return (int) mSnapshot.getDurationMs();
+        }
         if (isInPlaybackState()) {
-            return (int) mMediaPlayer.getDuration();
+            long duration = mPlaybackClock.getDurationMs();
+            return (int) (duration > 0 ? duration : mMediaPlayer.getDuration());
         }
 
         return 0;
     }
 
     /**
-     * 获取当前播放进度。单位：ms
+     * 获取当前播放进度。单位：ms。
+     * 主线程调用时返回播放时钟推算的平滑进度，可以每帧调用；非主线程调用时返回按快照推算的进度
      *
      * @return 视频播放进度
      */
     public int getCurrentPosition() {
+        if (!VideoUtils.isMainThread()) {
+            return (int) mSnapshot.getEstimatedPositionMs();
+        }
         if (isInPlaybackState()) {
-            return (int) mMediaPlayer.getCurrentPosition();
+            long position = mPlaybackClock.getPositionMs();
+            if (position > 0) {
+                mLastPositionMs = position;
+                if (mRecoveryEngine != null) {
+                    mRecoveryEngine.onPlaybackProgress(position);
+                }
+            }
+            return (int) position;
         }
         return 0;
     }
 
     /**
-     * 将播放器定位到到某个播放位置。单位：ms
+     * 将播放器定位到到某个播放位置。单位：ms。非主线程调用时经由指令队列在主线程执行
      *
      * @param mSec 待定位的位置
      */
     public void seekTo(int mSec) {
+        if (!VideoUtils.isMainThread()) {
+            mCommandQueue.seekTo(mSec);
+            return;
+        }
         if (isInPlaybackState()) {
+            mSec = snapSeekPosition(mSec);
+            // 业务方的seek覆盖还没完成的内部seek，完成回调属于业务方
+            mInternalSeekPending = false;
+            mSeeking = true;
+            updateFrameTiming();
             mMediaPlayer.seekTo(mSec);
+            mQoeRecorder.onSeek();
+            // seek完成前先按目标位置显示，完成后再按实际位置锚定
+            mPlaybackClock.anchor(mSec);
+            publishSnapshot();
             setCacheViewVisibility(true);
         }
     }
 
+    /**
+     * 设置seek吸附方式。不需要精确定位时（如拖动进度条）吸附到关键帧，播放器不需要从前一个关键帧
+     * 解码到目标位置，长GOP的视频seek明显更快。关键帧索引在prepare完成后从MP4采样表或
+     * 点播HLS的分片边界后台解析，解析完成之前按原位置seek。默认{@link #SEEK_EXACT}
+     *
+     * @param mode {@link #SEEK_EXACT}、{@link #SEEK_PREVIOUS_KEYFRAME}
+     *             或{@link #SEEK_NEAREST_KEYFRAME}
+     */
+    public void setSeekSnapMode(int mode) {
+        mSeekSnapMode = mode;
+        if (isInPlaybackState()) {
+            loadKeyframeIndex();
+        }
+    }
+
+    /**
+     * 开启seek吸附时在后台解析当前视频的关键帧索引，已缓存时直接返回
+     */
+    private void loadKeyframeIndex() {
+        if (mSeekSnapMode != SEEK_EXACT && mLiveController == null) {
+            KeyframeIndexCache.getInstance().load(mMetadataKey, mHeaders);
+        }
+    }
+
+    /**
+     * 按吸附方式计算实际seek位置
+     *
+     * @param mSec 目标位置，单位：ms
+     * @return 实际seek位置，单位：ms
+     */
+    private int snapSeekPosition(int mSec) {
+        if (mSeekSnapMode == SEEK_EXACT || mLiveController != null) {
+            return mSec;
+        }
+        KeyframeIndex index = KeyframeIndexCache.getInstance().get(mMetadataKey);
+        if (index == null) {
+            return mSec;
+        }
+        long snapped = mSeekSnapMode == SEEK_NEAREST_KEYFRAME
+                ? index.nearest(mSec) : index.previous(mSec);
+        if (DEBUG) {
+            Log.d(TAG, "snap seek " + mSec + " -> " + snapped);
+        }
+        return (int) snapped;
+    }
+
     /**
      * 判断是否正在播放
      *
      * @return true：处于播放状态；false：非播放状态
      */
     public boolean isPlaying() {
+        if (!VideoUtils.isMainThread()) {
+            return mSnapshot.isPlaying();
+        }
         return isInPlaybackState() && mMediaPlayer.isPlaying();
     }
 
@@ -0,0 +1,242 @@
+package com.baidu.swan.videoplayer;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.baidu.cloud.media.player.BDCloudLibLoader;
+import com.baidu.cloud.media.player.BDCloudMediaPlayer;
+import com.baidu.cloud.videoplayer.demo.BuildConfig;
+import com.baidu.swan.videoplayer.decoder.DecoderCapabilities;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 播放器SDK初始化入口。
+ * <p>
+ * 推荐在Application.onCreate中于后台线程调用{@link #warmUp(Context)}，
+ * 提前完成SDK初始化、so加载、解码能力探测并预创建一个播放器，避免这些开销落在首次创建
+ * {@link SwanVideoView}的UI线程上。不调用时，{@link SwanVideoView}会在首次创建时自行完成初始化。
+ *
+ * @author machao10
+ * @since 2019-03-01
+ */
+public final class VideoPlayerInitializer {
+
+    /** debug 开关 */
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    /** debug tag */
+    private static final String TAG = "VideoPlayerInitializer";
+    /** 百度云播放器AK */
+    private static final String AK = "5989e435183e42c5a3f7da72dbac006c";
+    /** 预创建的播放器最长等待时间，超过后没有被取走就释放，单位：ms */
+    private static final long SPARE_PLAYER_TIMEOUT_MS = 60 * 1000;
+
+    /** 是否已经设置过AK */
+    private static boolean sInitialized;
+    /** 是否已经加载过so */
+    private static boolean sLibrariesLoaded;
+    /** 是否已经执行过warmUp */
+    private static volatile boolean sWarmedUp;
+    /** warmUp耗时，单位：ms */
+    private static volatile long sWarmUpCostMs = -1;
+    /** 进程内第一个首帧的耗时，单位：ms */
+    private static volatile long sColdFirstFrameMs = -1;
+    /** 进程内第一个首帧出现时是否已经完成warmUp */
+    private static volatile boolean sColdFirstFrameWarmed;
+    /** 预创建的空闲播放器 */
+    private static final AtomicReference<BDCloudMediaPlayer> SPARE_PLAYER =
+            new AtomicReference<>();
+    /** 是否已经注册内存回调 */
+    private static boolean sCallbacksRegistered;
+
+    /**
+     * 超时释放没有被取走的预创建播放器
+     */
+    private static final Runnable RELEASE_SPARE_RUNNABLE = new Runnable() {
+        @Override
+        public void run() {
+            releaseSparePlayer();
+        }
+    };
+
+    /**
+     * 内存紧张时释放预创建的播放器
+     */
+    private static final ComponentCallbacks2 MEMORY_CALLBACKS = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            // 退到后台或运行中内存偏紧时都释放，预创建的播放器重新创建代价不大
+            if (level >= TRIM_MEMORY_RUNNING_LOW) {
+                releaseSparePlayer();
+            }
+        }
+
+        @Override
+        public void onLowMemory() {
+            releaseSparePlayer();
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+    };
+
+    /**
+     * 工具类，不允许实例化
+     */
+    private VideoPlayerInitializer() {
+    }
+
+    /**
+     * 预热播放器SDK，可以在任意线程调用，推荐在后台线程调用。会预创建一个播放器
+     *
+     * @param context 上下文
+     */
+    public static void warmUp(Context context) {
+        warmUp(context, true);
+    }
+
+    /**
+     * 预热播放器SDK：设置AK、加载so、探测解码能力，可选预创建一个播放器
+     *
+     * @param context         上下文
+     * @param preCreatePlayer 是否预创建一个播放器，供第一次播放直接使用
+     */
+    public static void warmUp(Context context, boolean preCreatePlayer) {
+        if (sWarmedUp) {
+            return;
+        }
+        long start = SystemClock.elapsedRealtime();
+        Context appContext = context.getApplicationContext();
+        ensureInitialized();
+        loadLibraries();
+        DecoderCapabilities.getInstance(appContext).probeSync();
+        if (preCreatePlayer && SPARE_PLAYER.get() == null) {
+            BDCloudMediaPlayer player = new BDCloudMediaPlayer(appContext);
+            if (SPARE_PLAYER.compareAndSet(null, player)) {
+                registerCallbacks(appContext);
+                VideoUtils.getMainHandler().postDelayed(RELEASE_SPARE_RUNNABLE,
+                        SPARE_PLAYER_TIMEOUT_MS);
+            } else {
+                // 其他线程已经放入了空闲播放器，这个播放器没有人会取走
+                player.release();
+            }
+        }
+        sWarmUpCostMs = SystemClock.elapsedRealtime() - start;
+        sWarmedUp = true;
+        if (DEBUG) {
+            Log.d(TAG, "warm up cost " + sWarmUpCostMs + "ms on "
+                    + Thread.currentThread().getName());
+        }
+    }
+
+    /**
+     * 确保SDK已经初始化，可以重复调用
+     */
+    public static synchronized void ensureInitialized() {
+        if (!sInitialized) {
+            BDCloudMediaPlayer.setAK(AK);
+            sInitialized = true;
+        }
+    }
+
+    /**
+     * 加载播放器so，可以重复调用
+     */
+    private static synchronized void loadLibraries() {
+        if (sLibrariesLoaded) {
+            return;
+        }
+        BDCloudMediaPlayer.loadLibrariesOnce(new BDCloudLibLoader() {
+            @Override
+            public void loadLibrary(String libName) {
+                System.loadLibrary(libName);
+            }
+        });
+        sLibrariesLoaded = true;
+    }
+
+    /**
+     * 注册内存回调，只注册一次
+     */
+    private static synchronized void registerCallbacks(Context appContext) {
+        if (!sCallbacksRegistered) {
+            appContext.registerComponentCallbacks(MEMORY_CALLBACKS);
+            sCallbacksRegistered = true;
+        }
+    }
+
+    /**
+     * 取出预创建的播放器，每个播放器只会被取出一次
+     *
+     * @return 预创建的播放器，没有时返回null
+     */
+    static BDCloudMediaPlayer takeSparePlayer() {
+        return SPARE_PLAYER.getAndSet(null);
+    }
+
+    /**
+     * 释放没有被取走的预创建播放器。预创建的播放器是进程内共享的，不跟随某个控件释放，
+     * 在内存紧张或等待超时时释放
+     */
+    static void releaseSparePlayer() {
+        BDCloudMediaPlayer player = SPARE_PLAYER.getAndSet(null);
+        if (player != null) {
+            player.release();
+        }
+    }
+
+    /**
+     * 记录首帧耗时，只保留进程内第一次，用于对比是否warmUp的冷启动首帧
+     *
+     * @param costMs 首帧耗时，单位：ms
+     */
+    static void onFirstFrame(long costMs) {
+        if (sColdFirstFrameMs < 0) {
+            sColdFirstFrameWarmed = sWarmedUp;
+            sColdFirstFrameMs = costMs;
+            if (DEBUG) {
+                Log.d(TAG, "cold first frame " + costMs + "ms, warmed up = " + sWarmedUp);
+            }
+        }
+    }
+
+    /**
+     * 是否已经完成warmUp
+     *
+     * @return true：已完成
+     */
+    public static boolean isWarmedUp() {
+        return sWarmedUp;
+    }
+
+    /**
+     * 获取warmUp耗时
+     *
+     * @return 耗时，单位：ms；未执行时返回-1
+     */
+    public static long getWarmUpCostMs() {
+        return sWarmUpCostMs;
+    }
+
+    /**
+     * 获取进程内第一个视频的首帧耗时
+     *
+     * @return 耗时，单位：ms；还没有首帧时返回-1
+     */
+    public static long getColdFirstFrameMs() {
+        return sColdFirstFrameMs;
+    }
+
+    /**
+     * 进程内第一个首帧出现时是否已经完成warmUp，结合{@link #getColdFirstFrameMs()}对比预热收益
+     *
+     * @return true：已完成warmUp
+     */
+    public static boolean isColdFirstFrameWarmed() {
+        return sColdFirstFrameWarmed;
+    }
+}
@@ -1,11 +1,24 @@
 package com.baidu.swan.videoplayer;
 
 import android.app.Activity;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
 import android.view.View;
 import android.view.ViewGroup;
 
 import com.baidu.cloud.videoplayer.demo.BuildConfig;
 
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * 视频工具类
  *
@@ -18,6 +31,156 @@ public class VideoUtils {
     private static final String TAG = "VideoUtils";
     /** debug 开关 */
     private static final boolean DEBUG = BuildConfig.DEBUG;
+    /** 后台线程池最大线程数 */
+    private static final int WORKER_POOL_SIZE = 2;
+    /** 起播网络线程池最大线程数 */
+    private static final int STARTUP_POOL_SIZE = 3;
+    /** 后台线程空闲回收时间，单位：s */
+    private static final int WORKER_KEEP_ALIVE_SECONDS = 30;
+
+    /** 主线程handler */
+    private static volatile Handler sMainHandler;
+    /** 播放器后台任务线程池，用于字幕解析等不能放在UI线程的工作 */
+    private static volatile ExecutorService sWorkerExecutor;
+    /** 起播网络线程池，用于直接影响首帧的网络请求 */
+    private static volatile ExecutorService sStartupExecutor;
+
+    /**
+     * 获取主线程handler
+     *
+     * @return 主线程handler
+     */
+    public static Handler getMainHandler() {
+        if (sMainHandler == null) {
+            synchronized (VideoUtils.class) {
+                if (sMainHandler == null) {
+                    sMainHandler = new Handler(Looper.getMainLooper());
+                }
+            }
+        }
+        return sMainHandler;
+    }
+
+    /**
+     * 判断当前是否在主线程
+     *
+     * @return true：主线程；false：其他线程
+     */
+    public static boolean isMainThread() {
+        return Looper.myLooper() == Looper.getMainLooper();
+    }
+
+    /**
+     * 获取播放器后台任务线程池。线程为后台优先级，空闲后自动回收
+     *
+     * @return 后台线程池
+     */
+    public static ExecutorService getWorkerExecutor() {
+        if (sWorkerExecutor == null) {
+            synchronized (VideoUtils.class) {
+                if (sWorkerExecutor == null) {
+                    sWorkerExecutor = newExecutor(WORKER_POOL_SIZE, "swan-video-worker-",
+                            Process.THREAD_PRIORITY_BACKGROUND);
+                }
+            }
+        }
+        return sWorkerExecutor;
+    }
+
+    /**
+     * 获取起播网络任务线程池，用于HLS预取、播放列表下载、密钥预取等直接影响首帧的请求。
+     * 线程为普通优先级，与字幕解析、QoE落盘等后台任务分开，不会排在它们后面
+     *
+     * @return 起播网络线程池
+     */
+    public static ExecutorService getStartupExecutor() {
+        if (sStartupExecutor == null) {
+            synchronized (VideoUtils.class) {
+                if (sStartupExecutor == null) {
+                    sStartupExecutor = newExecutor(STARTUP_POOL_SIZE, "swan-video-startup-",
+                            Process.THREAD_PRIORITY_DEFAULT);
+                }
+            }
+        }
+        return sStartupExecutor;
+    }
+
+    /**
+     * 创建空闲后自动回收线程的线程池
+     *
+     * @param size     线程数
+     * @param prefix   线程名前缀
+     * @param priority 线程优先级，{@link Process}中的THREAD_PRIORITY_*
+     * @return 线程池
+     */
+    private static ExecutorService newExecutor(int size, final String prefix, final int priority) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size,
+                WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(priority);
+                        r.run();
+                    }
+                }, prefix + mCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 获取地址中的路径部分，不解码。只做字符串切分，任意格式的地址都不会抛出异常
+     *
+     * @param url 地址，http(s)地址、file://地址或本地路径
+     * @return 去掉scheme、主机、查询参数和片段后的路径，没有路径时返回空字符串
+     */
+    public static String getUrlPath(String url) {
+        int end = url.length();
+        int hash = url.indexOf('#');
+        if (hash >= 0) {
+            end = hash;
+        }
+        int question = url.indexOf('?');
+        if (question >= 0 && question < end) {
+            end = question;
+        }
+        int start = 0;
+        int scheme = url.indexOf("://");
+        if (scheme >= 0 && scheme < end) {
+            int slash = url.indexOf('/', scheme + 3);
+            start = slash >= 0 && slash < end ? slash : end;
+        }
+        return url.substring(start, end);
+    }
+
+    /**
+     * 计算字符串的MD5，用作缓存和下载文件名
+     *
+     * @param value 字符串
+     * @return 32位小写十六进制MD5
+     */
+    public static String md5(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16))
+                        .append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException ex) {
+            return String.valueOf(value.hashCode());
+        }
+    }
 
     /**
      * 从父布局中移除该view
@@ -45,18 +208,21 @@ public class VideoUtils {
     }
 
     /**
-     * 将view添加到decorView上
+     * 将view添加到decorView上。如果是{@link SwanVideoView}，会走全屏切换流程，
+     * 移动过程中保留SurfaceTexture，不会黑屏
      *
      * @param activity 当前activity
      * @param view     待添加的view
      * @return 结果
      */
     public static boolean attachDecor(Activity activity, View view) {
+        if (view instanceof SwanVideoView) {
+            return ((SwanVideoView) view).enterFullscreen(activity);
+        }
         if (activity != null && view != null) {
             ViewGroup decorView = (ViewGroup) activity.getWindow().getDecorView();
             if (decorView != null) {
                 removeFromParent(view);
-                decorView.removeView(view);
                 decorView.addView(view);
                 return true;
             }
@@ -0,0 +1,124 @@
+package com.baidu.swan.videoplayer.bridge;
+
+/**
+ * JS桥开销统计，换算为每秒播放的开销，用于对比批量发送前后的桥调用次数和序列化耗时。
+ * 只在主线程更新和读取
+ *
+ * @author machao10
+ * @since 2019-03-08
+ */
+public class BridgeStats {
+
+    /** 产生的事件数 */
+    long mEvents;
+    /** 被合并掉的事件数 */
+    long mCoalescedEvents;
+    /** 发往JS的批次数，即实际的桥调用次数 */
+    long mFlushes;
+    /** 发往JS的字符数 */
+    long mChars;
+    /** 序列化耗时，单位：ns */
+    long mSerializeNs;
+    /** 收到的JS指令批次数 */
+    long mCommandBatches;
+    /** 执行的JS指令数 */
+    long mCommands;
+    /** 统计期间的播放时长，单位：ms */
+    long mPlaybackMs;
+
+    /**
+     * 获取产生的事件数
+     *
+     * @return 事件数
+     */
+    public long getEvents() {
+        return mEvents;
+    }
+
+    /**
+     * 获取被合并掉、没有单独发送的事件数
+     *
+     * @return 事件数
+     */
+    public long getCoalescedEvents() {
+        return mCoalescedEvents;
+    }
+
+    /**
+     * 获取实际的桥调用次数
+     *
+     * @return 批次数
+     */
+    public long getFlushes() {
+        return mFlushes;
+    }
+
+    /**
+     * 获取收到的JS指令数
+     *
+     * @return 指令数
+     */
+    public long getCommands() {
+        return mCommands;
+    }
+
+    /**
+     * 获取收到的JS指令批次数
+     *
+     * @return 批次数
+     */
+    public long getCommandBatches() {
+        return mCommandBatches;
+    }
+
+    /**
+     * 获取统计期间的播放时长
+     *
+     * @return 播放时长，单位：ms
+     */
+    public long getPlaybackMs() {
+        return mPlaybackMs;
+    }
+
+    /**
+     * 每秒播放的桥调用次数
+     *
+     * @return 次数，没有播放时长时返回0
+     */
+    public float getFlushesPerSecond() {
+        return perSecond(mFlushes);
+    }
+
+    /**
+     * 每秒播放发往JS的字符数
+     *
+     * @return 字符数，没有播放时长时返回0
+     */
+    public float getCharsPerSecond() {
+        return perSecond(mChars);
+    }
+
+    /**
+     * 每秒播放的序列化耗时
+     *
+     * @return 耗时，单位：us，没有播放时长时返回0
+     */
+    public float getSerializeUsPerSecond() {
+        return perSecond(mSerializeNs) / 1000f;
+    }
+
+    /**
+     * 按播放时长换算为每秒的值
+     */
+    private float perSecond(long value) {
+        return mPlaybackMs <= 0 ? 0f : value * 1000f / mPlaybackMs;
+    }
+
+    @Override
+    public String toString() {
+        return "BridgeStats{events=" + mEvents + ", coalesced=" + mCoalescedEvents
+                + ", flushes/s=" + getFlushesPerSecond() + ", chars/s=" + getCharsPerSecond()
+                + ", serializeUs/s=" + getSerializeUsPerSecond() + ", commands=" + mCommands
+                + " in " + mCommandBatches + " batches, playback=" + mPlaybackMs + "ms}";
+    }
+}
@@ -0,0 +1,540 @@
+package com.baidu.swan.videoplayer.bridge;
+
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import com.baidu.cloud.media.player.IMediaPlayer;
+import com.baidu.swan.videoplayer.PlaybackSnapshot;
+import com.baidu.swan.videoplayer.PlayerCommandQueue;
+import com.baidu.swan.videoplayer.SwanVideoView;
+import com.baidu.swan.videoplayer.callback.OnPlayerStateChangeListener;
+import com.baidu.swan.videoplayer.callback.OnPositionUpdateListener;
+import com.baidu.swan.videoplayer.callback.SimpleVideoCallback;
+import com.baidu.swan.videoplayer.callback.VideoEventDispatcher;
+
+/**
+ * 小程序JS运行时与播放器之间的批量桥接。
+ * <p>
+ * 播放器事件先写入可复用的缓冲区，每帧（Choreographer回调）合并发送一次；同一帧内的播放进度和缓冲进度
+ * 只保留最新值。发往JS的数据格式为：
+ * <pre>{"id":"播放器id","e":[[事件,参数1,参数2],...]}</pre>
+ * JS发来的指令格式为<pre>[[指令,参数],...]</pre>，经由播放器指令队列按顺序在主线程执行。
+ *
+ * @author machao10
+ * @since 2019-03-08
+ */
+public class VideoJsBridge {
+
+    /** 事件：播放器状态变化，参数：SwanVideoView.STATE_* */
+    public static final int EVENT_STATE = 1;
+    /** 事件：播放进度，参数：位置ms、总时长ms */
+    public static final int EVENT_TIME_UPDATE = 2;
+    /** 事件：缓冲进度，参数：百分比 */
+    public static final int EVENT_PROGRESS = 3;
+    /** 事件：播放错误，参数：what、extra */
+    public static final int EVENT_ERROR = 4;
+    /** 事件：开始卡顿缓冲 */
+    public static final int EVENT_WAITING = 5;
+    /** 事件：卡顿缓冲结束 */
+    public static final int EVENT_BUFFERED = 6;
+    /** 事件：seek完成 */
+    public static final int EVENT_SEEKED = 7;
+    /** 事件：全屏切换，参数：1全屏、0非全屏 */
+    public static final int EVENT_FULLSCREEN = 8;
+    /** 事件：视频尺寸，参数：宽、高 */
+    public static final int EVENT_VIDEO_SIZE = 9;
+    /** 事件：准备完成，参数：总时长ms */
+    public static final int EVENT_PREPARED = 10;
+
+    /** 指令：播放 */
+    public static final int COMMAND_PLAY = 1;
+    /** 指令：暂停 */
+    public static final int COMMAND_PAUSE = 2;
+    /** 指令：seek，参数：位置ms */
+    public static final int COMMAND_SEEK = 3;
+    /** 指令：音量，参数：0~1 */
+    public static final int COMMAND_VOLUME = 4;
+    /** 指令：停止 */
+    public static final int COMMAND_STOP = 5;
+
+    /** 事件缓冲区初始容量 */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * JS桥发送通道
+     */
+    public interface Sink {
+        /**
+         * 向JS发送一批事件，在主线程调用
+         *
+         * @param payload 序列化后的事件
+         */
+        void send(String payload);
+    }
+
+    /** 播放器 */
+    private final SwanVideoView mVideoView;
+    /** 序列化后的消息头，包含播放器id，JS侧用于区分多个播放器 */
+    private final String mPayloadPrefix;
+    /** 发送通道 */
+    private final Sink mSink;
+    /** 开销统计 */
+    private final BridgeStats mStats = new BridgeStats();
+    /** 序列化缓冲，复用 */
+    private final StringBuilder mPayload = new StringBuilder(256);
+
+    /** 本帧事件类型 */
+    private int[] mTypes = new int[INITIAL_CAPACITY];
+    /** 本帧事件参数1 */
+    private long[] mArgs1 = new long[INITIAL_CAPACITY];
+    /** 本帧事件参数2 */
+    private long[] mArgs2 = new long[INITIAL_CAPACITY];
+    /** 本帧事件数 */
+    private int mCount;
+    /** 本帧播放进度事件的下标，用于合并 */
+    private int mTimeUpdateIndex = -1;
+    /** 本帧缓冲进度事件的下标，用于合并 */
+    private int mProgressIndex = -1;
+    /** 是否已经注册了下一帧的回调 */
+    private boolean mFramePosted;
+    /** 是否已经绑定到播放器 */
+    private boolean mAttached;
+    /** 开始播放的时间，不在播放时为-1 */
+    private long mPlayingSinceMs = -1;
+
+    /**
+     * 构造器
+     *
+     * @param videoView 播放器
+     * @param playerId  播放器id
+     * @param sink      发送通道
+     */
+    public VideoJsBridge(SwanVideoView videoView, String playerId, Sink sink) {
+        mVideoView = videoView;
+        mPayloadPrefix = "{\"id\":\"" + playerId.replace("\\", "\\\\").replace("\"", "\\\"")
+                + "\",\"e\":[";
+        mSink = sink;
+    }
+
+    /**
+     * 开始接收播放器事件，在主线程调用
+     */
+    public void attach() {
+        if (mAttached) {
+            return;
+        }
+        mAttached = true;
+        VideoEventDispatcher dispatcher = mVideoView.getEventDispatcher();
+        dispatcher.addCallback(mCallback, VideoEventDispatcher.EVENT_ALL
+                & ~VideoEventDispatcher.EVENT_COMPLETION);
+        dispatcher.addPositionListener(mPositionListener);
+        dispatcher.addStateListener(mStateListener);
+    }
+
+    /**
+     * 停止接收播放器事件，丢弃未发送的事件，在主线程调用
+     */
+    public void detach() {
+        if (!mAttached) {
+            return;
+        }
+        mAttached = false;
+        VideoEventDispatcher dispatcher = mVideoView.getEventDispatcher();
+        dispatcher.removeCallback(mCallback);
+        dispatcher.removePositionListener(mPositionListener);
+        dispatcher.removeStateListener(mStateListener);
+        if (mFramePosted) {
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+            mFramePosted = false;
+        }
+        updatePlaybackTime(false);
+        clear();
+    }
+
+    /**
+     * 执行JS发来的一批指令，可以在任意线程调用，不会阻塞调用线程。
+     * 指令在调用线程解析后进入播放器指令队列，与其他线程发出的指令一起按入队顺序在主线程执行
+     *
+     * @param commands 指令，格式为[[指令,参数],...]
+     * @return 解析出的指令数
+     * @throws IllegalArgumentException 指令格式错误
+     */
+    public int applyCommands(String commands) {
+        final CommandBatch batch = CommandBatch.parse(commands);
+        PlayerCommandQueue queue = mVideoView.getCommandQueue();
+        for (int i = 0; i < batch.size; i++) {
+            applyCommand(queue, batch.codes[i], batch.args[i]);
+        }
+        queue.post(new Runnable() {
+            @Override
+            public void run() {
+                mStats.mCommandBatches++;
+                mStats.mCommands += batch.size;
+            }
+        });
+        return batch.size;
+    }
+
+    /**
+     * 获取JS侧可以读取的播放状态，可以在任意线程调用，不会阻塞
+     *
+     * @return 播放状态快照
+     */
+    public PlaybackSnapshot getSnapshot() {
+        return mVideoView.getSnapshot();
+    }
+
+    /**
+     * 获取桥接开销统计
+     *
+     * @return 统计，在主线程读取
+     */
+    public BridgeStats getStats() {
+        updatePlaybackTime(mPlayingSinceMs >= 0);
+        return mStats;
+    }
+
+    /**
+     * 单条指令入队
+     */
+    private static void applyCommand(PlayerCommandQueue queue, int code, double arg) {
+        switch (code) {
+            case COMMAND_PLAY:
+                queue.play();
+                break;
+            case COMMAND_PAUSE:
+                queue.pause();
+                break;
+            case COMMAND_SEEK:
+                queue.seekTo((long) arg);
+                break;
+            case COMMAND_VOLUME:
+                queue.setVolume((float) arg);
+                break;
+            case COMMAND_STOP:
+                queue.stop();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 写入一个事件，下一帧统一发送
+     */
+    private void enqueue(int type, long arg1, long arg2) {
+        mStats.mEvents++;
+        if (type == EVENT_TIME_UPDATE && mTimeUpdateIndex >= 0) {
+            replace(mTimeUpdateIndex, arg1, arg2);
+            return;
+        }
+        if (type == EVENT_PROGRESS && mProgressIndex >= 0) {
+            replace(mProgressIndex, arg1, arg2);
+            return;
+        }
+        if (mCount == mTypes.length) {
+            grow();
+        }
+        if (type == EVENT_TIME_UPDATE) {
+            mTimeUpdateIndex = mCount;
+        } else if (type == EVENT_PROGRESS) {
+            mProgressIndex = mCount;
+        }
+        mTypes[mCount] = type;
+        mArgs1[mCount] = arg1;
+        mArgs2[mCount] = arg2;
+        mCount++;
+        if (!mFramePosted) {
+            mFramePosted = true;
+            Choreographer.getInstance().postFrameCallback(mFrameCallback);
+        }
+    }
+
+    /**
+     * 用最新值覆盖本帧已有的同类事件
+     */
+    private void replace(int index, long arg1, long arg2) {
+        mStats.mCoalescedEvents++;
+        mArgs1[index] = arg1;
+        mArgs2[index] = arg2;
+    }
+
+    /**
+     * 扩容事件缓冲区
+     */
+    private void grow() {
+        int capacity = mTypes.length * 2;
+        int[] types = new int[capacity];
+        long[] args1 = new long[capacity];
+        long[] args2 = new long[capacity];
+        System.arraycopy(mTypes, 0, types, 0, mCount);
+        System.arraycopy(mArgs1, 0, args1, 0, mCount);
+        System.arraycopy(mArgs2, 0, args2, 0, mCount);
+        mTypes = types;
+        mArgs1 = args1;
+        mArgs2 = args2;
+    }
+
+    /**
+     * 序列化并发送本帧的全部事件
+     */
+    private void flush() {
+        if (mCount == 0) {
+            return;
+        }
+        long start = SystemClock.elapsedRealtimeNanos();
+        StringBuilder payload = mPayload;
+        payload.setLength(0);
+        payload.append(mPayloadPrefix);
+        for (int i = 0; i < mCount; i++) {
+            if (i > 0) {
+                payload.append(',');
+            }
+            payload.append('[').append(mTypes[i]);
+            int argCount = argCount(mTypes[i]);
+            if (argCount > 0) {
+                payload.append(',').append(mArgs1[i]);
+            }
+            if (argCount > 1) {
+                payload.append(',').append(mArgs2[i]);
+            }
+            payload.append(']');
+        }
+        payload.append("]}");
+        String serialized = payload.toString();
+        mStats.mSerializeNs += SystemClock.elapsedRealtimeNanos() - start;
+        mStats.mFlushes++;
+        mStats.mChars += serialized.length();
+        updatePlaybackTime(mPlayingSinceMs >= 0);
+        clear();
+        mSink.send(serialized);
+    }
+
+    /**
+     * 清空本帧事件
+     */
+    private void clear() {
+        mCount = 0;
+        mTimeUpdateIndex = -1;
+        mProgressIndex = -1;
+    }
+
+    /**
+     * 各事件的参数个数
+     */
+    private static int argCount(int type) {
+        switch (type) {
+            case EVENT_TIME_UPDATE:
+            case EVENT_ERROR:
+            case EVENT_VIDEO_SIZE:
+                return 2;
+            case EVENT_STATE:
+            case EVENT_PROGRESS:
+            case EVENT_FULLSCREEN:
+            case EVENT_PREPARED:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * 累计播放时长
+     *
+     * @param playing 之后是否仍在播放
+     */
+    private void updatePlaybackTime(boolean playing) {
+        long now = SystemClock.elapsedRealtime();
+        if (mPlayingSinceMs >= 0) {
+            mStats.mPlaybackMs += now - mPlayingSinceMs;
+        }
+        mPlayingSinceMs = playing ? now : -1;
+    }
+
+    /**
+     * 每帧发送一次
+     */
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mFramePosted = false;
+            flush();
+        }
+    };
+
+    /**
+     * 播放器事件，播放结束通过状态事件发送
+     */
+    private final SimpleVideoCallback mCallback = new SimpleVideoCallback() {
+        @Override
+        public void onPrepared(IMediaPlayer player) {
+            enqueue(EVENT_PREPARED, player.getDuration(), 0);
+        }
+
+        @Override
+        public void onCompletion(IMediaPlayer player) {
+        }
+
+        @Override
+        public boolean onError(IMediaPlayer player, int what, int extra) {
+            enqueue(EVENT_ERROR, what, extra);
+            // 错误已经通知到JS，返回true避免内核接着回调onCompletion，再发出ended事件
+            return true;
+        }
+
+        @Override
+        public boolean onInfo(IMediaPlayer player, int what, int extra) {
+            if (what == IMediaPlayer.MEDIA_INFO_BUFFERING_START) {
+                enqueue(EVENT_WAITING, 0, 0);
+            } else if (what == IMediaPlayer.MEDIA_INFO_BUFFERING_END) {
+                enqueue(EVENT_BUFFERED, 0, 0);
+            }
+            return false;
+        }
+
+        @Override
+        public void onSeekComplete(IMediaPlayer player) {
+            enqueue(EVENT_SEEKED, 0, 0);
+        }
+
+        @Override
+        public void onBufferingUpdate(IMediaPlayer player, int percent) {
+            enqueue(EVENT_PROGRESS, percent, 0);
+        }
+
+        @Override
+        public void onVideoSizeChanged(IMediaPlayer player, int width, int height,
+                                       int sarNum, int sarDen) {
+            enqueue(EVENT_VIDEO_SIZE, width, height);
+        }
+
+        @Override
+        public void onScreenOrientationChanged(boolean landscape) {
+            enqueue(EVENT_FULLSCREEN, landscape ? 1 : 0, 0);
+        }
+    };
+
+    /**
+     * 播放进度，同一帧内合并
+     */
+    private final OnPositionUpdateListener mPositionListener = new OnPositionUpdateListener() {
+        @Override
+        public void onPositionUpdate(long positionMs, long durationMs) {
+            enqueue(EVENT_TIME_UPDATE, positionMs, durationMs);
+        }
+    };
+
+    /**
+     * 播放器状态，同时用于统计播放时长
+     */
+    private final OnPlayerStateChangeListener mStateListener = new OnPlayerStateChangeListener() {
+        @Override
+        public void onPlayerStateChanged(int state) {
+            updatePlaybackTime(state == SwanVideoView.STATE_PLAYING);
+            enqueue(EVENT_STATE, state, 0);
+        }
+    };
+
+    /**
+     * 解析后的一批指令
+     */
+    static final class CommandBatch {
+        /** 指令 */
+        final int[] codes;
+        /** 参数，没有参数时为0 */
+        final double[] args;
+        /** 指令数 */
+        int size;
+
+        CommandBatch(int capacity) {
+            codes = new int[capacity];
+            args = new double[capacity];
+        }
+
+        /**
+         * 解析[[指令,参数],...]格式的指令，只包含数字
+         *
+         * @param json 指令
+         * @return 解析结果
+         * @throws IllegalArgumentException 格式错误
+         */
+        static CommandBatch parse(String json) {
+            if (json == null) {
+                throw new IllegalArgumentException("commands is null");
+            }
+            int capacity = 0;
+            for (int i = 0; i < json.length(); i++) {
+                if (json.charAt(i) == '[') {
+                    capacity++;
+                }
+            }
+            CommandBatch batch = new CommandBatch(Math.max(0, capacity - 1));
+            int depth = 0;
+            int field = 0;
+            int tokenStart = -1;
+            boolean closed = false;
+            for (int i = 0; i < json.length(); i++) {
+                char c = json.charAt(i);
+                boolean numberChar = (c >= '0' && c <= '9') || c == '-' || c == '.'
+                        || c == 'e' || c == 'E' || c == '+';
+                if (numberChar) {
+                    if (tokenStart < 0) {
+                        tokenStart = i;
+                    }
+                    continue;
+                }
+                if (tokenStart >= 0) {
+                    batch.set(field, json.substring(tokenStart, i), depth);
+                    tokenStart = -1;
+                    field++;
+                }
+                if (c == '[') {
+                    if (closed) {
+                        throw new IllegalArgumentException("trailing content : " + json);
+                    }
+                    depth++;
+                    field = 0;
+                    if (depth > 2) {
+                        throw new IllegalArgumentException("nested too deep : " + json);
+                    }
+                } else if (c == ']') {
+                    if (depth == 2) {
+                        if (field == 0) {
+                            throw new IllegalArgumentException("empty command : " + json);
+                        }
+                        batch.size++;
+                    }
+                    depth--;
+                    if (depth < 0) {
+                        throw new IllegalArgumentException("unbalanced : " + json);
+                    }
+                    closed = depth == 0;
+                } else if (c != ',' && !Character.isWhitespace(c)) {
+                    throw new IllegalArgumentException("unexpected '" + c + "' : " + json);
+                }
+            }
+            if (depth != 0) {
+                throw new IllegalArgumentException("unbalanced : " + json);
+            }
+            return batch;
+        }
+
+        /**
+         * 设置当前指令的字段
+         */
+        private void set(int field, String token, int depth) {
+            if (depth != 2 || field > 1) {
+                throw new IllegalArgumentException("unexpected value " + token);
+            }
+            try {
+                if (field == 0) {
+                    codes[size] = Integer.parseInt(token);
+                } else {
+                    args[size] = Double.parseDouble(token);
+                }
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("bad number " + token, ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,624 @@
+package com.baidu.swan.videoplayer.cache;
+
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.baidu.cloud.videoplayer.demo.BuildConfig;
+import com.baidu.swan.videoplayer.VideoUtils;
+import com.baidu.swan.videoplayer.download.RateLimiter;
+import com.baidu.swan.videoplayer.net.HostPrewarmer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 列表视频的预测预取调度。
+ * <p>
+ * 列表滚动时由业务调用{@link #updateViewport(List, int, int, float)}，按与可见区域的距离和滚动速度
+ * 估算每个视频多久之后可见，越早可见越先预取。渐进式视频预取开头若干秒的数据到{@link SparseFileCache}，
+ * 开启稀疏缓存的播放器起播时直接从磁盘读取；HLS等其他地址，以及没有通过
+ * {@link #setRangeCacheEnabled(boolean)}声明播放器使用稀疏缓存时，只预热域名。
+ * <p>
+ * 预取在一个后台线程中逐个进行，每个统计窗口内的总量受字节预算限制，频繁的视口更新不会重复发放预算。
+ * 正在播放的视频缓冲低于阈值时，预取流量按令牌桶限速，把带宽让给正在播放的视频
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public final class PrefetchScheduler {
+
+    /** debug 开关 */
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    /** debug tag */
+    private static final String TAG = "PrefetchScheduler";
+    /** 默认每个视频预取的时长，单位：s */
+    public static final int DEFAULT_PREFETCH_SECONDS = 5;
+    /** 默认的码率估计，用于把预取时长换算为字节数，单位：bps */
+    public static final long DEFAULT_BITRATE_HINT = 1500 * 1000;
+    /** 默认的预取字节预算，一个统计窗口内所有视频的预取总量 */
+    public static final long DEFAULT_BYTE_BUDGET = 8L * 1024 * 1024;
+    /** 字节预算的统计窗口，单位：ms */
+    public static final long BUDGET_WINDOW_MS = 60 * 1000;
+    /** 默认的缓冲阈值，正在播放的视频缓冲低于这个值时限速，单位：ms */
+    public static final long DEFAULT_BUFFER_THRESHOLD_MS = 8000;
+    /** 默认的限速值，单位：字节/秒 */
+    public static final long DEFAULT_THROTTLED_RATE = 32 * 1024;
+    /** 静止时按这个速度估算到达时间，单位：条/秒 */
+    private static final float IDLE_SPEED = 0.5f;
+    /** 滚动反方向的视频到达时间的放大倍数 */
+    private static final float BEHIND_PENALTY = 4f;
+    /** 预计超过这个时间才可见的视频不预取，单位：s */
+    private static final float HORIZON_SECONDS = 15f;
+    /** 已经滚过这么多条仍没有播放的视频，预取的数据计为浪费 */
+    private static final int PASSED_DISTANCE = 3;
+    /** 检查播放缓冲的间隔，单位：ms */
+    private static final long BUFFER_CHECK_INTERVAL_MS = 500;
+    /** 最多保留的预取记录数 */
+    private static final int MAX_RECORDS = 64;
+
+    /**
+     * 正在播放的视频的缓冲状态，在主线程读取
+     */
+    public interface BufferSource {
+        /**
+         * 获取已缓冲但还没播放的时长
+         *
+         * @return 时长，单位：ms
+         */
+        long getBufferedMs();
+    }
+
+    /** 单例 */
+    private static volatile PrefetchScheduler sInstance;
+
+    /** 稀疏缓存 */
+    private final SparseFileCache mCache;
+    /** 预取限速 */
+    private final RateLimiter mRateLimiter = new RateLimiter(0);
+    /** 预取记录，按最近访问排列 */
+    private final Map<String, Record> mRecords =
+            new LinkedHashMap<String, Record>(MAX_RECORDS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Record> eldest) {
+                    if (size() <= MAX_RECORDS) {
+                        return false;
+                    }
+                    markWasted(eldest.getValue());
+                    return true;
+                }
+            };
+    /** 待预取的地址，按优先级排列 */
+    private List<String> mPlan = Collections.emptyList();
+    /** 请求header */
+    private Map<String, String> mHeaders;
+    /** 正在预取的地址 */
+    private String mCurrentUrl;
+    /** 正在预取的视频是否已经不在计划中，预取线程每读完一块检查一次 */
+    private volatile boolean mCancelCurrent;
+    /** 预取线程，没有任务时退出 */
+    private Thread mThread;
+    /** 正在播放的视频，没有时为null */
+    private BufferSource mActiveSource;
+    /** 正在播放的视频地址，不预取 */
+    private String mActiveUrl;
+    /** 是否已经在检查播放缓冲 */
+    private boolean mCheckingBuffer;
+    /** 每个视频预取的时长，单位：s */
+    private int mPrefetchSeconds = DEFAULT_PREFETCH_SECONDS;
+    /** 码率估计，单位：bps */
+    private long mBitrateHint = DEFAULT_BITRATE_HINT;
+    /** 字节预算 */
+    private long mByteBudget = DEFAULT_BYTE_BUDGET;
+    /** 缓冲阈值，单位：ms */
+    private long mBufferThresholdMs = DEFAULT_BUFFER_THRESHOLD_MS;
+    /** 限速值，单位：字节/秒 */
+    private long mThrottledRate = DEFAULT_THROTTLED_RATE;
+    /** 当前是否在限速 */
+    private boolean mThrottled;
+    /** 播放器是否使用稀疏缓存，不使用时只预热域名 */
+    private boolean mRangeCacheEnabled;
+    /** 当前统计窗口的开始时间，SystemClock.elapsedRealtime；还没有开始时为-1 */
+    private long mWindowStartMs = -1;
+    /** 当前统计窗口内已预取的字节数 */
+    private long mWindowBytes;
+
+    /** 打开的视频有预取数据的次数 */
+    private int mHitCount;
+    /** 打开的视频没有预取数据的次数 */
+    private int mMissCount;
+    /** 预取下载的总字节数 */
+    private long mPrefetchedBytes;
+    /** 预取了但没有播放的字节数 */
+    private long mWastedBytes;
+
+    /**
+     * 一个视频的预取记录
+     */
+    private static final class Record {
+        /** 预取下载的字节数 */
+        long mBytes;
+        /** 是否已经预取完成 */
+        boolean mDone;
+        /** 是否已经被播放 */
+        boolean mOpened;
+        /** 是否已经计为浪费 */
+        boolean mWasted;
+    }
+
+    /**
+     * 获取预取调度单例
+     *
+     * @param context 上下文
+     * @return 单例
+     */
+    public static PrefetchScheduler getInstance(Context context) {
+        if (sInstance == null) {
+            synchronized (PrefetchScheduler.class) {
+                if (sInstance == null) {
+                    sInstance = new PrefetchScheduler(SparseFileCache.getInstance(context));
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * 私有构造器
+     */
+    private PrefetchScheduler(SparseFileCache cache) {
+        mCache = cache;
+    }
+
+    /**
+     * 设置每个视频预取的时长
+     *
+     * @param seconds 时长，单位：s
+     */
+    public synchronized void setPrefetchSeconds(int seconds) {
+        mPrefetchSeconds = seconds;
+    }
+
+    /**
+     * 设置码率估计，用于把预取时长换算为字节数
+     *
+     * @param bitrate 码率，单位：bps
+     */
+    public synchronized void setBitrateHint(long bitrate) {
+        mBitrateHint = bitrate;
+    }
+
+    /**
+     * 设置每个统计窗口（{@link #BUDGET_WINDOW_MS}）内所有视频的预取总量
+     *
+     * @param bytes 字节数
+     */
+    public synchronized void setByteBudget(long bytes) {
+        mByteBudget = bytes;
+    }
+
+    /**
+     * 声明列表中的播放器是否开启了稀疏缓存，需要与
+     * {@link com.baidu.swan.videoplayer.SwanVideoView#setRangeCacheEnabled(boolean)}的设置一致。
+     * 没有开启时预取到磁盘的数据不会被读取，只预热域名。默认关闭
+     *
+     * @param enable 是否开启
+     */
+    public synchronized void setRangeCacheEnabled(boolean enable) {
+        mRangeCacheEnabled = enable;
+        if (!enable) {
+            mPlan = Collections.emptyList();
+            if (mCurrentUrl != null) {
+                mCancelCurrent = true;
+            }
+        }
+    }
+
+    /**
+     * 设置限速条件和限速值
+     *
+     * @param bufferThresholdMs 正在播放的视频缓冲低于这个值时限速，单位：ms
+     * @param throttledRate     限速值，单位：字节/秒
+     */
+    public synchronized void setThrottle(long bufferThresholdMs, long throttledRate) {
+        mBufferThresholdMs = bufferThresholdMs;
+        mThrottledRate = throttledRate;
+        if (mThrottled) {
+            mRateLimiter.setRate(throttledRate);
+        }
+    }
+
+    /**
+     * 设置预取请求的header
+     *
+     * @param headers 请求header，可以为null
+     */
+    public synchronized void setHeaders(Map<String, String> headers) {
+        mHeaders = headers;
+    }
+
+    /**
+     * 列表视口变化时调用，重新排定预取顺序。只做计算，可以在主线程调用
+     *
+     * @param urls         列表中全部视频地址，按列表位置排列，可以包含null
+     * @param firstVisible 第一个可见位置
+     * @param lastVisible  最后一个可见位置
+     * @param velocity     滚动速度，单位：条/秒，向列表末尾滚动为正
+     */
+    public synchronized void updateViewport(List<String> urls, int firstVisible,
+                                            int lastVisible, float velocity) {
+        final Map<String, Float> etas = new LinkedHashMap<>();
+        Set<String> present = new HashSet<>();
+        float speed = Math.max(Math.abs(velocity), IDLE_SPEED);
+        for (int i = 0; i < urls.size(); i++) {
+            String url = urls.get(i);
+            if (url == null) {
+                continue;
+            }
+            present.add(url);
+            int distance = i < firstVisible ? firstVisible - i
+                    : (i > lastVisible ? i - lastVisible : 0);
+            boolean ahead = distance == 0 || (i > lastVisible ? velocity >= 0 : velocity <= 0);
+            if (!ahead && distance >= PASSED_DISTANCE) {
+                markWasted(mRecords.get(url));
+            }
+            float eta = distance / speed * (ahead ? 1f : BEHIND_PENALTY);
+            if (eta > HORIZON_SECONDS || url.equals(mActiveUrl)) {
+                continue;
+            }
+            Float previous = etas.get(url);
+            if (previous == null || eta < previous) {
+                etas.put(url, eta);
+            }
+        }
+        // 已经不在列表中的视频不会再播放
+        for (Map.Entry<String, Record> entry : mRecords.entrySet()) {
+            if (!present.contains(entry.getKey())) {
+                markWasted(entry.getValue());
+            }
+        }
+        List<String> ranked = new ArrayList<>(etas.keySet());
+        Collections.sort(ranked, new Comparator<String>() {
+            @Override
+            public int compare(String lhs, String rhs) {
+                return Float.compare(etas.get(lhs), etas.get(rhs));
+            }
+        });
+        List<String> plan = new ArrayList<>();
+        long budget = getRemainingBudget();
+        long perItem = getItemBytes();
+        for (String url : ranked) {
+            if (!mRangeCacheEnabled || !RangeCacheDataSource.isCacheable(url)) {
+                HostPrewarmer.getInstance().preconnect(url, mHeaders);
+                continue;
+            }
+            Record record = mRecords.get(url);
+            if (record != null && record.mDone) {
+                continue;
+            }
+            // 已经预取的部分不会重复下载，只需要剩余部分的预算
+            long need = perItem - (record != null ? Math.min(record.mBytes, perItem) : 0);
+            if (budget < need) {
+                break;
+            }
+            budget -= need;
+            plan.add(url);
+        }
+        mPlan = plan;
+        if (mCurrentUrl != null && !plan.contains(mCurrentUrl)) {
+            // 数据源的读取和关闭互斥，不能在这里直接关闭，由预取线程自己停止
+            mCancelCurrent = true;
+        }
+        if (!plan.isEmpty() && mThread == null) {
+            startThread();
+        }
+    }
+
+    /**
+     * 设置正在播放的视频，在主线程调用。之后按它的缓冲决定是否限速
+     *
+     * @param source 缓冲状态
+     * @param url    视频地址
+     */
+    public synchronized void setActivePlayer(BufferSource source, String url) {
+        mActiveSource = source;
+        mActiveUrl = url;
+        if (mThread != null) {
+            startBufferCheck();
+        }
+    }
+
+    /**
+     * 正在播放的视频停止时调用，在主线程调用。不是当前视频时忽略
+     *
+     * @param source 缓冲状态
+     */
+    public synchronized void clearActivePlayer(BufferSource source) {
+        if (mActiveSource == source) {
+            mActiveSource = null;
+            mActiveUrl = null;
+        }
+    }
+
+    /**
+     * 播放器通过稀疏缓存打开视频时调用，统计预取命中情况。没有使用稀疏缓存的播放器不调用，
+     * 否则它们打开的视频都会计为未命中
+     *
+     * @param url 视频地址
+     */
+    public synchronized void onOpen(String url) {
+        if (!RangeCacheDataSource.isCacheable(url)) {
+            return;
+        }
+        Record record = mRecords.get(url);
+        if (record == null || record.mBytes == 0) {
+            mMissCount++;
+            return;
+        }
+        if (!record.mOpened) {
+            record.mOpened = true;
+            mHitCount++;
+            if (record.mWasted) {
+                // 滚过之后又回来播放，不再算浪费
+                record.mWasted = false;
+                mWastedBytes -= record.mBytes;
+            }
+        }
+    }
+
+    /**
+     * 获取预取命中率
+     *
+     * @return 通过稀疏缓存打开的视频中有预取数据的比例，没有打开过时为0
+     */
+    public synchronized float getHitRate() {
+        int total = mHitCount + mMissCount;
+        return total == 0 ? 0f : (float) mHitCount / total;
+    }
+
+    /**
+     * 获取打开的视频有预取数据的次数
+     *
+     * @return 次数
+     */
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * 获取打开的视频没有预取数据的次数
+     *
+     * @return 次数
+     */
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * 获取预取下载的总字节数
+     *
+     * @return 字节数
+     */
+    public synchronized long getPrefetchedBytes() {
+        return mPrefetchedBytes;
+    }
+
+    /**
+     * 获取预取了但没有播放的字节数，包括滚过、移出列表和被淘汰的视频
+     *
+     * @return 字节数
+     */
+    public synchronized long getWastedBytes() {
+        return mWastedBytes;
+    }
+
+    /**
+     * 获取当前统计窗口剩余的字节预算，窗口过期时开始新的窗口，调用方持有锁
+     */
+    private long getRemainingBudget() {
+        long now = SystemClock.elapsedRealtime();
+        if (mWindowStartMs < 0 || now - mWindowStartMs >= BUDGET_WINDOW_MS) {
+            mWindowStartMs = now;
+            mWindowBytes = 0;
+        }
+        return Math.max(0, mByteBudget - mWindowBytes);
+    }
+
+    /**
+     * 每个视频的预取字节数
+     */
+    private long getItemBytes() {
+        return mBitrateHint / 8 * mPrefetchSeconds;
+    }
+
+    /**
+     * 把没有播放的预取数据计为浪费，调用方持有锁
+     */
+    private void markWasted(Record record) {
+        if (record != null && !record.mOpened && !record.mWasted && record.mBytes > 0) {
+            record.mWasted = true;
+            mWastedBytes += record.mBytes;
+        }
+    }
+
+    /**
+     * 启动预取线程，调用方持有锁
+     */
+    private void startThread() {
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runLoop();
+            }
+        }, "swan-video-prefetch");
+        mThread.setDaemon(true);
+        mThread.start();
+        startBufferCheck();
+    }
+
+    /**
+     * 预取线程主循环，计划为空时退出
+     */
+    private void runLoop() {
+        while (true) {
+            String url;
+            long target;
+            RangeCacheDataSource source;
+            synchronized (this) {
+                url = null;
+                if (getRemainingBudget() > 0) {
+                    for (String candidate : mPlan) {
+                        Record record = mRecords.get(candidate);
+                        if (record == null || !record.mDone) {
+                            url = candidate;
+                            break;
+                        }
+                    }
+                }
+                if (url == null) {
+                    mThread = null;
+                    mCurrentUrl = null;
+                    return;
+                }
+                target = getItemBytes();
+                source = new RangeCacheDataSource(mCache, url, mHeaders);
+                mCurrentUrl = url;
+                mCancelCurrent = false;
+                if (mRecords.get(url) == null) {
+                    mRecords.put(url, new Record());
+                }
+            }
+            boolean done = prefetch(url, source, target);
+            synchronized (this) {
+                Record record = mRecords.get(url);
+                if (record != null) {
+                    record.mDone |= done;
+                    if (!done) {
+                        // 失败或被取消，从本轮计划中去掉，下次视口更新时再决定
+                        List<String> plan = new ArrayList<>(mPlan);
+                        plan.remove(url);
+                        mPlan = plan;
+                    }
+                }
+                mCurrentUrl = null;
+            }
+        }
+    }
+
+    /**
+     * 预取一个视频的开头部分，在预取线程调用
+     *
+     * @param url    视频地址
+     * @param source 数据源，已缓存的部分不会重复下载
+     * @param target 预取的字节数
+     * @return true：完成；false：失败或被取消
+     */
+    private boolean prefetch(String url, RangeCacheDataSource source, long target) {
+        byte[] buffer = new byte[SparseCacheEntry.BLOCK_SIZE];
+        long network = 0;
+        try {
+            // Range请求只到预取目标为止，不会把后面的内容也拉下来
+            source.setRequestLimit(target);
+            long length = source.getSize();
+            long end = Math.min(target, length);
+            long position = 0;
+            while (position < end) {
+                if (mCancelCurrent) {
+                    return false;
+                }
+                int size = (int) Math.min(buffer.length, end - position);
+                if (!source.isCached(position)) {
+                    // 先取令牌再读，未缓存时会下载整块
+                    mRateLimiter.acquire((int) Math.min(buffer.length, length - position));
+                }
+                int read = source.readAt(position, buffer, 0, size);
+                if (read <= 0) {
+                    break;
+                }
+                position += read;
+                long delta = source.getNetworkBytes() - network;
+                if (delta > 0) {
+                    network += delta;
+                    addBytes(url, delta);
+                }
+            }
+            return true;
+        } catch (IOException ex) {
+            if (DEBUG) {
+                Log.d(TAG, "prefetch stopped : " + url + ", " + ex);
+            }
+            return false;
+        } catch (InterruptedException ex) {
+            return false;
+        } finally {
+            source.close();
+            if (DEBUG) {
+                Log.d(TAG, "prefetched " + network + " bytes : " + url);
+            }
+        }
+    }
+
+    /**
+     * 累计预取字节数
+     */
+    private synchronized void addBytes(String url, long bytes) {
+        mPrefetchedBytes += bytes;
+        mWindowBytes += bytes;
+        Record record = mRecords.get(url);
+        if (record != null) {
+            record.mBytes += bytes;
+            if (record.mWasted) {
+                mWastedBytes += bytes;
+            }
+        }
+    }
+
+    /**
+     * 开始在主线程定时检查播放缓冲，调用方持有锁
+     */
+    private void startBufferCheck() {
+        if (!mCheckingBuffer) {
+            mCheckingBuffer = true;
+            VideoUtils.getMainHandler().post(mBufferCheckRunnable);
+        }
+    }
+
+    /**
+     * 按正在播放的视频的缓冲调整限速，预取线程退出后停止检查
+     */
+    private final Runnable mBufferCheckRunnable = new Runnable() {
+        @Override
+        public void run() {
+            BufferSource source;
+            long threshold;
+            synchronized (PrefetchScheduler.this) {
+                if (mThread == null) {
+                    mCheckingBuffer = false;
+                    return;
+                }
+                source = mActiveSource;
+                threshold = mBufferThresholdMs;
+            }
+            boolean throttle = source != null && source.getBufferedMs() < threshold;
+            synchronized (PrefetchScheduler.this) {
+                if (throttle != mThrottled) {
+                    mThrottled = throttle;
+                    mRateLimiter.setRate(throttle ? mThrottledRate : 0);
+                    if (DEBUG) {
+                        Log.d(TAG, throttle ? "throttle prefetch" : "unthrottle prefetch");
+                    }
+                }
+            }
+            VideoUtils.getMainHandler().postDelayed(this, BUFFER_CHECK_INTERVAL_MS);
+        }
+    };
+}
@@ -0,0 +1,329 @@
+package com.baidu.swan.videoplayer.cache;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.baidu.cloud.media.player.BDCloudMediaPlayer;
+import com.baidu.cloud.videoplayer.demo.BuildConfig;
+import com.baidu.swan.videoplayer.VideoUtils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 已prepare播放器的LRU缓存，用于信息流中返回最近播放过的视频时免去重新打开、解析和缓冲。
+ * <p>
+ * 缓存按url索引，同时受数量和估算内存两个上限约束，系统内存紧张或闲置超时后自动淘汰。
+ * 所有方法需要在主线程调用。
+ *
+ * @author machao10
+ * @since 2019-02-25
+ */
+public final class PreparedPlayerPool implements ComponentCallbacks2 {
+
+    /** debug 开关 */
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    /** debug tag */
+    private static final String TAG = "PreparedPlayerPool";
+    /** 默认最多缓存的播放器数量 */
+    private static final int DEFAULT_MAX_COUNT = 3;
+    /** 默认内存上限占应用可用内存的比例的倒数 */
+    private static final int MEMORY_CLASS_DIVISOR = 8;
+    /** 估算内存时解码器持有的帧缓冲数量 */
+    private static final int DECODER_FRAME_BUFFERS = 8;
+    /** 缓存播放器最长闲置时间，超过后连接可能已被服务端断开，不再复用，单位：ms */
+    private static final long MAX_IDLE_TIME = 5 * 60 * 1000;
+    /** 1M */
+    private static final long MB = 1024 * 1024;
+
+    /** 单例 */
+    private static volatile PreparedPlayerPool sInstance;
+
+    /** 缓存项，按访问顺序排列，最久未使用的在前 */
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    /** 最多缓存数量 */
+    private int mMaxCount = DEFAULT_MAX_COUNT;
+    /** 估算内存上限，单位：byte */
+    private long mMaxBytes;
+    /** 当前估算内存，单位：byte */
+    private long mCurrentBytes;
+    /** 命中次数 */
+    private int mHits;
+    /** 未命中次数 */
+    private int mMisses;
+    /** 淘汰次数 */
+    private int mEvictions;
+
+    /**
+     * 淘汰闲置超时的播放器，还有缓存时按最早到期的一项重新计时
+     */
+    private final Runnable mExpireRunnable = new Runnable() {
+        @Override
+        public void run() {
+            long now = SystemClock.elapsedRealtime();
+            Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next().getValue();
+                if (now - entry.parkedAt < MAX_IDLE_TIME) {
+                    continue;
+                }
+                iterator.remove();
+                mCurrentBytes -= entry.estimatedBytes;
+                mEvictions++;
+                releaseEntry(entry);
+            }
+            scheduleExpire();
+        }
+    };
+
+    /**
+     * 缓存的播放器
+     */
+    public static final class Entry {
+        /** 已prepare并暂停的播放器 */
+        public final BDCloudMediaPlayer player;
+        /** 暂停时的播放位置，单位：ms */
+        public final long positionMs;
+        /** 估算占用内存，单位：byte */
+        final long estimatedBytes;
+        /** 放入缓存的时间 */
+        final long parkedAt;
+
+        /**
+         * 缓存项构造器
+         *
+         * @param player     已prepare并暂停的播放器
+         * @param positionMs 暂停时的播放位置，单位：ms
+         */
+        Entry(BDCloudMediaPlayer player, long positionMs) {
+            this.player = player;
+            this.positionMs = positionMs;
+            this.estimatedBytes = estimateBytes(player);
+            this.parkedAt = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * 获取全局播放器缓存
+     *
+     * @param context 上下文
+     * @return 播放器缓存
+     */
+    public static PreparedPlayerPool getInstance(Context context) {
+        if (sInstance == null) {
+            synchronized (PreparedPlayerPool.class) {
+                if (sInstance == null) {
+                    sInstance = new PreparedPlayerPool(context.getApplicationContext());
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * 私有构造器，注册内存回调
+     */
+    private PreparedPlayerPool(Context appContext) {
+        ActivityManager am = (ActivityManager) appContext.getSystemService(Context.ACTIVITY_SERVICE);
+        int memoryClass = am == null ? 0 : am.getMemoryClass();
+        mMaxBytes = memoryClass > 0 ? memoryClass * MB / MEMORY_CLASS_DIVISOR : 32 * MB;
+        appContext.registerComponentCallbacks(this);
+    }
+
+    /**
+     * 设置缓存上限
+     *
+     * @param maxCount 最多缓存数量，为0时关闭缓存
+     * @param maxBytes 估算内存上限，单位：byte
+     */
+    public void setLimits(int maxCount, long maxBytes) {
+        mMaxCount = Math.max(0, maxCount);
+        mMaxBytes = Math.max(0, maxBytes);
+        trimTo(mMaxCount, mMaxBytes);
+    }
+
+    /**
+     * 取出缓存的播放器，取出后缓存不再持有它
+     *
+     * @param url 视频地址
+     * @return 缓存项，没有命中时返回null
+     */
+    public Entry acquire(String url) {
+        Entry entry = url == null ? null : mEntries.remove(url);
+        if (entry != null) {
+            mCurrentBytes -= entry.estimatedBytes;
+            if (SystemClock.elapsedRealtime() - entry.parkedAt > MAX_IDLE_TIME) {
+                releaseEntry(entry);
+                entry = null;
+            }
+        }
+        if (entry != null) {
+            mHits++;
+        } else {
+            mMisses++;
+        }
+        if (DEBUG) {
+            Log.d(TAG, "acquire " + url + (entry != null ? " hit" : " miss") + ", " + this);
+        }
+        return entry;
+    }
+
+    /**
+     * 放入一个已prepare并暂停的播放器。播放器的回调和surface需要由调用方事先解除
+     *
+     * @param url        视频地址
+     * @param player     播放器
+     * @param positionMs 暂停时的播放位置，单位：ms
+     * @return true：播放器已交给缓存管理；
+     * false：缓存已关闭或单个播放器超过内存上限，调用方需要自行释放
+     */
+    public boolean put(String url, BDCloudMediaPlayer player, long positionMs) {
+        if (url == null || player == null || mMaxCount == 0) {
+            return false;
+        }
+        Entry entry = new Entry(player, positionMs);
+        if (entry.estimatedBytes > mMaxBytes) {
+            return false;
+        }
+        Entry old = mEntries.put(url, entry);
+        if (old != null) {
+            mCurrentBytes -= old.estimatedBytes;
+            if (old.player != player) {
+                releaseEntry(old);
+            }
+        }
+        mCurrentBytes += entry.estimatedBytes;
+        trimTo(mMaxCount, mMaxBytes);
+        scheduleExpire();
+        return true;
+    }
+
+    /**
+     * 释放全部缓存的播放器
+     */
+    public void clear() {
+        trimTo(0, 0);
+        VideoUtils.getMainHandler().removeCallbacks(mExpireRunnable);
+    }
+
+    /**
+     * 获取命中率
+     *
+     * @return 命中率，取值[0, 1]
+     */
+    public float getHitRate() {
+        int total = mHits + mMisses;
+        return total == 0 ? 0f : (float) mHits / total;
+    }
+
+    /**
+     * 获取命中次数
+     *
+     * @return 命中次数
+     */
+    public int getHits() {
+        return mHits;
+    }
+
+    /**
+     * 获取未命中次数
+     *
+     * @return 未命中次数
+     */
+    public int getMisses() {
+        return mMisses;
+    }
+
+    /**
+     * 获取淘汰次数
+     *
+     * @return 淘汰次数
+     */
+    public int getEvictions() {
+        return mEvictions;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            clear();
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            // 内存偏紧时只保留最近使用的一半
+            trimTo(mEntries.size() / 2, mCurrentBytes / 2);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        clear();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    @Override
+    public String toString() {
+        return "PreparedPlayerPool{size=" + mEntries.size() + ", bytes=" + mCurrentBytes
+                + ", hits=" + mHits + ", misses=" + mMisses + ", evictions=" + mEvictions + "}";
+    }
+
+    /**
+     * 从最久未使用的开始淘汰，直到满足上限
+     */
+    private void trimTo(int maxCount, long maxBytes) {
+        Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+        while (iterator.hasNext() && (mEntries.size() > maxCount || mCurrentBytes > maxBytes)) {
+            Entry entry = iterator.next().getValue();
+            iterator.remove();
+            mCurrentBytes -= entry.estimatedBytes;
+            mEvictions++;
+            releaseEntry(entry);
+        }
+    }
+
+    /**
+     * 按最早放入的缓存项安排闲置超时淘汰，缓存为空时取消
+     */
+    private void scheduleExpire() {
+        Handler handler = VideoUtils.getMainHandler();
+        handler.removeCallbacks(mExpireRunnable);
+        long oldest = Long.MAX_VALUE;
+        for (Entry entry : mEntries.values()) {
+            oldest = Math.min(oldest, entry.parkedAt);
+        }
+        if (oldest != Long.MAX_VALUE) {
+            long delay = oldest + MAX_IDLE_TIME - SystemClock.elapsedRealtime();
+            handler.postDelayed(mExpireRunnable, Math.max(0, delay));
+        }
+    }
+
+    /**
+     * 释放缓存项中的播放器
+     */
+    private static void releaseEntry(Entry entry) {
+        try {
+            entry.player.reset();
+            entry.player.release();
+        } catch (IllegalStateException ex) {
+            if (DEBUG) {
+                Log.w(TAG, "release cached player failed", ex);
+            }
+        }
+    }
+
+    /**
+     * 估算播放器占用的内存：解码帧缓冲 + 已缓存的音视频数据
+     */
+    private static long estimateBytes(BDCloudMediaPlayer player) {
+        long frameBytes = (long) player.getVideoWidth() * player.getVideoHeight() * 3 / 2;
+        return frameBytes * DECODER_FRAME_BUFFERS
+                + player.getVideoCachedBytes() + player.getAudioCachedBytes();
+    }
+}
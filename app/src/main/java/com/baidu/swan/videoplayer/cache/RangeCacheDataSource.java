@@ -0,0 +1,375 @@
+package com.baidu.swan.videoplayer.cache;
+
+import android.net.Uri;
+import android.util.Log;
+
+import com.baidu.cloud.media.player.misc.IMediaDataSource;
+import com.baidu.cloud.videoplayer.demo.BuildConfig;
+import com.baidu.swan.videoplayer.net.HttpFetcher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 带稀疏磁盘缓存的渐进式视频数据源。
+ * <p>
+ * 已缓存的区间直接从磁盘读取，不发起网络请求；未缓存的区间用HTTP Range请求下载，
+ * 请求范围到下一个已缓存块或{@link #setRequestLimit(long)}设置的位置为止，
+ * 下载的数据按块写入{@link SparseFileCache}。
+ * 顺序播放时复用同一个连接，seek到未缓存位置时重新发起请求。
+ * 每次响应都用长度和ETag/Last-Modified校验缓存，上次进程留下的缓存在本进程第一次使用前先发一个1字节的
+ * Range请求校验，网络不可用时继续使用缓存。由播放器的读取线程调用，所有方法都会阻塞
+ *
+ * @author machao10
+ * @since 2019-03-12
+ */
+public class RangeCacheDataSource implements IMediaDataSource {
+
+    /** debug 开关 */
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    /** debug tag */
+    private static final String TAG = "RangeCacheDataSource";
+
+    /** 视频地址 */
+    private final String mUrl;
+    /** 调用方指定的缓存key，为null时按url计算 */
+    private final String mCacheKey;
+    /** 请求header */
+    private final Map<String, String> mHeaders;
+    /** 稀疏缓存 */
+    private final SparseFileCache mCache;
+    /** 缓存项，首次读取时打开 */
+    private SparseCacheEntry mEntry;
+    /** 当前下载连接 */
+    private HttpURLConnection mConnection;
+    /** 当前下载流 */
+    private InputStream mStream;
+    /** 下载流的下一个字节在文件中的位置 */
+    private long mStreamPosition = -1;
+    /** 下载流的结束位置（不含），到文件末尾时为-1 */
+    private long mStreamEnd = -1;
+    /** 网络请求的结束位置（含），按块对齐，-1表示不限制 */
+    private long mRequestEnd = -1;
+    /** 下载中的块数据 */
+    private final byte[] mBlock = new byte[SparseCacheEntry.BLOCK_SIZE];
+    /** 是否已关闭 */
+    private boolean mClosed;
+    /** 从缓存读取的字节数 */
+    private long mCacheBytes;
+    /** 从网络下载的字节数 */
+    private long mNetworkBytes;
+
+    /**
+     * 构造器
+     *
+     * @param cache   稀疏缓存
+     * @param url     视频地址，需要是http(s)的渐进式视频
+     * @param headers 请求header，可以为null
+     */
+    public RangeCacheDataSource(SparseFileCache cache, String url, Map<String, String> headers) {
+        this(cache, url, headers, null);
+    }
+
+    /**
+     * 构造器，使用指定的缓存key。同一视频的地址每次都不同（如带有一次性签名）时，
+     * 由业务方传入视频ID等稳定的key共用缓存
+     *
+     * @param cache    稀疏缓存
+     * @param url      视频地址，需要是http(s)的渐进式视频
+     * @param headers  请求header，可以为null
+     * @param cacheKey 缓存key，为null时按url计算
+     */
+    public RangeCacheDataSource(SparseFileCache cache, String url, Map<String, String> headers,
+                                String cacheKey) {
+        mCache = cache;
+        mUrl = url;
+        mCacheKey = cacheKey;
+        mHeaders = new HashMap<>();
+        if (headers != null) {
+            mHeaders.putAll(headers);
+        }
+        // 压缩后的长度和偏移对不上Range，要求服务端返回原始字节
+        mHeaders.put("Accept-Encoding", "identity");
+    }
+
+    /**
+     * 判断是否为可以使用稀疏缓存的http(s)渐进式视频地址
+     *
+     * @param url 视频地址
+     * @return true：可以使用
+     */
+    public static boolean isCacheable(String url) {
+        if (url == null) {
+            return false;
+        }
+        Uri uri = Uri.parse(url);
+        String scheme = uri.getScheme();
+        String path = uri.getPath();
+        if (path == null || !"http".equals(scheme) && !"https".equals(scheme)) {
+            return false;
+        }
+        path = path.toLowerCase(Locale.US);
+        return path.endsWith(".mp4") || path.endsWith(".m4v") || path.endsWith(".mov");
+    }
+
+    /**
+     * 限制网络请求的范围，Range请求不会超过limit所在块的末尾。用于预取等只需要开头部分的场景，
+     * 避免首次请求和补洞请求一直下载到文件末尾
+     *
+     * @param limit 需要的数据结束位置（不含），小于等于0时不限制
+     */
+    public synchronized void setRequestLimit(long limit) {
+        if (limit <= 0) {
+            mRequestEnd = -1;
+        } else {
+            long blocks = (limit + SparseCacheEntry.BLOCK_SIZE - 1) / SparseCacheEntry.BLOCK_SIZE;
+            mRequestEnd = blocks * SparseCacheEntry.BLOCK_SIZE - 1;
+        }
+    }
+
+    /**
+     * 判断位置所在的块是否已经缓存，需要在{@link #getSize()}之后调用
+     *
+     * @param position 文件中的位置
+     * @return true：已缓存，读取时不会访问网络
+     */
+    synchronized boolean isCached(long position) {
+        return mEntry != null && mEntry.isCached((int) (position / SparseCacheEntry.BLOCK_SIZE));
+    }
+
+    @Override
+    public synchronized int readAt(long position, byte[] buffer, int offset, int size)
+            throws IOException {
+        if (size <= 0) {
+            return 0;
+        }
+        long length = getSize();
+        if (position >= length) {
+            return -1;
+        }
+        int read = mEntry.read(position, buffer, offset, size);
+        if (read > 0) {
+            mCacheBytes += read;
+            return read;
+        }
+        int index = (int) (position / SparseCacheEntry.BLOCK_SIZE);
+        long blockStart = (long) index * SparseCacheEntry.BLOCK_SIZE;
+        int blockLength = (int) Math.min(SparseCacheEntry.BLOCK_SIZE, length - blockStart);
+        downloadBlock(index, blockStart, blockLength);
+        int inBlock = (int) (position - blockStart);
+        int count = Math.min(size, blockLength - inBlock);
+        System.arraycopy(mBlock, inBlock, buffer, offset, count);
+        return count;
+    }
+
+    @Override
+    public synchronized long getSize() throws IOException {
+        if (mClosed) {
+            throw new IOException("data source closed");
+        }
+        if (mEntry == null) {
+            mEntry = mCache.acquire(mUrl, mCacheKey);
+            if (mEntry.getLength() >= 0 && mCache.markValidated(mEntry)) {
+                revalidate();
+            }
+        }
+        long length = mEntry.getLength();
+        if (length < 0) {
+            // 第一次播放，从头开始请求并从响应中得到长度，这个连接留给第一次读取使用
+            openConnection(0, mRequestEnd);
+            mCache.markValidated(mEntry);
+            length = mEntry.getLength();
+        }
+        return length;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        closeConnection();
+        if (mEntry != null) {
+            mCache.release(mEntry);
+            mEntry = null;
+        }
+        if (DEBUG) {
+            Log.d(TAG, "close, cache bytes = " + mCacheBytes + ", network bytes = "
+                    + mNetworkBytes);
+        }
+    }
+
+    /**
+     * 获取从缓存读取的字节数
+     *
+     * @return 字节数
+     */
+    public synchronized long getCacheBytes() {
+        return mCacheBytes;
+    }
+
+    /**
+     * 获取从网络下载的字节数
+     *
+     * @return 字节数
+     */
+    public synchronized long getNetworkBytes() {
+        return mNetworkBytes;
+    }
+
+    /**
+     * 下载一个块到{@link #mBlock}并写入缓存，当前连接正好在块起始位置时继续使用
+     */
+    private void downloadBlock(int index, long blockStart, int blockLength) throws IOException {
+        if (mStream == null || mStreamPosition != blockStart) {
+            closeConnection();
+            long nextCached = mEntry.nextCachedOffset(index);
+            long end = nextCached >= 0 ? nextCached - 1 : -1;
+            if (mRequestEnd >= 0) {
+                // 超出限制范围的读取至少要下载当前块
+                long limit = Math.max(mRequestEnd, blockStart + blockLength - 1);
+                end = end >= 0 ? Math.min(end, limit) : limit;
+            }
+            openConnection(blockStart, end);
+        }
+        try {
+            int filled = 0;
+            while (filled < blockLength) {
+                int read = mStream.read(mBlock, filled, blockLength - filled);
+                if (read < 0) {
+                    throw new IOException("unexpected end of stream at "
+                            + (blockStart + filled));
+                }
+                filled += read;
+            }
+        } catch (IOException ex) {
+            closeConnection();
+            throw ex;
+        }
+        mNetworkBytes += blockLength;
+        mStreamPosition += blockLength;
+        mEntry.writeBlock(index, mBlock, blockLength);
+        if (mStreamEnd >= 0 && mStreamPosition >= mStreamEnd) {
+            // 已经下载到下一个已缓存块，之后从缓存读取
+            closeConnection();
+        }
+    }
+
+    /**
+     * 用1字节的Range请求校验上次进程留下的缓存，失败时继续使用缓存
+     */
+    private void revalidate() {
+        try {
+            openConnection(0, 0);
+        } catch (IOException ex) {
+            if (DEBUG) {
+                Log.w(TAG, "revalidate failed, use cache : " + mUrl, ex);
+            }
+        }
+        closeConnection();
+    }
+
+    /**
+     * 发起Range请求，并用响应中的总长度和校验值校验缓存
+     *
+     * @param start 起始位置
+     * @param end   结束位置（含），到文件末尾时传-1
+     */
+    private void openConnection(long start, long end) throws IOException {
+        Map<String, String> headers = mHeaders;
+        String cached = mEntry.getValidator();
+        if (cached != null) {
+            // 资源已变化时服务端返回完整的200响应，不会把新旧内容拼在一起
+            headers = new HashMap<>(mHeaders);
+            headers.put("If-Range", cached);
+        }
+        HttpURLConnection connection = HttpFetcher.open(mUrl, headers, start, end);
+        long total;
+        boolean partial = connection.getResponseCode() == HttpURLConnection.HTTP_PARTIAL;
+        if (partial) {
+            total = parseTotalLength(connection.getHeaderField("Content-Range"));
+        } else {
+            total = parseLong(connection.getHeaderField("Content-Length"));
+        }
+        if (total < 0) {
+            connection.disconnect();
+            throw new IOException("unknown content length for " + mUrl);
+        }
+        String validator = connection.getHeaderField("ETag");
+        // 弱ETag不能用于If-Range，改用Last-Modified
+        if (validator == null || validator.startsWith("W/")) {
+            validator = connection.getHeaderField("Last-Modified");
+        }
+        // 长度或校验值变化说明服务端资源已经更新，会清空旧缓存
+        boolean known = mEntry.getLength() >= 0;
+        if (!mEntry.revalidate(total, validator) && known && DEBUG) {
+            Log.d(TAG, "resource changed, cache reset : " + mUrl);
+        }
+        mConnection = connection;
+        mStream = connection.getInputStream();
+        mStreamPosition = start;
+        mStreamEnd = end >= 0 ? end + 1 : -1;
+        if (!partial && start > 0) {
+            // 服务端不支持Range，只能从头跳过
+            long skipped = 0;
+            while (skipped < start) {
+                long n = mStream.skip(start - skipped);
+                if (n <= 0) {
+                    closeConnection();
+                    throw new IOException("skip failed at " + skipped);
+                }
+                skipped += n;
+            }
+        }
+    }
+
+    /**
+     * 关闭当前下载连接
+     */
+    private void closeConnection() {
+        if (mStream != null) {
+            try {
+                mStream.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+            mStream = null;
+        }
+        if (mConnection != null) {
+            mConnection.disconnect();
+            mConnection = null;
+        }
+        mStreamPosition = -1;
+        mStreamEnd = -1;
+    }
+
+    /**
+     * 解析Content-Range中的总长度，格式为bytes start-end/total
+     */
+    private static long parseTotalLength(String contentRange) {
+        if (contentRange == null) {
+            return -1;
+        }
+        int slash = contentRange.lastIndexOf('/');
+        return slash < 0 ? -1 : parseLong(contentRange.substring(slash + 1).trim());
+    }
+
+    /**
+     * 解析长整数，失败时返回-1
+     */
+    private static long parseLong(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+}
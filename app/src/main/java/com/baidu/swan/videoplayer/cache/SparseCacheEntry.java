@@ -0,0 +1,347 @@
+package com.baidu.swan.videoplayer.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 单个url的稀疏缓存文件。
+ * <p>
+ * 数据文件按视频长度预留（稀疏文件，不实际占用磁盘），按{@link #BLOCK_SIZE}分块写入；
+ * 另有一个内存映射的索引文件，头部记录长度、已缓存块数和服务端的校验值（ETag或Last-Modified），
+ * 后面是块位图。位图写入直接落在页缓存中，进程被杀也不会丢失，下次打开同一url时已缓存的块可以直接使用。
+ * 长度或校验值与服务端不一致时清空重建。线程安全
+ *
+ * @author machao10
+ * @since 2019-03-12
+ */
+final class SparseCacheEntry {
+
+    /** 块大小，单位：字节 */
+    static final int BLOCK_SIZE = 64 * 1024;
+    /** 索引文件魔数 */
+    private static final int MAGIC = 0x53575243;
+    /** 索引文件格式版本 */
+    private static final int VERSION = 2;
+    /** 头部中已缓存块数的偏移 */
+    private static final int OFFSET_CACHED_BLOCKS = 12;
+    /** 头部中视频长度的偏移 */
+    private static final int OFFSET_LENGTH = 16;
+    /** 头部中校验值的偏移，先是2字节的长度，后面是UTF-8内容 */
+    private static final int OFFSET_VALIDATOR = 24;
+    /** 校验值最大长度，单位：字节，更长的校验值不保存 */
+    private static final int MAX_VALIDATOR_BYTES = 254;
+    /** 索引文件头部长度：魔数、版本、块大小、已缓存块数、视频长度、校验值 */
+    private static final int HEADER_SIZE = OFFSET_VALIDATOR + 2 + MAX_VALIDATOR_BYTES;
+    /** 数据文件后缀 */
+    static final String DATA_SUFFIX = ".data";
+    /** 索引文件后缀 */
+    static final String MAP_SUFFIX = ".map";
+
+    /** 缓存key */
+    final String mKey;
+    /** 索引文件 */
+    private final File mMapFile;
+    /** 数据文件句柄 */
+    private RandomAccessFile mData;
+    /** 内存映射的索引 */
+    private MappedByteBuffer mMap;
+    /** 视频长度，未知时为-1 */
+    private long mLength = -1;
+    /** 总块数 */
+    private int mBlockCount;
+    /** 已缓存块数 */
+    private int mCachedBlocks;
+    /** 服务端校验值，未知时为null */
+    private String mValidator;
+    /** 引用计数，由{@link SparseFileCache}维护 */
+    int mRefCount;
+
+    /**
+     * 打开缓存文件，索引有效时恢复之前缓存的内容
+     *
+     * @param dir 缓存目录
+     * @param key 缓存key
+     * @throws IOException 打开文件失败
+     */
+    SparseCacheEntry(File dir, String key) throws IOException {
+        mKey = key;
+        mMapFile = new File(dir, key + MAP_SUFFIX);
+        mData = new RandomAccessFile(new File(dir, key + DATA_SUFFIX), "rw");
+        long length = readHeaderLong(mMapFile, OFFSET_LENGTH);
+        if (length > 0 && mData.length() == length) {
+            mapIndex(length, false);
+        }
+        mMapFile.setLastModified(System.currentTimeMillis());
+    }
+
+    /**
+     * 获取视频长度
+     *
+     * @return 长度，单位：字节；未知时为-1
+     */
+    synchronized long getLength() {
+        return mLength;
+    }
+
+    /**
+     * 获取服务端校验值
+     *
+     * @return ETag或Last-Modified，未知时返回null
+     */
+    synchronized String getValidator() {
+        return mValidator;
+    }
+
+    /**
+     * 用服务端响应校验缓存。长度不一致，或者双方都有校验值但不一致时，说明资源已变化，清空重建
+     *
+     * @param length    长度，单位：字节
+     * @param validator 响应中的ETag或Last-Modified，没有时为null
+     * @return true：缓存仍然有效；false：已清空
+     * @throws IOException 写文件失败
+     */
+    synchronized boolean revalidate(long length, String validator) throws IOException {
+        boolean valid = length == mLength
+                && (validator == null || mValidator == null || validator.equals(mValidator));
+        if (!valid) {
+            mData.setLength(0);
+            mData.setLength(length);
+            mapIndex(length, true);
+        }
+        if (validator != null && !validator.equals(mValidator)) {
+            writeValidator(validator);
+        }
+        return valid;
+    }
+
+    /**
+     * 从指定位置读取连续已缓存的数据
+     *
+     * @param position 读取位置
+     * @param buffer   目标数组
+     * @param offset   目标数组偏移
+     * @param size     最多读取的字节数
+     * @return 读取的字节数，该位置所在块没有缓存时返回0
+     * @throws IOException 读文件失败
+     */
+    synchronized int read(long position, byte[] buffer, int offset, int size)
+            throws IOException {
+        if (mMap == null || position >= mLength) {
+            return 0;
+        }
+        long end = Math.min(position + size, mLength);
+        int block = (int) (position / BLOCK_SIZE);
+        long available = position;
+        while (available < end && isCached(block)) {
+            block++;
+            available = (long) block * BLOCK_SIZE;
+        }
+        int count = (int) (Math.min(available, end) - position);
+        if (count <= 0) {
+            return 0;
+        }
+        // 直接读入调用方的数组，不经过中间缓冲
+        ByteBuffer target = ByteBuffer.wrap(buffer, offset, count);
+        FileChannel channel = mData.getChannel();
+        long readPos = position;
+        while (target.hasRemaining()) {
+            int read = channel.read(target, readPos);
+            if (read < 0) {
+                break;
+            }
+            readPos += read;
+        }
+        return (int) (readPos - position);
+    }
+
+    /**
+     * 写入一个完整的块
+     *
+     * @param index  块序号
+     * @param data   块数据
+     * @param length 块长度，只有最后一块可以小于{@link #BLOCK_SIZE}
+     * @throws IOException 写文件失败
+     */
+    synchronized void writeBlock(int index, byte[] data, int length) throws IOException {
+        if (mMap == null || index >= mBlockCount || isCached(index)) {
+            return;
+        }
+        ByteBuffer source = ByteBuffer.wrap(data, 0, length);
+        FileChannel channel = mData.getChannel();
+        long writePos = (long) index * BLOCK_SIZE;
+        while (source.hasRemaining()) {
+            writePos += channel.write(source, writePos);
+        }
+        // 数据写完后再标记，进程中途被杀时最多丢失这一块
+        int byteIndex = HEADER_SIZE + index / 8;
+        mMap.put(byteIndex, (byte) (mMap.get(byteIndex) | (1 << (index % 8))));
+        mCachedBlocks++;
+        mMap.putInt(OFFSET_CACHED_BLOCKS, mCachedBlocks);
+    }
+
+    /**
+     * 指定块是否已缓存
+     *
+     * @param index 块序号
+     * @return true：已缓存
+     */
+    synchronized boolean isCached(int index) {
+        return mMap != null && index < mBlockCount
+                && (mMap.get(HEADER_SIZE + index / 8) & (1 << (index % 8))) != 0;
+    }
+
+    /**
+     * 查找指定块之后第一个已缓存块的起始位置，用于确定Range请求的结束位置
+     *
+     * @param index 块序号
+     * @return 起始位置；之后没有已缓存块时返回-1
+     */
+    synchronized long nextCachedOffset(int index) {
+        for (int i = index + 1; i < mBlockCount; i++) {
+            if (isCached(i)) {
+                return (long) i * BLOCK_SIZE;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 获取已缓存的字节数
+     *
+     * @return 字节数
+     */
+    synchronized long getCachedBytes() {
+        return (long) mCachedBlocks * BLOCK_SIZE;
+    }
+
+    /**
+     * 关闭文件
+     */
+    synchronized void close() {
+        mMap = null;
+        try {
+            mData.close();
+        } catch (IOException ex) {
+            // ignore
+        }
+    }
+
+    /**
+     * 映射索引文件
+     *
+     * @param length 视频长度
+     * @param create 是否新建索引，为false时使用已有索引
+     */
+    private void mapIndex(long length, boolean create) throws IOException {
+        int blockCount = (int) ((length + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        int mapSize = HEADER_SIZE + (blockCount + 7) / 8;
+        RandomAccessFile file = new RandomAccessFile(mMapFile, "rw");
+        try {
+            if (create) {
+                file.setLength(0);
+            }
+            file.setLength(mapSize);
+            mMap = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, mapSize);
+        } finally {
+            // 关闭文件不影响已经建立的映射
+            file.close();
+        }
+        if (create || mMap.getInt(0) != MAGIC || mMap.getInt(4) != VERSION
+                || mMap.getInt(8) != BLOCK_SIZE) {
+            for (int i = 0; i < mapSize; i++) {
+                mMap.put(i, (byte) 0);
+            }
+            mMap.putInt(0, MAGIC);
+            mMap.putInt(4, VERSION);
+            mMap.putInt(8, BLOCK_SIZE);
+            mMap.putLong(OFFSET_LENGTH, length);
+        }
+        mLength = length;
+        mBlockCount = blockCount;
+        mCachedBlocks = mMap.getInt(OFFSET_CACHED_BLOCKS);
+        mValidator = readValidator();
+    }
+
+    /**
+     * 读取索引中的校验值
+     */
+    private String readValidator() {
+        int size = mMap.getShort(OFFSET_VALIDATOR) & 0xffff;
+        if (size == 0 || size > MAX_VALIDATOR_BYTES) {
+            return null;
+        }
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = mMap.get(OFFSET_VALIDATOR + 2 + i);
+        }
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * 写入校验值，过长时不保存
+     */
+    private void writeValidator(String validator) throws UnsupportedEncodingException {
+        byte[] bytes = validator.getBytes("UTF-8");
+        if (bytes.length > MAX_VALIDATOR_BYTES) {
+            bytes = new byte[0];
+            validator = null;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            mMap.put(OFFSET_VALIDATOR + 2 + i, bytes[i]);
+        }
+        mMap.putShort(OFFSET_VALIDATOR, (short) bytes.length);
+        mValidator = validator;
+    }
+
+    /**
+     * 不映射文件，直接读取索引头部的字段，用于淘汰时统计大小
+     *
+     * @param mapFile 索引文件
+     * @param offset  字段偏移
+     * @return 字段值，文件无效时返回-1
+     */
+    static long readHeaderLong(File mapFile, int offset) {
+        if (mapFile.length() < HEADER_SIZE) {
+            return -1;
+        }
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(mapFile, "r");
+            if (file.readInt() != MAGIC || file.readInt() != VERSION
+                    || file.readInt() != BLOCK_SIZE) {
+                return -1;
+            }
+            file.seek(offset);
+            return offset == OFFSET_CACHED_BLOCKS ? file.readInt() : file.readLong();
+        } catch (IOException ex) {
+            return -1;
+        } finally {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException ex) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * 读取索引文件中记录的已缓存字节数
+     *
+     * @param mapFile 索引文件
+     * @return 字节数，文件无效时返回0
+     */
+    static long readCachedBytes(File mapFile) {
+        return Math.max(0, readHeaderLong(mapFile, OFFSET_CACHED_BLOCKS)) * BLOCK_SIZE;
+    }
+}
@@ -0,0 +1,287 @@
+package com.baidu.swan.videoplayer.cache;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.baidu.cloud.videoplayer.demo.BuildConfig;
+import com.baidu.swan.videoplayer.VideoUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 渐进式视频的按url稀疏磁盘缓存，配合{@link RangeCacheDataSource}使用。
+ * <p>
+ * 每个url对应一个{@link SparseCacheEntry}，已经下载过的字节区间保存在磁盘上，进程重启后仍然有效。
+ * 缓存key默认是去掉片段和鉴权等易变查询参数后的url，也可以由调用方指定。
+ * 总大小超过上限时按最近使用时间淘汰没有在播放的缓存
+ *
+ * @author machao10
+ * @since 2019-03-12
+ */
+public final class SparseFileCache {
+
+    /** debug 开关 */
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    /** debug tag */
+    private static final String TAG = "SparseFileCache";
+    /** 缓存目录名 */
+    private static final String DIR_NAME = "swan_video_range";
+    /** 默认的缓存上限，单位：字节 */
+    public static final long DEFAULT_MAX_BYTES = 512L * 1024 * 1024;
+
+    /** 单例 */
+    private static volatile SparseFileCache sInstance;
+
+    /** 缓存目录 */
+    private final File mDir;
+    /** 正在使用的缓存项 */
+    private final Map<String, SparseCacheEntry> mOpenEntries = new HashMap<>();
+    /** 本进程内已经和服务端校验过的缓存key */
+    private final Set<String> mValidatedKeys = new HashSet<>();
+    /** 计算缓存key时忽略的查询参数 */
+    private volatile Set<String> mIgnoredParameters = Collections.emptySet();
+    /** 缓存上限，单位：字节 */
+    private volatile long mMaxBytes = DEFAULT_MAX_BYTES;
+
+    /**
+     * 获取稀疏缓存单例
+     *
+     * @param context 上下文
+     * @return 单例
+     */
+    public static SparseFileCache getInstance(Context context) {
+        if (sInstance == null) {
+            synchronized (SparseFileCache.class) {
+                if (sInstance == null) {
+                    sInstance = new SparseFileCache(context.getApplicationContext());
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * 私有构造器
+     */
+    private SparseFileCache(Context appContext) {
+        this(new File(appContext.getCacheDir(), DIR_NAME));
+    }
+
+    /**
+     * 使用指定目录的构造器，单元测试使用
+     *
+     * @param dir 缓存目录
+     */
+    SparseFileCache(File dir) {
+        mDir = dir;
+    }
+
+    /**
+     * 设置缓存上限
+     *
+     * @param maxBytes 上限，单位：字节
+     */
+    public void setMaxBytes(long maxBytes) {
+        mMaxBytes = maxBytes;
+        trimAsync();
+    }
+
+    /**
+     * 设置计算缓存key时忽略的查询参数，如CDN鉴权签名、时间戳。
+     * 同一视频每次下发的地址只有这些参数不同时，可以共用同一份缓存
+     *
+     * @param names 参数名
+     */
+    public void setIgnoredQueryParameters(String... names) {
+        Set<String> ignored = new HashSet<>();
+        if (names != null) {
+            Collections.addAll(ignored, names);
+        }
+        mIgnoredParameters = ignored;
+    }
+
+    /**
+     * 获取指定url已缓存的字节数
+     *
+     * @param url 视频地址
+     * @return 字节数
+     */
+    public long getCachedBytes(String url) {
+        String key = keyOf(url);
+        synchronized (this) {
+            SparseCacheEntry entry = mOpenEntries.get(key);
+            if (entry != null) {
+                return entry.getCachedBytes();
+            }
+        }
+        return SparseCacheEntry.readCachedBytes(new File(mDir, key + SparseCacheEntry.MAP_SUFFIX));
+    }
+
+    /**
+     * 在后台线程删除所有没有在使用的缓存
+     */
+    public void clear() {
+        VideoUtils.getWorkerExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                trim(0);
+            }
+        });
+    }
+
+    /**
+     * 打开url对应的缓存项，同一缓存key共享同一个缓存项。会读写磁盘，不能在主线程调用
+     *
+     * @param url      视频地址
+     * @param cacheKey 调用方指定的缓存key，为null时按url计算
+     * @return 缓存项，使用完需要{@link #release(SparseCacheEntry)}
+     * @throws IOException 打开文件失败
+     */
+    synchronized SparseCacheEntry acquire(String url, String cacheKey) throws IOException {
+        String key = cacheKey != null ? VideoUtils.md5(cacheKey) : keyOf(url);
+        SparseCacheEntry entry = mOpenEntries.get(key);
+        if (entry == null) {
+            if (!mDir.exists() && !mDir.mkdirs()) {
+                throw new IOException("can not create " + mDir);
+            }
+            entry = new SparseCacheEntry(mDir, key);
+            mOpenEntries.put(key, entry);
+        }
+        entry.mRefCount++;
+        return entry;
+    }
+
+    /**
+     * 释放缓存项，没有引用时关闭文件并检查是否需要淘汰
+     *
+     * @param entry 缓存项
+     */
+    synchronized void release(SparseCacheEntry entry) {
+        if (--entry.mRefCount > 0) {
+            return;
+        }
+        mOpenEntries.remove(entry.mKey);
+        entry.close();
+        trimAsync();
+    }
+
+    /**
+     * 标记缓存项在本进程内已经和服务端校验过
+     *
+     * @param entry 缓存项
+     * @return true：之前没有校验过
+     */
+    synchronized boolean markValidated(SparseCacheEntry entry) {
+        return mValidatedKeys.add(entry.mKey);
+    }
+
+    /**
+     * 在后台线程按上限淘汰
+     */
+    private void trimAsync() {
+        VideoUtils.getWorkerExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                trim(mMaxBytes);
+            }
+        });
+    }
+
+    /**
+     * 淘汰最久未使用的缓存，直到总大小不超过上限。正在使用的缓存不淘汰
+     *
+     * @param maxBytes 上限，单位：字节
+     */
+    private void trim(long maxBytes) {
+        File[] files = mDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        List<File> maps = new ArrayList<>();
+        for (File file : files) {
+            if (file.getName().endsWith(SparseCacheEntry.MAP_SUFFIX)) {
+                maps.add(file);
+            }
+        }
+        File[] sorted = maps.toArray(new File[maps.size()]);
+        Arrays.sort(sorted, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? 1 : (l == r ? 0 : -1);
+            }
+        });
+        // 从最近使用的开始累计，超出上限之后的全部删除
+        long total = 0;
+        for (File map : sorted) {
+            total += SparseCacheEntry.readCachedBytes(map);
+            if (total <= maxBytes) {
+                continue;
+            }
+            String name = map.getName();
+            String key = name.substring(0, name.length() - SparseCacheEntry.MAP_SUFFIX.length());
+            synchronized (this) {
+                if (mOpenEntries.containsKey(key)) {
+                    continue;
+                }
+                map.delete();
+                new File(mDir, key + SparseCacheEntry.DATA_SUFFIX).delete();
+                mValidatedKeys.remove(key);
+            }
+            if (DEBUG) {
+                Log.d(TAG, "evict " + key);
+            }
+        }
+    }
+
+    /**
+     * url对应的缓存key
+     *
+     * @param url 视频地址
+     * @return 规范化后url的MD5
+     */
+    private String keyOf(String url) {
+        return VideoUtils.md5(normalizeUrl(url, mIgnoredParameters));
+    }
+
+    /**
+     * 规范化url：去掉片段和忽略的查询参数，其余参数保持原来的顺序
+     *
+     * @param url     视频地址
+     * @param ignored 忽略的查询参数名
+     * @return 规范化后的url
+     */
+    static String normalizeUrl(String url, Set<String> ignored) {
+        int hash = url.indexOf('#');
+        if (hash >= 0) {
+            url = url.substring(0, hash);
+        }
+        int question = url.indexOf('?');
+        if (question < 0 || ignored.isEmpty()) {
+            return url;
+        }
+        StringBuilder builder = new StringBuilder(url.length()).append(url, 0, question);
+        char separator = '?';
+        for (String param : url.substring(question + 1).split("&")) {
+            int eq = param.indexOf('=');
+            String name = eq >= 0 ? param.substring(0, eq) : param;
+            if (param.isEmpty() || ignored.contains(name)) {
+                continue;
+            }
+            builder.append(separator).append(param);
+            separator = '&';
+        }
+        return builder.toString();
+    }
+}
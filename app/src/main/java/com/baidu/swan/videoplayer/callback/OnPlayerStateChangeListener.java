@@ -0,0 +1,17 @@
+package com.baidu.swan.videoplayer.callback;
+
+/**
+ * 播放器状态变化监听
+ *
+ * @author machao10
+ * @since 2019-03-08
+ */
+public interface OnPlayerStateChangeListener {
+
+    /**
+     * 播放器状态变化
+     *
+     * @param state 新状态，取值见SwanVideoView中的STATE_*
+     */
+    void onPlayerStateChanged(int state);
+}
@@ -0,0 +1,18 @@
+package com.baidu.swan.videoplayer.callback;
+
+/**
+ * 播放进度监听，播放过程中按{@link VideoEventDispatcher#setPositionUpdateInterval(long)}的频率回调
+ *
+ * @author machao10
+ * @since 2019-03-07
+ */
+public interface OnPositionUpdateListener {
+
+    /**
+     * 播放进度更新
+     *
+     * @param positionMs 当前播放位置，单位：ms
+     * @param durationMs 视频总时长，单位：ms；直播或未知时为0
+     */
+    void onPositionUpdate(long positionMs, long durationMs);
+}
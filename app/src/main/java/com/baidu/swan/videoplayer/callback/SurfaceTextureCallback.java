@@ -7,6 +7,7 @@ import android.view.TextureView;
 
 import com.baidu.swan.videoplayer.BuildConfig;
 import com.baidu.swan.videoplayer.SwanVideoView;
+import com.baidu.swan.videoplayer.monitor.FrameTimingMonitor;
 
 /**
  * SurfaceTexture状态回调
@@ -26,8 +27,12 @@ public final class SurfaceTextureCallback implements TextureView.SurfaceTextureL
     private TextureView mTextureView;
     /** 绘制视频的SurfaceTexture */
     private SurfaceTexture mSurfaceTexture;
+    /** 基于mSurfaceTexture创建的Surface，在整个生命周期内复用 */
+    private Surface mSurface;
     /** 标记是否需要释放surface */
     private boolean mNeedReleaseSurface = false;
+    /** 渲染帧间隔统计，可以为null */
+    private FrameTimingMonitor mFrameTimingMonitor;
 
     /**
      * SurfaceTexture状态回调构造器
@@ -40,6 +45,15 @@ public final class SurfaceTextureCallback implements TextureView.SurfaceTextureL
         mTextureView = textureView;
     }
 
+    /**
+     * 设置渲染帧间隔统计，每收到一帧记录一次
+     *
+     * @param monitor 帧间隔统计，为null时不统计
+     */
+    public void setFrameTimingMonitor(FrameTimingMonitor monitor) {
+        mFrameTimingMonitor = monitor;
+    }
+
     /**
      * 设置是否需要释放surface
      *
@@ -57,13 +71,40 @@ public final class SurfaceTextureCallback implements TextureView.SurfaceTextureL
         // 第一次available的时候保存SurfaceTexture对象
         if (mSurfaceTexture == null) {
             mSurfaceTexture = surface;
-            mVideoView.setSurface(new Surface(surface));
-        } else {
-            // 已经存在TextureView，则更新surfaceTexture
+            mSurface = new Surface(surface);
+            mVideoView.setSurface(mSurface);
+        } else if (surface != mSurfaceTexture) {
+            // 重新attach前没有调用prepareReattach，TextureView新建了SurfaceTexture，这里换回原来的
+            mTextureView.setSurfaceTexture(mSurfaceTexture);
+        }
+    }
+
+    /**
+     * 在TextureView从旧的父布局移除之后、添加到新的父布局之前调用。
+     * <p>
+     * 提前把保存的SurfaceTexture交给TextureView，重新attach时就会直接使用它，
+     * 不会新建SurfaceTexture，播放器持有的Surface始终有效，避免黑屏和解码器重新配置。
+     */
+    public void prepareReattach() {
+        if (mSurfaceTexture != null && mTextureView.getSurfaceTexture() != mSurfaceTexture) {
             mTextureView.setSurfaceTexture(mSurfaceTexture);
         }
     }
 
+    /**
+     * 释放保存的Surface和SurfaceTexture。TextureView已经detach时，它不会再替我们释放
+     */
+    public void release() {
+        if (mSurface != null) {
+            mSurface.release();
+            mSurface = null;
+        }
+        if (mSurfaceTexture != null) {
+            mSurfaceTexture.release();
+            mSurfaceTexture = null;
+        }
+    }
+
     @Override
     public void onSurfaceTextureSizeChanged(SurfaceTexture surface, int width, int height) {
         if (DEBUG) {
@@ -81,8 +122,9 @@ public final class SurfaceTextureCallback implements TextureView.SurfaceTextureL
 
     @Override
     public void onSurfaceTextureUpdated(SurfaceTexture surface) {
-        if (DEBUG) {
-            Log.d(TAG, "onSurfaceTextureUpdated");
+        // 每帧都会回调，这里不打日志，否则debug包的帧间隔统计会失真
+        if (mFrameTimingMonitor != null) {
+            mFrameTimingMonitor.onFrame();
         }
     }
 
@@ -0,0 +1,418 @@
+package com.baidu.swan.videoplayer.callback;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.baidu.cloud.media.player.IMediaPlayer;
+import com.baidu.swan.videoplayer.SwanVideoView;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 播放器事件分发，支持多个监听者，每个监听者可以只订阅部分事件。
+ * <p>
+ * 监听者列表写时复制，分发过程中增删监听者是安全的；缓冲进度和播放进度这类高频事件
+ * 按设定的间隔合并，只分发最新的值。所有回调都在主线程进行
+ *
+ * @author machao10
+ * @since 2019-03-07
+ */
+public class VideoEventDispatcher implements IVideoPlayerCallback {
+
+    /** 准备完成事件 */
+    public static final int EVENT_PREPARED = 1;
+    /** 播放结束事件 */
+    public static final int EVENT_COMPLETION = 1 << 1;
+    /** 播放错误事件 */
+    public static final int EVENT_ERROR = 1 << 2;
+    /** 播放信息事件 */
+    public static final int EVENT_INFO = 1 << 3;
+    /** seek完成事件 */
+    public static final int EVENT_SEEK_COMPLETE = 1 << 4;
+    /** 缓冲进度事件，高频，按间隔合并 */
+    public static final int EVENT_BUFFERING_UPDATE = 1 << 5;
+    /** 视频尺寸变化事件 */
+    public static final int EVENT_VIDEO_SIZE_CHANGED = 1 << 6;
+    /** 横竖屏切换事件 */
+    public static final int EVENT_SCREEN_ORIENTATION = 1 << 7;
+    /** 全部事件 */
+    public static final int EVENT_ALL = 0xff;
+
+    /** 默认的缓冲进度分发间隔，单位：ms */
+    public static final long DEFAULT_BUFFERING_INTERVAL_MS = 500;
+    /** 默认的播放进度分发间隔，单位：ms */
+    public static final long DEFAULT_POSITION_INTERVAL_MS = 250;
+
+    /**
+     * 播放进度来源
+     */
+    public interface PositionSource {
+        /**
+         * 获取当前播放位置
+         *
+         * @return 播放位置，单位：ms
+         */
+        long getCurrentPosition();
+
+        /**
+         * 获取视频总时长
+         *
+         * @return 总时长，单位：ms
+         */
+        long getDuration();
+    }
+
+    /**
+     * 监听者及其订阅的事件
+     */
+    private static final class Registration {
+        /** 监听者 */
+        final IVideoPlayerCallback callback;
+        /** 订阅的事件 */
+        final int events;
+
+        Registration(IVideoPlayerCallback callback, int events) {
+            this.callback = callback;
+            this.events = events;
+        }
+    }
+
+    /** 主线程handler */
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    /** 事件监听者 */
+    private final CopyOnWriteArrayList<Registration> mRegistrations =
+            new CopyOnWriteArrayList<>();
+    /** 播放进度监听者 */
+    private final CopyOnWriteArrayList<OnPositionUpdateListener> mPositionListeners =
+            new CopyOnWriteArrayList<>();
+    /** 播放器状态监听者 */
+    private final CopyOnWriteArrayList<OnPlayerStateChangeListener> mStateListeners =
+            new CopyOnWriteArrayList<>();
+    /** 播放进度来源 */
+    private final PositionSource mPositionSource;
+
+    /** 缓冲进度分发间隔，单位：ms */
+    private long mBufferingIntervalMs = DEFAULT_BUFFERING_INTERVAL_MS;
+    /** 播放进度分发间隔，单位：ms */
+    private long mPositionIntervalMs = DEFAULT_POSITION_INTERVAL_MS;
+    /** 上次分发的缓冲进度 */
+    private int mLastBufferingPercent = -1;
+    /** 上次分发缓冲进度的时间 */
+    private long mLastBufferingDispatchMs;
+    /** 等待分发的缓冲进度 */
+    private int mPendingBufferingPercent = -1;
+    /** 等待分发的缓冲进度对应的播放器 */
+    private IMediaPlayer mPendingBufferingPlayer;
+    /** 是否已经安排了合并后的缓冲进度分发 */
+    private boolean mBufferingScheduled;
+    /** 是否正在播放 */
+    private boolean mPlaying;
+
+    /**
+     * 构造器
+     *
+     * @param positionSource 播放进度来源
+     */
+    public VideoEventDispatcher(PositionSource positionSource) {
+        mPositionSource = positionSource;
+    }
+
+    /**
+     * 添加订阅全部事件的监听者
+     *
+     * @param callback 监听者
+     */
+    public void addCallback(IVideoPlayerCallback callback) {
+        addCallback(callback, EVENT_ALL);
+    }
+
+    /**
+     * 添加监听者，同一监听者重复添加时更新订阅的事件
+     *
+     * @param callback 监听者
+     * @param events   订阅的事件，EVENT_*的组合
+     */
+    public void addCallback(IVideoPlayerCallback callback, int events) {
+        if (callback == null || callback == this) {
+            return;
+        }
+        removeCallback(callback);
+        mRegistrations.add(new Registration(callback, events));
+    }
+
+    /**
+     * 移除监听者
+     *
+     * @param callback 监听者
+     */
+    public void removeCallback(IVideoPlayerCallback callback) {
+        for (Registration registration : mRegistrations) {
+            if (registration.callback == callback) {
+                mRegistrations.remove(registration);
+            }
+        }
+    }
+
+    /**
+     * 添加播放进度监听者
+     *
+     * @param listener 监听者
+     */
+    public void addPositionListener(OnPositionUpdateListener listener) {
+        if (listener != null && mPositionListeners.addIfAbsent(listener) && mPlaying) {
+            scheduleNextPosition();
+        }
+    }
+
+    /**
+     * 移除播放进度监听者
+     *
+     * @param listener 监听者
+     */
+    public void removePositionListener(OnPositionUpdateListener listener) {
+        mPositionListeners.remove(listener);
+    }
+
+    /**
+     * 添加播放器状态监听者
+     *
+     * @param listener 监听者
+     */
+    public void addStateListener(OnPlayerStateChangeListener listener) {
+        if (listener != null) {
+            mStateListeners.addIfAbsent(listener);
+        }
+    }
+
+    /**
+     * 移除播放器状态监听者
+     *
+     * @param listener 监听者
+     */
+    public void removeStateListener(OnPlayerStateChangeListener listener) {
+        mStateListeners.remove(listener);
+    }
+
+    /**
+     * 设置缓冲进度的最小分发间隔
+     *
+     * @param intervalMs 间隔，单位：ms；为0时不合并
+     */
+    public void setBufferingUpdateInterval(long intervalMs) {
+        mBufferingIntervalMs = Math.max(0, intervalMs);
+    }
+
+    /**
+     * 设置播放进度的分发间隔
+     *
+     * @param intervalMs 间隔，单位：ms，最小16ms
+     */
+    public void setPositionUpdateInterval(long intervalMs) {
+        mPositionIntervalMs = Math.max(16, intervalMs);
+    }
+
+    /**
+     * 播放器状态变化，分发给状态监听者，并在播放中按间隔分发播放进度
+     *
+     * @param state 新状态，取值见{@link SwanVideoView}中的STATE_*
+     */
+    public void onStateChanged(int state) {
+        for (OnPlayerStateChangeListener listener : mStateListeners) {
+            listener.onPlayerStateChanged(state);
+        }
+        setPlaying(state == SwanVideoView.STATE_PLAYING);
+    }
+
+    /**
+     * 播放中按间隔分发播放进度，暂停时分发一次最终位置
+     *
+     * @param playing 是否正在播放
+     */
+    private void setPlaying(boolean playing) {
+        if (mPlaying == playing) {
+            return;
+        }
+        mPlaying = playing;
+        mHandler.removeCallbacks(mPositionRunnable);
+        if (!mPositionListeners.isEmpty()) {
+            dispatchPosition();
+            if (playing) {
+                scheduleNextPosition();
+            }
+        }
+    }
+
+    /**
+     * 开始新的播放会话，丢弃上一会话未分发的高频事件
+     */
+    public void reset() {
+        mHandler.removeCallbacks(mBufferingRunnable);
+        mHandler.removeCallbacks(mPositionRunnable);
+        mBufferingScheduled = false;
+        mPendingBufferingPlayer = null;
+        mPendingBufferingPercent = -1;
+        mLastBufferingPercent = -1;
+        mPlaying = false;
+    }
+
+    @Override
+    public void onPrepared(IMediaPlayer player) {
+        for (Registration registration : mRegistrations) {
+            if ((registration.events & EVENT_PREPARED) != 0) {
+                registration.callback.onPrepared(player);
+            }
+        }
+    }
+
+    @Override
+    public void onCompletion(IMediaPlayer player) {
+        flushBuffering();
+        for (Registration registration : mRegistrations) {
+            if ((registration.events & EVENT_COMPLETION) != 0) {
+                registration.callback.onCompletion(player);
+            }
+        }
+    }
+
+    /**
+     * 分发播放错误
+     *
+     * @return 有监听者处理了错误，或者没有监听者订阅错误时返回true
+     */
+    @Override
+    public boolean onError(IMediaPlayer player, int what, int extra) {
+        boolean subscribed = false;
+        boolean handled = false;
+        for (Registration registration : mRegistrations) {
+            if ((registration.events & EVENT_ERROR) != 0) {
+                subscribed = true;
+                handled |= registration.callback.onError(player, what, extra);
+            }
+        }
+        return !subscribed || handled;
+    }
+
+    @Override
+    public boolean onInfo(IMediaPlayer player, int what, int extra) {
+        boolean handled = false;
+        for (Registration registration : mRegistrations) {
+            if ((registration.events & EVENT_INFO) != 0) {
+                handled |= registration.callback.onInfo(player, what, extra);
+            }
+        }
+        return handled;
+    }
+
+    @Override
+    public void onSeekComplete(IMediaPlayer player) {
+        for (Registration registration : mRegistrations) {
+            if ((registration.events & EVENT_SEEK_COMPLETE) != 0) {
+                registration.callback.onSeekComplete(player);
+            }
+        }
+        if (!mPositionListeners.isEmpty()) {
+            dispatchPosition();
+        }
+    }
+
+    @Override
+    public void onBufferingUpdate(IMediaPlayer player, int percent) {
+        if (percent == mLastBufferingPercent && mPendingBufferingPlayer == null) {
+            return;
+        }
+        mPendingBufferingPlayer = player;
+        mPendingBufferingPercent = percent;
+        long wait = mLastBufferingDispatchMs + mBufferingIntervalMs - SystemClock.uptimeMillis();
+        if (wait <= 0) {
+            mHandler.removeCallbacks(mBufferingRunnable);
+            mBufferingScheduled = false;
+            flushBuffering();
+        } else if (!mBufferingScheduled) {
+            mBufferingScheduled = true;
+            mHandler.postDelayed(mBufferingRunnable, wait);
+        }
+    }
+
+    @Override
+    public void onVideoSizeChanged(IMediaPlayer player, int width, int height,
+                                   int sarNum, int sarDen) {
+        for (Registration registration : mRegistrations) {
+            if ((registration.events & EVENT_VIDEO_SIZE_CHANGED) != 0) {
+                registration.callback.onVideoSizeChanged(player, width, height, sarNum, sarDen);
+            }
+        }
+    }
+
+    @Override
+    public void onScreenOrientationChanged(boolean landscape) {
+        for (Registration registration : mRegistrations) {
+            if ((registration.events & EVENT_SCREEN_ORIENTATION) != 0) {
+                registration.callback.onScreenOrientationChanged(landscape);
+            }
+        }
+    }
+
+    /**
+     * 分发等待中的缓冲进度
+     */
+    private void flushBuffering() {
+        IMediaPlayer player = mPendingBufferingPlayer;
+        if (player == null) {
+            return;
+        }
+        int percent = mPendingBufferingPercent;
+        mPendingBufferingPlayer = null;
+        mLastBufferingPercent = percent;
+        mLastBufferingDispatchMs = SystemClock.uptimeMillis();
+        for (Registration registration : mRegistrations) {
+            if ((registration.events & EVENT_BUFFERING_UPDATE) != 0) {
+                registration.callback.onBufferingUpdate(player, percent);
+            }
+        }
+    }
+
+    /**
+     * 分发当前播放进度
+     */
+    private void dispatchPosition() {
+        long position = mPositionSource.getCurrentPosition();
+        long duration = mPositionSource.getDuration();
+        for (OnPositionUpdateListener listener : mPositionListeners) {
+            listener.onPositionUpdate(position, duration);
+        }
+    }
+
+    /**
+     * 安排下一次播放进度分发
+     */
+    private void scheduleNextPosition() {
+        mHandler.removeCallbacks(mPositionRunnable);
+        mHandler.postDelayed(mPositionRunnable, mPositionIntervalMs);
+    }
+
+    /**
+     * 合并后的缓冲进度分发
+     */
+    private final Runnable mBufferingRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mBufferingScheduled = false;
+            flushBuffering();
+        }
+    };
+
+    /**
+     * 播放中的播放进度分发
+     */
+    private final Runnable mPositionRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (!mPlaying || mPositionListeners.isEmpty()) {
+                return;
+            }
+            dispatchPosition();
+            scheduleNextPosition();
+        }
+    };
+}
@@ -0,0 +1,389 @@
+package com.baidu.swan.videoplayer.decoder;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.os.Build;
+import android.util.Log;
+
+import com.baidu.cloud.media.player.BDCloudMediaPlayer;
+import com.baidu.cloud.videoplayer.demo.BuildConfig;
+import com.baidu.swan.videoplayer.VideoUtils;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 设备硬解能力探测。
+ * <p>
+ * 每个设备+系统版本只探测一次：在后台线程枚举MediaCodec，按MIME类型记录硬解支持的分辨率和帧率档位，
+ * 结果以{@link Build#FINGERPRINT}为key持久化。创建播放器时据此提前决定硬解或软解，
+ * 避免每次起播都由SDK自动探测，以及硬解中途失败再回退软解的开销。
+ * 持久化数据只在后台线程读写，主线程只读取内存中的结果。
+ *
+ * @author machao10
+ * @since 2019-02-27
+ */
+public final class DecoderCapabilities {
+
+    /** debug 开关 */
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    /** debug tag */
+    private static final String TAG = "DecoderCapabilities";
+    /** 持久化文件名 */
+    private static final String PREFS_NAME = "swan_video_decoder";
+    /** 持久化的设备指纹key */
+    private static final String KEY_FINGERPRINT = "fingerprint";
+    /** 持久化的硬解能力key前缀 */
+    private static final String KEY_CAPS_PREFIX = "caps_";
+    /** 持久化的硬解失败次数key前缀 */
+    private static final String KEY_FAILURE_PREFIX = "hw_fail_";
+    /** 同一MIME硬解失败达到此次数后，不再尝试硬解 */
+    private static final int MAX_HW_FAILURES = 2;
+
+    /** 视频编码名（MP4的采样描述或内核返回的编码名）到MIME类型的映射 */
+    private static final String[][] CODEC_MIMES = {
+            {"avc1", "video/avc"}, {"avc3", "video/avc"}, {"h264", "video/avc"},
+            {"hvc1", "video/hevc"}, {"hev1", "video/hevc"}, {"hevc", "video/hevc"},
+            {"vp09", "video/x-vnd.on2.vp9"}, {"vp9", "video/x-vnd.on2.vp9"},
+            {"av01", "video/av01"}, {"av1", "video/av01"},
+            {"mp4v", "video/mp4v-es"}, {"mpeg4", "video/mp4v-es"}
+    };
+    /** 需要探测的MIME类型 */
+    private static final String[] PROBE_MIMES = {
+            "video/avc", "video/hevc", "video/x-vnd.on2.vp9", "video/av01", "video/mp4v-es"
+    };
+    /** 探测的分辨率和帧率档位：{宽, 高, 帧率}，结果按下标存为位掩码 */
+    private static final int[][] PROBE_LEVELS = {
+            {854, 480, 30}, {1280, 720, 30}, {1280, 720, 60}, {1920, 1080, 30},
+            {1920, 1080, 60}, {3840, 2160, 30}, {3840, 2160, 60}
+    };
+
+    /** 单例 */
+    private static volatile DecoderCapabilities sInstance;
+
+    /** 应用上下文 */
+    private final Context mAppContext;
+    /** 持久化存储，在后台线程第一次使用时打开 */
+    private SharedPreferences mPrefs;
+    /** 各MIME的硬解能力位掩码，探测完成前为null */
+    private volatile Map<String, Integer> mCapabilities;
+    /** 各MIME的硬解失败次数，探测时从持久化存储加载 */
+    private final Map<String, Integer> mFailures = new ConcurrentHashMap<>();
+    /** 是否已经开始探测 */
+    private boolean mProbeStarted;
+
+    /**
+     * 获取硬解能力探测单例
+     *
+     * @param context 上下文
+     * @return 单例
+     */
+    public static DecoderCapabilities getInstance(Context context) {
+        if (sInstance == null) {
+            synchronized (DecoderCapabilities.class) {
+                if (sInstance == null) {
+                    sInstance = new DecoderCapabilities(context.getApplicationContext());
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * 私有构造器
+     */
+    private DecoderCapabilities(Context appContext) {
+        mAppContext = appContext;
+    }
+
+    /**
+     * 在后台线程加载或探测硬解能力，多次调用只会执行一次
+     */
+    public void probeAsync() {
+        synchronized (this) {
+            if (mProbeStarted) {
+                return;
+            }
+            mProbeStarted = true;
+        }
+        VideoUtils.getWorkerExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                probeSync();
+            }
+        });
+    }
+
+    /**
+     * 同步加载或探测硬解能力，会阻塞，不能在主线程调用
+     */
+    public void probeSync() {
+        if (mCapabilities != null) {
+            return;
+        }
+        synchronized (this) {
+            mProbeStarted = true;
+            if (mCapabilities != null) {
+                return;
+            }
+            Map<String, Integer> caps = load();
+            if (caps != null) {
+                loadFailures();
+            } else {
+                long start = System.currentTimeMillis();
+                caps = probe();
+                save(caps);
+                if (DEBUG) {
+                    Log.d(TAG, "probe decoders cost " + (System.currentTimeMillis() - start)
+                            + "ms : " + caps);
+                }
+            }
+            mCapabilities = caps;
+        }
+    }
+
+    /**
+     * 是否已经拿到探测结果
+     *
+     * @return true：已就绪
+     */
+    public boolean isReady() {
+        return mCapabilities != null;
+    }
+
+    /**
+     * 判断指定格式的视频是否可以硬解
+     *
+     * @param mime   视频MIME类型，如video/avc
+     * @param width  视频宽度，未知时传0
+     * @param height 视频高度，未知时传0
+     * @param fps    视频帧率，未知时传0
+     * @return true：可以硬解；探测未完成或MIME未知时也返回true，由SDK自行决定。
+     * 只读取内存中的结果，可以在主线程调用
+     */
+    public boolean isHardwareSupported(String mime, int width, int height, int fps) {
+        Map<String, Integer> caps = mCapabilities;
+        if (caps == null || mime == null) {
+            return true;
+        }
+        String key = mime.toLowerCase(Locale.US);
+        Integer failures = mFailures.get(key);
+        if (failures != null && failures >= MAX_HW_FAILURES) {
+            return false;
+        }
+        Integer mask = caps.get(key);
+        if (mask == null) {
+            return true;
+        }
+        if (mask == 0) {
+            return false;
+        }
+        if (width <= 0 || height <= 0) {
+            return true;
+        }
+        int frameRate = fps > 0 ? fps : 30;
+        int longSide = Math.max(width, height);
+        int shortSide = Math.min(width, height);
+        for (int i = 0; i < PROBE_LEVELS.length; i++) {
+            int[] level = PROBE_LEVELS[i];
+            if (longSide <= level[0] && shortSide <= level[1] && frameRate <= level[2]) {
+                return (mask & (1 << i)) != 0;
+            }
+        }
+        // 超过最高档位，不冒险硬解
+        return false;
+    }
+
+    /**
+     * 为指定格式的视频选择解码模式
+     *
+     * @param mime   视频MIME类型，未知时传null
+     * @param width  视频宽度，未知时传0
+     * @param height 视频高度，未知时传0
+     * @param fps    视频帧率，未知时传0
+     * @return {@link BDCloudMediaPlayer#DECODE_AUTO}（优先硬解）或{@link BDCloudMediaPlayer#DECODE_SW}
+     */
+    public int selectDecodeMode(String mime, int width, int height, int fps) {
+        return isHardwareSupported(mime, width, height, fps)
+                ? BDCloudMediaPlayer.DECODE_AUTO : BDCloudMediaPlayer.DECODE_SW;
+    }
+
+    /**
+     * 将视频编码名转换为MIME类型
+     *
+     * @param codec 编码名，如avc1、hvc1、h264，已经是MIME类型时原样返回
+     * @return MIME类型，无法识别时返回null
+     */
+    public static String mimeOfCodec(String codec) {
+        if (codec == null) {
+            return null;
+        }
+        String lower = codec.trim().toLowerCase(Locale.US);
+        if (lower.startsWith("video/")) {
+            return lower;
+        }
+        for (String[] pair : CODEC_MIMES) {
+            if (pair[0].equals(lower)) {
+                return pair[1];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 记录一次硬解失败，失败次数过多的格式之后直接使用软解。内存中立即生效，在后台线程持久化
+     *
+     * @param mime 视频MIME类型
+     */
+    public void reportHardwareFailure(String mime) {
+        if (mime == null) {
+            return;
+        }
+        final String key = mime.toLowerCase(Locale.US);
+        Integer failures = mFailures.get(key);
+        mFailures.put(key, failures == null ? 1 : failures + 1);
+        VideoUtils.getWorkerExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                SharedPreferences prefs = getPrefs();
+                int count = prefs.getInt(KEY_FAILURE_PREFIX + key, 0) + 1;
+                prefs.edit().putInt(KEY_FAILURE_PREFIX + key, count).apply();
+                Integer current = mFailures.get(key);
+                if (current == null || current < count) {
+                    mFailures.put(key, count);
+                }
+            }
+        });
+    }
+
+    /**
+     * 打开持久化存储，会读文件，不能在主线程调用
+     */
+    private synchronized SharedPreferences getPrefs() {
+        if (mPrefs == null) {
+            mPrefs = mAppContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        }
+        return mPrefs;
+    }
+
+    /**
+     * 从持久化存储加载历史硬解失败次数，和本进程内已经记录的次数取较大值
+     */
+    private void loadFailures() {
+        for (Map.Entry<String, ?> entry : getPrefs().getAll().entrySet()) {
+            String name = entry.getKey();
+            if (!name.startsWith(KEY_FAILURE_PREFIX) || !(entry.getValue() instanceof Integer)) {
+                continue;
+            }
+            String key = name.substring(KEY_FAILURE_PREFIX.length());
+            int count = (Integer) entry.getValue();
+            Integer current = mFailures.get(key);
+            if (current == null || current < count) {
+                mFailures.put(key, count);
+            }
+        }
+    }
+
+    /**
+     * 从持久化存储加载，设备指纹变化（如系统升级）时返回null
+     */
+    private Map<String, Integer> load() {
+        SharedPreferences prefs = getPrefs();
+        if (!Build.FINGERPRINT.equals(prefs.getString(KEY_FINGERPRINT, null))) {
+            return null;
+        }
+        Map<String, Integer> caps = new HashMap<>();
+        for (String mime : PROBE_MIMES) {
+            int mask = prefs.getInt(KEY_CAPS_PREFIX + mime, -1);
+            if (mask >= 0) {
+                caps.put(mime, mask);
+            }
+        }
+        return caps;
+    }
+
+    /**
+     * 持久化探测结果，系统版本变化时一并清空历史硬解失败记录
+     */
+    private void save(Map<String, Integer> caps) {
+        SharedPreferences.Editor editor = getPrefs().edit().clear();
+        editor.putString(KEY_FINGERPRINT, Build.FINGERPRINT);
+        for (Map.Entry<String, Integer> entry : caps.entrySet()) {
+            editor.putInt(KEY_CAPS_PREFIX + entry.getKey(), entry.getValue());
+        }
+        editor.apply();
+    }
+
+    /**
+     * 枚举系统解码器，计算各MIME的硬解能力位掩码
+     */
+    private static Map<String, Integer> probe() {
+        Map<String, Integer> caps = new HashMap<>();
+        for (String mime : PROBE_MIMES) {
+            caps.put(mime, 0);
+        }
+        MediaCodecInfo[] infos;
+        try {
+            infos = new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos();
+        } catch (RuntimeException ex) {
+            if (DEBUG) {
+                Log.w(TAG, "list codecs failed", ex);
+            }
+            return caps;
+        }
+        for (MediaCodecInfo info : infos) {
+            if (info.isEncoder() || isSoftwareCodec(info.getName())) {
+                continue;
+            }
+            for (String type : info.getSupportedTypes()) {
+                String mime = type.toLowerCase(Locale.US);
+                Integer mask = caps.get(mime);
+                if (mask == null) {
+                    continue;
+                }
+                caps.put(mime, mask | probeLevels(info, type));
+            }
+        }
+        return caps;
+    }
+
+    /**
+     * 探测单个解码器支持的档位
+     */
+    private static int probeLevels(MediaCodecInfo info, String type) {
+        int mask = 0;
+        try {
+            MediaCodecInfo.VideoCapabilities video =
+                    info.getCapabilitiesForType(type).getVideoCapabilities();
+            if (video == null) {
+                return 0;
+            }
+            for (int i = 0; i < PROBE_LEVELS.length; i++) {
+                int[] level = PROBE_LEVELS[i];
+                if (video.areSizeAndRateSupported(level[0], level[1], level[2])
+                        || video.areSizeAndRateSupported(level[1], level[0], level[2])) {
+                    mask |= 1 << i;
+                }
+            }
+        } catch (RuntimeException ex) {
+            if (DEBUG) {
+                Log.w(TAG, "probe " + info.getName() + " failed", ex);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * 判断是否为软件解码器
+     */
+    private static boolean isSoftwareCodec(String name) {
+        String lower = name.toLowerCase(Locale.US);
+        return lower.startsWith("omx.google.") || lower.startsWith("c2.android.")
+                || lower.startsWith("omx.ffmpeg.") || lower.contains(".sw.")
+                || lower.endsWith(".sw");
+    }
+}
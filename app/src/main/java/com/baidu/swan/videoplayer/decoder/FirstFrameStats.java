@@ -0,0 +1,182 @@
+package com.baidu.swan.videoplayer.decoder;
+
+import com.baidu.cloud.media.player.BDCloudMediaPlayer;
+
+/**
+ * 按解码模式统计首帧耗时，用于评估提前选择解码模式的收益；另外按是否并行预取分片统计HLS起播耗时，
+ * 用于评估起播预取的收益；按是否走本地快速路径统计本地视频首帧耗时。进程内全局共享，线程安全
+ *
+ * @author machao10
+ * @since 2019-02-27
+ */
+public final class FirstFrameStats {
+
+    /** 自动（优先硬解）模式的统计 */
+    private static final Bucket AUTO = new Bucket();
+    /** 软解模式的统计 */
+    private static final Bucket SOFTWARE = new Bucket();
+    /** HLS由播放器串行下载分片起播的统计 */
+    private static final Bucket HLS_SERIAL = new Bucket();
+    /** HLS并行预取前几个分片起播的统计 */
+    private static final Bucket HLS_PREFETCH = new Bucket();
+    /** 本地视频走通用打开流程的统计 */
+    private static final Bucket LOCAL_GENERIC = new Bucket();
+    /** 本地视频直接打开文件描述符的统计 */
+    private static final Bucket LOCAL_FAST = new Bucket();
+
+    /**
+     * 单个解码模式的统计
+     */
+    public static final class Bucket {
+        /** 样本数 */
+        private int mCount;
+        /** 总耗时，单位：ms */
+        private long mTotalMs;
+        /** 最短耗时，单位：ms */
+        private long mMinMs = Long.MAX_VALUE;
+        /** 最长耗时，单位：ms */
+        private long mMaxMs;
+
+        /**
+         * 记录一个样本
+         */
+        synchronized void add(long costMs) {
+            mCount++;
+            mTotalMs += costMs;
+            mMinMs = Math.min(mMinMs, costMs);
+            mMaxMs = Math.max(mMaxMs, costMs);
+        }
+
+        /**
+         * 获取样本数
+         *
+         * @return 样本数
+         */
+        public synchronized int getCount() {
+            return mCount;
+        }
+
+        /**
+         * 获取平均首帧耗时
+         *
+         * @return 平均耗时，单位：ms
+         */
+        public synchronized long getAverageMs() {
+            return mCount == 0 ? 0 : mTotalMs / mCount;
+        }
+
+        /**
+         * 获取最短首帧耗时
+         *
+         * @return 最短耗时，单位：ms
+         */
+        public synchronized long getMinMs() {
+            return mCount == 0 ? 0 : mMinMs;
+        }
+
+        /**
+         * 获取最长首帧耗时
+         *
+         * @return 最长耗时，单位：ms
+         */
+        public synchronized long getMaxMs() {
+            return mMaxMs;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "{count=" + mCount + ", avg=" + getAverageMs() + "ms, min=" + getMinMs()
+                    + "ms, max=" + mMaxMs + "ms}";
+        }
+    }
+
+    /**
+     * 工具类，不允许实例化
+     */
+    private FirstFrameStats() {
+    }
+
+    /**
+     * 记录一次首帧耗时
+     *
+     * @param decodeMode 解码模式
+     * @param costMs     从打开视频到首帧渲染的耗时，单位：ms
+     */
+    public static void record(int decodeMode, long costMs) {
+        get(decodeMode).add(costMs);
+    }
+
+    /**
+     * 获取指定解码模式的统计
+     *
+     * @param decodeMode {@link BDCloudMediaPlayer#DECODE_AUTO}或{@link BDCloudMediaPlayer#DECODE_SW}
+     * @return 统计
+     */
+    public static Bucket get(int decodeMode) {
+        return decodeMode == BDCloudMediaPlayer.DECODE_SW ? SOFTWARE : AUTO;
+    }
+
+    /**
+     * 记录一次HLS起播耗时
+     *
+     * @param prefetched 是否并行预取了前几个分片
+     * @param costMs     从设置视频源到首帧渲染的耗时，包括下载播放列表，单位：ms
+     */
+    public static void recordHls(boolean prefetched, long costMs) {
+        getHls(prefetched).add(costMs);
+    }
+
+    /**
+     * 获取HLS起播耗时统计
+     *
+     * @param prefetched true：并行预取；false：播放器串行下载
+     * @return 统计
+     */
+    public static Bucket getHls(boolean prefetched) {
+        return prefetched ? HLS_PREFETCH : HLS_SERIAL;
+    }
+
+    /**
+     * 获取并行预取相对串行起播节省的平均耗时
+     *
+     * @return 节省的耗时，单位：ms，任一方式还没有样本时返回0
+     */
+    public static long getHlsPrefetchGainMs() {
+        if (HLS_SERIAL.getCount() == 0 || HLS_PREFETCH.getCount() == 0) {
+            return 0;
+        }
+        return HLS_SERIAL.getAverageMs() - HLS_PREFETCH.getAverageMs();
+    }
+
+    /**
+     * 记录一次本地视频首帧耗时
+     *
+     * @param fastPath 是否直接打开文件描述符
+     * @param costMs   从打开视频到首帧渲染的耗时，单位：ms
+     */
+    public static void recordLocal(boolean fastPath, long costMs) {
+        getLocal(fastPath).add(costMs);
+    }
+
+    /**
+     * 获取本地视频首帧耗时统计
+     *
+     * @param fastPath true：直接打开文件描述符；false：通用打开流程
+     * @return 统计
+     */
+    public static Bucket getLocal(boolean fastPath) {
+        return fastPath ? LOCAL_FAST : LOCAL_GENERIC;
+    }
+
+    /**
+     * 获取本地快速路径相对通用打开流程节省的平均耗时
+     *
+     * @return 节省的耗时，单位：ms，任一方式还没有样本时返回0
+     */
+    public static long getLocalFastPathGainMs() {
+        if (LOCAL_GENERIC.getCount() == 0 || LOCAL_FAST.getCount() == 0) {
+            return 0;
+        }
+        return LOCAL_GENERIC.getAverageMs() - LOCAL_FAST.getAverageMs();
+    }
+}
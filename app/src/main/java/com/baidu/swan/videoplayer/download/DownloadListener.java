@@ -0,0 +1,24 @@
+package com.baidu.swan.videoplayer.download;
+
+/**
+ * 下载任务回调，在主线程回调
+ *
+ * @author machao10
+ * @since 2019-03-12
+ */
+public interface DownloadListener {
+
+    /**
+     * 下载进度更新，每完成一个分片回调一次
+     *
+     * @param task 下载任务
+     */
+    void onDownloadProgress(DownloadTask task);
+
+    /**
+     * 下载状态变化
+     *
+     * @param task 下载任务，通过{@link DownloadTask#getState()}获取新状态
+     */
+    void onDownloadStateChanged(DownloadTask task);
+}
@@ -0,0 +1,1070 @@
+package com.baidu.swan.videoplayer.download;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import com.baidu.cloud.videoplayer.demo.BuildConfig;
+import com.baidu.swan.videoplayer.VideoUtils;
+import com.baidu.swan.videoplayer.hls.HlsMediaPlaylist;
+import com.baidu.swan.videoplayer.hls.HlsPlaylistParser;
+import com.baidu.swan.videoplayer.hls.HlsSegment;
+import com.baidu.swan.videoplayer.net.HttpFetcher;
+import com.baidu.swan.videoplayer.rendition.Rendition;
+import com.baidu.swan.videoplayer.rendition.RenditionSelector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 离线下载管理，支持HLS和MP4等单文件视频。
+ * <p>
+ * 每个任务拆分为多个部分（HLS的分片和密钥、单文件的固定大小块），所有任务的部分共用一个有界线程池并行下载，
+ * 按任务优先级和创建顺序排队。每完成一个部分持久化一次进度，进程被杀后恢复为暂停状态，
+ * resume后只下载未完成的部分。下载完成后生成本地播放列表或视频文件，
+ * 通过{@link DownloadTask#getLocalPath()}交给SwanVideoView.setVideoPath即可离线播放。
+ * <p>
+ * 任务的增删改在单独的控制线程串行执行，所有方法都可以在任意线程调用，回调在主线程
+ *
+ * @author machao10
+ * @since 2019-03-12
+ */
+public final class DownloadManager {
+
+    /** debug 开关 */
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    /** debug tag */
+    private static final String TAG = "DownloadManager";
+    /** 下载根目录名 */
+    private static final String DIR_NAME = "swan_video_download";
+    /** 任务进度文件名 */
+    private static final String TASK_FILE = "task.bin";
+    /** 原始媒体播放列表文件名 */
+    private static final String SOURCE_PLAYLIST = "source.m3u8";
+    /** 本地播放列表文件名 */
+    private static final String LOCAL_PLAYLIST = "index.m3u8";
+    /** 默认并发下载数 */
+    public static final int DEFAULT_CONCURRENCY = 3;
+    /** 单文件视频的分块大小，单位：字节 */
+    static final long CHUNK_SIZE = 2 * 1024 * 1024;
+    /** 每个部分的最多尝试次数 */
+    private static final int MAX_ATTEMPTS = 3;
+    /** 第一次重试前的等待时间，之后每次翻倍，单位：ms */
+    static final long RETRY_BASE_DELAY_MS = 1000;
+    /** 读取缓冲大小 */
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /** 单例 */
+    private static volatile DownloadManager sInstance;
+
+    /** 下载根目录 */
+    private final File mRoot;
+    /** 全部任务，key为任务id */
+    private final Map<String, DownloadTask> mTasks = new ConcurrentHashMap<>();
+    /** 回调 */
+    private final List<DownloadListener> mListeners = new CopyOnWriteArrayList<>();
+    /** 下载线程池，按优先级排队 */
+    private final ThreadPoolExecutor mPool;
+    /** 控制线程，串行执行任务的增删改 */
+    private final ExecutorService mControl;
+    /** 全局限速 */
+    private final RateLimiter mRateLimiter = new RateLimiter(0);
+    /** 任务创建序号 */
+    private final AtomicLong mSequence = new AtomicLong(System.currentTimeMillis());
+    /** HLS多码率播放列表选择档位时的码率上限，单位：bps；不大于0时选最高码率 */
+    private volatile long mMaxBandwidth;
+    /** 第一次重试前的等待时间，单位：ms */
+    private volatile long mRetryBaseDelayMs = RETRY_BASE_DELAY_MS;
+
+    /**
+     * 获取下载管理单例，首次调用时在后台恢复之前的任务
+     *
+     * @param context 上下文
+     * @return 单例
+     */
+    public static DownloadManager getInstance(Context context) {
+        if (sInstance == null) {
+            synchronized (DownloadManager.class) {
+                if (sInstance == null) {
+                    sInstance = new DownloadManager(
+                            new File(context.getApplicationContext().getFilesDir(), DIR_NAME));
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * 构造器
+     *
+     * @param root 下载根目录
+     */
+    DownloadManager(File root) {
+        mRoot = root;
+        mPool = new ThreadPoolExecutor(DEFAULT_CONCURRENCY, DEFAULT_CONCURRENCY, 30,
+                TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(),
+                new DownloadThreadFactory("swan-video-download-"));
+        mPool.allowCoreThreadTimeOut(true);
+        mControl = Executors.newSingleThreadExecutor(
+                new DownloadThreadFactory("swan-video-download-control-"));
+        mControl.execute(new Runnable() {
+            @Override
+            public void run() {
+                restoreTasks();
+            }
+        });
+    }
+
+    /**
+     * 添加下载任务，同一地址只有一个任务。已暂停或失败的任务会继续下载
+     *
+     * @param url      视频地址，HLS播放列表或MP4等单文件视频
+     * @param headers  请求header，可以为null。header不持久化，进程重启后需要resume时重新传入
+     * @param priority 优先级，越大越先下载
+     * @return 任务id
+     */
+    public String enqueue(final String url, final Map<String, String> headers,
+                          final int priority) {
+        final String id = VideoUtils.md5(url);
+        mControl.execute(new Runnable() {
+            @Override
+            public void run() {
+                DownloadTask task = mTasks.get(id);
+                if (task == null) {
+                    task = new DownloadTask(id, url, new File(mRoot, id),
+                            mSequence.incrementAndGet());
+                    mTasks.put(id, task);
+                }
+                task.mHeaders = headers;
+                task.mPriority = priority;
+                if (task.mState != DownloadTask.STATE_RUNNING
+                        && task.mState != DownloadTask.STATE_COMPLETED) {
+                    schedule(task);
+                }
+            }
+        });
+        return id;
+    }
+
+    /**
+     * 暂停任务，正在下载的部分会尽快停止，已完成的部分保留
+     *
+     * @param id 任务id
+     */
+    public void pause(final String id) {
+        mControl.execute(new Runnable() {
+            @Override
+            public void run() {
+                DownloadTask task = mTasks.get(id);
+                if (task != null && (task.mState == DownloadTask.STATE_PENDING
+                        || task.mState == DownloadTask.STATE_RUNNING)) {
+                    setState(task, DownloadTask.STATE_PAUSED, null);
+                }
+            }
+        });
+    }
+
+    /**
+     * 继续已暂停或失败的任务
+     *
+     * @param id      任务id
+     * @param headers 请求header，为null时沿用之前的header
+     */
+    public void resume(final String id, final Map<String, String> headers) {
+        mControl.execute(new Runnable() {
+            @Override
+            public void run() {
+                DownloadTask task = mTasks.get(id);
+                if (task == null || (task.mState != DownloadTask.STATE_PAUSED
+                        && task.mState != DownloadTask.STATE_FAILED)) {
+                    return;
+                }
+                if (headers != null) {
+                    task.mHeaders = headers;
+                }
+                schedule(task);
+            }
+        });
+    }
+
+    /**
+     * 取消任务并删除已下载的文件，已完成的任务也会删除
+     *
+     * @param id 任务id
+     */
+    public void cancel(final String id) {
+        mControl.execute(new Runnable() {
+            @Override
+            public void run() {
+                DownloadTask task = mTasks.remove(id);
+                if (task == null) {
+                    return;
+                }
+                setState(task, DownloadTask.STATE_CANCELED, null);
+                deleteRecursively(task.mDir);
+            }
+        });
+    }
+
+    /**
+     * 修改任务优先级，已经排队的部分按新优先级重新排队
+     *
+     * @param id       任务id
+     * @param priority 优先级，越大越先下载
+     */
+    public void setPriority(final String id, final int priority) {
+        mControl.execute(new Runnable() {
+            @Override
+            public void run() {
+                DownloadTask task = mTasks.get(id);
+                if (task == null || task.mPriority == priority) {
+                    return;
+                }
+                task.mPriority = priority;
+                persist(task);
+                List<PartJob> requeue = new ArrayList<>();
+                Iterator<Runnable> iterator = mPool.getQueue().iterator();
+                while (iterator.hasNext()) {
+                    PartJob job = (PartJob) iterator.next();
+                    if (job.mTask == task) {
+                        requeue.add(job);
+                    }
+                }
+                for (PartJob job : requeue) {
+                    if (mPool.remove(job)) {
+                        mPool.execute(new PartJob(task, job.mIndex, job.mGeneration));
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 获取任务
+     *
+     * @param id 任务id
+     * @return 任务，不存在或之前的任务还没有恢复完时返回null
+     */
+    public DownloadTask getTask(String id) {
+        return mTasks.get(id);
+    }
+
+    /**
+     * 获取全部任务
+     *
+     * @return 任务列表
+     */
+    public List<DownloadTask> getTasks() {
+        return new ArrayList<>(mTasks.values());
+    }
+
+    /**
+     * 获取已下载完成的本地播放路径
+     *
+     * @param url 视频地址
+     * @return 本地路径，没有下载完成时返回null
+     */
+    public String getLocalPath(String url) {
+        DownloadTask task = mTasks.get(VideoUtils.md5(url));
+        return task == null ? null : task.getLocalPath();
+    }
+
+    /**
+     * 设置最大并发下载数，所有任务共享
+     *
+     * @param concurrency 并发数，至少为1
+     */
+    public void setMaxConcurrency(int concurrency) {
+        int size = Math.max(1, concurrency);
+        synchronized (mPool) {
+            if (size > mPool.getMaximumPoolSize()) {
+                mPool.setMaximumPoolSize(size);
+                mPool.setCorePoolSize(size);
+            } else {
+                mPool.setCorePoolSize(size);
+                mPool.setMaximumPoolSize(size);
+            }
+        }
+    }
+
+    /**
+     * 设置所有任务合计的下载速度上限
+     *
+     * @param bytesPerSecond 每秒字节数，不大于0时不限速
+     */
+    public void setMaxBytesPerSecond(long bytesPerSecond) {
+        mRateLimiter.setRate(bytesPerSecond);
+    }
+
+    /**
+     * 设置HLS多码率播放列表选择档位时的码率上限，对之后解析的任务生效
+     *
+     * @param bandwidth 码率上限，单位：bps；不大于0时选最高码率
+     */
+    public void setMaxBandwidth(long bandwidth) {
+        mMaxBandwidth = bandwidth;
+    }
+
+    /**
+     * 设置第一次重试前的等待时间，之后每次翻倍
+     *
+     * @param delayMs 等待时间，单位：ms
+     */
+    void setRetryBaseDelayMs(long delayMs) {
+        mRetryBaseDelayMs = delayMs;
+    }
+
+    /**
+     * 添加回调
+     *
+     * @param listener 回调
+     */
+    public void addListener(DownloadListener listener) {
+        mListeners.add(listener);
+    }
+
+    /**
+     * 移除回调
+     *
+     * @param listener 回调
+     */
+    public void removeListener(DownloadListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * 开始或继续下载任务，在控制线程调用
+     */
+    private void schedule(DownloadTask task) {
+        task.mError = null;
+        synchronized (task) {
+            // 暂停前提交的部分可能还没有退出，它们的标记作废，由新一代重新提交
+            task.mGeneration++;
+            if (task.mScheduled != null) {
+                Arrays.fill(task.mScheduled, false);
+            }
+        }
+        setState(task, DownloadTask.STATE_PENDING, null);
+        if (task.mParts == null) {
+            mPool.execute(new PartJob(task, PartJob.PREPARE, task.mGeneration));
+        } else {
+            submitParts(task);
+        }
+    }
+
+    /**
+     * 提交全部未完成且没有在队列中的部分，在控制线程调用
+     */
+    private void submitParts(DownloadTask task) {
+        if (task.mState != DownloadTask.STATE_PENDING) {
+            return;
+        }
+        List<PartJob> jobs = new ArrayList<>();
+        boolean done;
+        synchronized (task) {
+            int count = task.mParts.size();
+            for (int i = 0; i < count; i++) {
+                if (!task.mCompleted[i] && !task.mScheduled[i]) {
+                    task.mScheduled[i] = true;
+                    jobs.add(new PartJob(task, i, task.mGeneration));
+                }
+            }
+            done = task.mCompletedCount == count;
+        }
+        if (done) {
+            finish(task);
+            return;
+        }
+        setState(task, DownloadTask.STATE_RUNNING, null);
+        for (PartJob job : jobs) {
+            mPool.execute(job);
+        }
+    }
+
+    /**
+     * 全部部分完成，生成本地播放文件，在控制线程调用
+     */
+    private void finish(DownloadTask task) {
+        if (task.mState != DownloadTask.STATE_RUNNING
+                && task.mState != DownloadTask.STATE_PENDING) {
+            return;
+        }
+        if (task.mType == DownloadTask.TYPE_HLS) {
+            Map<String, String> mapping = new HashMap<>();
+            for (DownloadTask.Part part : task.mParts) {
+                mapping.put(part.mUrl, part.mFileName);
+            }
+            try {
+                writeFile(new File(task.mDir, LOCAL_PLAYLIST),
+                        task.mPlaylist.rewrite(mapping).getBytes("UTF-8"));
+            } catch (IOException ex) {
+                fail(task, ex);
+                return;
+            }
+        }
+        setState(task, DownloadTask.STATE_COMPLETED, null);
+        if (DEBUG) {
+            Log.d(TAG, "completed " + task);
+        }
+    }
+
+    /**
+     * 任务失败，其他正在下载的部分会尽快停止
+     */
+    private void fail(final DownloadTask task, final Exception error) {
+        if (DEBUG) {
+            Log.w(TAG, "download failed : " + task.mUrl, error);
+        }
+        mControl.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (task.mState == DownloadTask.STATE_PENDING
+                        || task.mState == DownloadTask.STATE_RUNNING) {
+                    setState(task, DownloadTask.STATE_FAILED, String.valueOf(error));
+                }
+            }
+        });
+    }
+
+    /**
+     * 修改状态，持久化并回调
+     */
+    private void setState(final DownloadTask task, int state, String error) {
+        if (task.mState == state) {
+            return;
+        }
+        task.mState = state;
+        if (error != null) {
+            task.mError = error;
+        }
+        persist(task);
+        notifyListeners(task, true);
+    }
+
+    /**
+     * 在主线程回调
+     */
+    private void notifyListeners(final DownloadTask task, final boolean stateChanged) {
+        if (mListeners.isEmpty()) {
+            return;
+        }
+        VideoUtils.getMainHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                for (DownloadListener listener : mListeners) {
+                    if (stateChanged) {
+                        listener.onDownloadStateChanged(task);
+                    } else {
+                        listener.onDownloadProgress(task);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 解析视频地址，生成下载部分列表。在下载线程调用，会请求网络
+     */
+    private void prepare(DownloadTask task) throws IOException {
+        if (!task.mDir.exists() && !task.mDir.mkdirs()) {
+            throw new IOException("can not create " + task.mDir);
+        }
+        File source = new File(task.mDir, SOURCE_PLAYLIST);
+        if (task.mType == DownloadTask.TYPE_HLS && task.mMediaUrl != null && source.exists()) {
+            // 进程重启后恢复，使用保存的播放列表，保证分片序号不变
+            buildHlsParts(task, HlsPlaylistParser.parseMedia(task.mMediaUrl,
+                    new String(readFile(source), "UTF-8")));
+        } else if (task.mType == DownloadTask.TYPE_FILE) {
+            buildFileParts(task, task.mTotalBytes);
+        } else if (HlsPlaylistParser.isHlsUrl(task.mUrl)) {
+            String mediaUrl = task.mUrl;
+            String text = HttpFetcher.readText(mediaUrl, task.mHeaders);
+            if (HlsPlaylistParser.isMasterPlaylist(text)) {
+                mediaUrl = selectRendition(HlsPlaylistParser.parseMaster(mediaUrl, text));
+                text = HttpFetcher.readText(mediaUrl, task.mHeaders);
+            }
+            HlsMediaPlaylist playlist = HlsPlaylistParser.parseMedia(mediaUrl, text);
+            if (!playlist.isEndList()) {
+                throw new IOException("live playlist can not be downloaded");
+            }
+            if (playlist.hasByteRange()) {
+                throw new IOException("EXT-X-BYTERANGE is not supported");
+            }
+            writeFile(source, text.getBytes("UTF-8"));
+            synchronized (task) {
+                task.mType = DownloadTask.TYPE_HLS;
+                task.mMediaUrl = mediaUrl;
+                task.mLocalName = LOCAL_PLAYLIST;
+            }
+            buildHlsParts(task, playlist);
+        } else {
+            long total = probeLength(task);
+            synchronized (task) {
+                task.mType = DownloadTask.TYPE_FILE;
+                task.mMediaUrl = task.mUrl;
+                task.mTotalBytes = total;
+                task.mLocalName = "video" + extensionOf(task.mUrl, ".mp4");
+            }
+            buildFileParts(task, total);
+        }
+    }
+
+    /**
+     * 选择要下载的码率档位：不超过码率上限的最高档位，都超过时选最低档位
+     */
+    private String selectRendition(List<Rendition> renditions) throws IOException {
+        Rendition best = null;
+        Rendition lowest = null;
+        long maxBandwidth = mMaxBandwidth;
+        for (Rendition rendition : renditions) {
+            if (lowest == null || isBetter(lowest, rendition)) {
+                lowest = rendition;
+            }
+            if (maxBandwidth > 0 && rendition.getBandwidth() > maxBandwidth) {
+                continue;
+            }
+            if (best == null || isBetter(rendition, best)) {
+                best = rendition;
+            }
+        }
+        if (best == null) {
+            best = lowest;
+        }
+        if (best == null) {
+            throw new IOException("empty master playlist");
+        }
+        return best.getUrl();
+    }
+
+    /**
+     * 判断a是否比b清晰：先比较码率，码率相同时比较分辨率
+     */
+    private static boolean isBetter(Rendition a, Rendition b) {
+        if (a.getBandwidth() != b.getBandwidth()) {
+            return a.getBandwidth() > b.getBandwidth();
+        }
+        return RenditionSelector.isHigher(a, b);
+    }
+
+    /**
+     * 请求第一个字节获取文件长度，服务端不支持Range时返回-1
+     */
+    private static long probeLength(DownloadTask task) throws IOException {
+        HttpURLConnection connection = HttpFetcher.open(task.mUrl, task.mHeaders, 0, 0);
+        try {
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+                return -1;
+            }
+            String range = connection.getHeaderField("Content-Range");
+            int slash = range == null ? -1 : range.lastIndexOf('/');
+            if (slash < 0) {
+                return -1;
+            }
+            try {
+                return Long.parseLong(range.substring(slash + 1).trim());
+            } catch (NumberFormatException ex) {
+                return -1;
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * 生成HLS的下载部分：先密钥和初始化分片，再媒体分片
+     */
+    private static void buildHlsParts(DownloadTask task, HlsMediaPlaylist playlist) {
+        List<DownloadTask.Part> parts = new ArrayList<>();
+        for (String url : playlist.getResourceUrls()) {
+            int index = parts.size();
+            parts.add(new DownloadTask.Part(index, url, -1, -1,
+                    "res_" + index + extensionOf(url, ".key"), -1));
+        }
+        for (HlsSegment segment : playlist.getSegments()) {
+            int index = parts.size();
+            parts.add(new DownloadTask.Part(index, segment.getUrl(), -1, -1,
+                    "seg_" + index + extensionOf(segment.getUrl(), ".ts"), -1));
+        }
+        synchronized (task) {
+            task.mPlaylist = playlist;
+            setParts(task, parts);
+        }
+    }
+
+    /**
+     * 生成单文件视频的下载部分：长度已知时按固定大小分块，否则整体下载
+     */
+    private static void buildFileParts(DownloadTask task, long total) throws IOException {
+        List<DownloadTask.Part> parts = new ArrayList<>();
+        if (total > 0) {
+            RandomAccessFile file =
+                    new RandomAccessFile(new File(task.mDir, task.mLocalName), "rw");
+            try {
+                file.setLength(total);
+            } finally {
+                file.close();
+            }
+            for (long start = 0; start < total; start += CHUNK_SIZE) {
+                long end = Math.min(start + CHUNK_SIZE, total) - 1;
+                parts.add(new DownloadTask.Part(parts.size(), task.mMediaUrl, start, end,
+                        task.mLocalName, start));
+            }
+        } else {
+            parts.add(new DownloadTask.Part(0, task.mMediaUrl, -1, -1, task.mLocalName, -1));
+        }
+        synchronized (task) {
+            setParts(task, parts);
+        }
+    }
+
+    /**
+     * 设置部分列表，恢复的进度与部分数不一致时从头下载
+     */
+    private static void setParts(DownloadTask task, List<DownloadTask.Part> parts) {
+        task.mParts = parts;
+        task.mScheduled = new boolean[parts.size()];
+        if (task.mCompleted == null || task.mCompleted.length != parts.size()) {
+            task.mCompleted = new boolean[parts.size()];
+            task.mCompletedCount = 0;
+            task.mCompletedBytes = 0;
+            task.mDownloadedBytes.set(0);
+        }
+    }
+
+    /**
+     * 下载一个部分
+     *
+     * @param generation 发起下载时的调度代数
+     * @return 下载的字节数；任务已不在下载状态或已被新一代调度取代，中途停止时返回-1
+     */
+    private long downloadPart(DownloadTask task, DownloadTask.Part part, int generation)
+            throws IOException, InterruptedException {
+        HttpURLConnection connection =
+                HttpFetcher.open(part.mUrl, task.mHeaders, part.mRangeStart, part.mRangeEnd);
+        InputStream in = null;
+        OutputStream out = null;
+        RandomAccessFile file = null;
+        File temp = null;
+        long received = 0;
+        boolean completed = false;
+        try {
+            if (part.mRangeStart >= 0
+                    && connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+                throw new IOException("range not supported : " + part.mUrl);
+            }
+            in = connection.getInputStream();
+            if (part.mFileOffset >= 0) {
+                file = new RandomAccessFile(new File(task.mDir, part.mFileName), "rw");
+                file.seek(part.mFileOffset);
+            } else {
+                // 按代数区分临时文件，暂停后没来得及退出的旧下载不会和新下载写同一个文件
+                temp = new File(task.mDir, part.mFileName + "." + generation + ".tmp");
+                out = new BufferedOutputStream(new FileOutputStream(temp));
+            }
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (file != null) {
+                    file.write(buffer, 0, read);
+                } else {
+                    out.write(buffer, 0, read);
+                }
+                received += read;
+                task.mDownloadedBytes.addAndGet(read);
+                mRateLimiter.acquire(read);
+                if (!isCurrent(task, generation)) {
+                    return -1;
+                }
+            }
+            if (part.mRangeEnd >= 0 && received != part.mRangeEnd - part.mRangeStart + 1) {
+                throw new IOException("incomplete part " + part.mIndex + " : " + received);
+            }
+            if (out != null) {
+                out.close();
+                out = null;
+                if (!temp.renameTo(new File(task.mDir, part.mFileName))) {
+                    throw new IOException("rename failed : " + temp);
+                }
+            }
+            completed = true;
+            return received;
+        } finally {
+            closeQuietly(in);
+            closeQuietly(out);
+            closeQuietly(file);
+            connection.disconnect();
+            if (!completed) {
+                task.mDownloadedBytes.addAndGet(-received);
+                if (temp != null) {
+                    temp.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * 判断下载是否应该继续：任务在下载状态，且没有被新一代调度取代
+     */
+    private static boolean isCurrent(DownloadTask task, int generation) {
+        return task.mState == DownloadTask.STATE_RUNNING && task.mGeneration == generation;
+    }
+
+    /**
+     * 下载任务：解析任务或者下载一个部分
+     */
+    private final class PartJob implements Runnable, Comparable<PartJob> {
+        /** 解析任务的序号 */
+        static final int PREPARE = -1;
+
+        /** 所属任务 */
+        final DownloadTask mTask;
+        /** 部分序号，解析任务为{@link #PREPARE} */
+        final int mIndex;
+        /** 入队时的优先级 */
+        final int mPriority;
+        /** 入队时的调度代数 */
+        final int mGeneration;
+
+        /**
+         * 构造器
+         */
+        PartJob(DownloadTask task, int index, int generation) {
+            mTask = task;
+            mIndex = index;
+            mPriority = task.mPriority;
+            mGeneration = generation;
+        }
+
+        @Override
+        public int compareTo(PartJob another) {
+            if (mPriority != another.mPriority) {
+                return mPriority > another.mPriority ? -1 : 1;
+            }
+            if (mTask.mSequence != another.mTask.mSequence) {
+                return mTask.mSequence < another.mTask.mSequence ? -1 : 1;
+            }
+            return mIndex < another.mIndex ? -1 : (mIndex == another.mIndex ? 0 : 1);
+        }
+
+        @Override
+        public void run() {
+            if (mIndex == PREPARE) {
+                runPrepare();
+            } else {
+                runPart();
+            }
+        }
+
+        /**
+         * 解析任务，完成后提交各个部分
+         */
+        private void runPrepare() {
+            if (mTask.mState != DownloadTask.STATE_PENDING || mTask.mGeneration != mGeneration) {
+                return;
+            }
+            try {
+                prepare(mTask);
+                persist(mTask);
+            } catch (IOException ex) {
+                fail(mTask, ex);
+                return;
+            }
+            if (mTask.mState == DownloadTask.STATE_CANCELED) {
+                // 解析过程中被取消，解析时新建的文件需要再删一次
+                deleteRecursively(mTask.mDir);
+                return;
+            }
+            mControl.execute(new Runnable() {
+                @Override
+                public void run() {
+                    submitParts(mTask);
+                }
+            });
+        }
+
+        /**
+         * 下载一个部分，失败时按指数退避重试，重试用完后任务失败
+         */
+        private void runPart() {
+            DownloadTask.Part part = mTask.mParts.get(mIndex);
+            IOException error = null;
+            for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+                if (!isCurrent(mTask, mGeneration)) {
+                    break;
+                }
+                if (isPartCompleted()) {
+                    // 暂停前没来得及退出的旧下载可能已经完成了这个部分
+                    error = null;
+                    break;
+                }
+                try {
+                    if (attempt > 0) {
+                        // 服务端过载或网络抖动时立即重试大多还会失败
+                        Thread.sleep(mRetryBaseDelayMs << (attempt - 1));
+                        if (!isCurrent(mTask, mGeneration)) {
+                            break;
+                        }
+                    }
+                    long received = downloadPart(mTask, part, mGeneration);
+                    if (received >= 0) {
+                        onPartCompleted(received);
+                        return;
+                    }
+                    break;
+                } catch (IOException ex) {
+                    error = ex;
+                    if (DEBUG) {
+                        Log.w(TAG, "part " + mIndex + " attempt " + attempt + " failed", ex);
+                    }
+                } catch (InterruptedException ex) {
+                    break;
+                }
+            }
+            synchronized (mTask) {
+                if (mTask.mGeneration != mGeneration) {
+                    // 已经被新一代调度取代，标记属于新一代
+                    return;
+                }
+                mTask.mScheduled[mIndex] = false;
+            }
+            if (error != null && mTask.mState == DownloadTask.STATE_RUNNING) {
+                fail(mTask, error);
+            }
+        }
+
+        /**
+         * 这个部分是否已经完成
+         */
+        private boolean isPartCompleted() {
+            synchronized (mTask) {
+                return mTask.mCompleted[mIndex];
+            }
+        }
+
+        /**
+         * 一个部分下载完成
+         *
+         * @param received 这个部分的字节数
+         */
+        private void onPartCompleted(long received) {
+            boolean done;
+            synchronized (mTask) {
+                if (mTask.mCompleted[mIndex]) {
+                    // 暂停前的旧下载和继续后的新下载都完成了同一个部分，只计一次
+                    mTask.mDownloadedBytes.addAndGet(-received);
+                    return;
+                }
+                if (mTask.mGeneration == mGeneration) {
+                    mTask.mScheduled[mIndex] = false;
+                }
+                mTask.mCompleted[mIndex] = true;
+                mTask.mCompletedBytes += received;
+                mTask.mCompletedCount++;
+                done = mTask.mCompletedCount == mTask.mParts.size();
+            }
+            persist(mTask);
+            notifyListeners(mTask, false);
+            if (done) {
+                mControl.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        finish(mTask);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * 恢复之前的任务，未完成的任务恢复为暂停状态，在控制线程调用
+     */
+    private void restoreTasks() {
+        File[] dirs = mRoot.listFiles();
+        if (dirs == null) {
+            return;
+        }
+        for (File dir : dirs) {
+            File file = new File(dir, TASK_FILE);
+            if (!file.exists()) {
+                continue;
+            }
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                DownloadTask task = DownloadTask.readFrom(dir.getName(), dir, in);
+                if (task == null || task.mState == DownloadTask.STATE_CANCELED) {
+                    continue;
+                }
+                if (task.mState == DownloadTask.STATE_PENDING
+                        || task.mState == DownloadTask.STATE_RUNNING) {
+                    task.mState = DownloadTask.STATE_PAUSED;
+                }
+                mTasks.put(task.mId, task);
+                notifyListeners(task, true);
+            } catch (IOException ex) {
+                if (DEBUG) {
+                    Log.w(TAG, "restore " + dir + " failed", ex);
+                }
+            } finally {
+                closeQuietly(in);
+            }
+        }
+    }
+
+    /**
+     * 持久化任务进度，先写临时文件再改名，避免进程中途被杀时文件损坏
+     */
+    private static void persist(DownloadTask task) {
+        synchronized (task) {
+            if (task.mState == DownloadTask.STATE_CANCELED
+                    || (!task.mDir.exists() && !task.mDir.mkdirs())) {
+                return;
+            }
+            File temp = new File(task.mDir, TASK_FILE + ".tmp");
+            DataOutputStream out = null;
+            try {
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+                task.writeTo(out);
+                out.close();
+                out = null;
+                if (!temp.renameTo(new File(task.mDir, TASK_FILE))) {
+                    throw new IOException("rename failed : " + temp);
+                }
+            } catch (IOException ex) {
+                if (DEBUG) {
+                    Log.w(TAG, "persist " + task + " failed", ex);
+                }
+            } finally {
+                closeQuietly(out);
+            }
+        }
+    }
+
+    /**
+     * 根据地址路径获取文件扩展名
+     */
+    private static String extensionOf(String url, String fallback) {
+        String path = VideoUtils.getUrlPath(url);
+        int dot = path.lastIndexOf('.');
+        if (dot < 0 || dot < path.lastIndexOf('/') || path.length() - dot > 6) {
+            return fallback;
+        }
+        String extension = path.substring(dot).toLowerCase(Locale.US);
+        for (int i = 1; i < extension.length(); i++) {
+            if (!Character.isLetterOrDigit(extension.charAt(i))) {
+                return fallback;
+            }
+        }
+        return extension.length() > 1 ? extension : fallback;
+    }
+
+    /**
+     * 写文件
+     */
+    private static void writeFile(File file, byte[] data) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * 读文件
+     */
+    private static byte[] readFile(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) in.length()];
+            in.readFully(data);
+            return data;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 递归删除目录
+     */
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * 关闭流，忽略异常
+     */
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * 后台优先级的下载线程
+     */
+    private static final class DownloadThreadFactory implements ThreadFactory {
+        /** 线程名前缀 */
+        private final String mPrefix;
+        /** 线程计数 */
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        /**
+         * 构造器
+         */
+        DownloadThreadFactory(String prefix) {
+            mPrefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, mPrefix + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.baidu.swan.videoplayer.download;
+
+import com.baidu.swan.videoplayer.hls.HlsMediaPlaylist;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 离线下载任务。HLS按分片、MP4按固定大小的块拆分为多个部分并行下载，
+ * 每完成一个部分持久化一次进度，进程重启后只下载未完成的部分。
+ * 状态由{@link DownloadManager}维护，对外只读
+ *
+ * @author machao10
+ * @since 2019-03-12
+ */
+public final class DownloadTask {
+
+    /** 状态：等待下载，包括解析播放列表和排队 */
+    public static final int STATE_PENDING = 0;
+    /** 状态：下载中 */
+    public static final int STATE_RUNNING = 1;
+    /** 状态：已暂停，包括进程重启后恢复的未完成任务 */
+    public static final int STATE_PAUSED = 2;
+    /** 状态：已完成，可以离线播放 */
+    public static final int STATE_COMPLETED = 3;
+    /** 状态：失败，可以调用resume重试 */
+    public static final int STATE_FAILED = 4;
+    /** 状态：已取消，文件已删除 */
+    public static final int STATE_CANCELED = 5;
+
+    /** 类型：未知，播放列表解析之前 */
+    public static final int TYPE_UNKNOWN = 0;
+    /** 类型：HLS */
+    public static final int TYPE_HLS = 1;
+    /** 类型：MP4等单文件视频 */
+    public static final int TYPE_FILE = 2;
+
+    /** 持久化格式版本 */
+    private static final int VERSION = 1;
+
+    /** 任务id */
+    final String mId;
+    /** 视频地址 */
+    final String mUrl;
+    /** 任务目录 */
+    final File mDir;
+    /** 创建顺序，同优先级时先创建的先下载 */
+    final long mSequence;
+    /** 请求header，不持久化 */
+    volatile Map<String, String> mHeaders;
+    /** 状态 */
+    volatile int mState = STATE_PENDING;
+    /** 优先级，越大越先下载 */
+    volatile int mPriority;
+    /** 类型 */
+    int mType = TYPE_UNKNOWN;
+    /** 实际下载的地址，多码率播放列表时为选中档位的媒体播放列表地址 */
+    String mMediaUrl;
+    /** 总字节数，HLS未知时为-1 */
+    long mTotalBytes = -1;
+    /** 本地播放文件名，HLS为改写后的播放列表，单文件为视频文件 */
+    String mLocalName;
+    /** 失败原因 */
+    volatile String mError;
+    /** 已下载字节数 */
+    final AtomicLong mDownloadedBytes = new AtomicLong();
+    /** HLS媒体播放列表，用于生成本地播放列表，不持久化 */
+    HlsMediaPlaylist mPlaylist;
+    /** 全部下载部分，解析完成之前为null */
+    List<Part> mParts;
+    /** 各部分是否已完成 */
+    boolean[] mCompleted;
+    /** 各部分是否已在当前调度代数的下载队列中或下载中 */
+    boolean[] mScheduled;
+    /** 调度代数，每次开始或继续下载时在控制线程加一，之前代数的下载任务自行退出 */
+    volatile int mGeneration;
+    /** 已完成的部分数 */
+    int mCompletedCount;
+    /** 已完成部分的字节数，恢复时未完成部分需要重新下载，只持久化这个值 */
+    long mCompletedBytes;
+
+    /**
+     * 下载的一个部分：HLS的一个分片或密钥，或者单文件的一个块
+     */
+    static final class Part {
+        /** 序号 */
+        final int mIndex;
+        /** 下载地址 */
+        final String mUrl;
+        /** Range起始字节，不带Range时为-1 */
+        final long mRangeStart;
+        /** Range结束字节（含），到文件末尾时为-1 */
+        final long mRangeEnd;
+        /** 本地文件名 */
+        final String mFileName;
+        /** 写入本地文件的偏移，为-1时独占一个文件，下载完成后改名 */
+        final long mFileOffset;
+
+        /**
+         * 构造器
+         */
+        Part(int index, String url, long rangeStart, long rangeEnd, String fileName,
+             long fileOffset) {
+            mIndex = index;
+            mUrl = url;
+            mRangeStart = rangeStart;
+            mRangeEnd = rangeEnd;
+            mFileName = fileName;
+            mFileOffset = fileOffset;
+        }
+    }
+
+    /**
+     * 构造器
+     */
+    DownloadTask(String id, String url, File dir, long sequence) {
+        mId = id;
+        mUrl = url;
+        mDir = dir;
+        mSequence = sequence;
+    }
+
+    /**
+     * 获取任务id
+     *
+     * @return 任务id，同一地址的id相同
+     */
+    public String getId() {
+        return mId;
+    }
+
+    /**
+     * 获取视频地址
+     *
+     * @return 视频地址
+     */
+    public String getUrl() {
+        return mUrl;
+    }
+
+    /**
+     * 获取状态
+     *
+     * @return STATE_*
+     */
+    public int getState() {
+        return mState;
+    }
+
+    /**
+     * 获取优先级
+     *
+     * @return 优先级，越大越先下载
+     */
+    public int getPriority() {
+        return mPriority;
+    }
+
+    /**
+     * 获取类型
+     *
+     * @return TYPE_*
+     */
+    public synchronized int getType() {
+        return mType;
+    }
+
+    /**
+     * 获取已下载字节数
+     *
+     * @return 字节数
+     */
+    public long getDownloadedBytes() {
+        return mDownloadedBytes.get();
+    }
+
+    /**
+     * 获取总字节数
+     *
+     * @return 字节数，HLS和未知时为-1
+     */
+    public synchronized long getTotalBytes() {
+        return mTotalBytes;
+    }
+
+    /**
+     * 获取已完成的部分数
+     *
+     * @return 部分数
+     */
+    public synchronized int getCompletedParts() {
+        return mCompletedCount;
+    }
+
+    /**
+     * 获取总部分数
+     *
+     * @return 部分数，解析完成之前为0
+     */
+    public synchronized int getTotalParts() {
+        return mParts == null ? 0 : mParts.size();
+    }
+
+    /**
+     * 获取下载进度
+     *
+     * @return 进度，取值[0, 1]
+     */
+    public synchronized float getProgress() {
+        return mParts == null || mParts.isEmpty() ? 0f : (float) mCompletedCount / mParts.size();
+    }
+
+    /**
+     * 获取失败原因
+     *
+     * @return 失败原因，没有失败时为null
+     */
+    public String getError() {
+        return mError;
+    }
+
+    /**
+     * 获取本地播放路径，可以直接传给SwanVideoView.setVideoPath离线播放
+     *
+     * @return 本地路径，没有下载完成时返回null
+     */
+    public synchronized String getLocalPath() {
+        return mState == STATE_COMPLETED && mLocalName != null
+                ? new File(mDir, mLocalName).getAbsolutePath() : null;
+    }
+
+    /**
+     * 序列化，不包括header和下载部分列表，部分列表恢复时重新生成
+     *
+     * @param out 输出流
+     * @throws IOException 写入失败
+     */
+    synchronized void writeTo(DataOutputStream out) throws IOException {
+        out.writeByte(VERSION);
+        out.writeUTF(mUrl);
+        out.writeLong(mSequence);
+        out.writeInt(mPriority);
+        out.writeByte(mState);
+        out.writeByte(mType);
+        out.writeUTF(mMediaUrl == null ? "" : mMediaUrl);
+        out.writeLong(mTotalBytes);
+        out.writeUTF(mLocalName == null ? "" : mLocalName);
+        out.writeLong(mCompletedBytes);
+        int count = mCompleted == null ? 0 : mCompleted.length;
+        out.writeInt(count);
+        for (int i = 0; i < count; i += 8) {
+            int bits = 0;
+            for (int j = 0; j < 8 && i + j < count; j++) {
+                if (mCompleted[i + j]) {
+                    bits |= 1 << j;
+                }
+            }
+            out.writeByte(bits);
+        }
+    }
+
+    /**
+     * 反序列化
+     *
+     * @param id  任务id
+     * @param dir 任务目录
+     * @param in  输入流
+     * @return 任务，版本不支持时返回null
+     * @throws IOException 读取失败
+     */
+    static DownloadTask readFrom(String id, File dir, DataInputStream in) throws IOException {
+        if (in.readUnsignedByte() != VERSION) {
+            return null;
+        }
+        String url = in.readUTF();
+        DownloadTask task = new DownloadTask(id, url, dir, in.readLong());
+        task.mPriority = in.readInt();
+        task.mState = in.readUnsignedByte();
+        task.mType = in.readUnsignedByte();
+        String mediaUrl = in.readUTF();
+        task.mMediaUrl = mediaUrl.isEmpty() ? null : mediaUrl;
+        task.mTotalBytes = in.readLong();
+        String localName = in.readUTF();
+        task.mLocalName = localName.isEmpty() ? null : localName;
+        task.mCompletedBytes = in.readLong();
+        task.mDownloadedBytes.set(task.mCompletedBytes);
+        int count = in.readInt();
+        if (count > 0) {
+            task.mCompleted = new boolean[count];
+            for (int i = 0; i < count; i += 8) {
+                int bits = in.readUnsignedByte();
+                for (int j = 0; j < 8 && i + j < count; j++) {
+                    if ((bits & (1 << j)) != 0) {
+                        task.mCompleted[i + j] = true;
+                        task.mCompletedCount++;
+                    }
+                }
+            }
+        }
+        return task;
+    }
+
+    @Override
+    public String toString() {
+        return "DownloadTask{" + mUrl + ", state=" + mState + ", parts=" + getCompletedParts()
+                + "/" + getTotalParts() + ", bytes=" + mDownloadedBytes.get() + "}";
+    }
+}
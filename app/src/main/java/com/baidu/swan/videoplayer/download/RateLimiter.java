@@ -0,0 +1,97 @@
+package com.baidu.swan.videoplayer.download;
+
+import android.os.SystemClock;
+
+/**
+ * 令牌桶限速，多个下载线程共享一个实例，合计速度不超过设定值。线程安全
+ *
+ * @author machao10
+ * @since 2019-03-12
+ */
+public final class RateLimiter {
+
+    /** 每秒允许的字节数，不大于0时不限速 */
+    private long mBytesPerSecond;
+    /** 当前可用的令牌数，可以为负，表示已经透支 */
+    private double mTokens;
+    /** 上次补充令牌的时间，SystemClock.elapsedRealtime */
+    private long mLastRefillMs;
+
+    /**
+     * 构造器
+     *
+     * @param bytesPerSecond 每秒允许的字节数，不大于0时不限速
+     */
+    public RateLimiter(long bytesPerSecond) {
+        setRate(bytesPerSecond);
+    }
+
+    /**
+     * 设置速度上限
+     *
+     * @param bytesPerSecond 每秒允许的字节数，不大于0时不限速
+     */
+    public synchronized void setRate(long bytesPerSecond) {
+        mBytesPerSecond = bytesPerSecond;
+        mTokens = Math.max(0, bytesPerSecond);
+        mLastRefillMs = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * 获取速度上限
+     *
+     * @return 每秒允许的字节数，不大于0时不限速
+     */
+    public synchronized long getRate() {
+        return mBytesPerSecond;
+    }
+
+    /**
+     * 尝试获取令牌，不阻塞
+     *
+     * @param bytes 字节数
+     * @return true：获取成功；false：令牌不足
+     */
+    public synchronized boolean tryAcquire(int bytes) {
+        if (mBytesPerSecond <= 0) {
+            return true;
+        }
+        refill();
+        if (mTokens < bytes) {
+            return false;
+        }
+        mTokens -= bytes;
+        return true;
+    }
+
+    /**
+     * 消耗令牌，令牌不足时阻塞到补足为止。允许先透支，读到数据之后再调用
+     *
+     * @param bytes 字节数
+     * @throws InterruptedException 等待时被中断
+     */
+    public void acquire(int bytes) throws InterruptedException {
+        long waitMs;
+        synchronized (this) {
+            if (mBytesPerSecond <= 0) {
+                return;
+            }
+            refill();
+            mTokens -= bytes;
+            waitMs = mTokens >= 0 ? 0 : (long) (-mTokens * 1000 / mBytesPerSecond);
+        }
+        if (waitMs > 0) {
+            Thread.sleep(waitMs);
+        }
+    }
+
+    /**
+     * 按经过的时间补充令牌，最多攒一秒的量
+     */
+    private void refill() {
+        long now = SystemClock.elapsedRealtime();
+        mTokens = Math.min(mBytesPerSecond,
+                mTokens + (now - mLastRefillMs) * mBytesPerSecond / 1000.0);
+        mLastRefillMs = now;
+    }
+}
@@ -0,0 +1,110 @@
+package com.baidu.swan.videoplayer.hls;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * HLS AES-128整分片解密：AES-128-CBC，PKCS7填充，IV由EXT-X-KEY指定，未指定时为分片的媒体序列号。
+ * 每个线程复用一个Cipher实例
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+final class HlsDecrypter {
+
+    /** 解密算法，PKCS5与PKCS7在16字节分组下相同 */
+    private static final String TRANSFORMATION = "AES/CBC/PKCS5Padding";
+    /** 分组长度 */
+    static final int BLOCK_SIZE = 16;
+
+    /** 每个线程的Cipher实例 */
+    private static final ThreadLocal<Cipher> CIPHER = new ThreadLocal<>();
+
+    /**
+     * 工具类，不能实例化
+     */
+    private HlsDecrypter() {
+    }
+
+    /**
+     * 获取当前线程的Cipher并初始化为解密指定分片
+     *
+     * @param key     16字节密钥
+     * @param segment 分片
+     * @return 已初始化的Cipher，只能在当前线程使用
+     * @throws IOException 不支持的IV或初始化失败
+     */
+    static Cipher init(byte[] key, HlsSegment segment) throws IOException {
+        try {
+            Cipher cipher = CIPHER.get();
+            if (cipher == null) {
+                cipher = Cipher.getInstance(TRANSFORMATION);
+                CIPHER.set(cipher);
+            }
+            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"),
+                    new IvParameterSpec(iv(segment)));
+            return cipher;
+        } catch (GeneralSecurityException ex) {
+            throw new IOException("init cipher failed", ex);
+        }
+    }
+
+    /**
+     * 原地解密整个分片，不分配新的缓冲
+     *
+     * @param data    密文，解密后前若干字节为明文
+     * @param length  密文长度
+     * @param key     16字节密钥
+     * @param segment 分片
+     * @return 明文长度
+     * @throws IOException 解密失败，一般是密钥错误
+     */
+    static int decrypt(byte[] data, int length, byte[] key, HlsSegment segment)
+            throws IOException {
+        Cipher cipher = init(key, segment);
+        try {
+            // doFinal保证输入输出为同一数组时结果正确
+            return cipher.doFinal(data, 0, length, data, 0);
+        } catch (GeneralSecurityException ex) {
+            throw new IOException("decrypt segment failed : " + segment.getUrl(), ex);
+        }
+    }
+
+    /**
+     * 计算分片的IV
+     *
+     * @param segment 分片
+     * @return 16字节IV
+     * @throws IOException IV格式错误
+     */
+    private static byte[] iv(HlsSegment segment) throws IOException {
+        byte[] iv = new byte[BLOCK_SIZE];
+        String hex = segment.getKey().getIv();
+        if (hex == null) {
+            long sequence = segment.getSequence();
+            for (int i = 0; i < 8; i++) {
+                iv[BLOCK_SIZE - 1 - i] = (byte) (sequence >>> (8 * i));
+            }
+            return iv;
+        }
+        if (hex.startsWith("0x") || hex.startsWith("0X")) {
+            hex = hex.substring(2);
+        }
+        if (hex.isEmpty() || hex.length() > BLOCK_SIZE * 2) {
+            throw new IOException("invalid IV : " + segment.getKey().getIv());
+        }
+        // 从低位开始填充，不足32位时高位补0
+        for (int i = 0; i < hex.length(); i++) {
+            int digit = Character.digit(hex.charAt(hex.length() - 1 - i), 16);
+            if (digit < 0) {
+                throw new IOException("invalid IV : " + segment.getKey().getIv());
+            }
+            iv[BLOCK_SIZE - 1 - i / 2] |= (byte) (digit << (4 * (i % 2)));
+        }
+        return iv;
+    }
+}
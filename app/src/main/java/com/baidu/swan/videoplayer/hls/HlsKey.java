@@ -0,0 +1,69 @@
+package com.baidu.swan.videoplayer.hls;
+
+/**
+ * HLS分片加密信息，对应EXT-X-KEY标签
+ *
+ * @author machao10
+ * @since 2019-03-12
+ */
+public final class HlsKey {
+
+    /** 加密方式：AES-128 */
+    public static final String METHOD_AES_128 = "AES-128";
+
+    /** 加密方式 */
+    private final String mMethod;
+    /** 密钥地址，已解析为绝对地址 */
+    private final String mUrl;
+    /** 十六进制IV，以0x开头；未指定时为null */
+    private final String mIv;
+
+    /**
+     * 构造器
+     *
+     * @param method 加密方式
+     * @param url    密钥地址
+     * @param iv     十六进制IV，未指定时传null
+     */
+    HlsKey(String method, String url, String iv) {
+        mMethod = method;
+        mUrl = url;
+        mIv = iv;
+    }
+
+    /**
+     * 获取加密方式
+     *
+     * @return 加密方式，如{@link #METHOD_AES_128}
+     */
+    public String getMethod() {
+        return mMethod;
+    }
+
+    /**
+     * 获取密钥地址
+     *
+     * @return 绝对地址
+     */
+    public String getUrl() {
+        return mUrl;
+    }
+
+    /**
+     * 获取IV
+     *
+     * @return 十六进制IV，以0x开头；未指定时为null，此时使用分片的媒体序列号
+     */
+    public String getIv() {
+        return mIv;
+    }
+
+    /**
+     * 是否为AES-128整分片加密
+     *
+     * @return true：AES-128
+     */
+    public boolean isAes128() {
+        return METHOD_AES_128.equals(mMethod);
+    }
+}
@@ -0,0 +1,217 @@
+package com.baidu.swan.videoplayer.hls;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.baidu.cloud.videoplayer.demo.BuildConfig;
+import com.baidu.swan.videoplayer.VideoUtils;
+import com.baidu.swan.videoplayer.net.HttpFetcher;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * HLS AES-128密钥的内存缓存。
+ * <p>
+ * 播放器自己解密时每次起播、重播和seek都会重新请求密钥地址；由{@link HlsProxySession}解密后，
+ * 密钥只在第一次使用时下载，之后在有效期内直接从内存读取。同一密钥同时只下载一次，
+ * 其他线程等待下载结果。最多保留{@link #MAX_KEYS}个密钥，超过时淘汰最久未使用的
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public final class HlsKeyCache {
+
+    /** debug 开关 */
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    /** debug tag */
+    private static final String TAG = "HlsKeyCache";
+    /** 默认有效期，鉴权密钥地址一般在这个时间内有效，单位：ms */
+    public static final long DEFAULT_TTL_MS = 10 * 60 * 1000;
+    /** 最多保留的密钥数 */
+    public static final int MAX_KEYS = 64;
+    /** AES-128密钥长度 */
+    private static final int KEY_LENGTH = 16;
+
+    /** 单例 */
+    private static volatile HlsKeyCache sInstance;
+
+    /** 密钥，按访问顺序排列 */
+    private final Map<String, Entry> mKeys =
+            new LinkedHashMap<String, Entry>(MAX_KEYS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > MAX_KEYS;
+                }
+            };
+    /** 有效期，单位：ms */
+    private volatile long mTtlMs = DEFAULT_TTL_MS;
+    /** 命中次数 */
+    private int mHitCount;
+    /** 下载次数 */
+    private int mMissCount;
+
+    /**
+     * 一个密钥的缓存项
+     */
+    private static final class Entry {
+        /** 密钥，正在下载时为null */
+        byte[] mKey;
+        /** 过期时间，SystemClock.elapsedRealtime */
+        long mExpireMs;
+        /** 是否正在下载 */
+        boolean mLoading;
+    }
+
+    /**
+     * 获取密钥缓存单例
+     *
+     * @return 单例
+     */
+    public static HlsKeyCache getInstance() {
+        if (sInstance == null) {
+            synchronized (HlsKeyCache.class) {
+                if (sInstance == null) {
+                    sInstance = new HlsKeyCache();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * 私有构造器
+     */
+    private HlsKeyCache() {
+    }
+
+    /**
+     * 设置密钥有效期，只影响之后下载的密钥
+     *
+     * @param ttlMs 有效期，单位：ms
+     */
+    public void setTtlMs(long ttlMs) {
+        mTtlMs = ttlMs;
+    }
+
+    /**
+     * 获取密钥，缓存中没有或已过期时下载。会阻塞，不能在主线程调用
+     *
+     * @param url     密钥地址
+     * @param headers 请求header，可以为null
+     * @return 16字节密钥，调用方不能修改
+     * @throws IOException 下载失败或长度不是16字节
+     */
+    public byte[] get(String url, Map<String, String> headers) throws IOException {
+        Entry entry;
+        synchronized (this) {
+            while (true) {
+                entry = mKeys.get(url);
+                if (entry == null || (!entry.mLoading
+                        && entry.mExpireMs <= SystemClock.elapsedRealtime())) {
+                    break;
+                }
+                if (!entry.mLoading) {
+                    mHitCount++;
+                    return entry.mKey;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while loading key : " + url);
+                }
+            }
+            entry = new Entry();
+            entry.mLoading = true;
+            mKeys.put(url, entry);
+            mMissCount++;
+        }
+        byte[] key = null;
+        try {
+            key = HttpFetcher.readBytes(url, headers);
+            if (key.length != KEY_LENGTH) {
+                throw new IOException("invalid key length " + key.length + " : " + url);
+            }
+        } finally {
+            synchronized (this) {
+                if (key != null && key.length == KEY_LENGTH) {
+                    entry.mKey = key;
+                    entry.mExpireMs = SystemClock.elapsedRealtime() + mTtlMs;
+                    entry.mLoading = false;
+                    mKeys.put(url, entry);
+                } else if (mKeys.get(url) == entry) {
+                    mKeys.remove(url);
+                }
+                notifyAll();
+            }
+        }
+        return key;
+    }
+
+    /**
+     * 在后台下载密钥，已缓存或正在下载时不会重复请求
+     *
+     * @param url     密钥地址
+     * @param headers 请求header，可以为null
+     */
+    public void prefetch(final String url, final Map<String, String> headers) {
+        synchronized (this) {
+            Entry entry = mKeys.get(url);
+            if (entry != null
+                    && (entry.mLoading || entry.mExpireMs > SystemClock.elapsedRealtime())) {
+                return;
+            }
+        }
+        VideoUtils.getStartupExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    get(url, headers);
+                } catch (IOException ex) {
+                    if (DEBUG) {
+                        Log.w(TAG, "prefetch key failed : " + url, ex);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 删除密钥，解密失败说明密钥可能已经轮换，下次使用时重新下载
+     *
+     * @param url 密钥地址
+     */
+    public synchronized void invalidate(String url) {
+        Entry entry = mKeys.get(url);
+        if (entry != null && !entry.mLoading) {
+            mKeys.remove(url);
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public synchronized void clear() {
+        mKeys.clear();
+    }
+
+    /**
+     * 获取缓存命中次数
+     *
+     * @return 次数
+     */
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * 获取密钥下载次数
+     *
+     * @return 次数
+     */
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+}
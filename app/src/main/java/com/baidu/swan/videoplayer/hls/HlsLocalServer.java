@@ -0,0 +1,620 @@
+package com.baidu.swan.videoplayer.hls;
+
+import android.util.Log;
+
+import com.baidu.cloud.videoplayer.demo.BuildConfig;
+import com.baidu.swan.videoplayer.net.HttpFetcher;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Cipher;
+
+/**
+ * 只监听127.0.0.1的HTTP服务，把{@link HlsProxySession}中的本地播放列表和分片提供给播放器。
+ * <p>
+ * 地址格式为http://127.0.0.1:端口/hls/会话id/令牌/index.m3u8，分片为/hls/会话id/令牌/序号/原文件名。
+ * 令牌是会话随机生成的128位值，令牌不正确的请求一律拒绝，不会读取预取数据，也不会解密。
+ * 只支持GET和单个区间的Range请求，每个响应之后关闭连接。
+ * 加密分片没有预取时边从源站读取边解密，明文长度要到最后一个分组才能确定，响应使用分块编码，
+ * 解密失败时不发送结束块，播放器可以区分截断和正常结束
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public final class HlsLocalServer {
+
+    /** debug 开关 */
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    /** debug tag */
+    private static final String TAG = "HlsLocalServer";
+    /** 地址路径前缀 */
+    private static final String PATH_PREFIX = "/hls/";
+    /** 播放列表文件名 */
+    static final String PLAYLIST_NAME = "index.m3u8";
+    /** 最多保留的会话数，超过时淘汰最久未访问的会话 */
+    private static final int MAX_SESSIONS = 16;
+    /** 同时处理的最大连接数 */
+    private static final int MAX_CONNECTIONS = 8;
+    /** 读取请求的超时，单位：ms */
+    private static final int SOCKET_TIMEOUT = 15000;
+    /** 请求头最大长度 */
+    private static final int MAX_REQUEST_BYTES = 8 * 1024;
+    /** 转发缓冲大小 */
+    private static final int BUFFER_SIZE = 16 * 1024;
+    /** 作为内容长度传给writeHeaders时表示使用分块编码 */
+    private static final long CHUNKED = -2;
+    /** accept连续失败后第一次等待的时间，之后每次翻倍，单位：ms */
+    private static final long ACCEPT_RETRY_BASE_MS = 50;
+    /** accept连续失败的最多次数，超过后关闭监听，下次注册会话时重新启动 */
+    private static final int MAX_ACCEPT_FAILURES = 8;
+
+    /** 单例 */
+    private static volatile HlsLocalServer sInstance;
+
+    /** 每个连接线程复用的转发和解密缓冲，线程空闲回收前一直复用 */
+    private static final ThreadLocal<Buffers> BUFFERS = new ThreadLocal<Buffers>() {
+        @Override
+        protected Buffers initialValue() {
+            return new Buffers();
+        }
+    };
+
+    /** 会话，按访问顺序排列 */
+    private final Map<String, HlsProxySession> mSessions =
+            new LinkedHashMap<String, HlsProxySession>(MAX_SESSIONS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, HlsProxySession> eldest) {
+                    if (size() <= MAX_SESSIONS) {
+                        return false;
+                    }
+                    eldest.getValue().close();
+                    return true;
+                }
+            };
+    /** 处理连接的线程池 */
+    private final ThreadPoolExecutor mExecutor;
+    /** 监听socket，启动之前为null */
+    private ServerSocket mServerSocket;
+
+    /**
+     * 获取本地服务单例
+     *
+     * @return 单例
+     */
+    public static HlsLocalServer getInstance() {
+        if (sInstance == null) {
+            synchronized (HlsLocalServer.class) {
+                if (sInstance == null) {
+                    sInstance = new HlsLocalServer();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * 私有构造器
+     */
+    private HlsLocalServer() {
+        mExecutor = new ThreadPoolExecutor(0, MAX_CONNECTIONS, 30, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), new ThreadFactory() {
+
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "swan-hls-server-" + mCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * 注册会话，第一次调用时启动服务
+     *
+     * @param session 会话
+     * @return 会话的地址前缀，以/结尾
+     * @throws IOException 启动服务失败
+     */
+    synchronized String register(HlsProxySession session) throws IOException {
+        if (mServerSocket == null) {
+            start();
+        }
+        mSessions.put(session.getId(), session);
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + PATH_PREFIX
+                + session.getId() + "/" + session.getToken() + "/";
+    }
+
+    /**
+     * 查找会话
+     *
+     * @param id 会话id
+     * @return 会话，不存在时返回null
+     */
+    synchronized HlsProxySession getSession(String id) {
+        return mSessions.get(id);
+    }
+
+    /**
+     * 启动监听线程
+     */
+    private void start() throws IOException {
+        final ServerSocket serverSocket =
+                new ServerSocket(0, MAX_CONNECTIONS, InetAddress.getByName("127.0.0.1"));
+        Thread acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int failures = 0;
+                while (true) {
+                    final Socket socket;
+                    try {
+                        socket = serverSocket.accept();
+                        failures = 0;
+                    } catch (IOException ex) {
+                        if (DEBUG) {
+                            Log.w(TAG, "accept failed", ex);
+                        }
+                        // 文件句柄耗尽等持续性错误会让accept立即失败，不能原地空转
+                        if (serverSocket.isClosed() || ++failures > MAX_ACCEPT_FAILURES) {
+                            stop(serverSocket);
+                            return;
+                        }
+                        try {
+                            Thread.sleep(ACCEPT_RETRY_BASE_MS << (failures - 1));
+                        } catch (InterruptedException ie) {
+                            stop(serverSocket);
+                            return;
+                        }
+                        continue;
+                    }
+                    try {
+                        mExecutor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                handle(socket);
+                            }
+                        });
+                    } catch (RejectedExecutionException ex) {
+                        closeQuietly(socket);
+                    }
+                }
+            }
+        }, "swan-hls-server-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        mServerSocket = serverSocket;
+        if (DEBUG) {
+            Log.d(TAG, "listening on " + serverSocket.getLocalPort());
+        }
+    }
+
+    /**
+     * 关闭监听，之后注册会话时重新启动
+     *
+     * @param serverSocket 出错的监听socket
+     */
+    private synchronized void stop(ServerSocket serverSocket) {
+        try {
+            serverSocket.close();
+        } catch (IOException ex) {
+            // ignore
+        }
+        if (mServerSocket == serverSocket) {
+            mServerSocket = null;
+        }
+        if (DEBUG) {
+            Log.w(TAG, "stop listening on " + serverSocket.getLocalPort());
+        }
+    }
+
+    /**
+     * 处理一个连接上的一个请求
+     *
+     * @param socket 连接
+     */
+    private void handle(Socket socket) {
+        try {
+            socket.setSoTimeout(SOCKET_TIMEOUT);
+            Request request = Request.read(new BufferedInputStream(socket.getInputStream()));
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+            if (request == null || !request.mPath.startsWith(PATH_PREFIX)) {
+                writeStatus(out, 400);
+            } else {
+                dispatch(request, out);
+            }
+            out.flush();
+        } catch (IOException ex) {
+            // 播放器seek或关闭时会主动断开连接，属于正常情况
+            if (DEBUG) {
+                Log.d(TAG, "connection closed : " + ex);
+            }
+        } finally {
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * 按路径分发请求
+     */
+    private void dispatch(Request request, OutputStream out) throws IOException {
+        String path = request.mPath.substring(PATH_PREFIX.length());
+        int slash = path.indexOf('/');
+        HlsProxySession session = slash > 0 ? getSession(path.substring(0, slash)) : null;
+        if (session == null) {
+            writeStatus(out, 404);
+            return;
+        }
+        int tokenEnd = path.indexOf('/', slash + 1);
+        if (tokenEnd < 0 || !session.verifyToken(path.substring(slash + 1, tokenEnd))) {
+            writeStatus(out, 403);
+            return;
+        }
+        String name = path.substring(tokenEnd + 1);
+        if (PLAYLIST_NAME.equals(name)) {
+            writeBytes(out, ByteBuffer.wrap(session.getPlaylistBytes()),
+                    "application/vnd.apple.mpegurl", request);
+            return;
+        }
+        int index;
+        try {
+            index = Integer.parseInt(name.substring(0, name.indexOf('/')));
+        } catch (NumberFormatException | IndexOutOfBoundsException ex) {
+            writeStatus(out, 404);
+            return;
+        }
+        if (index < 0 || index >= session.getSegmentCount()) {
+            writeStatus(out, 404);
+            return;
+        }
+        ByteBuffer data = session.awaitSegment(index, request.mRangeStart);
+        HlsSegment segment = session.getSegment(index);
+        if (data != null) {
+            writeBytes(out, data, "application/octet-stream", request);
+        } else if (segment.getKey() != null) {
+            forwardDecrypted(session, segment, request, out);
+        } else {
+            forward(segment.getUrl(), session.getHeaders(), request, out);
+        }
+    }
+
+    /**
+     * 返回内存中的数据，支持Range
+     */
+    private static void writeBytes(OutputStream out, ByteBuffer data, String contentType,
+                                   Request request) throws IOException {
+        int offset = data.arrayOffset() + data.position();
+        int length = data.remaining();
+        long start = request.mRangeStart;
+        if (start < 0) {
+            writeHeaders(out, 200, contentType, length, null);
+            out.write(data.array(), offset, length);
+            return;
+        }
+        if (start >= length) {
+            writeHeaders(out, 416, contentType, 0, "bytes */" + length);
+            return;
+        }
+        long end = request.mRangeEnd < 0 || request.mRangeEnd >= length
+                ? length - 1 : request.mRangeEnd;
+        writeHeaders(out, 206, contentType, end - start + 1,
+                "bytes " + start + "-" + end + "/" + length);
+        out.write(data.array(), offset + (int) start, (int) (end - start + 1));
+    }
+
+    /**
+     * 从源地址读取并转发，状态码、长度和Content-Range与源站一致
+     */
+    private static void forward(String url, Map<String, String> headers, Request request,
+                                OutputStream out) throws IOException {
+        HttpURLConnection connection;
+        try {
+            connection = HttpFetcher.open(url, headers, request.mRangeStart, request.mRangeEnd);
+        } catch (IOException ex) {
+            if (DEBUG) {
+                Log.w(TAG, "forward failed : " + url, ex);
+            }
+            writeStatus(out, 502);
+            return;
+        }
+        try {
+            int code = connection.getResponseCode();
+            writeHeaders(out, code, connection.getContentType(), connection.getContentLength(),
+                    connection.getHeaderField("Content-Range"));
+            InputStream in = code >= HttpURLConnection.HTTP_BAD_REQUEST
+                    ? connection.getErrorStream() : connection.getInputStream();
+            if (in == null) {
+                return;
+            }
+            try {
+                byte[] buffer = BUFFERS.get().mInput;
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                in.close();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * 从源站读取加密分片，解密后返回明文。密钥从{@link HlsKeyCache}获取，通常已经缓存
+     */
+    private static void forwardDecrypted(HlsProxySession session, HlsSegment segment,
+                                         Request request, OutputStream out) throws IOException {
+        String url = segment.getUrl();
+        Map<String, String> headers = session.getHeaders();
+        if (request.mRangeStart >= 0) {
+            // CBC密文与明文位置对应，但区间起点之前需要一个分组作为IV，这种请求很少，整体解密后按区间返回
+            ByteBuffer data;
+            try {
+                byte[] raw = HttpFetcher.readBytes(url, headers);
+                data = ByteBuffer.wrap(raw, 0, session.decrypt(raw, raw.length, segment));
+            } catch (IOException ex) {
+                if (DEBUG) {
+                    Log.w(TAG, "forward encrypted segment failed : " + url, ex);
+                }
+                writeStatus(out, 502);
+                return;
+            }
+            writeBytes(out, data, "application/octet-stream", request);
+            return;
+        }
+        String keyUrl = segment.getKey().getUrl();
+        Cipher cipher;
+        HttpURLConnection connection;
+        try {
+            cipher = HlsDecrypter.init(HlsKeyCache.getInstance().get(keyUrl, headers), segment);
+            connection = HttpFetcher.open(url, headers, -1, -1);
+        } catch (IOException ex) {
+            if (DEBUG) {
+                Log.w(TAG, "forward encrypted segment failed : " + url, ex);
+            }
+            writeStatus(out, 502);
+            return;
+        }
+        try {
+            writeHeaders(out, 200, connection.getContentType(), CHUNKED, null);
+            Buffers buffers = BUFFERS.get();
+            InputStream in = connection.getInputStream();
+            try {
+                int read;
+                while ((read = in.read(buffers.mInput)) != -1) {
+                    writeChunk(out, buffers.mOutput,
+                            cipher.update(buffers.mInput, 0, read, buffers.mOutput, 0));
+                }
+                writeChunk(out, buffers.mOutput, cipher.doFinal(buffers.mOutput, 0));
+                out.write("0\r\n\r\n".getBytes("ISO-8859-1"));
+            } catch (GeneralSecurityException ex) {
+                // 响应头已经发出，只能断开连接让播放器重试，密钥重新下载
+                HlsKeyCache.getInstance().invalidate(keyUrl);
+                throw new IOException("decrypt segment failed : " + url, ex);
+            } finally {
+                in.close();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * 写一个分块，长度为0时不写，避免提前发出结束块
+     */
+    private static void writeChunk(OutputStream out, byte[] data, int length)
+            throws IOException {
+        if (length > 0) {
+            out.write((Integer.toHexString(length) + "\r\n").getBytes("ISO-8859-1"));
+            out.write(data, 0, length);
+            out.write('\r');
+            out.write('\n');
+        }
+    }
+
+    /**
+     * 返回没有内容的错误状态
+     */
+    private static void writeStatus(OutputStream out, int code) throws IOException {
+        writeHeaders(out, code, null, 0, null);
+    }
+
+    /**
+     * 写响应头
+     *
+     * @param contentLength 内容长度，小于0时不写Content-Length，为{@link #CHUNKED}时使用分块编码
+     * @param contentRange  Content-Range，可以为null
+     */
+    private static void writeHeaders(OutputStream out, int code, String contentType,
+                                     long contentLength, String contentRange)
+            throws IOException {
+        StringBuilder builder = new StringBuilder(256);
+        builder.append("HTTP/1.1 ").append(code).append(' ').append(reasonPhrase(code))
+                .append("\r\n");
+        if (contentType != null) {
+            builder.append("Content-Type: ").append(contentType).append("\r\n");
+        }
+        if (contentLength >= 0) {
+            builder.append("Content-Length: ").append(contentLength).append("\r\n");
+        } else if (contentLength == CHUNKED) {
+            builder.append("Transfer-Encoding: chunked\r\n");
+        }
+        if (contentRange != null) {
+            builder.append("Content-Range: ").append(contentRange).append("\r\n");
+        }
+        builder.append("Accept-Ranges: bytes\r\nConnection: close\r\n\r\n");
+        out.write(builder.toString().getBytes("ISO-8859-1"));
+    }
+
+    /**
+     * 状态码对应的原因短语，转发源站响应时原样使用源站的状态码
+     *
+     * @param code 状态码
+     * @return 原因短语，不常见的状态码按类别返回
+     */
+    static String reasonPhrase(int code) {
+        switch (code) {
+            case 200:
+                return "OK";
+            case 204:
+                return "No Content";
+            case 206:
+                return "Partial Content";
+            case 301:
+                return "Moved Permanently";
+            case 302:
+                return "Found";
+            case 304:
+                return "Not Modified";
+            case 307:
+                return "Temporary Redirect";
+            case 400:
+                return "Bad Request";
+            case 401:
+                return "Unauthorized";
+            case 403:
+                return "Forbidden";
+            case 404:
+                return "Not Found";
+            case 410:
+                return "Gone";
+            case 416:
+                return "Range Not Satisfiable";
+            case 429:
+                return "Too Many Requests";
+            case 500:
+                return "Internal Server Error";
+            case 502:
+                return "Bad Gateway";
+            case 503:
+                return "Service Unavailable";
+            case 504:
+                return "Gateway Timeout";
+            default:
+                break;
+        }
+        if (code >= 500) {
+            return "Server Error";
+        } else if (code >= 400) {
+            return "Client Error";
+        } else if (code >= 300) {
+            return "Redirection";
+        }
+        return "Success";
+    }
+
+    /**
+     * 关闭socket，忽略异常
+     */
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ex) {
+            // ignore
+        }
+    }
+
+    /**
+     * 连接线程复用的缓冲
+     */
+    private static final class Buffers {
+        /** 从源站读取的数据 */
+        final byte[] mInput = new byte[BUFFER_SIZE];
+        /** 解密输出，update最多比输入多一个分组 */
+        final byte[] mOutput = new byte[BUFFER_SIZE + HlsDecrypter.BLOCK_SIZE];
+    }
+
+    /**
+     * 解析后的请求，只保留用到的字段
+     */
+    private static final class Request {
+        /** 请求路径，不含query */
+        String mPath;
+        /** Range起始字节，没有Range时为-1 */
+        long mRangeStart = -1;
+        /** Range结束字节（含），到文件末尾时为-1 */
+        long mRangeEnd = -1;
+
+        /**
+         * 读取请求行和请求头
+         *
+         * @param in 输入流
+         * @return 请求，格式错误或不是GET时返回null
+         * @throws IOException 读取失败
+         */
+        static Request read(InputStream in) throws IOException {
+            StringBuilder builder = new StringBuilder(512);
+            // 读到空行为止，请求头之后没有请求体
+            while (true) {
+                int c = in.read();
+                if (c < 0 || builder.length() >= MAX_REQUEST_BYTES) {
+                    return null;
+                }
+                builder.append((char) c);
+                int length = builder.length();
+                if (c == '\n' && length >= 4 && builder.charAt(length - 2) == '\r'
+                        && builder.charAt(length - 3) == '\n') {
+                    break;
+                }
+            }
+            String[] lines = builder.toString().split("\r\n");
+            String[] requestLine = lines[0].split(" ");
+            if (requestLine.length < 2 || !"GET".equals(requestLine[0])) {
+                return null;
+            }
+            Request request = new Request();
+            int query = requestLine[1].indexOf('?');
+            request.mPath = query < 0 ? requestLine[1] : requestLine[1].substring(0, query);
+            for (int i = 1; i < lines.length; i++) {
+                String line = lines[i];
+                int colon = line.indexOf(':');
+                if (colon > 0 && "range".equals(
+                        line.substring(0, colon).trim().toLowerCase(Locale.US))) {
+                    request.parseRange(line.substring(colon + 1).trim());
+                }
+            }
+            return request;
+        }
+
+        /**
+         * 解析bytes=start-end形式的Range，其他形式按没有Range处理
+         */
+        private void parseRange(String value) {
+            if (!value.startsWith("bytes=") || value.indexOf(',') >= 0) {
+                return;
+            }
+            int dash = value.indexOf('-');
+            if (dash <= "bytes=".length()) {
+                return;
+            }
+            try {
+                mRangeStart = Long.parseLong(value.substring("bytes=".length(), dash).trim());
+                String end = value.substring(dash + 1).trim();
+                mRangeEnd = end.isEmpty() ? -1 : Long.parseLong(end);
+            } catch (NumberFormatException ex) {
+                mRangeStart = -1;
+                mRangeEnd = -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.baidu.swan.videoplayer.hls;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * HLS媒体播放列表，由{@link HlsPlaylistParser#parseMedia(String, String)}解析得到。
+ * 保留原始行，可以把分片、密钥等地址替换为本地地址后重新生成播放列表
+ *
+ * @author machao10
+ * @since 2019-03-12
+ */
+public final class HlsMediaPlaylist {
+
+    /** 标签属性中的URI */
+    private static final Pattern URI_ATTRIBUTE = Pattern.compile("URI=\"([^\"]*)\"");
+    /** 密钥标签 */
+    private static final String TAG_KEY = "#EXT-X-KEY:";
+
+    /** 播放列表地址 */
+    private final String mUrl;
+    /** 原始行，已去掉首尾空白 */
+    private final List<String> mLines;
+    /** 分片 */
+    private final List<HlsSegment> mSegments;
+    /** 密钥、初始化分片等标签中引用的地址，已解析为绝对地址，不重复 */
+    private final List<String> mResourceUrls;
+    /** 分片最大时长，单位：ms */
+    private final long mTargetDurationMs;
+    /** 是否有EXT-X-ENDLIST，即点播播放列表 */
+    private final boolean mEndList;
+    /** 是否使用了EXT-X-BYTERANGE */
+    private final boolean mByteRange;
+
+    /**
+     * 构造器
+     */
+    HlsMediaPlaylist(String url, List<String> lines, List<HlsSegment> segments,
+                     List<String> resourceUrls, long targetDurationMs, boolean endList,
+                     boolean byteRange) {
+        mUrl = url;
+        mLines = lines;
+        mSegments = Collections.unmodifiableList(segments);
+        mResourceUrls = Collections.unmodifiableList(resourceUrls);
+        mTargetDurationMs = targetDurationMs;
+        mEndList = endList;
+        mByteRange = byteRange;
+    }
+
+    /**
+     * 获取播放列表地址
+     *
+     * @return 地址
+     */
+    public String getUrl() {
+        return mUrl;
+    }
+
+    /**
+     * 获取分片列表
+     *
+     * @return 分片，按播放顺序排列
+     */
+    public List<HlsSegment> getSegments() {
+        return mSegments;
+    }
+
+    /**
+     * 获取标签中引用的其他资源地址，如密钥和初始化分片
+     *
+     * @return 绝对地址
+     */
+    public List<String> getResourceUrls() {
+        return mResourceUrls;
+    }
+
+    /**
+     * 获取分片最大时长
+     *
+     * @return 时长，单位：ms
+     */
+    public long getTargetDurationMs() {
+        return mTargetDurationMs;
+    }
+
+    /**
+     * 获取总时长
+     *
+     * @return 全部分片时长之和，单位：ms
+     */
+    public long getDurationMs() {
+        if (mSegments.isEmpty()) {
+            return 0;
+        }
+        HlsSegment last = mSegments.get(mSegments.size() - 1);
+        return last.getStartMs() + last.getDurationMs();
+    }
+
+    /**
+     * 是否为点播播放列表，直播播放列表会持续更新，不能下载或离线播放
+     *
+     * @return true：点播
+     */
+    public boolean isEndList() {
+        return mEndList;
+    }
+
+    /**
+     * 是否使用了EXT-X-BYTERANGE，即多个分片共用一个文件
+     *
+     * @return true：使用了
+     */
+    public boolean hasByteRange() {
+        return mByteRange;
+    }
+
+    /**
+     * 重新生成播放列表，分片和标签中的地址按映射替换，没有映射的地址替换为绝对地址，
+     * 这样生成的播放列表放在任何位置都可以正确引用原地址
+     *
+     * @param mapping 绝对地址到新地址的映射
+     * @return 播放列表内容
+     */
+    public String rewrite(Map<String, String> mapping) {
+        return rewrite(mapping, false);
+    }
+
+    /**
+     * 重新生成播放列表，同{@link #rewrite(Map)}，可以去掉EXT-X-KEY标签，用于全部分片都已解密后提供的情况
+     *
+     * @param mapping   绝对地址到新地址的映射
+     * @param clearKeys 是否去掉EXT-X-KEY标签
+     * @return 播放列表内容
+     */
+    public String rewrite(Map<String, String> mapping, boolean clearKeys) {
+        StringBuilder builder = new StringBuilder(mLines.size() * 64);
+        for (String line : mLines) {
+            if (line.isEmpty() || (clearKeys && line.startsWith(TAG_KEY))) {
+                continue;
+            }
+            if (!line.startsWith("#")) {
+                String url = HlsPlaylistParser.resolve(mUrl, line);
+                String mapped = mapping.get(url);
+                builder.append(mapped != null ? mapped : url);
+            } else if (line.startsWith("#EXT-X-") && line.contains("URI=\"")) {
+                Matcher matcher = URI_ATTRIBUTE.matcher(line);
+                StringBuffer tag = new StringBuffer(line.length() + 64);
+                while (matcher.find()) {
+                    String url = HlsPlaylistParser.resolve(mUrl, matcher.group(1));
+                    String mapped = mapping.get(url);
+                    matcher.appendReplacement(tag, Matcher.quoteReplacement(
+                            "URI=\"" + (mapped != null ? mapped : url) + "\""));
+                }
+                matcher.appendTail(tag);
+                builder.append(tag);
+            } else {
+                builder.append(line);
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,294 @@
+package com.baidu.swan.videoplayer.hls;
+
+import com.baidu.swan.videoplayer.VideoUtils;
+import com.baidu.swan.videoplayer.rendition.Rendition;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * HLS（m3u8）播放列表解析，只解析播放器组件用到的标签
+ *
+ * @author machao10
+ * @since 2019-03-06
+ */
+public final class HlsPlaylistParser {
+
+    /** 播放列表文件头 */
+    private static final String TAG_HEADER = "#EXTM3U";
+    /** 多码率播放列表中的码率档位 */
+    private static final String TAG_STREAM_INF = "#EXT-X-STREAM-INF:";
+    /** 多码率播放列表中的音频、字幕等备选媒体组 */
+    private static final String TAG_MEDIA = "#EXT-X-MEDIA:";
+    /** 分片时长 */
+    private static final String TAG_INF = "#EXTINF:";
+    /** 分片最大时长 */
+    private static final String TAG_TARGET_DURATION = "#EXT-X-TARGETDURATION:";
+    /** 第一个分片的媒体序列号 */
+    private static final String TAG_MEDIA_SEQUENCE = "#EXT-X-MEDIA-SEQUENCE:";
+    /** 分片加密信息 */
+    private static final String TAG_KEY = "#EXT-X-KEY:";
+    /** 初始化分片 */
+    private static final String TAG_MAP = "#EXT-X-MAP:";
+    /** 分片字节范围 */
+    private static final String TAG_BYTE_RANGE = "#EXT-X-BYTERANGE:";
+    /** 点播播放列表结束标记 */
+    private static final String TAG_END_LIST = "#EXT-X-ENDLIST";
+
+    /**
+     * 工具类，不允许实例化
+     */
+    private HlsPlaylistParser() {
+    }
+
+    /**
+     * 根据地址判断是否为HLS
+     *
+     * @param url 播放地址
+     * @return true：路径以.m3u8结尾
+     */
+    public static boolean isHlsUrl(String url) {
+        if (url == null) {
+            return false;
+        }
+        return VideoUtils.getUrlPath(url).toLowerCase(Locale.US).endsWith(".m3u8");
+    }
+
+    /**
+     * 判断播放列表是否为多码率播放列表（master playlist）
+     *
+     * @param playlist 播放列表内容
+     * @return true：多码率播放列表
+     */
+    public static boolean isMasterPlaylist(String playlist) {
+        return playlist != null && playlist.startsWith(TAG_HEADER)
+                && playlist.contains(TAG_STREAM_INF);
+    }
+
+    /**
+     * 判断多码率播放列表是否声明了备选媒体组（EXT-X-MEDIA），如独立的音轨、字幕。
+     * 这时码率档位的播放列表里没有这些媒体，只能把多码率播放列表整个交给播放器
+     *
+     * @param playlist 播放列表内容
+     * @return true：有备选媒体组
+     */
+    public static boolean hasAlternativeMedia(String playlist) {
+        return playlist != null && playlist.contains(TAG_MEDIA);
+    }
+
+    /**
+     * 解析多码率播放列表中的码率档位
+     *
+     * @param baseUrl  播放列表地址，用于解析相对地址
+     * @param playlist 播放列表内容
+     * @return 码率档位，不是多码率播放列表时返回空列表
+     * @throws IOException 格式错误
+     */
+    public static List<Rendition> parseMaster(String baseUrl, String playlist)
+            throws IOException {
+        List<Rendition> renditions = new ArrayList<>();
+        if (!isMasterPlaylist(playlist)) {
+            return renditions;
+        }
+        BufferedReader reader = new BufferedReader(new StringReader(playlist));
+        Map<String, String> pending = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.startsWith(TAG_STREAM_INF)) {
+                pending = parseAttributes(line.substring(TAG_STREAM_INF.length()));
+            } else if (!line.startsWith("#") && pending != null) {
+                renditions.add(toRendition(resolve(baseUrl, line), pending));
+                pending = null;
+            }
+        }
+        return renditions;
+    }
+
+    /**
+     * 解析媒体播放列表（分片列表）
+     *
+     * @param baseUrl  播放列表地址，用于解析相对地址
+     * @param playlist 播放列表内容
+     * @return 媒体播放列表
+     * @throws IOException 格式错误或者是多码率播放列表
+     */
+    public static HlsMediaPlaylist parseMedia(String baseUrl, String playlist)
+            throws IOException {
+        if (playlist == null || !playlist.startsWith(TAG_HEADER)) {
+            throw new IOException("not a m3u8 playlist : " + baseUrl);
+        }
+        if (isMasterPlaylist(playlist)) {
+            throw new IOException("master playlist is not a media playlist : " + baseUrl);
+        }
+        List<String> lines = new ArrayList<>();
+        List<HlsSegment> segments = new ArrayList<>();
+        List<String> resources = new ArrayList<>();
+        long targetDurationMs = 0;
+        long sequence = 0;
+        long startMs = 0;
+        long durationMs = -1;
+        HlsKey key = null;
+        boolean endList = false;
+        boolean byteRange = false;
+        BufferedReader reader = new BufferedReader(new StringReader(playlist));
+        String line;
+        try {
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                lines.add(line);
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (line.startsWith(TAG_INF)) {
+                    int comma = line.indexOf(',');
+                    String value = line.substring(TAG_INF.length(),
+                            comma < 0 ? line.length() : comma);
+                    durationMs = (long) (Double.parseDouble(value.trim()) * 1000);
+                } else if (line.startsWith(TAG_TARGET_DURATION)) {
+                    targetDurationMs = Long.parseLong(
+                            line.substring(TAG_TARGET_DURATION.length()).trim()) * 1000;
+                } else if (line.startsWith(TAG_MEDIA_SEQUENCE)) {
+                    sequence = Long.parseLong(line.substring(TAG_MEDIA_SEQUENCE.length()).trim());
+                } else if (line.startsWith(TAG_KEY)) {
+                    Map<String, String> attributes =
+                            parseAttributes(line.substring(TAG_KEY.length()));
+                    String method = attributes.get("METHOD");
+                    String uri = attributes.get("URI");
+                    if (method == null || "NONE".equals(method) || uri == null) {
+                        key = null;
+                    } else {
+                        key = new HlsKey(method, resolve(baseUrl, uri), attributes.get("IV"));
+                        addResource(resources, key.getUrl());
+                    }
+                } else if (line.startsWith(TAG_MAP)) {
+                    String uri = parseAttributes(line.substring(TAG_MAP.length())).get("URI");
+                    if (uri != null) {
+                        addResource(resources, resolve(baseUrl, uri));
+                    }
+                } else if (line.startsWith(TAG_BYTE_RANGE)) {
+                    byteRange = true;
+                } else if (line.startsWith(TAG_END_LIST)) {
+                    endList = true;
+                } else if (!line.startsWith("#")) {
+                    if (durationMs < 0) {
+                        throw new IOException("segment without EXTINF : " + line);
+                    }
+                    segments.add(new HlsSegment(resolve(baseUrl, line), durationMs, startMs,
+                            sequence, key));
+                    startMs += durationMs;
+                    sequence++;
+                    durationMs = -1;
+                }
+            }
+        } catch (NumberFormatException ex) {
+            throw new IOException("malformed media playlist : " + baseUrl, ex);
+        }
+        return new HlsMediaPlaylist(baseUrl, lines, segments, resources, targetDurationMs,
+                endList, byteRange);
+    }
+
+    /**
+     * 将相对地址解析为绝对地址
+     *
+     * @param baseUrl 播放列表地址
+     * @param url     播放列表中的地址
+     * @return 绝对地址
+     */
+    public static String resolve(String baseUrl, String url) {
+        if (url.contains("://") || baseUrl == null) {
+            return url;
+        }
+        try {
+            return new URI(baseUrl).resolve(url).toString();
+        } catch (URISyntaxException | IllegalArgumentException ex) {
+            return url;
+        }
+    }
+
+    /**
+     * 解析标签属性列表，如BANDWIDTH=1280000,CODECS="avc1.4d401f,mp4a.40.2"
+     *
+     * @param attributes 属性列表
+     * @return 属性名到属性值的映射，引号内的值已去掉引号
+     */
+    public static Map<String, String> parseAttributes(String attributes) {
+        Map<String, String> result = new HashMap<>();
+        int length = attributes.length();
+        int i = 0;
+        while (i < length) {
+            int eq = attributes.indexOf('=', i);
+            if (eq < 0) {
+                break;
+            }
+            String name = attributes.substring(i, eq).trim();
+            int valueStart = eq + 1;
+            int valueEnd;
+            String value;
+            if (valueStart < length && attributes.charAt(valueStart) == '"') {
+                int quoteEnd = attributes.indexOf('"', valueStart + 1);
+                if (quoteEnd < 0) {
+                    quoteEnd = length;
+                }
+                value = attributes.substring(valueStart + 1, quoteEnd);
+                valueEnd = attributes.indexOf(',', quoteEnd);
+            } else {
+                valueEnd = attributes.indexOf(',', valueStart);
+                value = attributes.substring(valueStart, valueEnd < 0 ? length : valueEnd).trim();
+            }
+            result.put(name, value);
+            if (valueEnd < 0) {
+                break;
+            }
+            i = valueEnd + 1;
+        }
+        return result;
+    }
+
+    /**
+     * 添加不重复的资源地址
+     */
+    private static void addResource(List<String> resources, String url) {
+        if (!resources.contains(url)) {
+            resources.add(url);
+        }
+    }
+
+    /**
+     * 由EXT-X-STREAM-INF属性构造码率档位
+     */
+    private static Rendition toRendition(String url, Map<String, String> attributes)
+            throws IOException {
+        int width = 0;
+        int height = 0;
+        long bandwidth = 0;
+        try {
+            String resolution = attributes.get("RESOLUTION");
+            if (resolution != null) {
+                int x = resolution.toLowerCase(Locale.US).indexOf('x');
+                if (x > 0) {
+                    width = Integer.parseInt(resolution.substring(0, x));
+                    height = Integer.parseInt(resolution.substring(x + 1));
+                }
+            }
+            String value = attributes.get("BANDWIDTH");
+            if (value != null) {
+                bandwidth = Long.parseLong(value);
+            }
+        } catch (NumberFormatException ex) {
+            throw new IOException("malformed EXT-X-STREAM-INF : " + attributes, ex);
+        }
+        return new Rendition(url, width, height, bandwidth);
+    }
+}
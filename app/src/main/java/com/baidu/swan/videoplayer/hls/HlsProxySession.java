@@ -0,0 +1,549 @@
+package com.baidu.swan.videoplayer.hls;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.baidu.cloud.videoplayer.demo.BuildConfig;
+import com.baidu.swan.videoplayer.VideoUtils;
+import com.baidu.swan.videoplayer.net.HttpFetcher;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HLS起播加速会话。
+ * <p>
+ * 播放器自己起播时先下载播放列表，再在一个连接上串行下载分片，首帧要等前几个分片依次下载完。
+ * 这里由组件先下载媒体播放列表，同时并行下载前几个分片到内存，再把播放列表中这几个分片的地址
+ * 改写为{@link HlsLocalServer}的本地地址交给播放器，其余分片仍然直接从源站读取。
+ * 播放器请求还没下载完的分片时会等待预取完成，预取失败时由本地服务从源站转发。
+ * <p>
+ * AES-128加密的播放列表全部分片都改写为本地地址，去掉EXT-X-KEY标签，由组件解密后提供明文：
+ * 密钥通过{@link HlsKeyCache}提前下载并缓存，起播和seek不再等待密钥请求。
+ * <p>
+ * 本地地址中带有每个会话随机生成的128位令牌，本地服务只响应令牌正确的请求，
+ * 同一设备上的其他应用猜不到地址，也就拿不到解密后的明文。预取的分片以密文保存，
+ * 令牌校验通过、真正交给播放器时才解密
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public final class HlsProxySession {
+
+    /** debug 开关 */
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    /** debug tag */
+    private static final String TAG = "HlsProxySession";
+    /** 默认预取的分片数 */
+    public static final int DEFAULT_PREFETCH_SEGMENTS = 3;
+    /** 预取并发数，所有会话共享 */
+    private static final int PREFETCH_THREADS = 4;
+    /** 播放器请求时等待预取完成的最长时间，单位：ms */
+    private static final long SEGMENT_WAIT_MS = 15000;
+    /** 打开会话时最多提前下载的密钥数，密钥轮换频繁时其余密钥在使用时再下载 */
+    private static final int PREFETCH_KEYS = 4;
+    /** 访问令牌的字节数 */
+    private static final int TOKEN_BYTES = 16;
+    /** 生成访问令牌的随机数 */
+    private static final SecureRandom RANDOM = new SecureRandom();
+    /** 会话id序号 */
+    private static final AtomicInteger ID_SEQUENCE = new AtomicInteger();
+
+    /** 预取线程池 */
+    private static volatile ThreadPoolExecutor sPrefetchExecutor;
+
+    /** 会话id，进程内递增，只用于查找会话 */
+    private final String mId;
+    /** 访问令牌，32位十六进制 */
+    private final String mToken;
+    /** 原播放列表地址 */
+    private final String mUrl;
+    /** 请求header */
+    private final Map<String, String> mHeaders;
+    /** 媒体播放列表 */
+    private final HlsMediaPlaylist mPlaylist;
+    /** 预取的分片 */
+    private final Slot[] mSlots;
+    /** 是否有AES-128加密的分片 */
+    private final boolean mEncrypted;
+    /** 创建时间，SystemClock.elapsedRealtime */
+    private final long mStartMs;
+    /** 已预取的字节数 */
+    private final AtomicLong mPrefetchedBytes = new AtomicLong();
+    /** 已预取完成的分片数，包括失败的 */
+    private final AtomicInteger mFinishedCount = new AtomicInteger();
+    /** 播放器请求时直接从内存返回的分片数 */
+    private final AtomicInteger mHitCount = new AtomicInteger();
+    /** 全部预取完成的耗时，单位：ms，没有完成时为-1 */
+    private volatile long mPrefetchCostMs = -1;
+    /** 改写后的播放列表 */
+    private byte[] mPlaylistBytes;
+    /** 本地播放列表地址 */
+    private String mLocalUrl;
+    /** 是否已关闭 */
+    private volatile boolean mClosed;
+
+    /**
+     * 一个预取分片的下载结果
+     */
+    private static final class Slot {
+        /** 分片内容，失败或已释放时为null */
+        byte[] mData;
+        /** 有效内容长度，解密后比mData短 */
+        int mLength;
+        /** 是否已结束 */
+        boolean mDone;
+        /** mData是否已解密为明文 */
+        boolean mDecrypted;
+        /** 是否已被播放器读取过 */
+        boolean mServed;
+    }
+
+    /**
+     * 私有构造器
+     */
+    private HlsProxySession(String url, Map<String, String> headers, HlsMediaPlaylist playlist,
+                            int prefetchCount, boolean encrypted) {
+        mId = String.valueOf(ID_SEQUENCE.incrementAndGet());
+        mToken = newToken();
+        mUrl = url;
+        mHeaders = headers;
+        mPlaylist = playlist;
+        mEncrypted = encrypted;
+        mSlots = new Slot[Math.min(prefetchCount, playlist.getSegments().size())];
+        for (int i = 0; i < mSlots.length; i++) {
+            mSlots[i] = new Slot();
+        }
+        mStartMs = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * 下载媒体播放列表并开始并行预取前几个分片。会访问网络，不能在主线程调用
+     *
+     * @param url           媒体播放列表地址
+     * @param headers       请求header，可以为null
+     * @param prefetchCount 预取的分片数
+     * @return 会话，通过{@link #getLocalUrl()}获取交给播放器的地址
+     * @throws IOException 网络错误，或者是多码率、直播、EXT-X-BYTERANGE播放列表、
+     *                     SAMPLE-AES加密等不支持的情况
+     */
+    public static HlsProxySession open(String url, Map<String, String> headers,
+                                       int prefetchCount) throws IOException {
+        return open(url, headers, prefetchCount, null);
+    }
+
+    /**
+     * 使用已下载的媒体播放列表开始并行预取前几个分片。会访问网络，不能在主线程调用
+     *
+     * @param url           媒体播放列表地址
+     * @param headers       请求header，可以为null
+     * @param prefetchCount 预取的分片数
+     * @param text          已下载的播放列表内容，为null时重新下载
+     * @return 会话，通过{@link #getLocalUrl()}获取交给播放器的地址
+     * @throws IOException 网络错误，或者是多码率、直播、EXT-X-BYTERANGE播放列表、
+     *                     SAMPLE-AES加密等不支持的情况
+     */
+    public static HlsProxySession open(String url, Map<String, String> headers,
+                                       int prefetchCount, String text) throws IOException {
+        HlsMediaPlaylist playlist = HlsPlaylistParser.parseMedia(url,
+                text != null ? text : HttpFetcher.readText(url, headers));
+        if (!playlist.isEndList()) {
+            // 直播播放列表会持续刷新，改写后的快照很快过期
+            throw new IOException("live playlist is not supported : " + url);
+        }
+        if (playlist.hasByteRange() || playlist.getSegments().isEmpty()) {
+            throw new IOException("unsupported playlist : " + url);
+        }
+        List<HlsSegment> segments = playlist.getSegments();
+        Set<String> keyUrls = new LinkedHashSet<>();
+        for (HlsSegment segment : segments) {
+            HlsKey key = segment.getKey();
+            if (key == null) {
+                continue;
+            }
+            if (!key.isAes128()) {
+                throw new IOException("unsupported encryption " + key.getMethod() + " : " + url);
+            }
+            keyUrls.add(key.getUrl());
+        }
+        boolean encrypted = !keyUrls.isEmpty();
+        if (encrypted) {
+            int count = 0;
+            for (String keyUrl : keyUrls) {
+                if (count++ == PREFETCH_KEYS) {
+                    break;
+                }
+                HlsKeyCache.getInstance().prefetch(keyUrl, headers);
+            }
+        }
+        HlsProxySession session =
+                new HlsProxySession(url, headers, playlist, prefetchCount, encrypted);
+        String base = HlsLocalServer.getInstance().register(session);
+        session.mLocalUrl = base + HlsLocalServer.PLAYLIST_NAME;
+        Map<String, String> mapping = new HashMap<>();
+        for (int i = 0; i < session.getSegmentCount(); i++) {
+            String segmentUrl = segments.get(i).getUrl();
+            if (!mapping.containsKey(segmentUrl)) {
+                mapping.put(segmentUrl, i + "/" + localName(segmentUrl));
+            }
+        }
+        session.mPlaylistBytes = playlist.rewrite(mapping, encrypted).getBytes("UTF-8");
+        session.startPrefetch();
+        return session;
+    }
+
+    /**
+     * 本地地址中使用的分片文件名，保留原文件名便于排查，含有需要转义的字符时使用固定名称
+     *
+     * @param url 分片地址
+     * @return 文件名
+     */
+    private static String localName(String url) {
+        String path = VideoUtils.getUrlPath(url);
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        if (name.isEmpty()) {
+            return "segment";
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '.' && c != '-' && c != '_') {
+                return "segment";
+            }
+        }
+        return name;
+    }
+
+    /**
+     * 提交全部预取任务
+     */
+    private void startPrefetch() {
+        ThreadPoolExecutor executor = getPrefetchExecutor();
+        for (int i = 0; i < mSlots.length; i++) {
+            final int index = i;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    prefetch(index);
+                }
+            });
+        }
+    }
+
+    /**
+     * 下载一个分片到内存
+     *
+     * @param index 分片序号
+     */
+    private void prefetch(int index) {
+        byte[] data = null;
+        int length = 0;
+        if (!mClosed) {
+            HlsSegment segment = mPlaylist.getSegments().get(index);
+            try {
+                data = HttpFetcher.readBytes(segment.getUrl(), mHeaders);
+                length = data.length;
+                mPrefetchedBytes.addAndGet(length);
+            } catch (IOException ex) {
+                data = null;
+                if (DEBUG) {
+                    Log.w(TAG, "prefetch segment " + index + " failed", ex);
+                }
+            }
+        }
+        Slot slot = mSlots[index];
+        synchronized (slot) {
+            slot.mData = mClosed ? null : data;
+            slot.mLength = length;
+            slot.mDone = true;
+            slot.notifyAll();
+        }
+        if (mFinishedCount.incrementAndGet() == mSlots.length) {
+            mPrefetchCostMs = SystemClock.elapsedRealtime() - mStartMs;
+            if (DEBUG) {
+                Log.d(TAG, "prefetched " + mSlots.length + " segments, "
+                        + mPrefetchedBytes.get() + " bytes in " + mPrefetchCostMs + "ms");
+            }
+        }
+    }
+
+    /**
+     * 原地解密分片，密钥从缓存获取；解密失败时删除缓存的密钥，下次使用时重新下载
+     *
+     * @param data    密文
+     * @param length  密文长度
+     * @param segment 分片
+     * @return 明文长度
+     * @throws IOException 下载密钥或解密失败
+     */
+    int decrypt(byte[] data, int length, HlsSegment segment) throws IOException {
+        String keyUrl = segment.getKey().getUrl();
+        byte[] key = HlsKeyCache.getInstance().get(keyUrl, mHeaders);
+        try {
+            return HlsDecrypter.decrypt(data, length, key, segment);
+        } catch (IOException ex) {
+            HlsKeyCache.getInstance().invalidate(keyUrl);
+            throw ex;
+        }
+    }
+
+    /**
+     * 等待分片预取完成，加密分片第一次读取时解密。在本地服务的连接线程调用，调用前需要校验令牌
+     *
+     * @param index      分片序号
+     * @param rangeStart 播放器请求的起始字节，小于0时表示整个分片
+     * @return 分片明文，预取失败、解密失败、超时或已关闭时返回null，由调用方从源站转发
+     */
+    ByteBuffer awaitSegment(int index, long rangeStart) {
+        if (index >= mSlots.length) {
+            return null;
+        }
+        Slot slot = mSlots[index];
+        synchronized (slot) {
+            long deadline = SystemClock.elapsedRealtime() + SEGMENT_WAIT_MS;
+            while (!slot.mDone && !mClosed) {
+                long remaining = deadline - SystemClock.elapsedRealtime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                try {
+                    slot.wait(remaining);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+            HlsSegment segment = mPlaylist.getSegments().get(index);
+            if (slot.mData != null && !slot.mDecrypted && segment.getKey() != null) {
+                try {
+                    slot.mLength = decrypt(slot.mData, slot.mLength, segment);
+                    slot.mDecrypted = true;
+                } catch (IOException ex) {
+                    slot.mData = null;
+                    if (DEBUG) {
+                        Log.w(TAG, "decrypt segment " + index + " failed", ex);
+                    }
+                }
+            }
+            if (slot.mData != null && rangeStart <= 0 && !slot.mServed) {
+                slot.mServed = true;
+                mHitCount.incrementAndGet();
+            }
+            return slot.mData == null ? null : ByteBuffer.wrap(slot.mData, 0, slot.mLength);
+        }
+    }
+
+    /**
+     * 释放预取的数据。已交给播放器的地址仍然可以使用，之后的请求由本地服务从源站转发
+     */
+    public void close() {
+        mClosed = true;
+        for (Slot slot : mSlots) {
+            synchronized (slot) {
+                slot.mData = null;
+                slot.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 获取会话id
+     *
+     * @return 会话id
+     */
+    String getId() {
+        return mId;
+    }
+
+    /**
+     * 获取访问令牌，本地地址中会话id之后的一级路径
+     *
+     * @return 令牌
+     */
+    String getToken() {
+        return mToken;
+    }
+
+    /**
+     * 校验请求中的令牌，比较耗时与令牌内容无关
+     *
+     * @param token 请求路径中的令牌，可以为null
+     * @return true：令牌正确
+     */
+    boolean verifyToken(String token) {
+        if (token == null || token.length() != mToken.length()) {
+            return false;
+        }
+        int diff = 0;
+        for (int i = 0; i < token.length(); i++) {
+            diff |= token.charAt(i) ^ mToken.charAt(i);
+        }
+        return diff == 0;
+    }
+
+    /**
+     * 生成随机访问令牌
+     *
+     * @return 32位十六进制令牌
+     */
+    private static String newToken() {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        RANDOM.nextBytes(bytes);
+        StringBuilder hex = new StringBuilder(TOKEN_BYTES * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16))
+                    .append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * 获取改写后的播放列表
+     *
+     * @return 播放列表内容
+     */
+    byte[] getPlaylistBytes() {
+        return mPlaylistBytes;
+    }
+
+    /**
+     * 获取改写为本地地址的分片数：加密时为全部分片，否则为预取的分片
+     *
+     * @return 分片数，本地地址中的分片序号小于这个值
+     */
+    int getSegmentCount() {
+        return mEncrypted ? mPlaylist.getSegments().size() : mSlots.length;
+    }
+
+    /**
+     * 获取分片
+     *
+     * @param index 分片序号
+     * @return 分片
+     */
+    HlsSegment getSegment(int index) {
+        return mPlaylist.getSegments().get(index);
+    }
+
+    /**
+     * 获取请求header
+     *
+     * @return header，可以为null
+     */
+    Map<String, String> getHeaders() {
+        return mHeaders;
+    }
+
+    /**
+     * 是否有AES-128加密的分片，此时由组件解密后提供明文
+     *
+     * @return true：加密
+     */
+    public boolean isEncrypted() {
+        return mEncrypted;
+    }
+
+    /**
+     * 获取原播放列表地址
+     *
+     * @return 地址
+     */
+    public String getUrl() {
+        return mUrl;
+    }
+
+    /**
+     * 获取交给播放器的本地播放列表地址
+     *
+     * @return 本地地址
+     */
+    public String getLocalUrl() {
+        return mLocalUrl;
+    }
+
+    /**
+     * 获取媒体播放列表
+     *
+     * @return 媒体播放列表
+     */
+    public HlsMediaPlaylist getPlaylist() {
+        return mPlaylist;
+    }
+
+    /**
+     * 获取已预取的字节数
+     *
+     * @return 字节数
+     */
+    public long getPrefetchedBytes() {
+        return mPrefetchedBytes.get();
+    }
+
+    /**
+     * 获取播放器直接从内存读取的分片数
+     *
+     * @return 分片数
+     */
+    public int getHitCount() {
+        return mHitCount.get();
+    }
+
+    /**
+     * 获取全部分片预取完成的耗时
+     *
+     * @return 耗时，单位：ms，还没完成时返回-1
+     */
+    public long getPrefetchCostMs() {
+        return mPrefetchCostMs;
+    }
+
+    @Override
+    public String toString() {
+        return "HlsProxySession{" + mUrl + ", segments=" + mSlots.length + ", encrypted="
+                + mEncrypted + ", bytes="
+                + mPrefetchedBytes.get() + ", hits=" + mHitCount.get() + ", cost="
+                + mPrefetchCostMs + "ms}";
+    }
+
+    /**
+     * 获取预取线程池。起播等待预取结果，线程保持默认优先级，空闲后自动回收
+     *
+     * @return 线程池
+     */
+    private static ThreadPoolExecutor getPrefetchExecutor() {
+        if (sPrefetchExecutor == null) {
+            synchronized (HlsProxySession.class) {
+                if (sPrefetchExecutor == null) {
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(PREFETCH_THREADS,
+                            PREFETCH_THREADS, 30, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+                        private final AtomicInteger mCount = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread =
+                                    new Thread(r, "swan-hls-prefetch-" + mCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                    executor.allowCoreThreadTimeOut(true);
+                    sPrefetchExecutor = executor;
+                }
+            }
+        }
+        return sPrefetchExecutor;
+    }
+}
@@ -0,0 +1,83 @@
+package com.baidu.swan.videoplayer.hls;
+
+/**
+ * HLS媒体播放列表中的一个分片
+ *
+ * @author machao10
+ * @since 2019-03-12
+ */
+public final class HlsSegment {
+
+    /** 分片地址，已解析为绝对地址 */
+    private final String mUrl;
+    /** 分片时长，单位：ms */
+    private final long mDurationMs;
+    /** 分片在整个播放列表中的开始时间，单位：ms */
+    private final long mStartMs;
+    /** 媒体序列号 */
+    private final long mSequence;
+    /** 分片使用的密钥，不加密时为null */
+    private final HlsKey mKey;
+
+    /**
+     * 构造器
+     *
+     * @param url        分片地址
+     * @param durationMs 分片时长，单位：ms
+     * @param startMs    分片开始时间，单位：ms
+     * @param sequence   媒体序列号
+     * @param key        密钥，不加密时为null
+     */
+    HlsSegment(String url, long durationMs, long startMs, long sequence, HlsKey key) {
+        mUrl = url;
+        mDurationMs = durationMs;
+        mStartMs = startMs;
+        mSequence = sequence;
+        mKey = key;
+    }
+
+    /**
+     * 获取分片地址
+     *
+     * @return 绝对地址
+     */
+    public String getUrl() {
+        return mUrl;
+    }
+
+    /**
+     * 获取分片时长
+     *
+     * @return 时长，单位：ms
+     */
+    public long getDurationMs() {
+        return mDurationMs;
+    }
+
+    /**
+     * 获取分片在整个播放列表中的开始时间
+     *
+     * @return 开始时间，单位：ms
+     */
+    public long getStartMs() {
+        return mStartMs;
+    }
+
+    /**
+     * 获取媒体序列号，没有指定IV时用作AES-128解密的IV
+     *
+     * @return 序列号
+     */
+    public long getSequence() {
+        return mSequence;
+    }
+
+    /**
+     * 获取分片使用的密钥
+     *
+     * @return 密钥，不加密时为null
+     */
+    public HlsKey getKey() {
+        return mKey;
+    }
+}
@@ -0,0 +1,195 @@
+package com.baidu.swan.videoplayer.live;
+
+/**
+ * 低延迟直播配置。所有时间单位均为ms
+ *
+ * @author machao10
+ * @since 2019-02-20
+ */
+public class LiveConfig {
+
+    /** 默认目标延迟 */
+    public static final int DEFAULT_TARGET_LATENCY = 2000;
+    /** 默认延迟上限，超过后直接跳到直播点 */
+    public static final int DEFAULT_MAX_LATENCY = 8000;
+    /** 默认容忍范围，延迟在目标值上下此范围内时按正常速度播放 */
+    public static final int DEFAULT_TOLERANCE = 300;
+    /** 默认播放器缓冲时长 */
+    public static final int DEFAULT_BUFFER_TIME = 1000;
+    /** 默认最大缓存，直播不需要大缓存 */
+    public static final int DEFAULT_MAX_CACHE_BYTES = 2 * 1000 * 1000;
+    /** 默认连接超时，单位：us */
+    public static final int DEFAULT_TIMEOUT_US = 5000000;
+    /** 默认最低播放速度 */
+    public static final float DEFAULT_MIN_SPEED = 0.95f;
+    /** 默认最高播放速度 */
+    public static final float DEFAULT_MAX_SPEED = 1.1f;
+
+    /** 目标延迟 */
+    private int mTargetLatency = DEFAULT_TARGET_LATENCY;
+    /** 延迟上限 */
+    private int mMaxLatency = DEFAULT_MAX_LATENCY;
+    /** 容忍范围 */
+    private int mTolerance = DEFAULT_TOLERANCE;
+    /** 播放器缓冲时长 */
+    private int mBufferTime = DEFAULT_BUFFER_TIME;
+    /** 最大缓存 */
+    private int mMaxCacheBytes = DEFAULT_MAX_CACHE_BYTES;
+    /** 连接超时，单位：us */
+    private int mTimeoutUs = DEFAULT_TIMEOUT_US;
+    /** 最低播放速度 */
+    private float mMinSpeed = DEFAULT_MIN_SPEED;
+    /** 最高播放速度 */
+    private float mMaxSpeed = DEFAULT_MAX_SPEED;
+
+    /**
+     * 获取目标延迟
+     *
+     * @return 目标延迟，单位：ms
+     */
+    public int getTargetLatency() {
+        return mTargetLatency;
+    }
+
+    /**
+     * 设置目标延迟
+     *
+     * @param targetLatency 目标延迟，单位：ms
+     * @return this
+     */
+    public LiveConfig setTargetLatency(int targetLatency) {
+        mTargetLatency = targetLatency;
+        return this;
+    }
+
+    /**
+     * 获取延迟上限
+     *
+     * @return 延迟上限，单位：ms
+     */
+    public int getMaxLatency() {
+        return mMaxLatency;
+    }
+
+    /**
+     * 设置延迟上限，超过后直接跳到目标延迟的位置
+     *
+     * @param maxLatency 延迟上限，单位：ms
+     * @return this
+     */
+    public LiveConfig setMaxLatency(int maxLatency) {
+        mMaxLatency = maxLatency;
+        return this;
+    }
+
+    /**
+     * 获取容忍范围
+     *
+     * @return 容忍范围，单位：ms
+     */
+    public int getTolerance() {
+        return mTolerance;
+    }
+
+    /**
+     * 设置容忍范围，延迟偏差在此范围内时恢复正常速度
+     *
+     * @param tolerance 容忍范围，单位：ms
+     * @return this
+     */
+    public LiveConfig setTolerance(int tolerance) {
+        mTolerance = tolerance;
+        return this;
+    }
+
+    /**
+     * 获取播放器缓冲时长
+     *
+     * @return 播放器缓冲时长，单位：ms
+     */
+    public int getBufferTime() {
+        return mBufferTime;
+    }
+
+    /**
+     * 设置播放器起播缓冲时长
+     *
+     * @param bufferTime 缓冲时长，单位：ms
+     * @return this
+     */
+    public LiveConfig setBufferTime(int bufferTime) {
+        mBufferTime = bufferTime;
+        return this;
+    }
+
+    /**
+     * 获取播放器最大缓存
+     *
+     * @return 播放器最大缓存，单位：byte
+     */
+    public int getMaxCacheBytes() {
+        return mMaxCacheBytes;
+    }
+
+    /**
+     * 设置播放器最大缓存
+     *
+     * @param maxCacheBytes 最大缓存，单位：byte
+     * @return this
+     */
+    public LiveConfig setMaxCacheBytes(int maxCacheBytes) {
+        mMaxCacheBytes = maxCacheBytes;
+        return this;
+    }
+
+    /**
+     * 获取连接和下载超时
+     *
+     * @return 连接和下载超时，单位：us
+     */
+    public int getTimeoutUs() {
+        return mTimeoutUs;
+    }
+
+    /**
+     * 设置连接和下载超时
+     *
+     * @param timeoutUs 超时时长，单位：us
+     * @return this
+     */
+    public LiveConfig setTimeoutUs(int timeoutUs) {
+        mTimeoutUs = timeoutUs;
+        return this;
+    }
+
+    /**
+     * 获取最低播放速度
+     *
+     * @return 最低播放速度
+     */
+    public float getMinSpeed() {
+        return mMinSpeed;
+    }
+
+    /**
+     * 获取最高播放速度
+     *
+     * @return 最高播放速度
+     */
+    public float getMaxSpeed() {
+        return mMaxSpeed;
+    }
+
+    /**
+     * 设置追赶时的播放速度范围
+     *
+     * @param minSpeed 最低速度，延迟过低时放慢播放
+     * @param maxSpeed 最高速度，延迟过高时加速追赶
+     * @return this
+     */
+    public LiveConfig setSpeedRange(float minSpeed, float maxSpeed) {
+        mMinSpeed = minSpeed;
+        mMaxSpeed = maxSpeed;
+        return this;
+    }
+}
@@ -0,0 +1,216 @@
+package com.baidu.swan.videoplayer.live;
+
+import android.os.Handler;
+import android.util.Log;
+
+import com.baidu.cloud.media.player.BDCloudMediaPlayer;
+import com.baidu.cloud.videoplayer.demo.BuildConfig;
+import com.baidu.swan.videoplayer.VideoUtils;
+
+/**
+ * 直播延迟控制器。周期性估算当前距离直播点的延迟，通过微调播放速度让延迟向目标值收敛，
+ * 延迟超过上限时直接向前跳转。
+ * <p>
+ * SDK没有提供直播点的绝对时间，这里用播放器已缓存但尚未播放的时长作为延迟：
+ * 缓存数据的末尾即为最新下载到的直播数据，卡顿后积压的延迟也会体现在这里。
+ *
+ * @author machao10
+ * @since 2019-02-20
+ */
+public class LiveLatencyController {
+
+    /** debug 开关 */
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    /** debug tag */
+    private static final String TAG = "LiveLatencyController";
+    /** 延迟采样周期，单位：ms */
+    private static final int SAMPLE_INTERVAL = 500;
+    /** 每毫秒延迟偏差对应的速度调整量，即偏差1s时调整10% */
+    private static final float SPEED_GAIN = 0.0001f;
+    /** 每个采样周期速度最大变化量，避免速度突变引起音调明显变化 */
+    private static final float MAX_SPEED_STEP = 0.02f;
+    /** 速度变化小于此值时不下发给播放器 */
+    private static final float SPEED_EPSILON = 0.005f;
+    /** 正常播放速度 */
+    private static final float NORMAL_SPEED = 1.0f;
+
+    /** 直播配置 */
+    private final LiveConfig mConfig;
+    /** 主线程handler */
+    private final Handler mHandler;
+    /** 延迟监听 */
+    private OnLiveLatencyListener mListener;
+    /** 当前控制的播放器 */
+    private BDCloudMediaPlayer mPlayer;
+    /** 当前播放速度 */
+    private float mSpeed = NORMAL_SPEED;
+    /** 最近一次采样的延迟，单位：ms */
+    private long mLatency;
+    /** 是否处于卡顿中 */
+    private boolean mStalled;
+    /** 是否正在采样 */
+    private boolean mRunning;
+
+    /** 采样任务 */
+    private final Runnable mSampleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            sample();
+            if (mRunning) {
+                mHandler.postDelayed(this, SAMPLE_INTERVAL);
+            }
+        }
+    };
+
+    /**
+     * 直播延迟控制器构造器
+     *
+     * @param config 直播配置
+     */
+    public LiveLatencyController(LiveConfig config) {
+        mConfig = config;
+        mHandler = VideoUtils.getMainHandler();
+    }
+
+    /**
+     * 获取直播配置
+     *
+     * @return 直播配置
+     */
+    public LiveConfig getConfig() {
+        return mConfig;
+    }
+
+    /**
+     * 设置延迟监听
+     *
+     * @param listener 延迟监听
+     */
+    public void setListener(OnLiveLatencyListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * 对新建的播放器应用直播参数：小缓冲、小缓存、短超时
+     *
+     * @param player 播放器
+     */
+    public void configurePlayer(BDCloudMediaPlayer player) {
+        player.setBufferTimeInMs(mConfig.getBufferTime());
+        player.setMaxCacheSizeInBytes(mConfig.getMaxCacheBytes());
+    }
+
+    /**
+     * 开始控制延迟，在播放开始时调用
+     *
+     * @param player 播放器
+     */
+    public void start(BDCloudMediaPlayer player) {
+        if (mPlayer != player) {
+            mSpeed = NORMAL_SPEED;
+        }
+        mPlayer = player;
+        mStalled = false;
+        if (!mRunning) {
+            mRunning = true;
+            mHandler.postDelayed(mSampleRunnable, SAMPLE_INTERVAL);
+        }
+    }
+
+    /**
+     * 停止控制延迟，在暂停、出错和释放时调用
+     */
+    public void stop() {
+        mRunning = false;
+        mHandler.removeCallbacks(mSampleRunnable);
+        mPlayer = null;
+        mSpeed = NORMAL_SPEED;
+    }
+
+    /**
+     * 播放器进入/退出卡顿。卡顿时恢复正常速度，卡顿结束后延迟会在下一次采样中体现
+     *
+     * @param stalled 是否卡顿
+     */
+    public void onStall(boolean stalled) {
+        mStalled = stalled;
+        if (stalled) {
+            applySpeed(NORMAL_SPEED);
+        }
+    }
+
+    /**
+     * 获取最近一次采样的直播延迟
+     *
+     * @return 延迟，单位：ms
+     */
+    public long getLatency() {
+        return mLatency;
+    }
+
+    /**
+     * 获取当前播放速度
+     *
+     * @return 播放速度
+     */
+    public float getSpeed() {
+        return mSpeed;
+    }
+
+    /**
+     * 采样延迟并调整速度
+     */
+    private void sample() {
+        BDCloudMediaPlayer player = mPlayer;
+        if (player == null || mStalled) {
+            return;
+        }
+        long latency = player.getVideoCachedDuration();
+        mLatency = latency;
+
+        if (latency > mConfig.getMaxLatency()) {
+            long jump = latency - mConfig.getTargetLatency();
+            if (DEBUG) {
+                Log.d(TAG, "latency " + latency + "ms over ceiling, jump " + jump + "ms");
+            }
+            applySpeed(NORMAL_SPEED);
+            player.seekTo(player.getCurrentPosition() + jump);
+            if (mListener != null) {
+                mListener.onLiveEdgeJump(latency);
+            }
+            return;
+        }
+
+        long error = latency - mConfig.getTargetLatency();
+        float target;
+        if (Math.abs(error) <= mConfig.getTolerance()) {
+            target = NORMAL_SPEED;
+        } else {
+            target = NORMAL_SPEED + error * SPEED_GAIN;
+            target = Math.max(mConfig.getMinSpeed(), Math.min(mConfig.getMaxSpeed(), target));
+        }
+        // 逐步逼近目标速度
+        float step = Math.max(-MAX_SPEED_STEP, Math.min(MAX_SPEED_STEP, target - mSpeed));
+        applySpeed(mSpeed + step);
+
+        if (mListener != null) {
+            mListener.onLiveLatencyUpdate(latency, mSpeed);
+        }
+    }
+
+    /**
+     * 下发播放速度
+     */
+    private void applySpeed(float speed) {
+        if (Math.abs(speed - mSpeed) < SPEED_EPSILON && speed != NORMAL_SPEED) {
+            return;
+        }
+        if (speed == mSpeed) {
+            return;
+        }
+        mSpeed = speed;
+        if (mPlayer != null) {
+            mPlayer.setSpeed(speed);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.baidu.swan.videoplayer.live;
+
+/**
+ * 直播延迟监听，在直播模式下周期回调
+ *
+ * @author machao10
+ * @since 2019-02-20
+ */
+public interface OnLiveLatencyListener {
+
+    /**
+     * 直播延迟更新
+     *
+     * @param latencyMs 当前距离直播点的延迟，单位：ms
+     * @param speed     当前播放速度
+     */
+    void onLiveLatencyUpdate(long latencyMs, float speed);
+
+    /**
+     * 延迟超过上限，已跳到直播点附近
+     *
+     * @param fromLatencyMs 跳转前的延迟，单位：ms
+     */
+    void onLiveEdgeJump(long fromLatencyMs);
+}
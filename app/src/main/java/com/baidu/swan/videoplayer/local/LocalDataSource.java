@@ -0,0 +1,81 @@
+package com.baidu.swan.videoplayer.local;
+
+import android.content.res.AssetFileDescriptor;
+
+import com.baidu.cloud.media.player.misc.IMediaDataSource;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 按起始偏移和长度读取文件描述符的数据源，用于apk中的asset等只占文件一部分的本地视频。
+ * 使用带位置的读取，不修改共享的文件偏移。由播放器的读取线程调用
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public class LocalDataSource implements IMediaDataSource {
+
+    /** 文件描述符，关闭数据源时关闭 */
+    private final AssetFileDescriptor mFd;
+    /** 文件通道 */
+    private final FileChannel mChannel;
+    /** 数据在文件中的起始偏移 */
+    private final long mOffset;
+    /** 数据长度 */
+    private final long mLength;
+    /** 是否已关闭 */
+    private boolean mClosed;
+
+    /**
+     * 构造器
+     *
+     * @param fd 文件描述符，所有权交给数据源
+     * @throws IOException 获取文件大小失败
+     */
+    public LocalDataSource(AssetFileDescriptor fd) throws IOException {
+        mFd = fd;
+        mChannel = new FileInputStream(fd.getFileDescriptor()).getChannel();
+        mOffset = fd.getStartOffset();
+        long length = fd.getDeclaredLength();
+        mLength = length >= 0 ? length : mChannel.size() - mOffset;
+    }
+
+    @Override
+    public synchronized int readAt(long position, byte[] buffer, int offset, int size)
+            throws IOException {
+        if (mClosed) {
+            throw new IOException("data source closed");
+        }
+        if (size <= 0) {
+            return 0;
+        }
+        if (position >= mLength) {
+            return -1;
+        }
+        int count = (int) Math.min(size, mLength - position);
+        int read = mChannel.read(ByteBuffer.wrap(buffer, offset, count), mOffset + position);
+        return read <= 0 ? -1 : read;
+    }
+
+    @Override
+    public long getSize() {
+        return mLength;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        try {
+            // 通道建立在不持有描述符的流上，关闭描述符即可
+            mFd.close();
+        } catch (IOException ex) {
+            // ignore
+        }
+    }
+}
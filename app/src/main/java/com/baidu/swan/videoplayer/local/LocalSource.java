@@ -0,0 +1,119 @@
+package com.baidu.swan.videoplayer.local;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.net.Uri;
+
+import com.baidu.swan.videoplayer.hls.HlsPlaylistParser;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 本地视频源：本地路径、file://、content://、android.resource://和打包在apk中的asset。
+ * 直接打开文件描述符交给播放器，不经过为网络地址准备的解析、超时和缓冲流程。
+ * asset地址写作file:///android_asset/路径或asset:///路径，asset需要以不压缩的方式打包。
+ * m3u8播放列表（如离线下载的HLS）不走文件描述符，分片按播放列表所在目录的相对路径查找
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public final class LocalSource {
+
+    /** asset协议 */
+    private static final String SCHEME_ASSET = "asset";
+    /** file://地址中asset的路径前缀 */
+    private static final String ASSET_PATH_PREFIX = "/android_asset/";
+
+    /**
+     * 工具类，不能实例化
+     */
+    private LocalSource() {
+    }
+
+    /**
+     * 判断是否为本地视频源
+     *
+     * @param uri 视频地址
+     * @return 是否为本地视频源
+     */
+    public static boolean isLocal(Uri uri) {
+        if (uri == null) {
+            return false;
+        }
+        String scheme = uri.getScheme();
+        return scheme == null || ContentResolver.SCHEME_FILE.equals(scheme)
+                || ContentResolver.SCHEME_CONTENT.equals(scheme)
+                || ContentResolver.SCHEME_ANDROID_RESOURCE.equals(scheme)
+                || SCHEME_ASSET.equals(scheme);
+    }
+
+    /**
+     * 判断本地视频源能否通过文件描述符播放。播放列表通过文件描述符打开后没有所在目录，
+     * 播放器无法解析其中的相对分片地址，需要以路径或地址交给播放器
+     *
+     * @param url 本地视频地址或路径
+     * @return 是否可以打开文件描述符播放
+     */
+    public static boolean canOpenFd(String url) {
+        return url != null && !HlsPlaylistParser.isHlsUrl(url);
+    }
+
+    /**
+     * 打开本地视频源的文件描述符。content://等地址可能访问其他进程，不要在循环中反复调用
+     *
+     * @param context 上下文
+     * @param uri     本地视频地址，需要先用{@link #isLocal(Uri)}判断
+     * @return 文件描述符，asset的起始偏移不为0，使用后需要关闭
+     * @throws IOException 文件不存在、没有权限或asset被压缩
+     */
+    public static AssetFileDescriptor openFd(Context context, Uri uri) throws IOException {
+        String scheme = uri.getScheme();
+        String path = uri.getPath();
+        if (SCHEME_ASSET.equals(scheme)) {
+            return openAsset(context, path);
+        }
+        if (path != null && ContentResolver.SCHEME_FILE.equals(scheme)
+                && path.startsWith(ASSET_PATH_PREFIX)) {
+            return openAsset(context, path.substring(ASSET_PATH_PREFIX.length()));
+        }
+        if (scheme == null) {
+            uri = Uri.fromFile(new File(uri.toString()));
+        }
+        AssetFileDescriptor fd;
+        try {
+            fd = context.getContentResolver().openAssetFileDescriptor(uri, "r");
+        } catch (SecurityException ex) {
+            throw new IOException("no permission to open " + uri, ex);
+        }
+        if (fd == null) {
+            throw new IOException("cannot open " + uri);
+        }
+        return fd;
+    }
+
+    /**
+     * 文件描述符是否对应整个文件。整个文件可以直接交给播放器，否则需要按偏移和长度读取
+     *
+     * @param fd 文件描述符
+     * @return 是否为整个文件
+     */
+    public static boolean isWholeFile(AssetFileDescriptor fd) {
+        return fd.getStartOffset() == 0
+                && fd.getDeclaredLength() == AssetFileDescriptor.UNKNOWN_LENGTH;
+    }
+
+    /**
+     * 打开asset
+     */
+    private static AssetFileDescriptor openAsset(Context context, String path) throws IOException {
+        if (path == null) {
+            throw new IOException("empty asset path");
+        }
+        while (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        return context.getAssets().openFd(path);
+    }
+}
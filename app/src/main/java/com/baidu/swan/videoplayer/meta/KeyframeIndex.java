@@ -0,0 +1,98 @@
+package com.baidu.swan.videoplayer.meta;
+
+import java.util.Arrays;
+
+/**
+ * 视频关键帧的显示时间索引，用于把seek位置吸附到关键帧上，播放器不需要从前一个关键帧解码到目标位置。
+ * 没有关键帧信息或每一帧都是关键帧时索引为空，吸附后的位置不变
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public final class KeyframeIndex {
+
+    /** 空索引 */
+    public static final KeyframeIndex EMPTY = new KeyframeIndex(new long[0]);
+
+    /** 关键帧显示时间，升序，单位：ms */
+    private final long[] mTimesMs;
+
+    /**
+     * 构造器
+     *
+     * @param timesMs 关键帧显示时间，单位：ms，不要求有序，不再修改
+     */
+    public KeyframeIndex(long[] timesMs) {
+        Arrays.sort(timesMs);
+        mTimesMs = timesMs;
+    }
+
+    /**
+     * 获取关键帧数量
+     *
+     * @return 数量
+     */
+    public int size() {
+        return mTimesMs.length;
+    }
+
+    /**
+     * 获取第index个关键帧的显示时间
+     *
+     * @param index 序号
+     * @return 时间，单位：ms
+     */
+    public long getTimeMs(int index) {
+        return mTimesMs[index];
+    }
+
+    /**
+     * 获取不晚于指定位置的最后一个关键帧
+     *
+     * @param positionMs 位置，单位：ms
+     * @return 关键帧时间，单位：ms，索引为空时返回原位置，位置早于第一个关键帧时返回第一个关键帧
+     */
+    public long previous(long positionMs) {
+        if (mTimesMs.length == 0) {
+            return positionMs;
+        }
+        int index = floorIndex(positionMs);
+        return mTimesMs[Math.max(index, 0)];
+    }
+
+    /**
+     * 获取离指定位置最近的关键帧，距离相同时取前一个
+     *
+     * @param positionMs 位置，单位：ms
+     * @return 关键帧时间，单位：ms，索引为空时返回原位置
+     */
+    public long nearest(long positionMs) {
+        if (mTimesMs.length == 0) {
+            return positionMs;
+        }
+        int index = floorIndex(positionMs);
+        if (index < 0) {
+            return mTimesMs[0];
+        }
+        if (index + 1 < mTimesMs.length
+                && mTimesMs[index + 1] - positionMs < positionMs - mTimesMs[index]) {
+            return mTimesMs[index + 1];
+        }
+        return mTimesMs[index];
+    }
+
+    /**
+     * 二分查找不晚于指定位置的最后一个关键帧
+     *
+     * @return 序号，位置早于第一个关键帧时返回-1
+     */
+    private int floorIndex(long positionMs) {
+        int index = Arrays.binarySearch(mTimesMs, positionMs);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    @Override
+    public String toString() {
+        return "KeyframeIndex{size=" + mTimesMs.length + "}";
+    }
+}
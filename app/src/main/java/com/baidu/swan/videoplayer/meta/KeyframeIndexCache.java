@@ -0,0 +1,150 @@
+package com.baidu.swan.videoplayer.meta;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.baidu.cloud.videoplayer.demo.BuildConfig;
+import com.baidu.swan.videoplayer.VideoUtils;
+import com.baidu.swan.videoplayer.hls.HlsMediaPlaylist;
+import com.baidu.swan.videoplayer.hls.HlsPlaylistParser;
+import com.baidu.swan.videoplayer.net.HttpFetcher;
+import com.baidu.swan.videoplayer.rendition.Rendition;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按地址缓存关键帧索引，进程内共享，线程安全。
+ * <p>
+ * 索引在后台解析：MP4读取采样表，点播HLS以分片起始时间作为关键帧（每个分片都以关键帧开头），
+ * 多码率播放列表使用第一个码率档位，各档位的分片边界是对齐的。直播和解析失败的地址没有索引
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public final class KeyframeIndexCache {
+
+    /** debug 开关 */
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    /** debug tag */
+    private static final String TAG = "KeyframeIndexCache";
+    /** 最多缓存的地址数 */
+    private static final int MAX_ENTRIES = 64;
+
+    /** 单例 */
+    private static volatile KeyframeIndexCache sInstance;
+
+    /** 关键帧索引，按访问顺序排列 */
+    private final Map<String, KeyframeIndex> mEntries =
+            new LinkedHashMap<String, KeyframeIndex>(MAX_ENTRIES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, KeyframeIndex> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+    /** 正在解析的地址 */
+    private final Set<String> mLoading = new HashSet<>();
+
+    /**
+     * 获取关键帧索引缓存单例
+     *
+     * @return 单例
+     */
+    public static KeyframeIndexCache getInstance() {
+        if (sInstance == null) {
+            synchronized (KeyframeIndexCache.class) {
+                if (sInstance == null) {
+                    sInstance = new KeyframeIndexCache();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * 私有构造器
+     */
+    private KeyframeIndexCache() {
+    }
+
+    /**
+     * 获取缓存的关键帧索引
+     *
+     * @param url 视频地址
+     * @return 关键帧索引，还没有解析完成时返回null
+     */
+    public synchronized KeyframeIndex get(String url) {
+        return url == null ? null : mEntries.get(url);
+    }
+
+    /**
+     * 在后台解析关键帧索引，已缓存或正在解析时直接返回。解析失败时不缓存，下次播放时重新解析
+     *
+     * @param url     视频地址，http(s)地址、file://地址或本地路径
+     * @param headers 请求header，可以为null
+     */
+    public void load(final String url, final Map<String, String> headers) {
+        if (url == null) {
+            return;
+        }
+        synchronized (this) {
+            if (mEntries.containsKey(url) || !mLoading.add(url)) {
+                return;
+            }
+        }
+        VideoUtils.getWorkerExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                KeyframeIndex index = null;
+                long start = SystemClock.elapsedRealtime();
+                try {
+                    index = HlsPlaylistParser.isHlsUrl(url)
+                            ? parseHls(url, headers) : Mp4KeyframeParser.parse(url, headers);
+                    if (DEBUG) {
+                        Log.d(TAG, "indexed " + url + " : " + index + " in "
+                                + (SystemClock.elapsedRealtime() - start) + "ms");
+                    }
+                } catch (IOException ex) {
+                    if (DEBUG) {
+                        Log.w(TAG, "index failed : " + url, ex);
+                    }
+                }
+                synchronized (KeyframeIndexCache.this) {
+                    mLoading.remove(url);
+                    if (index != null) {
+                        mEntries.put(url, index);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 以点播HLS分片起始时间作为关键帧索引
+     */
+    private static KeyframeIndex parseHls(String url, Map<String, String> headers)
+            throws IOException {
+        String playlist = HttpFetcher.readText(url, headers);
+        if (HlsPlaylistParser.isMasterPlaylist(playlist)) {
+            List<Rendition> renditions = HlsPlaylistParser.parseMaster(url, playlist);
+            if (renditions.isEmpty()) {
+                throw new IOException("empty master playlist : " + url);
+            }
+            url = renditions.get(0).getUrl();
+            playlist = HttpFetcher.readText(url, headers);
+        }
+        HlsMediaPlaylist media = HlsPlaylistParser.parseMedia(url, playlist);
+        if (!media.isEndList()) {
+            return KeyframeIndex.EMPTY;
+        }
+        long[] times = new long[media.getSegments().size()];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = media.getSegments().get(i).getStartMs();
+        }
+        return new KeyframeIndex(times);
+    }
+}
@@ -0,0 +1,107 @@
+package com.baidu.swan.videoplayer.meta;
+
+/**
+ * 视频元信息：显示尺寸、旋转角度、时长和视频编码，用于在prepare之前确定布局和显示时长
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public final class MediaMetadata {
+
+    /** 显示宽度，已按像素宽高比换算，旋转之前，单位：px */
+    private final int mWidth;
+    /** 显示高度，旋转之前，单位：px */
+    private final int mHeight;
+    /** 顺时针旋转角度，0、90、180或270 */
+    private final int mRotation;
+    /** 时长，单位：ms，直播或未知时为0 */
+    private final long mDurationMs;
+    /** 视频编码，如avc1、hvc1，未知时为null */
+    private final String mCodec;
+
+    /**
+     * 构造器
+     *
+     * @param width      显示宽度，单位：px
+     * @param height     显示高度，单位：px
+     * @param rotation   顺时针旋转角度
+     * @param durationMs 时长，单位：ms，未知时为0
+     * @param codec      视频编码，未知时为null
+     */
+    public MediaMetadata(int width, int height, int rotation, long durationMs, String codec) {
+        mWidth = width;
+        mHeight = height;
+        mRotation = ((rotation % 360) + 360) % 360;
+        mDurationMs = durationMs;
+        mCodec = codec;
+    }
+
+    /**
+     * 获取显示宽度，旋转之前
+     *
+     * @return 宽度，单位：px
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * 获取显示高度，旋转之前
+     *
+     * @return 高度，单位：px
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * 获取顺时针旋转角度
+     *
+     * @return 0、90、180或270
+     */
+    public int getRotation() {
+        return mRotation;
+    }
+
+    /**
+     * 获取旋转之后的显示宽度
+     *
+     * @return 宽度，单位：px
+     */
+    public int getDisplayWidth() {
+        return mRotation % 180 == 0 ? mWidth : mHeight;
+    }
+
+    /**
+     * 获取旋转之后的显示高度
+     *
+     * @return 高度，单位：px
+     */
+    public int getDisplayHeight() {
+        return mRotation % 180 == 0 ? mHeight : mWidth;
+    }
+
+    /**
+     * 获取时长
+     *
+     * @return 时长，单位：ms，直播或未知时为0
+     */
+    public long getDurationMs() {
+        return mDurationMs;
+    }
+
+    /**
+     * 获取视频编码
+     *
+     * @return 编码，未知时为null
+     */
+    public String getCodec() {
+        return mCodec;
+    }
+
+    @Override
+    public String toString() {
+        return "MediaMetadata{" + mWidth + "x" + mHeight + ", rotation=" + mRotation
+                + ", duration=" + mDurationMs + "ms, codec=" + mCodec + "}";
+    }
+}
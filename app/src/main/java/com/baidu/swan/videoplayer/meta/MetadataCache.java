@@ -0,0 +1,130 @@
+package com.baidu.swan.videoplayer.meta;
+
+import android.util.Log;
+
+import com.baidu.cloud.videoplayer.demo.BuildConfig;
+import com.baidu.swan.videoplayer.VideoUtils;
+import com.baidu.swan.videoplayer.hls.HlsPlaylistParser;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按地址缓存视频元信息，进程内共享，线程安全。
+ * <p>
+ * 第一次播放时由{@code SwanVideoView}根据播放器回调写入，也可以提前调用{@link #probe(String, Map)}
+ * 在后台读取MP4头部。再次播放同一地址时，prepare之前就能确定画面尺寸和时长
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public final class MetadataCache {
+
+    /** debug 开关 */
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    /** debug tag */
+    private static final String TAG = "MetadataCache";
+    /** 最多缓存的地址数 */
+    private static final int MAX_ENTRIES = 256;
+
+    /** 单例 */
+    private static volatile MetadataCache sInstance;
+
+    /** 元信息，按访问顺序排列 */
+    private final Map<String, MediaMetadata> mEntries =
+            new LinkedHashMap<String, MediaMetadata>(MAX_ENTRIES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, MediaMetadata> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+    /** 正在探测的地址 */
+    private final Set<String> mProbing = new HashSet<>();
+
+    /**
+     * 获取元信息缓存单例
+     *
+     * @return 单例
+     */
+    public static MetadataCache getInstance() {
+        if (sInstance == null) {
+            synchronized (MetadataCache.class) {
+                if (sInstance == null) {
+                    sInstance = new MetadataCache();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * 私有构造器
+     */
+    private MetadataCache() {
+    }
+
+    /**
+     * 获取缓存的元信息
+     *
+     * @param url 视频地址
+     * @return 元信息，没有缓存时返回null
+     */
+    public synchronized MediaMetadata get(String url) {
+        return url == null ? null : mEntries.get(url);
+    }
+
+    /**
+     * 写入元信息
+     *
+     * @param url      视频地址
+     * @param metadata 元信息
+     */
+    public synchronized void put(String url, MediaMetadata metadata) {
+        if (url != null && metadata != null) {
+            mEntries.put(url, metadata);
+        }
+    }
+
+    /**
+     * 在后台探测MP4地址的元信息，已缓存或正在探测时直接返回。HLS地址不探测，播放后写入
+     *
+     * @param url     视频地址，http(s)地址、file://地址或本地路径
+     * @param headers 请求header，可以为null
+     */
+    public void probe(final String url, final Map<String, String> headers) {
+        if (url == null || HlsPlaylistParser.isHlsUrl(url)) {
+            return;
+        }
+        synchronized (this) {
+            if (mEntries.containsKey(url) || !mProbing.add(url)) {
+                return;
+            }
+        }
+        VideoUtils.getWorkerExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                MediaMetadata metadata = null;
+                try {
+                    metadata = Mp4Probe.probe(url, headers);
+                    if (DEBUG) {
+                        Log.d(TAG, "probed " + url + " : " + metadata);
+                    }
+                } catch (IOException ex) {
+                    if (DEBUG) {
+                        Log.w(TAG, "probe failed : " + url, ex);
+                    }
+                }
+                synchronized (MetadataCache.this) {
+                    mProbing.remove(url);
+                    // 播放过程中写入的信息来自播放器，比探测结果准确
+                    if (metadata != null && !mEntries.containsKey(url)) {
+                        mEntries.put(url, metadata);
+                    }
+                }
+            }
+        });
+    }
+}
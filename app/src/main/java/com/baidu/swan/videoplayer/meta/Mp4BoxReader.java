@@ -0,0 +1,300 @@
+package com.baidu.swan.videoplayer.meta;
+
+import android.net.Uri;
+
+import com.baidu.swan.videoplayer.net.HttpFetcher;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.Map;
+
+/**
+ * 顺序读取MP4 box的流式读取器，只向前读，不把整个box读入内存，适合解析几个小时的视频的索引表。
+ * 支持http(s)地址和本地文件，网络地址通过Range请求从指定位置开始读取
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public final class Mp4BoxReader implements Closeable {
+
+    /** 跳过的数据超过这个大小时重新发起Range请求，而不是在当前连接上读取丢弃 */
+    private static final long REOPEN_THRESHOLD = 64 * 1024;
+    /** 读取缓冲大小 */
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /** 地址 */
+    private final String mUrl;
+    /** 请求header */
+    private final Map<String, String> mHeaders;
+    /** 输入流 */
+    private InputStream mIn;
+    /** 网络连接，本地文件时为null */
+    private HttpURLConnection mConnection;
+    /** 当前读取位置 */
+    private long mPosition;
+    /** 基本类型读取缓冲 */
+    private final byte[] mScratch = new byte[8];
+
+    /**
+     * box头
+     */
+    public static final class Header {
+        /** 类型，四个字符 */
+        public final String type;
+        /** box起始位置 */
+        public final long start;
+        /** box结束位置，size为0时为上一级的结束位置 */
+        public final long end;
+
+        Header(String type, long start, long end) {
+            this.type = type;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public String toString() {
+            return type + "[" + start + ", " + end + ")";
+        }
+    }
+
+    /**
+     * 构造器，从位置0开始读取
+     *
+     * @param url     http(s)地址、file://地址或本地路径
+     * @param headers 请求header，可以为null
+     * @throws IOException 打开失败
+     */
+    public Mp4BoxReader(String url, Map<String, String> headers) throws IOException {
+        this(url, headers, 0);
+    }
+
+    /**
+     * 构造器，从指定位置开始读取，网络地址直接从该位置发起Range请求
+     *
+     * @param url      http(s)地址、file://地址或本地路径
+     * @param headers  请求header，可以为null
+     * @param position 起始位置
+     * @throws IOException 打开失败
+     */
+    public Mp4BoxReader(String url, Map<String, String> headers, long position)
+            throws IOException {
+        mUrl = url;
+        mHeaders = headers;
+        open(position);
+    }
+
+    /**
+     * 获取当前读取位置
+     *
+     * @return 位置
+     */
+    public long getPosition() {
+        return mPosition;
+    }
+
+    /**
+     * 读取下一个box头
+     *
+     * @param limit 上一级box的结束位置，顶层为Long.MAX_VALUE
+     * @return box头，已到达limit或文件末尾时返回null
+     * @throws IOException 读取失败或box大小错误
+     */
+    public Header nextBox(long limit) throws IOException {
+        if (mPosition + 8 > limit) {
+            return null;
+        }
+        long start = mPosition;
+        int first = mIn.read();
+        if (first < 0) {
+            return null;
+        }
+        mPosition++;
+        readFully(mScratch, 1, 7);
+        mScratch[0] = (byte) first;
+        for (int i = 4; i < 8; i++) {
+            if (mScratch[i] < 0x20 || mScratch[i] > 0x7E) {
+                throw new IOException("not an mp4 box at " + start + " : " + mUrl);
+            }
+        }
+        long size = toUnsignedInt(mScratch, 0);
+        String type = new String(mScratch, 4, 4, "ISO-8859-1");
+        long end;
+        if (size == 1) {
+            end = start + readLong();
+        } else if (size == 0) {
+            end = limit;
+        } else {
+            end = start + size;
+        }
+        if (end < mPosition || end > limit) {
+            throw new IOException("invalid box " + type + " at " + start + " : " + mUrl);
+        }
+        return new Header(type, start, end);
+    }
+
+    /**
+     * 在顶层查找指定类型的box，跳过中间的box；需要跳过的数据较大时重新从目标位置发起请求
+     *
+     * @param type 类型
+     * @return box头，读取位置在box内容开始处
+     * @throws IOException 没有找到或读取失败
+     */
+    public Header findTopLevel(String type) throws IOException {
+        Header header;
+        while ((header = nextBox(Long.MAX_VALUE)) != null) {
+            if (type.equals(header.type)) {
+                return header;
+            }
+            if (header.end == Long.MAX_VALUE) {
+                break;
+            }
+            skipTo(header.end);
+        }
+        throw new IOException("no " + type + " box : " + mUrl);
+    }
+
+    /**
+     * 跳到指定位置，只能向前
+     *
+     * @param position 目标位置
+     * @throws IOException 读取失败
+     */
+    public void skipTo(long position) throws IOException {
+        long remaining = position - mPosition;
+        if (remaining < 0) {
+            throw new IOException("cannot seek backwards to " + position);
+        }
+        if (remaining > REOPEN_THRESHOLD && mConnection != null) {
+            closeStream();
+            open(position);
+            return;
+        }
+        while (remaining > 0) {
+            long skipped = mIn.skip(remaining);
+            if (skipped <= 0) {
+                if (mIn.read() < 0) {
+                    throw new EOFException("unexpected end of " + mUrl);
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+            mPosition += skipped;
+        }
+    }
+
+    /**
+     * 读取指定长度
+     */
+    public void readFully(byte[] buffer, int offset, int length) throws IOException {
+        while (length > 0) {
+            int read = mIn.read(buffer, offset, length);
+            if (read < 0) {
+                throw new EOFException("unexpected end of " + mUrl);
+            }
+            offset += read;
+            length -= read;
+            mPosition += read;
+        }
+    }
+
+    /**
+     * 读取一个无符号字节
+     */
+    public int readUnsignedByte() throws IOException {
+        readFully(mScratch, 0, 1);
+        return mScratch[0] & 0xFF;
+    }
+
+    /**
+     * 读取一个大端32位有符号整数
+     */
+    public int readInt() throws IOException {
+        readFully(mScratch, 0, 4);
+        return (int) toUnsignedInt(mScratch, 0);
+    }
+
+    /**
+     * 读取一个大端32位无符号整数
+     */
+    public long readUnsignedInt() throws IOException {
+        readFully(mScratch, 0, 4);
+        return toUnsignedInt(mScratch, 0);
+    }
+
+    /**
+     * 读取一个大端64位整数
+     */
+    public long readLong() throws IOException {
+        readFully(mScratch, 0, 8);
+        return (toUnsignedInt(mScratch, 0) << 32) | toUnsignedInt(mScratch, 4);
+    }
+
+    /**
+     * 读取四个字符的类型
+     */
+    public String readType() throws IOException {
+        readFully(mScratch, 0, 4);
+        return new String(mScratch, 0, 4, "ISO-8859-1");
+    }
+
+    @Override
+    public void close() {
+        closeStream();
+    }
+
+    /**
+     * 从指定位置打开输入流
+     */
+    private void open(long position) throws IOException {
+        if (mUrl.startsWith("http://") || mUrl.startsWith("https://")) {
+            HttpURLConnection connection = HttpFetcher.open(mUrl, mHeaders, position, -1);
+            if (position > 0 && connection.getResponseCode() != 206) {
+                connection.disconnect();
+                throw new IOException("range not supported : " + mUrl);
+            }
+            mConnection = connection;
+            mIn = new BufferedInputStream(connection.getInputStream(), BUFFER_SIZE);
+        } else if (mUrl.startsWith("file://") || !mUrl.contains("://")) {
+            String path = mUrl.startsWith("file://") ? Uri.parse(mUrl).getPath() : mUrl;
+            mIn = new BufferedInputStream(new FileInputStream(new File(path)), BUFFER_SIZE);
+            mPosition = 0;
+            skipTo(position);
+        } else {
+            throw new IOException("unsupported scheme : " + mUrl);
+        }
+        mPosition = position;
+    }
+
+    /**
+     * 关闭输入流。网络流没有读完，直接断开连接，不放回连接池
+     */
+    private void closeStream() {
+        if (mIn != null) {
+            try {
+                mIn.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+            mIn = null;
+        }
+        if (mConnection != null) {
+            mConnection.disconnect();
+            mConnection = null;
+        }
+    }
+
+    /**
+     * 大端字节转无符号32位整数
+     */
+    private static long toUnsignedInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFFL) << 24) | ((data[offset + 1] & 0xFFL) << 16)
+                | ((data[offset + 2] & 0xFFL) << 8) | (data[offset + 3] & 0xFFL);
+    }
+}
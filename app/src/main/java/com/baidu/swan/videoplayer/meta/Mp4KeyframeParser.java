@@ -0,0 +1,248 @@
+package com.baidu.swan.videoplayer.meta;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 从MP4第一个视频轨道的采样表计算关键帧显示时间。
+ * <p>
+ * 第一遍读取moov，记下mdhd的时间刻度、elst的偏移，读入stss中的关键帧采样序号，
+ * 只记录stts和ctts的位置；第二遍从stts、ctts的位置重新读取，逐条流式累加，只计算关键帧的时间。
+ * 内存占用与关键帧数量成正比，与总帧数无关，几个小时的视频也只需要几十KB
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public final class Mp4KeyframeParser {
+
+    /** 最多记录的关键帧数，超过时关键帧足够密集，吸附没有收益 */
+    private static final int MAX_KEYFRAMES = 64 * 1024;
+
+    /** 地址 */
+    private final String mUrl;
+    /** 请求header */
+    private final Map<String, String> mHeaders;
+    /** 整个影片的时间刻度 */
+    private long mMovieTimescale;
+    /** 当前轨道的时间刻度 */
+    private long mTimescale;
+    /** 当前轨道的类型 */
+    private String mHandler;
+    /** 当前轨道开头的空白编辑时长，单位：ms */
+    private long mEmptyEditMs;
+    /** 当前轨道第一个编辑的媒体起始时间，使用轨道时间刻度 */
+    private long mMediaTime;
+    /** 当前轨道stts内容的起始位置，没有stts时为-1 */
+    private long mSttsStart = -1;
+    /** 当前轨道stts的结束位置 */
+    private long mSttsEnd;
+    /** 当前轨道ctts内容的起始位置，没有ctts时为-1 */
+    private long mCttsStart = -1;
+    /** 当前轨道ctts的结束位置 */
+    private long mCttsEnd;
+    /** 当前轨道关键帧的采样序号，从1开始，升序；没有stss时为null，表示每一帧都是关键帧 */
+    private int[] mSyncSamples;
+    /** 是否已找到视频轨道 */
+    private boolean mFound;
+
+    /**
+     * 私有构造器
+     */
+    private Mp4KeyframeParser(String url, Map<String, String> headers) {
+        mUrl = url;
+        mHeaders = headers;
+    }
+
+    /**
+     * 解析关键帧索引。会访问网络或磁盘，不能在主线程调用
+     *
+     * @param url     http(s)地址、file://地址或本地路径
+     * @param headers 请求header，可以为null
+     * @return 关键帧索引，每一帧都是关键帧、关键帧过多或分片MP4时返回{@link KeyframeIndex#EMPTY}
+     * @throws IOException 读取失败、不是MP4或没有视频轨道
+     */
+    public static KeyframeIndex parse(String url, Map<String, String> headers)
+            throws IOException {
+        Mp4KeyframeParser parser = new Mp4KeyframeParser(url, headers);
+        Mp4BoxReader reader = new Mp4BoxReader(url, headers);
+        try {
+            parser.parseContainer(reader, reader.findTopLevel("moov").end);
+        } finally {
+            reader.close();
+        }
+        if (!parser.mFound) {
+            throw new IOException("no video track : " + url);
+        }
+        return parser.buildIndex();
+    }
+
+    /**
+     * 解析容器box的子box，找到视频轨道后停止
+     */
+    private void parseContainer(Mp4BoxReader reader, long end) throws IOException {
+        Mp4BoxReader.Header header;
+        while (!mFound && (header = reader.nextBox(end)) != null) {
+            String type = header.type;
+            if ("trak".equals(type)) {
+                resetTrack();
+                parseContainer(reader, header.end);
+                mFound = "vide".equals(mHandler) && mSttsStart >= 0;
+            } else if ("minf".equals(type) && !"vide".equals(mHandler)) {
+                // 音频、字幕等轨道的采样表较大，直接跳过
+                reader.skipTo(header.end);
+            } else if ("edts".equals(type) || "mdia".equals(type) || "minf".equals(type)
+                    || "stbl".equals(type)) {
+                parseContainer(reader, header.end);
+            } else if ("mvhd".equals(type)) {
+                mMovieTimescale = parseTimescale(reader);
+            } else if ("mdhd".equals(type)) {
+                mTimescale = parseTimescale(reader);
+            } else if ("hdlr".equals(type)) {
+                reader.readInt();
+                reader.readInt();
+                mHandler = reader.readType();
+            } else if ("elst".equals(type)) {
+                parseElst(reader);
+            } else if ("stts".equals(type)) {
+                mSttsStart = reader.getPosition();
+                mSttsEnd = header.end;
+            } else if ("ctts".equals(type)) {
+                mCttsStart = reader.getPosition();
+                mCttsEnd = header.end;
+            } else if ("stss".equals(type)) {
+                mSyncSamples = parseStss(reader, header.end);
+            }
+            if (!mFound) {
+                reader.skipTo(header.end);
+            }
+        }
+    }
+
+    /**
+     * 清空上一个轨道的信息
+     */
+    private void resetTrack() {
+        mTimescale = 0;
+        mHandler = null;
+        mEmptyEditMs = 0;
+        mMediaTime = 0;
+        mSttsStart = -1;
+        mCttsStart = -1;
+        mSyncSamples = null;
+    }
+
+    /**
+     * 解析mvhd或mdhd中的时间刻度
+     */
+    private static long parseTimescale(Mp4BoxReader reader) throws IOException {
+        int version = reader.readUnsignedByte();
+        reader.skipTo(reader.getPosition() + 3 + (version == 1 ? 16 : 8));
+        return reader.readUnsignedInt();
+    }
+
+    /**
+     * 解析elst，只处理开头的空白编辑和第一个媒体编辑
+     */
+    private void parseElst(Mp4BoxReader reader) throws IOException {
+        int version = reader.readUnsignedByte();
+        reader.skipTo(reader.getPosition() + 3);
+        long count = reader.readUnsignedInt();
+        for (long i = 0; i < count && i < 2; i++) {
+            long duration = version == 1 ? reader.readLong() : reader.readUnsignedInt();
+            long mediaTime = version == 1 ? reader.readLong() : reader.readInt();
+            reader.readInt();
+            if (mediaTime != -1) {
+                mMediaTime = mediaTime;
+                return;
+            }
+            if (mMovieTimescale > 0) {
+                mEmptyEditMs += duration * 1000 / mMovieTimescale;
+            }
+        }
+    }
+
+    /**
+     * 读取stss中的关键帧采样序号
+     *
+     * @return 采样序号，关键帧过多时返回空数组
+     */
+    private static int[] parseStss(Mp4BoxReader reader, long end) throws IOException {
+        reader.readInt();
+        long count = reader.readUnsignedInt();
+        if (count > MAX_KEYFRAMES || reader.getPosition() + count * 4 > end) {
+            return new int[0];
+        }
+        int[] samples = new int[(int) count];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = reader.readInt();
+        }
+        return samples;
+    }
+
+    /**
+     * 第二遍读取stts和ctts，计算关键帧显示时间
+     */
+    private KeyframeIndex buildIndex() throws IOException {
+        if (mSyncSamples == null || mSyncSamples.length == 0 || mTimescale <= 0) {
+            return KeyframeIndex.EMPTY;
+        }
+        int[] samples = mSyncSamples;
+        Arrays.sort(samples);
+        long[] times = new long[samples.length];
+        long first = mCttsStart >= 0 ? Math.min(mSttsStart, mCttsStart) : mSttsStart;
+        Mp4BoxReader reader = new Mp4BoxReader(mUrl, mHeaders, first);
+        try {
+            if (mCttsStart >= 0 && mCttsStart < mSttsStart) {
+                accumulate(reader, mCttsStart, mCttsEnd, samples, times, false);
+                accumulate(reader, mSttsStart, mSttsEnd, samples, times, true);
+            } else {
+                accumulate(reader, mSttsStart, mSttsEnd, samples, times, true);
+                if (mCttsStart >= 0) {
+                    accumulate(reader, mCttsStart, mCttsEnd, samples, times, false);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        for (int i = 0; i < times.length; i++) {
+            long pts = Math.max(0, times[i] - mMediaTime);
+            // 向上取整，播放器按毫秒查找关键帧时不会落到前一个GOP
+            times[i] = (pts * 1000 + mTimescale - 1) / mTimescale + mEmptyEditMs;
+        }
+        return new KeyframeIndex(times);
+    }
+
+    /**
+     * 流式读取一个按游程编码的采样表，把关键帧对应的值累加到times中
+     *
+     * @param start    表内容的起始位置
+     * @param end      表的结束位置
+     * @param samples  关键帧采样序号，升序
+     * @param times    关键帧时间
+     * @param duration true：stts，累加之前所有采样的时长得到解码时间；false：ctts，加上显示偏移
+     */
+    private static void accumulate(Mp4BoxReader reader, long start, long end, int[] samples,
+                                   long[] times, boolean duration) throws IOException {
+        reader.skipTo(start);
+        reader.readInt();
+        long count = reader.readUnsignedInt();
+        long sample = 1;
+        long total = 0;
+        int next = 0;
+        for (long i = 0; i < count && next < samples.length; i++) {
+            if (reader.getPosition() + 8 > end) {
+                throw new IOException("truncated sample table at " + start);
+            }
+            long run = reader.readUnsignedInt();
+            // ctts version 1的偏移有符号，version 0实际使用中也按有符号处理
+            long value = duration ? reader.readUnsignedInt() : reader.readInt();
+            while (next < samples.length && samples[next] < sample + run) {
+                times[next] += duration ? total + (samples[next] - sample) * value : value;
+                next++;
+            }
+            sample += run;
+            total += run * value;
+        }
+    }
+}
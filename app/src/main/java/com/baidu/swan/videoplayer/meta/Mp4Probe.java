@@ -0,0 +1,157 @@
+package com.baidu.swan.videoplayer.meta;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * 轻量的MP4头部探测：只读取moov中的mvhd和第一个视频轨道的tkhd、hdlr、stsd，
+ * 得到时长、显示尺寸、旋转角度和编码后立即断开，不读取采样表。
+ * moov在文件末尾时跳过mdat重新发起Range请求
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public final class Mp4Probe {
+
+    /** 16.16定点数的1 */
+    private static final int FIXED_ONE = 0x10000;
+
+    /** 时长，单位：ms */
+    private long mDurationMs;
+    /** 当前轨道的宽度 */
+    private int mTrackWidth;
+    /** 当前轨道的高度 */
+    private int mTrackHeight;
+    /** 当前轨道的旋转角度 */
+    private int mTrackRotation;
+    /** 当前轨道的类型 */
+    private String mTrackHandler;
+    /** 当前轨道的第一个采样描述类型 */
+    private String mTrackCodec;
+    /** 找到的视频元信息 */
+    private MediaMetadata mResult;
+
+    /**
+     * 私有构造器
+     */
+    private Mp4Probe() {
+    }
+
+    /**
+     * 探测MP4文件的元信息。会访问网络或磁盘，不能在主线程调用
+     *
+     * @param url     http(s)地址、file://地址或本地路径
+     * @param headers 请求header，可以为null
+     * @return 元信息
+     * @throws IOException 读取失败、不是MP4或没有视频轨道
+     */
+    public static MediaMetadata probe(String url, Map<String, String> headers)
+            throws IOException {
+        Mp4BoxReader reader = new Mp4BoxReader(url, headers);
+        try {
+            Mp4Probe probe = new Mp4Probe();
+            probe.parseContainer(reader, reader.findTopLevel("moov").end);
+            if (probe.mResult == null) {
+                throw new IOException("no video track : " + url);
+            }
+            return probe.mResult;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * 解析容器box的子box，找到视频轨道后停止
+     */
+    private void parseContainer(Mp4BoxReader reader, long end) throws IOException {
+        Mp4BoxReader.Header header;
+        while (mResult == null && (header = reader.nextBox(end)) != null) {
+            String type = header.type;
+            if ("trak".equals(type)) {
+                mTrackWidth = 0;
+                mTrackHeight = 0;
+                mTrackRotation = 0;
+                mTrackHandler = null;
+                mTrackCodec = null;
+                parseContainer(reader, header.end);
+                if (mResult == null && "vide".equals(mTrackHandler)) {
+                    mResult = new MediaMetadata(mTrackWidth, mTrackHeight, mTrackRotation,
+                            mDurationMs, mTrackCodec);
+                }
+            } else if ("mdia".equals(type) || "minf".equals(type) || "stbl".equals(type)) {
+                parseContainer(reader, header.end);
+            } else if ("mvhd".equals(type)) {
+                parseMvhd(reader);
+            } else if ("tkhd".equals(type)) {
+                parseTkhd(reader);
+            } else if ("hdlr".equals(type)) {
+                reader.readInt();
+                reader.readInt();
+                mTrackHandler = reader.readType();
+            } else if ("stsd".equals(type)) {
+                reader.readInt();
+                if (reader.readInt() > 0) {
+                    reader.readInt();
+                    mTrackCodec = reader.readType();
+                }
+                if ("vide".equals(mTrackHandler)) {
+                    // 视频轨道需要的信息都在采样表之前，不再读取后面的stts、stsz等大表
+                    mResult = new MediaMetadata(mTrackWidth, mTrackHeight, mTrackRotation,
+                            mDurationMs, mTrackCodec);
+                    return;
+                }
+            }
+            if (mResult == null) {
+                reader.skipTo(header.end);
+            }
+        }
+    }
+
+    /**
+     * 解析mvhd中的时长
+     */
+    private void parseMvhd(Mp4BoxReader reader) throws IOException {
+        int version = reader.readUnsignedByte();
+        reader.skipTo(reader.getPosition() + 3 + (version == 1 ? 16 : 8));
+        long timescale = reader.readUnsignedInt();
+        long duration = version == 1 ? reader.readLong() : reader.readUnsignedInt();
+        if (timescale > 0 && duration > 0 && duration != 0xFFFFFFFFL) {
+            mDurationMs = duration * 1000 / timescale;
+        }
+    }
+
+    /**
+     * 解析tkhd中的变换矩阵和显示尺寸
+     */
+    private void parseTkhd(Mp4BoxReader reader) throws IOException {
+        int version = reader.readUnsignedByte();
+        // flags、创建和修改时间、track id、保留字段、时长、保留字段、layer、alternate group、
+        // volume、保留字段
+        reader.skipTo(reader.getPosition() + 3 + (version == 1 ? 32 : 20) + 16);
+        int a = reader.readInt();
+        int b = reader.readInt();
+        reader.readInt();
+        int c = reader.readInt();
+        int d = reader.readInt();
+        reader.skipTo(reader.getPosition() + 16);
+        mTrackWidth = reader.readInt() / FIXED_ONE;
+        mTrackHeight = reader.readInt() / FIXED_ONE;
+        mTrackRotation = rotationOf(a, b, c, d);
+    }
+
+    /**
+     * 根据变换矩阵计算顺时针旋转角度
+     */
+    private static int rotationOf(int a, int b, int c, int d) {
+        if (a == 0 && b == FIXED_ONE && c == -FIXED_ONE && d == 0) {
+            return 90;
+        }
+        if (a == -FIXED_ONE && b == 0 && c == 0 && d == -FIXED_ONE) {
+            return 180;
+        }
+        if (a == 0 && b == -FIXED_ONE && c == FIXED_ONE && d == 0) {
+            return 270;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,125 @@
+package com.baidu.swan.videoplayer.monitor;
+
+import android.os.Process;
+import android.os.SystemClock;
+
+/**
+ * 分模式统计进程CPU占用，用于量化纯音频模式相比正常播放节省的CPU（进而是电量）。
+ * <p>
+ * 统计的是整个进程的CPU时间，只适合对比同一次播放中不同模式的相对差异。
+ *
+ * @author machao10
+ * @since 2019-03-04
+ */
+public class CpuUsageTracker {
+
+    /** 正常播放（音视频）模式 */
+    public static final int MODE_VIDEO = 0;
+    /** 纯音频模式 */
+    public static final int MODE_AUDIO_ONLY = 1;
+    /** 模式数量 */
+    private static final int MODE_COUNT = 2;
+
+    /** 各模式累计的CPU时间，单位：ms */
+    private final long[] mCpuMs = new long[MODE_COUNT];
+    /** 各模式累计的墙上时间，单位：ms */
+    private final long[] mWallMs = new long[MODE_COUNT];
+    /** 当前模式 */
+    private int mMode = MODE_VIDEO;
+    /** 当前是否在统计 */
+    private boolean mRunning;
+    /** 当前统计段开始时的CPU时间 */
+    private long mSegmentCpuStart;
+    /** 当前统计段开始时的墙上时间 */
+    private long mSegmentWallStart;
+
+    /**
+     * 开始统计，在开始播放时调用
+     */
+    public void start() {
+        if (!mRunning) {
+            mRunning = true;
+            beginSegment();
+        }
+    }
+
+    /**
+     * 暂停统计，在暂停或停止播放时调用
+     */
+    public void stop() {
+        if (mRunning) {
+            endSegment();
+            mRunning = false;
+        }
+    }
+
+    /**
+     * 切换模式
+     *
+     * @param mode {@link #MODE_VIDEO}或{@link #MODE_AUDIO_ONLY}
+     */
+    public void setMode(int mode) {
+        if (mode == mMode) {
+            return;
+        }
+        if (mRunning) {
+            endSegment();
+            mMode = mode;
+            beginSegment();
+        } else {
+            mMode = mode;
+        }
+    }
+
+    /**
+     * 获取指定模式的平均CPU占用
+     *
+     * @param mode 模式
+     * @return CPU占用，1表示占满一个核；没有数据时返回0
+     */
+    public float getCpuUsage(int mode) {
+        long cpu = mCpuMs[mode];
+        long wall = mWallMs[mode];
+        if (mRunning && mode == mMode) {
+            cpu += Process.getElapsedCpuTime() - mSegmentCpuStart;
+            wall += SystemClock.elapsedRealtime() - mSegmentWallStart;
+        }
+        return wall <= 0 ? 0f : (float) cpu / wall;
+    }
+
+    /**
+     * 获取纯音频模式相比正常播放节省的CPU比例
+     *
+     * @return 节省比例，取值[0, 1]；缺少任一模式的数据时返回0
+     */
+    public float getAudioOnlySaving() {
+        float video = getCpuUsage(MODE_VIDEO);
+        float audio = getCpuUsage(MODE_AUDIO_ONLY);
+        if (video <= 0f || audio <= 0f) {
+            return 0f;
+        }
+        return Math.max(0f, 1f - audio / video);
+    }
+
+    @Override
+    public String toString() {
+        return "CpuUsage{video=" + getCpuUsage(MODE_VIDEO) + ", audioOnly="
+                + getCpuUsage(MODE_AUDIO_ONLY) + ", saving=" + getAudioOnlySaving() + "}";
+    }
+
+    /**
+     * 开始一个统计段
+     */
+    private void beginSegment() {
+        mSegmentCpuStart = Process.getElapsedCpuTime();
+        mSegmentWallStart = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * 结束当前统计段并累计
+     */
+    private void endSegment() {
+        mCpuMs[mMode] += Process.getElapsedCpuTime() - mSegmentCpuStart;
+        mWallMs[mMode] += SystemClock.elapsedRealtime() - mSegmentWallStart;
+    }
+}
@@ -0,0 +1,170 @@
+package com.baidu.swan.videoplayer.monitor;
+
+/**
+ * 渲染侧帧间隔统计，由SurfaceTexture的每帧更新回调驱动。
+ * <p>
+ * 帧间隔按{@link #BUCKET_NS}宽度记入固定大小的直方图，每帧只有一次时钟读取和几次整数运算，
+ * 不分配对象；有效帧率、卡帧数和抖动分位数在{@link #getStats()}时才从直方图计算。
+ * 暂停和卡顿期间调用{@link #stop()}，跨越停止区间的间隔不计入统计。只在主线程使用
+ *
+ * @author machao10
+ * @since 2019-03-12
+ */
+public class FrameTimingMonitor {
+
+    /** 直方图桶宽，单位：ns */
+    static final long BUCKET_NS = 500000;
+    /** 直方图桶数，最后一个桶记录所有超出范围的间隔 */
+    static final int BUCKET_COUNT = 256;
+
+    /** 帧间隔直方图 */
+    private final int[] mBuckets = new int[BUCKET_COUNT];
+    /** 是否开启统计 */
+    private boolean mEnabled = true;
+    /** 是否在统计中，即播放中且没有卡顿 */
+    private boolean mRunning;
+    /** 上一帧的时间，System.nanoTime；0表示还没有参照帧 */
+    private long mLastFrameNs;
+    /** 记录的帧间隔数 */
+    private int mIntervalCount;
+    /** 帧间隔总和，单位：ns */
+    private long mTotalIntervalNs;
+    /** 最大帧间隔，单位：ns */
+    private long mMaxIntervalNs;
+
+    /**
+     * 设置是否开启统计，可以在播放中随时切换，关闭后每帧回调直接返回
+     *
+     * @param enable 是否开启
+     */
+    public void setEnabled(boolean enable) {
+        mEnabled = enable;
+        mLastFrameNs = 0;
+    }
+
+    /**
+     * 是否开启统计
+     *
+     * @return true：开启
+     */
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * 开始统计，在开始播放、卡顿结束和seek完成时调用
+     */
+    public void start() {
+        if (!mRunning) {
+            mRunning = true;
+            mLastFrameNs = 0;
+        }
+    }
+
+    /**
+     * 停止统计，在暂停、卡顿、seek、纯音频和播放结束时调用
+     */
+    public void stop() {
+        mRunning = false;
+        mLastFrameNs = 0;
+    }
+
+    /**
+     * 清空统计数据，在开始新的播放会话时调用
+     */
+    public void reset() {
+        stop();
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mBuckets[i] = 0;
+        }
+        mIntervalCount = 0;
+        mTotalIntervalNs = 0;
+        mMaxIntervalNs = 0;
+    }
+
+    /**
+     * 记录一帧，在SurfaceTexture收到新帧时调用
+     */
+    public void onFrame() {
+        if (!mEnabled || !mRunning) {
+            return;
+        }
+        long now = System.nanoTime();
+        long last = mLastFrameNs;
+        mLastFrameNs = now;
+        if (last == 0) {
+            return;
+        }
+        long interval = now - last;
+        long bucket = interval / BUCKET_NS;
+        mBuckets[bucket < BUCKET_COUNT ? (int) bucket : BUCKET_COUNT - 1]++;
+        mIntervalCount++;
+        mTotalIntervalNs += interval;
+        if (interval > mMaxIntervalNs) {
+            mMaxIntervalNs = interval;
+        }
+    }
+
+    /**
+     * 计算当前会话的帧统计
+     *
+     * @return 帧统计
+     */
+    public FrameTimingStats getStats() {
+        FrameTimingStats stats = new FrameTimingStats();
+        int count = mIntervalCount;
+        if (count == 0) {
+            return stats;
+        }
+        stats.mFrames = count;
+        stats.mDurationMs = mTotalIntervalNs / 1000000;
+        stats.mEffectiveFps = (float) (count * 1e9 / mTotalIntervalNs);
+        stats.mMaxIntervalMs = mMaxIntervalNs / 1e6f;
+
+        int median = percentileBucket(mBuckets, count, 0.5f);
+        stats.mIntervalP50Ms = bucketToMs(median);
+        stats.mIntervalP90Ms = bucketToMs(percentileBucket(mBuckets, count, 0.9f));
+        stats.mIntervalP99Ms = bucketToMs(percentileBucket(mBuckets, count, 0.99f));
+
+        // 中位间隔视为正常帧间隔，超过1.5倍说明至少有一帧没有按时显示
+        int jankBucket = median + Math.max(1, median / 2);
+        int[] deviations = new int[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            int n = mBuckets[i];
+            if (n == 0) {
+                continue;
+            }
+            deviations[Math.abs(i - median)] += n;
+            if (i > jankBucket) {
+                stats.mJankFrames += n;
+                stats.mDroppedFrames += n * (Math.round((float) i / Math.max(1, median)) - 1);
+            }
+        }
+        stats.mJitterP50Ms = percentileBucket(deviations, count, 0.5f) * BUCKET_NS / 1e6f;
+        stats.mJitterP90Ms = percentileBucket(deviations, count, 0.9f) * BUCKET_NS / 1e6f;
+        stats.mJitterP99Ms = percentileBucket(deviations, count, 0.99f) * BUCKET_NS / 1e6f;
+        return stats;
+    }
+
+    /**
+     * 查找分位数所在的桶
+     */
+    private static int percentileBucket(int[] buckets, int count, float percentile) {
+        long target = (long) Math.ceil(count * percentile);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= target) {
+                return i;
+            }
+        }
+        return buckets.length - 1;
+    }
+
+    /**
+     * 桶中点对应的间隔，单位：ms
+     */
+    private static float bucketToMs(int bucket) {
+        return (bucket + 0.5f) * BUCKET_NS / 1e6f;
+    }
+}
@@ -0,0 +1,153 @@
+package com.baidu.swan.videoplayer.monitor;
+
+/**
+ * 单次播放会话的渲染帧统计，由{@link FrameTimingMonitor#getStats()}生成。
+ * 间隔和抖动的精度为{@link FrameTimingMonitor#BUCKET_NS}
+ *
+ * @author machao10
+ * @since 2019-03-12
+ */
+public class FrameTimingStats {
+
+    /** 统计的帧间隔数 */
+    int mFrames;
+    /** 统计时长，不含暂停和卡顿，单位：ms */
+    long mDurationMs;
+    /** 有效帧率 */
+    float mEffectiveFps;
+    /** 卡帧数，即间隔超过中位间隔1.5倍的帧 */
+    int mJankFrames;
+    /** 估算的丢帧数 */
+    int mDroppedFrames;
+    /** 最大帧间隔，单位：ms */
+    float mMaxIntervalMs;
+    /** 帧间隔中位数，单位：ms */
+    float mIntervalP50Ms;
+    /** 帧间隔90分位，单位：ms */
+    float mIntervalP90Ms;
+    /** 帧间隔99分位，单位：ms */
+    float mIntervalP99Ms;
+    /** 抖动（帧间隔与中位数之差的绝对值）中位数，单位：ms */
+    float mJitterP50Ms;
+    /** 抖动90分位，单位：ms */
+    float mJitterP90Ms;
+    /** 抖动99分位，单位：ms */
+    float mJitterP99Ms;
+
+    /**
+     * 获取统计的帧间隔数
+     *
+     * @return 帧间隔数
+     */
+    public int getFrames() {
+        return mFrames;
+    }
+
+    /**
+     * 获取统计时长
+     *
+     * @return 时长，不含暂停和卡顿，单位：ms
+     */
+    public long getDurationMs() {
+        return mDurationMs;
+    }
+
+    /**
+     * 获取有效帧率，即实际显示到屏幕上的帧率
+     *
+     * @return 帧率；没有数据时为0
+     */
+    public float getEffectiveFps() {
+        return mEffectiveFps;
+    }
+
+    /**
+     * 获取卡帧数
+     *
+     * @return 间隔超过中位间隔1.5倍的帧数
+     */
+    public int getJankFrames() {
+        return mJankFrames;
+    }
+
+    /**
+     * 获取估算的丢帧数，按卡帧间隔相当于几个中位间隔估算
+     *
+     * @return 丢帧数
+     */
+    public int getDroppedFrames() {
+        return mDroppedFrames;
+    }
+
+    /**
+     * 获取最大帧间隔
+     *
+     * @return 最大间隔，单位：ms
+     */
+    public float getMaxIntervalMs() {
+        return mMaxIntervalMs;
+    }
+
+    /**
+     * 获取帧间隔中位数
+     *
+     * @return 间隔，单位：ms
+     */
+    public float getIntervalP50Ms() {
+        return mIntervalP50Ms;
+    }
+
+    /**
+     * 获取帧间隔90分位
+     *
+     * @return 间隔，单位：ms
+     */
+    public float getIntervalP90Ms() {
+        return mIntervalP90Ms;
+    }
+
+    /**
+     * 获取帧间隔99分位
+     *
+     * @return 间隔，单位：ms
+     */
+    public float getIntervalP99Ms() {
+        return mIntervalP99Ms;
+    }
+
+    /**
+     * 获取抖动中位数
+     *
+     * @return 抖动，单位：ms
+     */
+    public float getJitterP50Ms() {
+        return mJitterP50Ms;
+    }
+
+    /**
+     * 获取抖动90分位
+     *
+     * @return 抖动，单位：ms
+     */
+    public float getJitterP90Ms() {
+        return mJitterP90Ms;
+    }
+
+    /**
+     * 获取抖动99分位
+     *
+     * @return 抖动，单位：ms
+     */
+    public float getJitterP99Ms() {
+        return mJitterP99Ms;
+    }
+
+    @Override
+    public String toString() {
+        return "FrameTiming{frames=" + mFrames + ", duration=" + mDurationMs + "ms, fps="
+                + mEffectiveFps + ", jank=" + mJankFrames + ", dropped=" + mDroppedFrames
+                + ", interval p50/p90/p99=" + mIntervalP50Ms + "/" + mIntervalP90Ms + "/"
+                + mIntervalP99Ms + "ms, jitter p50/p90/p99=" + mJitterP50Ms + "/"
+                + mJitterP90Ms + "/" + mJitterP99Ms + "ms, max=" + mMaxIntervalMs + "ms}";
+    }
+}
@@ -0,0 +1,269 @@
+package com.baidu.swan.videoplayer.monitor;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * 一次播放会话的QoE（体验质量）记录，从设置视频源开始到停止、播放结束或切换视频为止
+ *
+ * @author machao10
+ * @since 2019-03-11
+ */
+public final class QoeRecord {
+
+    /** 结束原因：播放结束 */
+    public static final int END_COMPLETED = 1;
+    /** 结束原因：主动停止或释放 */
+    public static final int END_STOPPED = 2;
+    /** 结束原因：播放失败 */
+    public static final int END_ERROR = 3;
+    /** 结束原因：切换到其他视频 */
+    public static final int END_SWITCHED = 4;
+
+    /** 序列化格式版本 */
+    static final int VERSION = 2;
+    /** 地址最大保存长度 */
+    private static final int MAX_URL_LENGTH = 256;
+
+    /** 会话开始时间，System.currentTimeMillis */
+    long mStartTimeMs;
+    /** 视频地址 */
+    String mUrl;
+    /** 起播耗时，单位：ms；没有出首帧时为-1 */
+    int mStartupMs = -1;
+    /** 域名预热节省的DNS解析耗时，单位：ms；没有命中预热时为0，本地视频为-1 */
+    int mPrewarmSavedMs = -1;
+    /** 卡顿次数，不含起播和seek引起的缓冲 */
+    int mStallCount;
+    /** 卡顿总时长，单位：ms */
+    long mStallMs;
+    /** seek次数 */
+    int mSeekCount;
+    /** 错误次数，包括自动恢复成功的错误 */
+    int mErrorCount;
+    /** 最后一次错误的what */
+    int mLastErrorWhat;
+    /** 最后一次错误的extra */
+    int mLastErrorExtra;
+    /** 下载字节数，按下载速度采样累计 */
+    long mBytesDownloaded;
+    /** 平均码率，单位：bps */
+    long mAverageBitrate;
+    /** 有效观看时长，不含暂停和卡顿，单位：ms */
+    long mWatchMs;
+    /** 结束原因 */
+    int mEndReason;
+
+    /**
+     * 获取会话开始时间
+     *
+     * @return 开始时间，System.currentTimeMillis
+     */
+    public long getStartTimeMs() {
+        return mStartTimeMs;
+    }
+
+    /**
+     * 获取视频地址，超长时被截断
+     *
+     * @return 视频地址
+     */
+    public String getUrl() {
+        return mUrl;
+    }
+
+    /**
+     * 获取起播耗时
+     *
+     * @return 从设置视频源到首帧的耗时，单位：ms；没有出首帧时为-1
+     */
+    public int getStartupMs() {
+        return mStartupMs;
+    }
+
+    /**
+     * 获取域名预热节省的DNS解析耗时
+     *
+     * @return 耗时，单位：ms；没有命中预热时为0，本地视频为-1
+     */
+    public int getPrewarmSavedMs() {
+        return mPrewarmSavedMs;
+    }
+
+    /**
+     * 获取卡顿次数
+     *
+     * @return 卡顿次数
+     */
+    public int getStallCount() {
+        return mStallCount;
+    }
+
+    /**
+     * 获取卡顿总时长
+     *
+     * @return 卡顿总时长，单位：ms
+     */
+    public long getStallMs() {
+        return mStallMs;
+    }
+
+    /**
+     * 获取seek次数
+     *
+     * @return seek次数
+     */
+    public int getSeekCount() {
+        return mSeekCount;
+    }
+
+    /**
+     * 获取错误次数
+     *
+     * @return 错误次数
+     */
+    public int getErrorCount() {
+        return mErrorCount;
+    }
+
+    /**
+     * 获取最后一次错误的what
+     *
+     * @return what，没有错误时为0
+     */
+    public int getLastErrorWhat() {
+        return mLastErrorWhat;
+    }
+
+    /**
+     * 获取最后一次错误的extra
+     *
+     * @return extra，没有错误时为0
+     */
+    public int getLastErrorExtra() {
+        return mLastErrorExtra;
+    }
+
+    /**
+     * 获取下载字节数
+     *
+     * @return 字节数
+     */
+    public long getBytesDownloaded() {
+        return mBytesDownloaded;
+    }
+
+    /**
+     * 获取平均码率
+     *
+     * @return 码率，单位：bps
+     */
+    public long getAverageBitrate() {
+        return mAverageBitrate;
+    }
+
+    /**
+     * 获取有效观看时长
+     *
+     * @return 观看时长，单位：ms
+     */
+    public long getWatchMs() {
+        return mWatchMs;
+    }
+
+    /**
+     * 获取结束原因
+     *
+     * @return END_*
+     */
+    public int getEndReason() {
+        return mEndReason;
+    }
+
+    /**
+     * 序列化
+     *
+     * @param out 输出流
+     * @throws IOException 写入失败
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeByte(VERSION);
+        out.writeLong(mStartTimeMs);
+        String url = mUrl == null ? "" : mUrl;
+        out.writeUTF(url.length() > MAX_URL_LENGTH ? url.substring(0, MAX_URL_LENGTH) : url);
+        out.writeInt(mStartupMs);
+        out.writeInt(mStallCount);
+        out.writeLong(mStallMs);
+        out.writeInt(mSeekCount);
+        out.writeInt(mErrorCount);
+        out.writeInt(mLastErrorWhat);
+        out.writeInt(mLastErrorExtra);
+        out.writeLong(mBytesDownloaded);
+        out.writeLong(mAverageBitrate);
+        out.writeLong(mWatchMs);
+        out.writeByte(mEndReason);
+        out.writeInt(mPrewarmSavedMs);
+    }
+
+    /**
+     * 反序列化
+     *
+     * @param in 输入流
+     * @return 记录，版本不支持时返回null
+     * @throws IOException 读取失败
+     */
+    static QoeRecord readFrom(DataInputStream in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version < 1 || version > VERSION) {
+            return null;
+        }
+        QoeRecord record = new QoeRecord();
+        record.mStartTimeMs = in.readLong();
+        record.mUrl = in.readUTF();
+        record.mStartupMs = in.readInt();
+        record.mStallCount = in.readInt();
+        record.mStallMs = in.readLong();
+        record.mSeekCount = in.readInt();
+        record.mErrorCount = in.readInt();
+        record.mLastErrorWhat = in.readInt();
+        record.mLastErrorExtra = in.readInt();
+        record.mBytesDownloaded = in.readLong();
+        record.mAverageBitrate = in.readLong();
+        record.mWatchMs = in.readLong();
+        record.mEndReason = in.readUnsignedByte();
+        if (version >= 2) {
+            record.mPrewarmSavedMs = in.readInt();
+        }
+        return record;
+    }
+
+    /**
+     * CSV表头，与{@link #toCsv()}对应
+     *
+     * @return 表头
+     */
+    public static String csvHeader() {
+        return "start_time,url,startup_ms,stall_count,stall_ms,seek_count,error_count,"
+                + "last_error_what,last_error_extra,bytes,avg_bitrate,watch_ms,end_reason,"
+                + "prewarm_saved_ms";
+    }
+
+    /**
+     * 导出为一行CSV
+     *
+     * @return CSV行，不含换行
+     */
+    public String toCsv() {
+        String url = mUrl == null ? "" : mUrl.replace("\"", "\"\"");
+        return mStartTimeMs + ",\"" + url + "\"," + mStartupMs + "," + mStallCount + ","
+                + mStallMs + "," + mSeekCount + "," + mErrorCount + "," + mLastErrorWhat + ","
+                + mLastErrorExtra + "," + mBytesDownloaded + "," + mAverageBitrate + ","
+                + mWatchMs + "," + mEndReason + "," + mPrewarmSavedMs;
+    }
+
+    @Override
+    public String toString() {
+        return "QoeRecord{" + toCsv() + "}";
+    }
+}
@@ -0,0 +1,302 @@
+package com.baidu.swan.videoplayer.monitor;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.baidu.cloud.videoplayer.demo.BuildConfig;
+import com.baidu.swan.videoplayer.VideoUtils;
+
+/**
+ * 单个播放器的QoE采集，每次播放会话生成一条{@link QoeRecord}，写入{@link QoeStore}。
+ * 只在主线程使用
+ *
+ * @author machao10
+ * @since 2019-03-11
+ */
+public class QoeRecorder {
+
+    /** debug 开关 */
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    /** debug tag */
+    private static final String TAG = "QoeRecorder";
+    /** 下载速度和码率的采样间隔，单位：ms */
+    private static final long SAMPLE_INTERVAL_MS = 1000;
+
+    /**
+     * 播放器网络数据来源
+     */
+    public interface Source {
+        /**
+         * 获取当前下载速度
+         *
+         * @return 下载速度，单位：字节/s
+         */
+        long getDownloadSpeed();
+
+        /**
+         * 获取当前码率
+         *
+         * @return 码率，单位：bps；未知时返回0
+         */
+        long getBitRate();
+    }
+
+    /** 应用上下文 */
+    private final Context mAppContext;
+    /** 网络数据来源 */
+    private final Source mSource;
+    /** 主线程handler */
+    private final Handler mHandler = VideoUtils.getMainHandler();
+
+    /** 当前会话的记录，没有会话时为null */
+    private QoeRecord mRecord;
+    /** 是否开启采集 */
+    private boolean mEnabled = true;
+    /** 是否播放中 */
+    private boolean mPlaying;
+    /** 是否卡顿中 */
+    private boolean mStalled;
+    /** 是否在seek中，seek引起的缓冲不算卡顿 */
+    private boolean mSeeking;
+    /** 是否已经出首帧，首帧前的缓冲不算卡顿 */
+    private boolean mFirstFrame;
+    /** 会话开始时间，SystemClock.elapsedRealtime */
+    private long mSessionStartMs;
+    /** 当前卡顿开始时间 */
+    private long mStallStartMs;
+    /** 当前观看段开始时间，不在观看时为-1 */
+    private long mWatchStartMs = -1;
+    /** 上次采样时间 */
+    private long mLastSampleMs;
+    /** 码率按观看时长的加权和 */
+    private double mBitrateWeightedSum;
+    /** 有码率的观看时长，单位：ms */
+    private long mBitrateWeightMs;
+
+    /**
+     * 构造器
+     *
+     * @param context 上下文
+     * @param source  网络数据来源
+     */
+    public QoeRecorder(Context context, Source source) {
+        mAppContext = context.getApplicationContext();
+        mSource = source;
+    }
+
+    /**
+     * 设置是否开启采集，关闭时结束当前会话并丢弃
+     *
+     * @param enable 是否开启
+     */
+    public void setEnabled(boolean enable) {
+        mEnabled = enable;
+        if (!enable) {
+            mHandler.removeCallbacks(mSampleRunnable);
+            mRecord = null;
+        }
+    }
+
+    /**
+     * 是否有进行中的会话
+     *
+     * @return true：有
+     */
+    public boolean isActive() {
+        return mRecord != null;
+    }
+
+    /**
+     * 开始新的会话，调用前需要先结束上一个会话
+     *
+     * @param url 视频地址
+     */
+    public void startSession(String url) {
+        if (!mEnabled) {
+            return;
+        }
+        mRecord = new QoeRecord();
+        mRecord.mStartTimeMs = System.currentTimeMillis();
+        mRecord.mUrl = url;
+        mPlaying = false;
+        mStalled = false;
+        mSeeking = false;
+        mFirstFrame = false;
+        mWatchStartMs = -1;
+        mBitrateWeightedSum = 0;
+        mBitrateWeightMs = 0;
+        mSessionStartMs = SystemClock.elapsedRealtime();
+        mLastSampleMs = mSessionStartMs;
+        mHandler.removeCallbacks(mSampleRunnable);
+        mHandler.postDelayed(mSampleRunnable, SAMPLE_INTERVAL_MS);
+    }
+
+    /**
+     * 记录域名预热命中情况
+     *
+     * @param savedMs {@link com.baidu.swan.videoplayer.net.HostPrewarmer#onOpen(String)}的返回值
+     */
+    public void onHostPrewarm(long savedMs) {
+        if (mRecord != null) {
+            mRecord.mPrewarmSavedMs = (int) savedMs;
+        }
+    }
+
+    /**
+     * 首帧渲染，起播耗时从会话开始计算，包含加载多码率列表和错误重试的时间
+     */
+    public void onFirstFrame() {
+        if (mRecord != null && !mFirstFrame) {
+            mFirstFrame = true;
+            mRecord.mStartupMs = (int) (SystemClock.elapsedRealtime() - mSessionStartMs);
+        }
+    }
+
+    /**
+     * 播放状态变化
+     *
+     * @param playing 是否播放中
+     */
+    public void onPlaying(boolean playing) {
+        if (mRecord == null || mPlaying == playing) {
+            return;
+        }
+        mPlaying = playing;
+        updateWatching();
+    }
+
+    /**
+     * 卡顿开始或结束
+     *
+     * @param stalled 是否卡顿
+     */
+    public void onStall(boolean stalled) {
+        if (mRecord == null || mStalled == stalled) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        mStalled = stalled;
+        boolean counted = mFirstFrame && !mSeeking;
+        if (stalled) {
+            mStallStartMs = counted ? now : -1;
+            if (counted) {
+                mRecord.mStallCount++;
+            }
+        } else if (mStallStartMs >= 0) {
+            mRecord.mStallMs += now - mStallStartMs;
+            mStallStartMs = -1;
+        }
+        updateWatching();
+    }
+
+    /**
+     * 开始seek
+     */
+    public void onSeek() {
+        if (mRecord != null) {
+            mRecord.mSeekCount++;
+            mSeeking = true;
+        }
+    }
+
+    /**
+     * seek完成
+     */
+    public void onSeekComplete() {
+        mSeeking = false;
+    }
+
+    /**
+     * 播放出错，包括之后自动恢复的错误
+     *
+     * @param what  错误类型
+     * @param extra 错误码
+     */
+    public void onError(int what, int extra) {
+        if (mRecord != null) {
+            mRecord.mErrorCount++;
+            mRecord.mLastErrorWhat = what;
+            mRecord.mLastErrorExtra = extra;
+        }
+    }
+
+    /**
+     * 结束当前会话并写入存储
+     *
+     * @param reason {@link QoeRecord}中的END_*
+     */
+    public void endSession(int reason) {
+        QoeRecord record = mRecord;
+        if (record == null) {
+            return;
+        }
+        sample();
+        if (mStalled) {
+            onStall(false);
+        }
+        mPlaying = false;
+        updateWatching();
+        mHandler.removeCallbacks(mSampleRunnable);
+        record.mEndReason = reason;
+        if (mBitrateWeightMs > 0) {
+            record.mAverageBitrate = (long) (mBitrateWeightedSum / mBitrateWeightMs);
+        } else if (record.mWatchMs > 0) {
+            record.mAverageBitrate = record.mBytesDownloaded * 8 * 1000 / record.mWatchMs;
+        }
+        mRecord = null;
+        if (DEBUG) {
+            Log.d(TAG, "session end : " + record);
+        }
+        QoeStore.getInstance(mAppContext).append(record);
+    }
+
+    /**
+     * 根据播放和卡顿状态开始或结束一个观看段
+     */
+    private void updateWatching() {
+        boolean watching = mPlaying && !mStalled;
+        long now = SystemClock.elapsedRealtime();
+        if (watching && mWatchStartMs < 0) {
+            mWatchStartMs = now;
+        } else if (!watching && mWatchStartMs >= 0) {
+            mRecord.mWatchMs += now - mWatchStartMs;
+            mWatchStartMs = -1;
+        }
+    }
+
+    /**
+     * 采样下载速度和码率，下载速度按采样间隔累计为字节数
+     */
+    private void sample() {
+        long now = SystemClock.elapsedRealtime();
+        long elapsed = now - mLastSampleMs;
+        mLastSampleMs = now;
+        if (elapsed <= 0) {
+            return;
+        }
+        mRecord.mBytesDownloaded += mSource.getDownloadSpeed() * elapsed / 1000;
+        if (mPlaying && !mStalled) {
+            long bitrate = mSource.getBitRate();
+            if (bitrate > 0) {
+                mBitrateWeightedSum += (double) bitrate * elapsed;
+                mBitrateWeightMs += elapsed;
+            }
+        }
+    }
+
+    /**
+     * 定时采样
+     */
+    private final Runnable mSampleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mRecord == null) {
+                return;
+            }
+            sample();
+            mHandler.postDelayed(this, SAMPLE_INTERVAL_MS);
+        }
+    };
+}
@@ -0,0 +1,426 @@
+package com.baidu.swan.videoplayer.monitor;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.util.Log;
+
+import com.baidu.cloud.videoplayer.demo.BuildConfig;
+import com.baidu.swan.videoplayer.VideoUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * QoE记录的本地存储。
+ * <p>
+ * 记录先在内存中攒批，满{@link #BATCH_SIZE}条或等待{@link #FLUSH_DELAY_MS}后在后台线程一次性追加到文件；
+ * 应用退到后台时立即写入。文件按大小滚动：当前文件超过上限的一半时改名为备份文件，
+ * 总大小不超过上限。所有磁盘读写都在后台线程进行
+ *
+ * @author machao10
+ * @since 2019-03-11
+ */
+public final class QoeStore implements ComponentCallbacks2 {
+
+    /** debug 开关 */
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    /** debug tag */
+    private static final String TAG = "QoeStore";
+    /** 当前文件名 */
+    private static final String FILE_NAME = "swan_video_qoe.bin";
+    /** 滚动后的备份文件名 */
+    private static final String ROTATED_FILE_NAME = FILE_NAME + ".1";
+    /** 默认的存储上限，单位：字节 */
+    public static final long DEFAULT_MAX_BYTES = 256 * 1024;
+    /** 攒批条数 */
+    static final int BATCH_SIZE = 16;
+    /** 攒批最长等待时间，单位：ms */
+    static final long FLUSH_DELAY_MS = 10000;
+
+    /**
+     * 读取结果回调，在主线程回调
+     */
+    public interface ReadCallback {
+        /**
+         * 读取完成
+         *
+         * @param records 全部记录，按写入顺序排列
+         */
+        void onRecordsRead(List<QoeRecord> records);
+    }
+
+    /**
+     * 导出结果回调，在主线程回调
+     */
+    public interface ExportCallback {
+        /**
+         * 导出完成
+         *
+         * @param success 是否成功
+         * @param count   导出的记录数
+         */
+        void onExported(boolean success, int count);
+    }
+
+    /** 单例 */
+    private static volatile QoeStore sInstance;
+
+    /** 当前文件 */
+    private final File mFile;
+    /** 备份文件 */
+    private final File mRotatedFile;
+    /** 等待写入的记录 */
+    private final ConcurrentLinkedQueue<QoeRecord> mPending = new ConcurrentLinkedQueue<>();
+    /** 是否已经安排了写入 */
+    private final AtomicBoolean mFlushScheduled = new AtomicBoolean();
+    /** 文件读写锁 */
+    private final Object mFileLock = new Object();
+    /** 存储上限，单位：字节 */
+    private volatile long mMaxBytes = DEFAULT_MAX_BYTES;
+    /** 当前文件末尾是否确认没有写了一半的记录，只在mFileLock内访问 */
+    private boolean mTailChecked;
+
+    /**
+     * 获取QoE存储单例
+     *
+     * @param context 上下文
+     * @return 单例
+     */
+    public static QoeStore getInstance(Context context) {
+        if (sInstance == null) {
+            synchronized (QoeStore.class) {
+                if (sInstance == null) {
+                    sInstance = new QoeStore(context.getApplicationContext());
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * 私有构造器
+     */
+    private QoeStore(Context appContext) {
+        mFile = new File(appContext.getFilesDir(), FILE_NAME);
+        mRotatedFile = new File(appContext.getFilesDir(), ROTATED_FILE_NAME);
+        appContext.registerComponentCallbacks(this);
+    }
+
+    /**
+     * 设置存储上限
+     *
+     * @param maxBytes 上限，单位：字节
+     */
+    public void setMaxBytes(long maxBytes) {
+        mMaxBytes = Math.max(4 * 1024, maxBytes);
+    }
+
+    /**
+     * 追加一条记录，可以在任意线程调用，不会阻塞
+     *
+     * @param record 记录
+     */
+    public void append(QoeRecord record) {
+        mPending.offer(record);
+        if (mPending.size() >= BATCH_SIZE) {
+            flush();
+        } else if (mFlushScheduled.compareAndSet(false, true)) {
+            VideoUtils.getMainHandler().postDelayed(mDelayedFlush, FLUSH_DELAY_MS);
+        }
+    }
+
+    /**
+     * 立即在后台线程写入内存中的记录
+     */
+    public void flush() {
+        VideoUtils.getWorkerExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                flushSync();
+            }
+        });
+    }
+
+    /**
+     * 在后台线程读取全部记录，包括尚未写入文件的记录
+     *
+     * @param callback 读取结果回调
+     */
+    public void read(final ReadCallback callback) {
+        VideoUtils.getWorkerExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<QoeRecord> records = readSync();
+                VideoUtils.getMainHandler().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onRecordsRead(records);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 在后台线程将全部记录导出为CSV文件
+     *
+     * @param dest     目标文件
+     * @param callback 导出结果回调，可以为null
+     */
+    public void export(final File dest, final ExportCallback callback) {
+        VideoUtils.getWorkerExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                List<QoeRecord> records = readSync();
+                final boolean success = writeCsv(dest, records);
+                final int count = success ? records.size() : 0;
+                if (callback != null) {
+                    VideoUtils.getMainHandler().post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onExported(success, count);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * 在后台线程清空全部记录
+     */
+    public void clear() {
+        mPending.clear();
+        VideoUtils.getWorkerExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mFileLock) {
+                    mFile.delete();
+                    mRotatedFile.delete();
+                }
+            }
+        });
+    }
+
+    /**
+     * 同步读取全部记录，会先写入内存中的记录。会阻塞，不能在主线程调用
+     *
+     * @return 全部记录，按写入顺序排列
+     */
+    public List<QoeRecord> readSync() {
+        flushSync();
+        List<QoeRecord> records = new ArrayList<>();
+        synchronized (mFileLock) {
+            readFile(mRotatedFile, records);
+            readFile(mFile, records);
+        }
+        return records;
+    }
+
+    /**
+     * 写入内存中的全部记录
+     */
+    private void flushSync() {
+        if (mPending.isEmpty()) {
+            return;
+        }
+        synchronized (mFileLock) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(512);
+            DataOutputStream recordOut = new DataOutputStream(buffer);
+            DataOutputStream out = null;
+            try {
+                rotateIfNeeded();
+                if (!mTailChecked) {
+                    truncateTornRecord(mFile);
+                    mTailChecked = true;
+                }
+                out = new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(mFile, true)));
+                QoeRecord record;
+                while ((record = mPending.poll()) != null) {
+                    buffer.reset();
+                    record.writeTo(recordOut);
+                    recordOut.flush();
+                    // 每条记录带长度前缀，读取时可以跳过不认识的版本和写了一半的尾部
+                    out.writeShort(buffer.size());
+                    buffer.writeTo(out);
+                }
+                out.flush();
+            } catch (IOException ex) {
+                // 可能只写了半条记录，下次追加前重新检查
+                mTailChecked = false;
+                if (DEBUG) {
+                    Log.w(TAG, "write qoe records failed", ex);
+                }
+            } finally {
+                closeQuietly(out);
+            }
+        }
+    }
+
+    /**
+     * 当前文件超过上限的一半时滚动
+     */
+    private void rotateIfNeeded() {
+        if (mFile.length() < mMaxBytes / 2) {
+            return;
+        }
+        mRotatedFile.delete();
+        if (!mFile.renameTo(mRotatedFile)) {
+            mFile.delete();
+        }
+    }
+
+    /**
+     * 把文件截断到最后一条完整记录的末尾。进程在写入过程中被杀时文件末尾会留下半条记录，
+     * 直接追加的话之后所有记录的长度前缀都会错位
+     *
+     * @param file 记录文件
+     * @throws IOException 读写失败
+     */
+    static void truncateTornRecord(File file) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long length = raf.length();
+            long end = 0;
+            while (end + 2 <= length) {
+                raf.seek(end);
+                long next = end + 2 + raf.readUnsignedShort();
+                if (next > length) {
+                    break;
+                }
+                end = next;
+            }
+            if (end < length) {
+                if (DEBUG) {
+                    Log.w(TAG, "truncate torn record of " + file + " at " + end + "/" + length);
+                }
+                raf.setLength(end);
+            }
+        } finally {
+            closeQuietly(raf);
+        }
+    }
+
+    /**
+     * 读取单个文件中的记录
+     */
+    private static void readFile(File file, List<QoeRecord> records) {
+        if (!file.exists()) {
+            return;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            byte[] buffer = new byte[512];
+            while (true) {
+                int length = in.readUnsignedShort();
+                if (length > buffer.length) {
+                    buffer = new byte[length];
+                }
+                in.readFully(buffer, 0, length);
+                QoeRecord record = QoeRecord.readFrom(new DataInputStream(
+                        new ByteArrayInputStream(buffer, 0, length)));
+                if (record != null) {
+                    records.add(record);
+                }
+            }
+        } catch (EOFException ex) {
+            // 读到文件末尾，或者最后一条记录没有写完整
+        } catch (IOException ex) {
+            if (DEBUG) {
+                Log.w(TAG, "read " + file + " failed", ex);
+            }
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * 写CSV文件
+     */
+    private static boolean writeCsv(File dest, List<QoeRecord> records) {
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new BufferedOutputStream(
+                    new FileOutputStream(dest)), "UTF-8");
+            writer.write(QoeRecord.csvHeader());
+            writer.write('\n');
+            for (QoeRecord record : records) {
+                writer.write(record.toCsv());
+                writer.write('\n');
+            }
+            writer.flush();
+            return true;
+        } catch (IOException ex) {
+            if (DEBUG) {
+                Log.w(TAG, "export qoe records failed", ex);
+            }
+            return false;
+        } finally {
+            closeQuietly(writer);
+        }
+    }
+
+    /**
+     * 关闭流，忽略异常
+     */
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * 攒批超时后写入
+     */
+    private final Runnable mDelayedFlush = new Runnable() {
+        @Override
+        public void run() {
+            mFlushScheduled.set(false);
+            flush();
+        }
+    };
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            // 退到后台后进程随时可能被杀，尽快落盘
+            flush();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        flush();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+}
@@ -0,0 +1,266 @@
+package com.baidu.swan.videoplayer.net;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.baidu.cloud.videoplayer.demo.BuildConfig;
+import com.baidu.swan.videoplayer.VideoUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 视频域名预热：提前通过系统解析器解析DNS并建立到视频域名的keep-alive连接。
+ * <p>
+ * 播放器内核自己建立连接，无法复用Java层的socket，预热对它的收益只有系统DNS缓存已经命中，
+ * 因此打开视频时统计的节省耗时最多是DNS解析耗时；
+ * 组件自己的请求（播放列表、HLS预取、稀疏缓存、离线下载）通过{@link HttpFetcher}发出，
+ * 还可以复用连接池中已完成TCP和TLS握手的连接。
+ * 预热在后台线程执行，同一域名在连接保活期内只预热一次
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public final class HostPrewarmer {
+
+    /** debug 开关 */
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    /** debug tag */
+    private static final String TAG = "HostPrewarmer";
+    /** 预热的连接在连接池中视为可用的时长，取各平台keep-alive空闲超时中较短的，单位：ms */
+    private static final long WARM_CONNECTION_MS = 30 * 1000;
+    /** 最多记录的域名数 */
+    private static final int MAX_HOSTS = 32;
+
+    /** 单例 */
+    private static volatile HostPrewarmer sInstance;
+
+    /** 域名记录，按访问顺序排列 */
+    private final Map<String, HostEntry> mHosts =
+            new LinkedHashMap<String, HostEntry>(MAX_HOSTS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, HostEntry> eldest) {
+                    return size() > MAX_HOSTS;
+                }
+            };
+    /** 完成的预热次数 */
+    private int mPrewarmCount;
+    /** 打开视频时域名已预热的次数 */
+    private int mHitCount;
+    /** 打开视频时域名没有预热的次数 */
+    private int mMissCount;
+    /** 命中预热时累计节省的DNS解析耗时，单位：ms */
+    private long mSavedMs;
+
+    /**
+     * 一个域名的解析和预热结果
+     */
+    private static final class HostEntry {
+        /** 预热时DNS解析的耗时，单位：ms */
+        long mDnsCostMs;
+        /** 预热连接的失效时间，SystemClock.elapsedRealtime */
+        long mWarmExpireMs;
+        /** 是否正在预热 */
+        boolean mWarming;
+    }
+
+    /**
+     * 获取域名预热单例
+     *
+     * @return 单例
+     */
+    public static HostPrewarmer getInstance() {
+        if (sInstance == null) {
+            synchronized (HostPrewarmer.class) {
+                if (sInstance == null) {
+                    sInstance = new HostPrewarmer();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * 私有构造器
+     */
+    private HostPrewarmer() {
+    }
+
+    /**
+     * 在后台预热视频地址所在的域名：解析DNS并发起一个1字节的Range请求，连接保留在连接池中。
+     * 可以在任意线程调用，不会阻塞；同一域名已预热或正在预热时直接返回
+     *
+     * @param url     视频地址，只处理http(s)
+     * @param headers 请求header，可以为null
+     */
+    public void preconnect(final String url, final Map<String, String> headers) {
+        final String host = hostOf(url);
+        if (host == null) {
+            return;
+        }
+        synchronized (this) {
+            HostEntry entry = obtain(host);
+            if (entry.mWarming || entry.mWarmExpireMs > SystemClock.elapsedRealtime()) {
+                return;
+            }
+            entry.mWarming = true;
+        }
+        // 预热是投机性的，放在后台线程池，不占用起播请求的线程
+        VideoUtils.getWorkerExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                warm(host, url, headers);
+            }
+        });
+    }
+
+    /**
+     * 打开视频时调用，统计预热命中情况
+     *
+     * @param url 视频地址
+     * @return 预热节省的DNS解析耗时，单位：ms；不是网络地址时返回-1，没有命中时返回0
+     */
+    public synchronized long onOpen(String url) {
+        String host = hostOf(url);
+        if (host == null) {
+            return -1;
+        }
+        HostEntry entry = mHosts.get(host);
+        long now = SystemClock.elapsedRealtime();
+        if (entry == null || entry.mWarmExpireMs <= now) {
+            mMissCount++;
+            return 0;
+        }
+        // 内核不复用Java层的连接，握手耗时不计入；按保活期内系统DNS缓存仍然命中估算
+        long saved = entry.mDnsCostMs;
+        mHitCount++;
+        mSavedMs += saved;
+        return saved;
+    }
+
+    /**
+     * 获取完成的预热次数
+     *
+     * @return 次数
+     */
+    public synchronized int getPrewarmCount() {
+        return mPrewarmCount;
+    }
+
+    /**
+     * 获取打开视频时域名已预热的次数
+     *
+     * @return 次数
+     */
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * 获取打开视频时域名没有预热的次数
+     *
+     * @return 次数
+     */
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * 获取命中预热时累计节省的DNS解析耗时
+     *
+     * @return 耗时，单位：ms
+     */
+    public synchronized long getSavedMs() {
+        return mSavedMs;
+    }
+
+    /**
+     * 执行预热，在后台线程调用
+     */
+    private void warm(String host, String url, Map<String, String> headers) {
+        long dnsCostMs = -1;
+        long connectCostMs = -1;
+        try {
+            long start = SystemClock.elapsedRealtime();
+            // 通过系统解析器解析，结果进入系统DNS缓存，内核和HttpFetcher的请求都能命中
+            InetAddress.getAllByName(host);
+            dnsCostMs = SystemClock.elapsedRealtime() - start;
+            start = SystemClock.elapsedRealtime();
+            HttpURLConnection connection = HttpFetcher.open(url, headers, 0, 0);
+            try {
+                // 读完响应体再关闭流，连接才会回到连接池；disconnect会直接关闭socket
+                InputStream in = connection.getInputStream();
+                byte[] buffer = new byte[256];
+                while (in.read(buffer) != -1) {
+                    // drain
+                }
+                in.close();
+            } catch (IOException ex) {
+                connection.disconnect();
+                throw ex;
+            }
+            connectCostMs = SystemClock.elapsedRealtime() - start;
+        } catch (IOException ex) {
+            if (DEBUG) {
+                Log.w(TAG, "prewarm failed : " + host, ex);
+            }
+        }
+        synchronized (this) {
+            HostEntry entry = obtain(host);
+            entry.mWarming = false;
+            if (connectCostMs >= 0) {
+                entry.mDnsCostMs = dnsCostMs;
+                entry.mWarmExpireMs = SystemClock.elapsedRealtime() + WARM_CONNECTION_MS;
+                mPrewarmCount++;
+            }
+            if (DEBUG) {
+                Log.d(TAG, "prewarm " + host + " dns " + dnsCostMs + "ms, connect "
+                        + connectCostMs + "ms");
+            }
+        }
+    }
+
+    /**
+     * 获取或创建域名记录，调用方持有锁
+     */
+    private HostEntry obtain(String host) {
+        HostEntry entry = mHosts.get(host);
+        if (entry == null) {
+            entry = new HostEntry();
+            mHosts.put(host, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * 获取http(s)地址的域名
+     *
+     * @param url 地址
+     * @return 小写域名，不是http(s)地址时返回null
+     */
+    private static String hostOf(String url) {
+        if (url == null) {
+            return null;
+        }
+        URL parsed;
+        try {
+            parsed = new URL(url);
+        } catch (MalformedURLException ex) {
+            return null;
+        }
+        String scheme = parsed.getProtocol();
+        String host = parsed.getHost();
+        if (host == null || host.isEmpty()
+                || !("http".equals(scheme) || "https".equals(scheme))) {
+            return null;
+        }
+        return host.toLowerCase(Locale.US);
+    }
+}
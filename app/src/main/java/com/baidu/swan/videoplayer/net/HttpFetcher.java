@@ -0,0 +1,104 @@
+package com.baidu.swan.videoplayer.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * 播放器组件内部使用的HTTP请求工具，统一超时、header和Range请求的处理。
+ * 所有方法都会阻塞，不能在主线程调用
+ *
+ * @author machao10
+ * @since 2019-03-06
+ */
+public final class HttpFetcher {
+
+    /** 连接超时，单位：ms */
+    private static final int CONNECT_TIMEOUT = 10000;
+    /** 读取超时，单位：ms */
+    private static final int READ_TIMEOUT = 15000;
+    /** 读取缓冲大小 */
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * 工具类，不允许实例化
+     */
+    private HttpFetcher() {
+    }
+
+    /**
+     * 打开HTTP连接
+     *
+     * @param url        请求地址
+     * @param headers    请求header，可以为null
+     * @param rangeStart Range起始字节，小于0时不带Range
+     * @param rangeEnd   Range结束字节（含），小于0时表示到文件末尾
+     * @return 已建立的连接，调用方负责disconnect
+     * @throws IOException 网络错误或服务端返回错误码
+     */
+    public static HttpURLConnection open(String url, Map<String, String> headers,
+                                         long rangeStart, long rangeEnd) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+        if (rangeStart >= 0) {
+            connection.setRequestProperty("Range",
+                    "bytes=" + rangeStart + "-" + (rangeEnd >= 0 ? String.valueOf(rangeEnd) : ""));
+        }
+        int code = connection.getResponseCode();
+        if (code < 200 || code >= 300) {
+            connection.disconnect();
+            throw new IOException("HTTP " + code + " for " + url);
+        }
+        return connection;
+    }
+
+    /**
+     * 请求并读取全部内容为字节数组，适合播放列表、密钥等小文件
+     *
+     * @param url     请求地址
+     * @param headers 请求header，可以为null
+     * @return 响应内容
+     * @throws IOException 网络错误
+     */
+    public static byte[] readBytes(String url, Map<String, String> headers) throws IOException {
+        HttpURLConnection connection = open(url, headers, -1, -1);
+        try {
+            InputStream in = connection.getInputStream();
+            int length = connection.getContentLength();
+            ByteArrayOutputStream out =
+                    new ByteArrayOutputStream(length > 0 ? length : BUFFER_SIZE);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            // 读完之后只关闭流，连接回到keep-alive连接池，同一域名的下一个请求不用重新握手
+            in.close();
+            return out.toByteArray();
+        } catch (IOException ex) {
+            connection.disconnect();
+            throw ex;
+        }
+    }
+
+    /**
+     * 请求并读取全部内容为UTF-8文本
+     *
+     * @param url     请求地址
+     * @param headers 请求header，可以为null
+     * @return 响应文本
+     * @throws IOException 网络错误
+     */
+    public static String readText(String url, Map<String, String> headers) throws IOException {
+        return new String(readBytes(url, headers), "UTF-8");
+    }
+}
@@ -0,0 +1,162 @@
+package com.baidu.swan.videoplayer.recovery;
+
+import com.baidu.cloud.media.player.IMediaPlayer;
+
+/**
+ * 播放错误分类。根据onError回调的what/extra判断错误能否通过重试恢复。
+ * <p>
+ * 内核基于ijkplayer，网络类错误通常以ffmpeg错误码的形式出现在extra中。
+ *
+ * @author machao10
+ * @since 2019-02-22
+ */
+public final class ErrorClassifier {
+
+    /** 可以在同一地址重试的临时错误，如超时、连接被重置、服务端5xx */
+    public static final int RETRYABLE = 0;
+    /** 当前地址不可用，但可以切换到镜像地址，如404、403 */
+    public static final int FAILOVER = 1;
+    /** 内容本身有问题，重试和切换地址都无法恢复，如格式不支持、数据损坏 */
+    public static final int FATAL = 2;
+
+    /** ijkplayer内部错误 */
+    private static final int MEDIA_ERROR_IJK_PLAYER = -10000;
+
+    /* ================ ffmpeg错误码 START ============== */
+    /** EIO */
+    private static final int AVERROR_EIO = -5;
+    /** ECONNRESET */
+    private static final int AVERROR_ECONNRESET = -104;
+    /** ENETUNREACH */
+    private static final int AVERROR_ENETUNREACH = -101;
+    /** ETIMEDOUT */
+    private static final int AVERROR_ETIMEDOUT = -110;
+    /** ECONNREFUSED */
+    private static final int AVERROR_ECONNREFUSED = -111;
+    /** EHOSTUNREACH */
+    private static final int AVERROR_EHOSTUNREACH = -113;
+    /** AVERROR_EOF，网络中断时也会出现 */
+    private static final int AVERROR_EOF = fferrtag('E', 'O', 'F', ' ');
+    /** AVERROR_EXIT */
+    private static final int AVERROR_EXIT = fferrtag('E', 'X', 'I', 'T');
+    /** AVERROR_INVALIDDATA */
+    private static final int AVERROR_INVALIDDATA = fferrtag('I', 'N', 'D', 'A');
+    /** AVERROR_DECODER_NOT_FOUND */
+    private static final int AVERROR_DECODER_NOT_FOUND = fferrtag(0xF8, 'D', 'E', 'C');
+    /** AVERROR_DEMUXER_NOT_FOUND */
+    private static final int AVERROR_DEMUXER_NOT_FOUND = fferrtag(0xF8, 'D', 'E', 'M');
+    /** AVERROR_PROTOCOL_NOT_FOUND */
+    private static final int AVERROR_PROTOCOL_NOT_FOUND = fferrtag(0xF8, 'P', 'R', 'O');
+    /** HTTP 400 */
+    private static final int AVERROR_HTTP_BAD_REQUEST = fferrtag(0xF8, '4', '0', '0');
+    /** HTTP 401 */
+    private static final int AVERROR_HTTP_UNAUTHORIZED = fferrtag(0xF8, '4', '0', '1');
+    /** HTTP 403 */
+    private static final int AVERROR_HTTP_FORBIDDEN = fferrtag(0xF8, '4', '0', '3');
+    /** HTTP 404 */
+    private static final int AVERROR_HTTP_NOT_FOUND = fferrtag(0xF8, '4', '0', '4');
+    /** HTTP 4xx */
+    private static final int AVERROR_HTTP_OTHER_4XX = fferrtag(0xF8, '4', 'X', 'X');
+    /** HTTP 5xx */
+    private static final int AVERROR_HTTP_SERVER_ERROR = fferrtag(0xF8, '5', 'X', 'X');
+    /* ================ ffmpeg错误码 END ============== */
+
+    /**
+     * 工具类，不允许实例化
+     */
+    private ErrorClassifier() {
+    }
+
+    /**
+     * 对错误分类
+     *
+     * @param what  错误类型
+     * @param extra 错误附加码
+     * @return {@link #RETRYABLE}、{@link #FAILOVER}或{@link #FATAL}
+     */
+    public static int classify(int what, int extra) {
+        if (isFatalCode(what) || isFatalCode(extra)) {
+            return FATAL;
+        }
+        if (extra == AVERROR_HTTP_NOT_FOUND || extra == AVERROR_HTTP_FORBIDDEN
+                || extra == AVERROR_HTTP_UNAUTHORIZED || extra == AVERROR_HTTP_BAD_REQUEST
+                || extra == AVERROR_HTTP_OTHER_4XX || extra == AVERROR_PROTOCOL_NOT_FOUND) {
+            return FAILOVER;
+        }
+        if (isTransientCode(what) || isTransientCode(extra)) {
+            return RETRYABLE;
+        }
+        if (what == MEDIA_ERROR_IJK_PLAYER || what == IMediaPlayer.MEDIA_ERROR_SERVER_DIED) {
+            return RETRYABLE;
+        }
+        // 未知错误无法判断是否是地址问题，只尝试切换镜像地址，不在原地址上反复重试
+        return FAILOVER;
+    }
+
+    /**
+     * 错误是否可恢复（重试或切换地址）
+     *
+     * @param what  错误类型
+     * @param extra 错误附加码
+     * @return true：可恢复
+     */
+    public static boolean isRecoverable(int what, int extra) {
+        return classify(what, extra) != FATAL;
+    }
+
+    /**
+     * 错误是否由解码器引起，如不支持的编码或解码器初始化失败。
+     * 网络、地址、容器格式和数据损坏的错误不属于解码器错误
+     *
+     * @param what  错误类型
+     * @param extra 错误附加码
+     * @return true：解码器错误
+     */
+    public static boolean isDecoderError(int what, int extra) {
+        return isDecoderCode(what) || isDecoderCode(extra);
+    }
+
+    /**
+     * 是否是解码器相关的错误码
+     */
+    private static boolean isDecoderCode(int code) {
+        return code == IMediaPlayer.MEDIA_ERROR_UNSUPPORTED
+                || code == AVERROR_DECODER_NOT_FOUND;
+    }
+
+    /**
+     * 是否是内容相关的致命错误
+     */
+    private static boolean isFatalCode(int code) {
+        return code == IMediaPlayer.MEDIA_ERROR_UNSUPPORTED
+                || code == IMediaPlayer.MEDIA_ERROR_MALFORMED
+                || code == IMediaPlayer.MEDIA_ERROR_NOT_VALID_FOR_PROGRESSIVE_PLAYBACK
+                || code == AVERROR_INVALIDDATA
+                || code == AVERROR_DECODER_NOT_FOUND
+                || code == AVERROR_DEMUXER_NOT_FOUND;
+    }
+
+    /**
+     * 是否是网络相关的临时错误
+     */
+    private static boolean isTransientCode(int code) {
+        return code == IMediaPlayer.MEDIA_ERROR_IO
+                || code == IMediaPlayer.MEDIA_ERROR_TIMED_OUT
+                || code == AVERROR_EIO
+                || code == AVERROR_ECONNRESET
+                || code == AVERROR_ENETUNREACH
+                || code == AVERROR_ETIMEDOUT
+                || code == AVERROR_ECONNREFUSED
+                || code == AVERROR_EHOSTUNREACH
+                || code == AVERROR_EOF
+                || code == AVERROR_EXIT
+                || code == AVERROR_HTTP_SERVER_ERROR;
+    }
+
+    /**
+     * 计算ffmpeg的FFERRTAG错误码
+     */
+    private static int fferrtag(int a, int b, int c, int d) {
+        return -(a | (b << 8) | (c << 16) | (d << 24));
+    }
+}
@@ -0,0 +1,254 @@
+package com.baidu.swan.videoplayer.recovery;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.baidu.cloud.videoplayer.demo.BuildConfig;
+import com.baidu.swan.videoplayer.VideoUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 播放错误自动恢复引擎。
+ * <p>
+ * 出错后按错误分类决定在原地址退避重试、切换到下一个镜像地址或直接放弃，
+ * 恢复时从出错前最后的播放位置续播。所有方法需要在主线程调用。
+ *
+ * @author machao10
+ * @since 2019-02-22
+ */
+public class RecoveryEngine {
+
+    /** debug 开关 */
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    /** debug tag */
+    private static final String TAG = "RecoveryEngine";
+    /** 续播后播放位置越过续播位置这么多时，认为已经离开出错的位置，单位：ms */
+    private static final long PROGRESS_REFILL_MS = 10000;
+
+    /**
+     * 恢复执行者，由播放器实现
+     */
+    public interface Host {
+
+        /**
+         * 用指定地址重新打开视频并从指定位置续播
+         *
+         * @param url        视频地址
+         * @param positionMs 续播位置，单位：ms；小于等于0时从头播放
+         */
+        void reopen(String url, long positionMs);
+    }
+
+    /** 重试策略 */
+    private final RetryPolicy mPolicy;
+    /** 恢复执行者 */
+    private final Host mHost;
+    /** 主线程handler */
+    private final Handler mHandler;
+    /** 地址列表，第一个为主地址，其余为按优先级排列的镜像地址 */
+    private final List<String> mUrls = new ArrayList<>();
+    /** 当前使用的地址下标 */
+    private int mUrlIndex;
+    /** 当前地址已重试次数，prepare成功不会清零，播放越过出错位置后才清零 */
+    private int mAttemptsOnUrl;
+    /** 本次恢复流程的总重试次数，用于计算退避时长 */
+    private int mAttemptsInIncident;
+    /** 是否正在恢复 */
+    private boolean mRecovering;
+    /** 本次恢复流程开始的时间 */
+    private long mIncidentStartMs;
+    /** 续播位置，单位：ms */
+    private long mResumePositionMs;
+    /** 会话统计 */
+    private RecoveryStats mStats = new RecoveryStats();
+    /** 等待执行的重试任务 */
+    private Runnable mPendingRetry;
+
+    /**
+     * 错误恢复引擎构造器
+     *
+     * @param policy 重试策略
+     * @param host   恢复执行者
+     */
+    public RecoveryEngine(RetryPolicy policy, Host host) {
+        mPolicy = policy;
+        mHost = host;
+        mHandler = VideoUtils.getMainHandler();
+    }
+
+    /**
+     * 开始新的播放会话，重置地址列表和统计
+     *
+     * @param url     主地址
+     * @param mirrors 镜像地址，可以为null
+     */
+    public void startSession(String url, List<String> mirrors) {
+        cancel();
+        mUrls.clear();
+        mUrls.add(url);
+        if (mirrors != null) {
+            for (String mirror : mirrors) {
+                if (mirror != null && !mUrls.contains(mirror)) {
+                    mUrls.add(mirror);
+                }
+            }
+        }
+        mUrlIndex = 0;
+        mAttemptsOnUrl = 0;
+        mAttemptsInIncident = 0;
+        mRecovering = false;
+        mResumePositionMs = 0;
+        mStats = new RecoveryStats();
+    }
+
+    /**
+     * 是否正在恢复中
+     *
+     * @return true：正在恢复
+     */
+    public boolean isRecovering() {
+        return mRecovering;
+    }
+
+    /**
+     * 处理播放错误
+     *
+     * @param what       错误类型
+     * @param extra      错误附加码
+     * @param positionMs 出错前最后的播放位置，单位：ms
+     * @return true：已接管，将自动重试；false：无法恢复，需要上报错误
+     */
+    public boolean onError(int what, int extra, long positionMs) {
+        if (mUrls.isEmpty()) {
+            return false;
+        }
+        int type = ErrorClassifier.classify(what, extra);
+        if (!isRecovering()) {
+            mRecovering = true;
+            mIncidentStartMs = SystemClock.elapsedRealtime();
+            mAttemptsInIncident = 0;
+            mStats.onIncident();
+        }
+        // 恢复过程中可能还没播放就再次出错，此时保留第一次出错时的位置
+        if (positionMs > 0) {
+            mResumePositionMs = positionMs;
+        }
+        if (type == ErrorClassifier.FATAL) {
+            return giveUp(what, extra);
+        }
+
+        boolean failover = type == ErrorClassifier.FAILOVER
+                || mAttemptsOnUrl >= mPolicy.getMaxAttemptsPerUrl();
+        if (failover) {
+            if (mUrlIndex + 1 >= mUrls.size()) {
+                return giveUp(what, extra);
+            }
+            mUrlIndex++;
+            mAttemptsOnUrl = 0;
+        }
+        mAttemptsOnUrl++;
+        // 切换镜像地址时不需要等待
+        long delay = failover ? 0 : mPolicy.getDelayMs(mAttemptsInIncident);
+        mAttemptsInIncident++;
+        mStats.onAttempt(failover);
+
+        final String url = mUrls.get(mUrlIndex);
+        final long position = mResumePositionMs;
+        if (DEBUG) {
+            Log.d(TAG, "error(" + what + "," + extra + ") -> retry " + url + " at " + position
+                    + "ms after " + delay + "ms");
+        }
+        cancelPendingRetry();
+        mPendingRetry = new Runnable() {
+            @Override
+            public void run() {
+                mPendingRetry = null;
+                mHost.reopen(url, position);
+            }
+        };
+        mHandler.postDelayed(mPendingRetry, delay);
+        return true;
+    }
+
+    /**
+     * 播放器重新prepare成功，结束本次恢复流程。
+     * 同一位置的错误可能在prepare成功后再次出现，这里不恢复重试次数，
+     * 否则会在原地址上无限重试，永远不会切换镜像或放弃
+     */
+    public void onPrepared() {
+        if (!isRecovering()) {
+            return;
+        }
+        long cost = SystemClock.elapsedRealtime() - mIncidentStartMs;
+        mStats.onRecovered(cost);
+        mRecovering = false;
+        if (DEBUG) {
+            Log.d(TAG, "recovered in " + cost + "ms, " + mStats);
+        }
+    }
+
+    /**
+     * 更新播放位置。播放越过续播位置一段距离后，说明已经离开出错的位置，
+     * 当前地址重新获得完整的重试次数
+     *
+     * @param positionMs 播放位置，单位：ms
+     */
+    public void onPlaybackProgress(long positionMs) {
+        if (mAttemptsOnUrl > 0 && !isRecovering()
+                && positionMs >= mResumePositionMs + PROGRESS_REFILL_MS) {
+            mAttemptsOnUrl = 0;
+        }
+    }
+
+    /**
+     * 取消正在进行的恢复
+     */
+    public void cancel() {
+        cancelPendingRetry();
+        mRecovering = false;
+    }
+
+    /**
+     * 获取当前使用的地址
+     *
+     * @return 视频地址
+     */
+    public String getCurrentUrl() {
+        return mUrls.isEmpty() ? null : mUrls.get(mUrlIndex);
+    }
+
+    /**
+     * 获取本次会话的恢复统计
+     *
+     * @return 恢复统计
+     */
+    public RecoveryStats getStats() {
+        return mStats;
+    }
+
+    /**
+     * 放弃恢复
+     */
+    private boolean giveUp(int what, int extra) {
+        if (DEBUG) {
+            Log.d(TAG, "give up recovering error(" + what + "," + extra + ")");
+        }
+        cancelPendingRetry();
+        mStats.onFailed();
+        mRecovering = false;
+        return false;
+    }
+
+    /**
+     * 取消等待中的重试任务
+     */
+    private void cancelPendingRetry() {
+        if (mPendingRetry != null) {
+            mHandler.removeCallbacks(mPendingRetry);
+            mPendingRetry = null;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.baidu.swan.videoplayer.recovery;
+
+/**
+ * 单次播放会话的错误恢复统计
+ *
+ * @author machao10
+ * @since 2019-02-22
+ */
+public class RecoveryStats {
+
+    /** 发生的可恢复错误次数，即恢复流程的触发次数 */
+    private int mIncidents;
+    /** 恢复成功次数 */
+    private int mRecovered;
+    /** 恢复失败次数（重试和镜像地址全部用完或遇到致命错误） */
+    private int mFailed;
+    /** 重试总次数 */
+    private int mAttempts;
+    /** 镜像地址切换次数 */
+    private int mFailovers;
+    /** 恢复成功的总耗时，单位：ms */
+    private long mTotalRecoverTime;
+    /** 恢复成功的最长耗时，单位：ms */
+    private long mMaxRecoverTime;
+
+    /**
+     * 记录一次恢复流程开始
+     */
+    void onIncident() {
+        mIncidents++;
+    }
+
+    /**
+     * 记录一次重试
+     *
+     * @param failover 是否切换了镜像地址
+     */
+    void onAttempt(boolean failover) {
+        mAttempts++;
+        if (failover) {
+            mFailovers++;
+        }
+    }
+
+    /**
+     * 记录一次恢复成功
+     *
+     * @param recoverTime 从出错到恢复的耗时，单位：ms
+     */
+    void onRecovered(long recoverTime) {
+        mRecovered++;
+        mTotalRecoverTime += recoverTime;
+        mMaxRecoverTime = Math.max(mMaxRecoverTime, recoverTime);
+    }
+
+    /**
+     * 记录一次恢复失败
+     */
+    void onFailed() {
+        mFailed++;
+    }
+
+    /**
+     * 获取恢复流程的触发次数
+     *
+     * @return 次数
+     */
+    public int getIncidents() {
+        return mIncidents;
+    }
+
+    /**
+     * 获取恢复成功次数
+     *
+     * @return 次数
+     */
+    public int getRecovered() {
+        return mRecovered;
+    }
+
+    /**
+     * 获取恢复失败次数
+     *
+     * @return 次数
+     */
+    public int getFailed() {
+        return mFailed;
+    }
+
+    /**
+     * 获取重试总次数
+     *
+     * @return 次数
+     */
+    public int getAttempts() {
+        return mAttempts;
+    }
+
+    /**
+     * 获取镜像地址切换次数
+     *
+     * @return 次数
+     */
+    public int getFailovers() {
+        return mFailovers;
+    }
+
+    /**
+     * 获取恢复成功率
+     *
+     * @return 成功率，取值[0, 1]；没有发生过错误时返回1
+     */
+    public float getSuccessRate() {
+        int finished = mRecovered + mFailed;
+        return finished == 0 ? 1f : (float) mRecovered / finished;
+    }
+
+    /**
+     * 获取平均恢复耗时
+     *
+     * @return 平均耗时，单位：ms
+     */
+    public long getAverageRecoverTime() {
+        return mRecovered == 0 ? 0 : mTotalRecoverTime / mRecovered;
+    }
+
+    /**
+     * 获取最长恢复耗时
+     *
+     * @return 最长耗时，单位：ms
+     */
+    public long getMaxRecoverTime() {
+        return mMaxRecoverTime;
+    }
+
+    @Override
+    public String toString() {
+        return "RecoveryStats{incidents=" + mIncidents + ", recovered=" + mRecovered
+                + ", failed=" + mFailed + ", attempts=" + mAttempts + ", failovers=" + mFailovers
+                + ", avgRecoverMs=" + getAverageRecoverTime() + ", maxRecoverMs=" + mMaxRecoverTime
+                + "}";
+    }
+}
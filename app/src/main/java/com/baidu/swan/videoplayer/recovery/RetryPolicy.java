@@ -0,0 +1,90 @@
+package com.baidu.swan.videoplayer.recovery;
+
+import java.util.Random;
+
+/**
+ * 播放失败重试策略：指数退避 + 随机抖动。
+ * <p>
+ * 第n次重试（从0开始）的基础等待时长为 min(maxDelay, baseDelay * 2^n)，
+ * 实际等待时长在基础时长的[1 - jitter, 1]倍之间随机，避免大量客户端在同一时刻重连同一个CDN节点。
+ *
+ * @author machao10
+ * @since 2019-02-22
+ */
+public class RetryPolicy {
+
+    /** 默认首次重试等待时长，单位：ms */
+    public static final int DEFAULT_BASE_DELAY = 500;
+    /** 默认最长等待时长，单位：ms */
+    public static final int DEFAULT_MAX_DELAY = 8000;
+    /** 默认每个地址最多重试次数 */
+    public static final int DEFAULT_MAX_ATTEMPTS_PER_URL = 2;
+    /** 默认抖动比例 */
+    public static final float DEFAULT_JITTER = 0.5f;
+
+    /** 首次重试等待时长，单位：ms */
+    private final int mBaseDelay;
+    /** 最长等待时长，单位：ms */
+    private final int mMaxDelay;
+    /** 每个地址最多重试次数 */
+    private final int mMaxAttemptsPerUrl;
+    /** 抖动比例，取值[0, 1] */
+    private final float mJitter;
+    /** 随机数生成器 */
+    private final Random mRandom;
+
+    /**
+     * 使用默认参数构造重试策略
+     */
+    public RetryPolicy() {
+        this(DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY, DEFAULT_MAX_ATTEMPTS_PER_URL, DEFAULT_JITTER);
+    }
+
+    /**
+     * 重试策略构造器
+     *
+     * @param baseDelay         首次重试等待时长，单位：ms
+     * @param maxDelay          最长等待时长，单位：ms
+     * @param maxAttemptsPerUrl 每个地址最多重试次数，用完后切换到下一个镜像地址
+     * @param jitter            抖动比例，取值[0, 1]
+     */
+    public RetryPolicy(int baseDelay, int maxDelay, int maxAttemptsPerUrl, float jitter) {
+        this(baseDelay, maxDelay, maxAttemptsPerUrl, jitter, new Random());
+    }
+
+    /**
+     * 重试策略构造器，可指定随机数生成器
+     */
+    RetryPolicy(int baseDelay, int maxDelay, int maxAttemptsPerUrl, float jitter, Random random) {
+        mBaseDelay = Math.max(0, baseDelay);
+        mMaxDelay = Math.max(mBaseDelay, maxDelay);
+        mMaxAttemptsPerUrl = Math.max(1, maxAttemptsPerUrl);
+        mJitter = Math.max(0f, Math.min(1f, jitter));
+        mRandom = random;
+    }
+
+    /**
+     * 获取每个地址最多重试次数
+     *
+     * @return 重试次数
+     */
+    public int getMaxAttemptsPerUrl() {
+        return mMaxAttemptsPerUrl;
+    }
+
+    /**
+     * 计算第attempt次重试前的等待时长
+     *
+     * @param attempt 本次会话的重试序号，从0开始
+     * @return 等待时长，单位：ms
+     */
+    public long getDelayMs(int attempt) {
+        long delay = mBaseDelay;
+        for (int i = 0; i < attempt && delay < mMaxDelay; i++) {
+            delay <<= 1;
+        }
+        delay = Math.min(delay, mMaxDelay);
+        long jitter = (long) (delay * mJitter * mRandom.nextFloat());
+        return delay - jitter;
+    }
+}
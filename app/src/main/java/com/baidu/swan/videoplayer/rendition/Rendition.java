@@ -0,0 +1,84 @@
+package com.baidu.swan.videoplayer.rendition;
+
+/**
+ * 同一视频的一个清晰度版本（码率档位），来自HLS多码率播放列表或业务方提供的列表
+ *
+ * @author machao10
+ * @since 2019-03-06
+ */
+public final class Rendition {
+
+    /** 播放地址 */
+    private final String mUrl;
+    /** 视频宽度，未知时为0 */
+    private final int mWidth;
+    /** 视频高度，未知时为0 */
+    private final int mHeight;
+    /** 码率，单位：bps，未知时为0 */
+    private final long mBandwidth;
+
+    /**
+     * 构造器
+     *
+     * @param url       播放地址
+     * @param width     视频宽度，未知时传0
+     * @param height    视频高度，未知时传0
+     * @param bandwidth 码率，单位：bps，未知时传0
+     */
+    public Rendition(String url, int width, int height, long bandwidth) {
+        mUrl = url;
+        mWidth = width;
+        mHeight = height;
+        mBandwidth = bandwidth;
+    }
+
+    /**
+     * 获取播放地址
+     *
+     * @return 播放地址
+     */
+    public String getUrl() {
+        return mUrl;
+    }
+
+    /**
+     * 获取视频宽度
+     *
+     * @return 宽度，未知时为0
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * 获取视频高度
+     *
+     * @return 高度，未知时为0
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * 获取码率
+     *
+     * @return 码率，单位：bps，未知时为0
+     */
+    public long getBandwidth() {
+        return mBandwidth;
+    }
+
+    /**
+     * 是否带有分辨率信息
+     *
+     * @return true：宽高已知
+     */
+    public boolean hasResolution() {
+        return mWidth > 0 && mHeight > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "Rendition{" + mWidth + "x" + mHeight + ", " + mBandwidth + "bps, " + mUrl + "}";
+    }
+}
@@ -0,0 +1,138 @@
+package com.baidu.swan.videoplayer.rendition;
+
+import java.util.List;
+
+/**
+ * 按播放器实际显示尺寸选择清晰度：选能覆盖显示像素的最小档位，避免小窗播放器解码1080p。
+ * <p>
+ * 视频按比例居中显示，需要覆盖的是视频在显示区域内实际占用的像素；
+ * 超高密度屏幕上超过{@link #setMaxEffectiveDensity(float)}的部分肉眼难以分辨，不计入需要覆盖的像素
+ *
+ * @author machao10
+ * @since 2019-03-06
+ */
+public class RenditionSelector {
+
+    /** 默认的最大有效屏幕密度，相当于xhdpi */
+    public static final float DEFAULT_MAX_EFFECTIVE_DENSITY = 2f;
+    /** 允许的放大比例，档位尺寸达到显示尺寸的90%即认为可以覆盖 */
+    private static final float COVER_TOLERANCE = 0.9f;
+
+    /** 最大有效屏幕密度 */
+    private float mMaxEffectiveDensity = DEFAULT_MAX_EFFECTIVE_DENSITY;
+
+    /**
+     * 设置最大有效屏幕密度，屏幕密度超过该值时按该值折算需要覆盖的像素
+     *
+     * @param density 最大有效屏幕密度，小于等于0时不折算
+     */
+    public void setMaxEffectiveDensity(float density) {
+        mMaxEffectiveDensity = density;
+    }
+
+    /**
+     * 选择清晰度
+     *
+     * @param renditions 可选的清晰度
+     * @param viewWidth  显示区域宽度，单位：px
+     * @param viewHeight 显示区域高度，单位：px
+     * @param density    屏幕密度
+     * @return 能覆盖显示像素的最小档位；都不能覆盖时返回最大档位；列表为空时返回null
+     */
+    public Rendition select(List<Rendition> renditions, int viewWidth, int viewHeight,
+                            float density) {
+        if (renditions == null || renditions.isEmpty()) {
+            return null;
+        }
+        float scale = effectiveScale(density);
+        Rendition smallestCovering = null;
+        Rendition largest = null;
+        Rendition highestBandwidth = null;
+        for (Rendition rendition : renditions) {
+            if (highestBandwidth == null
+                    || rendition.getBandwidth() > highestBandwidth.getBandwidth()) {
+                highestBandwidth = rendition;
+            }
+            if (!rendition.hasResolution()) {
+                continue;
+            }
+            if (largest == null || compare(rendition, largest) > 0) {
+                largest = rendition;
+            }
+            if (covers(rendition, viewWidth * scale, viewHeight * scale)
+                    && (smallestCovering == null || compare(rendition, smallestCovering) < 0)) {
+                smallestCovering = rendition;
+            }
+        }
+        if (smallestCovering != null) {
+            return smallestCovering;
+        }
+        // 没有分辨率信息时无法判断，保持最高码率
+        return largest != null ? largest : highestBandwidth;
+    }
+
+    /**
+     * 判断指定档位是否能覆盖显示区域
+     *
+     * @param rendition  清晰度档位
+     * @param viewWidth  显示区域宽度，单位：px
+     * @param viewHeight 显示区域高度，单位：px
+     * @param density    屏幕密度
+     * @return true：可以覆盖；档位没有分辨率信息时也返回true
+     */
+    public boolean covers(Rendition rendition, int viewWidth, int viewHeight, float density) {
+        if (!rendition.hasResolution()) {
+            return true;
+        }
+        float scale = effectiveScale(density);
+        return covers(rendition, viewWidth * scale, viewHeight * scale);
+    }
+
+    /**
+     * 按最大有效密度折算的缩放比例
+     */
+    private float effectiveScale(float density) {
+        if (mMaxEffectiveDensity <= 0 || density <= mMaxEffectiveDensity) {
+            return 1f;
+        }
+        return mMaxEffectiveDensity / density;
+    }
+
+    /**
+     * 视频按比例缩放到显示区域内后，档位分辨率是否不低于实际显示的像素
+     */
+    private static boolean covers(Rendition rendition, float viewWidth, float viewHeight) {
+        if (viewWidth <= 0 || viewHeight <= 0) {
+            return false;
+        }
+        float aspect = (float) rendition.getWidth() / rendition.getHeight();
+        float displayWidth = Math.min(viewWidth, viewHeight * aspect);
+        float displayHeight = displayWidth / aspect;
+        return rendition.getWidth() >= displayWidth * COVER_TOLERANCE
+                && rendition.getHeight() >= displayHeight * COVER_TOLERANCE;
+    }
+
+    /**
+     * 按像素数比较，像素数相同时按码率比较
+     */
+    private static int compare(Rendition a, Rendition b) {
+        long pixelsA = (long) a.getWidth() * a.getHeight();
+        long pixelsB = (long) b.getWidth() * b.getHeight();
+        if (pixelsA != pixelsB) {
+            return pixelsA < pixelsB ? -1 : 1;
+        }
+        return a.getBandwidth() < b.getBandwidth() ? -1
+                : (a.getBandwidth() == b.getBandwidth() ? 0 : 1);
+    }
+
+    /**
+     * 判断a的分辨率是否高于b
+     *
+     * @param a 清晰度档位
+     * @param b 清晰度档位
+     * @return true：a的像素数更多
+     */
+    public static boolean isHigher(Rendition a, Rendition b) {
+        return (long) a.getWidth() * a.getHeight() > (long) b.getWidth() * b.getHeight();
+    }
+}
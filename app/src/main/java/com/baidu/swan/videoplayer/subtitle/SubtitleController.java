@@ -0,0 +1,325 @@
+package com.baidu.swan.videoplayer.subtitle;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.util.Log;
+
+import com.baidu.cloud.videoplayer.demo.BuildConfig;
+import com.baidu.swan.videoplayer.VideoUtils;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 外挂字幕控制器。负责在后台线程加载、解析字幕文件，并根据播放进度刷新当前字幕。
+ * <p>
+ * 字幕只会在当前条目发生变化时通知{@link SubtitleRenderer}；
+ * 已加载的轨道会保留在内存中，切换轨道不需要重新解析。所有公开方法都需要在主线程调用。
+ *
+ * @author machao10
+ * @since 2019-02-18
+ */
+public class SubtitleController {
+
+    /** debug 开关 */
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    /** debug tag */
+    private static final String TAG = "SubtitleController";
+    /** 最长刷新间隔，用于兜底seek等无法预知的进度跳变，单位：ms */
+    private static final int MAX_REFRESH_INTERVAL = 250;
+    /** 最短刷新间隔，单位：ms */
+    private static final int MIN_REFRESH_INTERVAL = 16;
+    /** 网络连接超时，单位：ms */
+    private static final int CONNECT_TIMEOUT = 10000;
+
+    /**
+     * 播放进度提供者
+     */
+    public interface PositionProvider {
+
+        /**
+         * 获取当前播放位置
+         *
+         * @return 播放位置，单位：ms
+         */
+        int getCurrentPosition();
+
+        /**
+         * 是否正在播放
+         *
+         * @return true：正在播放
+         */
+        boolean isPlaying();
+    }
+
+    /**
+     * 字幕渲染接口，只在字幕变化时回调
+     */
+    public interface SubtitleRenderer {
+
+        /**
+         * 显示字幕
+         *
+         * @param text 字幕文本，为null时表示清空字幕
+         */
+        void onSubtitle(String text);
+    }
+
+    /** app context */
+    private final Context mAppContext;
+    /** 主线程handler */
+    private final Handler mMainHandler;
+    /** 播放进度提供者 */
+    private final PositionProvider mPositionProvider;
+    /** 已加载的字幕轨道，按添加顺序排列 */
+    private final Map<String, SubtitleTrack> mTracks = new LinkedHashMap<>();
+    /** 正在进行的解析任务 */
+    private final Map<String, SubtitleParser> mParsers = new LinkedHashMap<>();
+    /** 字幕渲染器 */
+    private SubtitleRenderer mRenderer;
+    /** 当前选中的轨道 */
+    private SubtitleTrack mSelectedTrack;
+    /** 当前显示的字幕下标 */
+    private int mCurrentCue = SubtitleTrack.NO_CUE;
+    /** 当前显示的字幕文本 */
+    private String mCurrentText;
+    /** 是否已经调度了刷新任务 */
+    private boolean mTickScheduled;
+
+    /** 刷新任务 */
+    private final Runnable mTickRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mTickScheduled = false;
+            refresh();
+        }
+    };
+
+    /**
+     * 字幕控制器构造器
+     *
+     * @param context          上下文
+     * @param positionProvider 播放进度提供者
+     */
+    public SubtitleController(Context context, PositionProvider positionProvider) {
+        mAppContext = context.getApplicationContext();
+        mPositionProvider = positionProvider;
+        mMainHandler = VideoUtils.getMainHandler();
+    }
+
+    /**
+     * 设置字幕渲染器
+     *
+     * @param renderer 字幕渲染器
+     */
+    public void setRenderer(SubtitleRenderer renderer) {
+        mRenderer = renderer;
+    }
+
+    /**
+     * 添加外挂字幕轨道，在后台线程解析。支持http(s)、file和content协议
+     *
+     * @param name 轨道名称，同名轨道会被替换
+     * @param uri  字幕文件地址
+     */
+    public void addTrack(final String name, final Uri uri) {
+        removeTrack(name);
+        final SubtitleTrack track = new SubtitleTrack(name);
+        final SubtitleParser parser = new SubtitleParser();
+        mTracks.put(name, track);
+        mParsers.put(name, parser);
+        VideoUtils.getWorkerExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                InputStream in = null;
+                try {
+                    in = openStream(uri);
+                    parser.parse(in, track);
+                } catch (IOException | RuntimeException ex) {
+                    if (DEBUG) {
+                        Log.w(TAG, "parse subtitle failed: " + uri, ex);
+                    }
+                } finally {
+                    closeQuietly(in);
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (mParsers.get(name) == parser) {
+                                mParsers.remove(name);
+                            }
+                            if (DEBUG) {
+                                Log.d(TAG, "subtitle track " + name + " loaded, cues = "
+                                        + track.size());
+                            }
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * 移除字幕轨道
+     *
+     * @param name 轨道名称
+     */
+    public void removeTrack(String name) {
+        SubtitleParser parser = mParsers.remove(name);
+        if (parser != null) {
+            parser.cancel();
+        }
+        SubtitleTrack track = mTracks.remove(name);
+        if (track != null && track == mSelectedTrack) {
+            selectTrack(null);
+        }
+    }
+
+    /**
+     * 获取所有字幕轨道名称
+     *
+     * @return 轨道名称列表
+     */
+    public List<String> getTrackNames() {
+        return new ArrayList<>(mTracks.keySet());
+    }
+
+    /**
+     * 选中字幕轨道。轨道已经加载过时直接切换，不会重新解析
+     *
+     * @param name 轨道名称，为null时关闭字幕
+     */
+    public void selectTrack(String name) {
+        SubtitleTrack track = name == null ? null : mTracks.get(name);
+        if (track == mSelectedTrack) {
+            return;
+        }
+        mSelectedTrack = track;
+        mCurrentCue = SubtitleTrack.NO_CUE;
+        render(null);
+        refresh();
+    }
+
+    /**
+     * 获取当前选中的轨道名称
+     *
+     * @return 轨道名称，没有选中时返回null
+     */
+    public String getSelectedTrackName() {
+        return mSelectedTrack == null ? null : mSelectedTrack.getName();
+    }
+
+    /**
+     * 播放状态或进度发生跳变时调用，如开始播放、暂停、seek
+     */
+    public void onPlaybackChanged() {
+        refresh();
+    }
+
+    /**
+     * 停止刷新并释放所有字幕
+     */
+    public void release() {
+        mMainHandler.removeCallbacks(mTickRunnable);
+        mTickScheduled = false;
+        for (SubtitleParser parser : mParsers.values()) {
+            parser.cancel();
+        }
+        mParsers.clear();
+        mTracks.clear();
+        mSelectedTrack = null;
+        mCurrentCue = SubtitleTrack.NO_CUE;
+        render(null);
+    }
+
+    /**
+     * 根据当前播放进度刷新字幕，并在下一次字幕变化时再次刷新
+     */
+    private void refresh() {
+        SubtitleTrack track = mSelectedTrack;
+        if (track == null) {
+            cancelTick();
+            return;
+        }
+        int position = mPositionProvider.getCurrentPosition();
+        int cue = track.findCueIndex(position);
+        if (cue != mCurrentCue) {
+            mCurrentCue = cue;
+            render(cue == SubtitleTrack.NO_CUE ? null : track.getText(cue));
+        }
+        if (!mPositionProvider.isPlaying()) {
+            cancelTick();
+            return;
+        }
+        long delay = MAX_REFRESH_INTERVAL;
+        int next = track.nextChangeMs(position, cue);
+        if (next != Integer.MAX_VALUE) {
+            delay = Math.max(MIN_REFRESH_INTERVAL, Math.min(MAX_REFRESH_INTERVAL, next - position));
+        }
+        cancelTick();
+        mTickScheduled = true;
+        mMainHandler.postDelayed(mTickRunnable, delay);
+    }
+
+    /**
+     * 取消刷新任务
+     */
+    private void cancelTick() {
+        if (mTickScheduled) {
+            mMainHandler.removeCallbacks(mTickRunnable);
+            mTickScheduled = false;
+        }
+    }
+
+    /**
+     * 通知渲染器，文本未变化时不回调
+     */
+    private void render(String text) {
+        if (text == null ? mCurrentText == null : text.equals(mCurrentText)) {
+            return;
+        }
+        mCurrentText = text;
+        if (mRenderer != null) {
+            mRenderer.onSubtitle(text);
+        }
+    }
+
+    /**
+     * 打开字幕输入流
+     */
+    private InputStream openStream(Uri uri) throws IOException {
+        String scheme = uri.getScheme();
+        if ("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme)) {
+            HttpURLConnection connection =
+                    (HttpURLConnection) new URL(uri.toString()).openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(CONNECT_TIMEOUT);
+            return new BufferedInputStream(connection.getInputStream());
+        }
+        InputStream in = mAppContext.getContentResolver().openInputStream(uri);
+        if (in == null) {
+            throw new IOException("Unable to open subtitle: " + uri);
+        }
+        return new BufferedInputStream(in);
+    }
+
+    /**
+     * 关闭流，忽略异常
+     */
+    private static void closeQuietly(InputStream in) {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                // ignore
+            }
+        }
+    }
+}
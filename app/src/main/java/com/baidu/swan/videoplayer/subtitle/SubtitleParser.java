@@ -0,0 +1,189 @@
+package com.baidu.swan.videoplayer.subtitle;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+/**
+ * 流式字幕解析器，支持SRT和WebVTT。
+ * <p>
+ * 按行读取，不会把整个文件读进内存，每解析出一批字幕就发布到{@link SubtitleTrack}，
+ * 所以大文件在解析过程中就可以开始显示。
+ *
+ * @author machao10
+ * @since 2019-02-18
+ */
+final class SubtitleParser {
+
+    /** 每解析多少条字幕发布一次 */
+    private static final int PUBLISH_BATCH = 64;
+    /** 时间轴分隔符 */
+    private static final String ARROW = "-->";
+    /** UTF-8 BOM */
+    private static final char BOM = '\uFEFF';
+
+    /** 是否取消解析 */
+    private volatile boolean mCanceled;
+
+    /**
+     * 取消解析，解析线程会在处理下一行时退出
+     */
+    void cancel() {
+        mCanceled = true;
+    }
+
+    /**
+     * 解析字幕流并写入字幕轨道。此方法会阻塞，必须在后台线程调用
+     *
+     * @param in    字幕输入流，调用方负责关闭
+     * @param track 用于保存结果的字幕轨道
+     * @throws IOException 读取失败
+     */
+    void parse(InputStream in, SubtitleTrack track) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(in, Charset.forName("UTF-8")));
+        StringBuilder text = new StringBuilder();
+        int start = -1;
+        int end = -1;
+        int unpublished = 0;
+        boolean firstLine = true;
+        String line;
+        while (!mCanceled && (line = reader.readLine()) != null) {
+            if (firstLine) {
+                firstLine = false;
+                if (line.length() > 0 && line.charAt(0) == BOM) {
+                    line = line.substring(1);
+                }
+            }
+            int arrow = line.indexOf(ARROW);
+            if (arrow >= 0) {
+                // 新的时间轴，之前没有空行结尾的字幕也一并提交
+                if (start >= 0 && appendCue(track, start, end, text)) {
+                    unpublished++;
+                }
+                text.setLength(0);
+                start = parseTime(line, 0, arrow);
+                end = parseTime(line, arrow + ARROW.length(), line.length());
+                if (start < 0 || end < 0) {
+                    start = -1;
+                }
+            } else if (line.trim().length() == 0) {
+                if (start >= 0 && appendCue(track, start, end, text)) {
+                    unpublished++;
+                }
+                start = -1;
+                text.setLength(0);
+            } else if (start >= 0) {
+                if (text.length() > 0) {
+                    text.append('\n');
+                }
+                appendStripTags(text, line);
+            }
+            if (unpublished >= PUBLISH_BATCH) {
+                track.publish();
+                unpublished = 0;
+            }
+        }
+        if (!mCanceled && start >= 0) {
+            appendCue(track, start, end, text);
+        }
+        track.complete();
+    }
+
+    /**
+     * 提交一条字幕
+     *
+     * @return 是否提交成功
+     */
+    private static boolean appendCue(SubtitleTrack track, int start, int end, StringBuilder text) {
+        if (text.length() == 0) {
+            return false;
+        }
+        track.append(start, end, text.toString());
+        return true;
+    }
+
+    /**
+     * 解析时间戳，兼容SRT的"hh:mm:ss,mmm"和WebVTT的"hh:mm:ss.mmm"、"mm:ss.mmm"。
+     * 时间戳后面的WebVTT样式设置会被忽略
+     *
+     * @param line  时间轴所在行
+     * @param from  起始下标
+     * @param to    结束下标（不含）
+     * @return 时间，单位：ms；格式错误时返回-1
+     */
+    static int parseTime(String line, int from, int to) {
+        while (from < to && line.charAt(from) == ' ') {
+            from++;
+        }
+        long value = 0;
+        long field = 0;
+        int millis = 0;
+        int millisDigits = -1;
+        boolean hasDigit = false;
+        int i = from;
+        for (; i < to; i++) {
+            char c = line.charAt(i);
+            if (c >= '0' && c <= '9') {
+                hasDigit = true;
+                if (millisDigits >= 0) {
+                    if (millisDigits < 3) {
+                        millis = millis * 10 + (c - '0');
+                        millisDigits++;
+                    }
+                } else {
+                    field = field * 10 + (c - '0');
+                }
+            } else if (c == ':' && millisDigits < 0) {
+                value = (value + field) * 60;
+                field = 0;
+            } else if ((c == ',' || c == '.') && millisDigits < 0) {
+                millisDigits = 0;
+            } else {
+                break;
+            }
+        }
+        if (!hasDigit) {
+            return -1;
+        }
+        while (millisDigits >= 0 && millisDigits < 3) {
+            millis *= 10;
+            millisDigits++;
+        }
+        long result = (value + field) * 1000 + millis;
+        return result > Integer.MAX_VALUE ? -1 : (int) result;
+    }
+
+    /**
+     * 去掉字幕中的样式标签，如&lt;i&gt;、&lt;c.red&gt;以及SSA风格的{\an8}
+     */
+    private static void appendStripTags(StringBuilder out, String line) {
+        int depth = 0;
+        char close = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (depth == 0 && (c == '<' || (c == '{' && i + 1 < line.length()
+                    && line.charAt(i + 1) == '\\'))) {
+                depth = 1;
+                close = c == '<' ? '>' : '}';
+            } else if (depth > 0) {
+                if (c == close) {
+                    depth = 0;
+                }
+            } else if (c == '&' && line.startsWith("&amp;", i)) {
+                out.append('&');
+                i += 4;
+            } else if (c == '&' && line.startsWith("&lt;", i)) {
+                out.append('<');
+                i += 3;
+            } else if (c == '&' && line.startsWith("&gt;", i)) {
+                out.append('>');
+                i += 3;
+            } else {
+                out.append(c);
+            }
+        }
+    }
+}
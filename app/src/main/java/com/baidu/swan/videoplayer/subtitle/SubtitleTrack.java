@@ -0,0 +1,258 @@
+package com.baidu.swan.videoplayer.subtitle;
+
+import java.util.Arrays;
+
+/**
+ * 字幕轨道，内部是按起始时间排序的区间索引。
+ * <p>
+ * 解析线程通过{@link #append(int, int, String)}追加字幕条目，乱序条目直接插入到正确位置；
+ * UI线程可以在解析过程中同时查询，通过volatile引用读取已发布的不可变快照。
+ * 查找当前字幕为O(log n)，顺序播放时命中上次结果为O(1)。
+ *
+ * @author machao10
+ * @since 2019-02-18
+ */
+public final class SubtitleTrack {
+
+    /** 初始容量 */
+    private static final int INITIAL_CAPACITY = 256;
+    /** 查找结果：当前没有字幕 */
+    public static final int NO_CUE = -1;
+
+    /** 轨道名称，如语言 */
+    private final String mName;
+    /** 写线程的字幕起始时间，单位：ms */
+    private int[] mStartMs = new int[INITIAL_CAPACITY];
+    /** 写线程的字幕结束时间，单位：ms */
+    private int[] mEndMs = new int[INITIAL_CAPACITY];
+    /** 写线程的前缀最大结束时间，用于处理时间区间重叠的字幕 */
+    private int[] mMaxEndMs = new int[INITIAL_CAPACITY];
+    /** 写线程的字幕文本 */
+    private String[] mText = new String[INITIAL_CAPACITY];
+    /** 写线程内部计数，可能领先于已发布的条目数 */
+    private int mPendingSize;
+    /** 写线程的数组是否被已发布的快照引用，引用时不能修改快照范围内的条目 */
+    private boolean mShared;
+    /** 已发布的快照，读线程只通过它访问字幕 */
+    private volatile Cues mCues = new Cues(mStartMs, mEndMs, mMaxEndMs, mText, 0);
+    /** 是否解析完成 */
+    private volatile boolean mCompleted;
+    /** 上一次查找命中的下标，仅在UI线程访问 */
+    private int mLastIndex = NO_CUE;
+
+    /**
+     * 已发布字幕的不可变快照。快照范围内的数组元素发布后不再修改，
+     * 写线程只在范围之外追加，需要修改范围之内的条目时先复制数组
+     */
+    private static final class Cues {
+        /** 字幕起始时间，单位：ms */
+        final int[] start;
+        /** 字幕结束时间，单位：ms */
+        final int[] end;
+        /** 前缀最大结束时间 */
+        final int[] maxEnd;
+        /** 字幕文本 */
+        final String[] text;
+        /** 条目数 */
+        final int size;
+
+        Cues(int[] start, int[] end, int[] maxEnd, String[] text, int size) {
+            this.start = start;
+            this.end = end;
+            this.maxEnd = maxEnd;
+            this.text = text;
+            this.size = size;
+        }
+    }
+
+    /**
+     * 字幕轨道构造器
+     *
+     * @param name 轨道名称
+     */
+    public SubtitleTrack(String name) {
+        mName = name;
+    }
+
+    /**
+     * 获取轨道名称
+     *
+     * @return 轨道名称
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * 当前已发布的字幕条数
+     *
+     * @return 字幕条数
+     */
+    public int size() {
+        return mCues.size;
+    }
+
+    /**
+     * 是否已经解析完成
+     *
+     * @return true：解析完成
+     */
+    public boolean isCompleted() {
+        return mCompleted;
+    }
+
+    /**
+     * 追加一条字幕，仅在解析线程调用。乱序的条目按起始时间插入到正确位置
+     *
+     * @param startMs 起始时间，单位：ms
+     * @param endMs   结束时间，单位：ms
+     * @param text    字幕文本
+     */
+    void append(int startMs, int endMs, String text) {
+        if (endMs <= startMs) {
+            return;
+        }
+        int size = mPendingSize;
+        if (size == mStartMs.length) {
+            grow();
+        }
+        int index = upperBound(mStartMs, size, startMs);
+        if (index < size) {
+            if (mShared && index < mCues.size) {
+                detach();
+            }
+            System.arraycopy(mStartMs, index, mStartMs, index + 1, size - index);
+            System.arraycopy(mEndMs, index, mEndMs, index + 1, size - index);
+            System.arraycopy(mText, index, mText, index + 1, size - index);
+        }
+        mStartMs[index] = startMs;
+        mEndMs[index] = endMs;
+        mText[index] = text;
+        mPendingSize = size + 1;
+        for (int i = index; i <= size; i++) {
+            mMaxEndMs[i] = i > 0 ? Math.max(mMaxEndMs[i - 1], mEndMs[i]) : mEndMs[i];
+        }
+    }
+
+    /**
+     * 发布已追加的字幕，使UI线程可见，仅在解析线程调用
+     */
+    void publish() {
+        mCues = new Cues(mStartMs, mEndMs, mMaxEndMs, mText, mPendingSize);
+        mShared = true;
+    }
+
+    /**
+     * 发布全部字幕并标记解析完成
+     */
+    void complete() {
+        publish();
+        mCompleted = true;
+    }
+
+    /**
+     * 查找指定时间点的字幕下标
+     *
+     * @param positionMs 播放位置，单位：ms
+     * @return 字幕下标，没有字幕时返回{@link #NO_CUE}
+     */
+    public int findCueIndex(int positionMs) {
+        Cues cues = mCues;
+        int size = cues.size;
+        int[] start = cues.start;
+        int[] end = cues.end;
+        int last = mLastIndex;
+        // 顺序播放时大概率仍是上次的字幕
+        if (last >= 0 && last < size && start[last] <= positionMs && positionMs < end[last]
+                && (last + 1 == size || start[last + 1] > positionMs)) {
+            return last;
+        }
+        int found = NO_CUE;
+        int index = upperBound(start, size, positionMs) - 1;
+        int[] maxEnd = cues.maxEnd;
+        // 从起始时间不晚于当前位置的最后一条往前找，前缀最大结束时间不覆盖当前位置时即可停止
+        while (index >= 0 && maxEnd[index] > positionMs) {
+            if (end[index] > positionMs) {
+                found = index;
+                break;
+            }
+            index--;
+        }
+        mLastIndex = found;
+        return found;
+    }
+
+    /**
+     * 获取字幕文本
+     *
+     * @param index 字幕下标
+     * @return 字幕文本
+     */
+    public String getText(int index) {
+        return mCues.text[index];
+    }
+
+    /**
+     * 计算下一次字幕可能发生变化的时间点
+     *
+     * @param positionMs 当前播放位置，单位：ms
+     * @param cueIndex   当前字幕下标
+     * @return 下一次变化的时间点，单位：ms；没有后续字幕时返回{@link Integer#MAX_VALUE}
+     */
+    public int nextChangeMs(int positionMs, int cueIndex) {
+        Cues cues = mCues;
+        int size = cues.size;
+        int next = Integer.MAX_VALUE;
+        int following = upperBound(cues.start, size, positionMs);
+        if (following < size) {
+            next = cues.start[following];
+        }
+        if (cueIndex >= 0 && cueIndex < size) {
+            next = Math.min(next, cues.end[cueIndex]);
+        }
+        return next;
+    }
+
+    /**
+     * 查找第一个起始时间大于position的下标
+     */
+    private static int upperBound(int[] start, int size, int position) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (start[mid] <= position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 扩容。复制到新数组，已发布的快照继续引用旧数组
+     */
+    private void grow() {
+        int capacity = mStartMs.length << 1;
+        copyArrays(capacity);
+    }
+
+    /**
+     * 复制写线程的数组，之后的修改不影响已发布的快照
+     */
+    private void detach() {
+        copyArrays(mStartMs.length);
+    }
+
+    /**
+     * 把写线程的数组复制为指定容量的新数组
+     */
+    private void copyArrays(int capacity) {
+        mStartMs = Arrays.copyOf(mStartMs, capacity);
+        mEndMs = Arrays.copyOf(mEndMs, capacity);
+        mMaxEndMs = Arrays.copyOf(mMaxEndMs, capacity);
+        mText = Arrays.copyOf(mText, capacity);
+        mShared = false;
+    }
+}
@@ -15,6 +15,7 @@ import android.os.Looper;
 import android.text.format.DateUtils;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.widget.ImageButton;
@@ -51,8 +52,10 @@ public class MediaController extends RelativeLayout {
     private TextView durationView;
     /** 当前播放进度记录，单位：ms */
     private long currentPositionInMSec;
-    /** 进度条更新触发器 */
-    private Timer positionTimer;
+    /** 是否在按帧更新进度条 */
+    private boolean mPositionUpdating;
+    /** 当前显示的播放进度，单位：s，用于避免每帧重复格式化文本 */
+    private int mShownPositionSecond = -1;
     /** 主进程handler */
     private Handler mMainThreadHandler;
     /** 播放控件自动消失定时器 */
@@ -65,9 +68,9 @@ public class MediaController extends RelativeLayout {
     private boolean isMaxSet = false;
     /** 视频播放器回调，这里用于回调横/竖屏点击事件 */
     private IVideoPlayerCallback mVideoPlayerCallback;
+    /** 是否处于横屏/全屏状态 */
+    private boolean mIsLandScape;
 
-    /** 进度条更新触发周期 */
-    private static final int POSITION_REFRESH_TIME = 500;
     /** 进度条自动消失事件 */
     private static final long HIDE_AFTER_SECONDS = 3 * DateUtils.SECOND_IN_MILLIS;
 
@@ -116,7 +119,9 @@ public class MediaController extends RelativeLayout {
                         mPlayButton.setBackgroundResource(R.drawable.btn_play);
                         mVideoView.pause();
                     } else {
-                        Log.d(TAG, "mPlayButton clicked : to resume");
+                        if (DEBUG) {
+                            Log.d(TAG, "mPlayButton clicked : to resume");
+                        }
                         mPlayButton.setBackgroundResource(R.drawable.btn_pause);
                         mVideoView.start();
                     }
@@ -152,8 +157,6 @@ public class MediaController extends RelativeLayout {
         mToggleScreenButton = layout.findViewById(R.id.btn_toggle_screen);
         mToggleScreenButton.setOnClickListener(new OnClickListener() {
 
-            private boolean mIsLandScape;
-
             @Override
             public void onClick(View v) {
                 mIsLandScape = !mIsLandScape;
@@ -193,7 +196,7 @@ public class MediaController extends RelativeLayout {
         switch (status) {
             case SwanVideoView.STATE_IDLE:
             case SwanVideoView.STATE_ERROR:
-                stopPositionTimer();
+                stopPositionUpdates();
                 mPlayButton.setEnabled(true);
                 mPlayButton.setBackgroundResource(R.drawable.btn_play);
                 mSeekBar.setEnabled(false);
@@ -203,6 +206,8 @@ public class MediaController extends RelativeLayout {
             case SwanVideoView.STATE_PREPARING:
                 mPlayButton.setEnabled(false);
                 mSeekBar.setEnabled(false);
+                // 元信息缓存命中时prepare之前就显示时长
+                updateDuration(mVideoView == null ? 0 : mVideoView.getDurationHint());
                 break;
             case SwanVideoView.STATE_PREPARED:
                 mPlayButton.setEnabled(true);
@@ -212,19 +217,21 @@ public class MediaController extends RelativeLayout {
                 mSeekBar.setMax(mVideoView.getDuration());
                 break;
             case SwanVideoView.STATE_PLAYBACK_COMPLETED:
-                stopPositionTimer();
+                stopPositionUpdates();
                 mSeekBar.setProgress(mSeekBar.getMax());
                 mSeekBar.setEnabled(false);
                 mPlayButton.setEnabled(true);
                 mPlayButton.setBackgroundResource(R.drawable.btn_play);
                 break;
             case SwanVideoView.STATE_PLAYING:
-                startPositionTimer();
+                startPositionUpdates();
                 mSeekBar.setEnabled(true);
                 mPlayButton.setEnabled(true);
                 mPlayButton.setBackgroundResource(R.drawable.btn_pause);
                 break;
             case SwanVideoView.STATE_PAUSED:
+                stopPositionUpdates();
+                onPositionUpdate();
                 mPlayButton.setEnabled(true);
                 mPlayButton.setBackgroundResource(R.drawable.btn_play);
                 break;
@@ -239,36 +246,52 @@ public class MediaController extends RelativeLayout {
     }
 
     /**
-     * 启动进度条更新
+     * 启动进度条更新，播放中每帧从播放器的播放时钟读取进度，不会每帧调用native接口
      */
-    private void startPositionTimer() {
-        if (positionTimer != null) {
-            positionTimer.cancel();
-            positionTimer = null;
+    private void startPositionUpdates() {
+        if (!mPositionUpdating) {
+            mPositionUpdating = true;
+            Choreographer.getInstance().postFrameCallback(mPositionFrameCallback);
         }
-        positionTimer = new Timer();
-        positionTimer.schedule(new TimerTask() {
-
-            @Override
-            public void run() {
-                getMainThreadHandler().post(new Runnable() {
-                    @Override
-                    public void run() {
-                        onPositionUpdate();
-                    }
-                });
-            }
-
-        }, 0, POSITION_REFRESH_TIME);
     }
 
     /**
      * 停止进度条更新
      */
-    private void stopPositionTimer() {
-        if (positionTimer != null) {
-            positionTimer.cancel();
-            positionTimer = null;
+    private void stopPositionUpdates() {
+        if (mPositionUpdating) {
+            mPositionUpdating = false;
+            Choreographer.getInstance().removeFrameCallback(mPositionFrameCallback);
+        }
+    }
+
+    /**
+     * 按帧更新进度条
+     */
+    private final Choreographer.FrameCallback mPositionFrameCallback =
+            new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    if (!mPositionUpdating) {
+                        return;
+                    }
+                    onPositionUpdate();
+                    Choreographer.getInstance().postFrameCallback(this);
+                }
+            };
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        stopPositionUpdates();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (mVideoView != null
+                && mVideoView.getCurrentPlayerState() == SwanVideoView.STATE_PLAYING) {
+            startPositionUpdates();
         }
     }
 
@@ -290,6 +313,17 @@ public class MediaController extends RelativeLayout {
         mVideoPlayerCallback = videoPlayerCallback;
     }
 
+    /**
+     * 同步全屏状态，更新切换按钮
+     *
+     * @param fullscreen 是否全屏
+     */
+    public void updateFullscreenState(boolean fullscreen) {
+        mIsLandScape = fullscreen;
+        mToggleScreenButton.setBackgroundResource(
+                fullscreen ? R.drawable.btn_halfscreen : R.drawable.btn_fullscreen);
+    }
+
     /**
      * 展示控件
      */
@@ -353,7 +387,9 @@ public class MediaController extends RelativeLayout {
      * @param milliSecond 当前视频播放进度，单位：ms
      */
     private void updatePosition(int milliSecond) {
-        if (positionView != null) {
+        int second = milliSecond / 1000;
+        if (positionView != null && second != mShownPositionSecond) {
+            mShownPositionSecond = second;
             positionView.setText(formatTimeText(milliSecond));
         }
     }
@@ -413,7 +449,7 @@ public class MediaController extends RelativeLayout {
     }
 
     /**
-     * 更新播放进度，每500ms更新一次
+     * 更新播放进度，播放中每帧更新一次
      */
     public void onPositionUpdate() {
         if (mVideoView == null || mbIsDragging) {
@@ -9,7 +9,8 @@ import android.view.TextureView;
 import com.baidu.cloud.videoplayer.demo.BuildConfig;
 
 /**
- * 用于绘制视频帧的TextureView
+ * 用于绘制视频帧的TextureView。设置视频尺寸后按视频比例在可用区域内测量，
+ * 宽或高不受限时按比例计算另一边；视频需要旋转时旋转view并交换宽高约束
  *
  * @author machao10
  * @since 2019-01-09
@@ -21,6 +22,13 @@ public class VideoTextureView extends TextureView {
     /** DEBUG TAG */
     private static final String TAG = "VideoTextureView";
 
+    /** 视频显示宽度，旋转之前，未知时为0 */
+    private int mVideoWidth;
+    /** 视频显示高度，旋转之前，未知时为0 */
+    private int mVideoHeight;
+    /** 视频顺时针旋转角度 */
+    private int mVideoRotation;
+
     /**
      * 视频TextureView构造器
      *
@@ -51,6 +59,72 @@ public class VideoTextureView extends TextureView {
         super(context, attrs, defStyleAttr);
     }
 
+    /**
+     * 设置视频显示尺寸，变化时重新布局
+     *
+     * @param width  显示宽度，已按像素宽高比换算，旋转之前；为0时填满可用区域
+     * @param height 显示高度，旋转之前
+     */
+    public void setVideoSize(int width, int height) {
+        if (width == mVideoWidth && height == mVideoHeight) {
+            return;
+        }
+        mVideoWidth = width;
+        mVideoHeight = height;
+        requestLayout();
+    }
+
+    /**
+     * 设置视频顺时针旋转角度
+     *
+     * @param degrees 0、90、180或270
+     */
+    public void setVideoRotation(int degrees) {
+        if (degrees == mVideoRotation) {
+            return;
+        }
+        mVideoRotation = degrees;
+        setRotation(degrees);
+        requestLayout();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        if (mVideoWidth <= 0 || mVideoHeight <= 0) {
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+            return;
+        }
+        if (mVideoRotation % 180 != 0) {
+            // view旋转后宽高互换，按旋转前的方向测量
+            int spec = widthMeasureSpec;
+            widthMeasureSpec = heightMeasureSpec;
+            heightMeasureSpec = spec;
+        }
+        int widthMode = MeasureSpec.getMode(widthMeasureSpec);
+        int widthSize = MeasureSpec.getSize(widthMeasureSpec);
+        int heightMode = MeasureSpec.getMode(heightMeasureSpec);
+        int heightSize = MeasureSpec.getSize(heightMeasureSpec);
+        int width;
+        int height;
+        if (widthMode == MeasureSpec.UNSPECIFIED && heightMode == MeasureSpec.UNSPECIFIED) {
+            width = mVideoWidth;
+            height = mVideoHeight;
+        } else if (heightMode == MeasureSpec.UNSPECIFIED) {
+            width = widthSize;
+            height = (int) ((long) widthSize * mVideoHeight / mVideoWidth);
+        } else if (widthMode == MeasureSpec.UNSPECIFIED) {
+            height = heightSize;
+            width = (int) ((long) heightSize * mVideoWidth / mVideoHeight);
+        } else if ((long) widthSize * mVideoHeight > (long) heightSize * mVideoWidth) {
+            height = heightSize;
+            width = (int) ((long) heightSize * mVideoWidth / mVideoHeight);
+        } else {
+            width = widthSize;
+            height = (int) ((long) widthSize * mVideoHeight / mVideoWidth);
+        }
+        setMeasuredDimension(width, height);
+    }
+
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
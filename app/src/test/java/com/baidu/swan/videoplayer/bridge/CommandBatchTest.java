@@ -0,0 +1,51 @@
+package com.baidu.swan.videoplayer.bridge;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link VideoJsBridge.CommandBatch}的单元测试
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public class CommandBatchTest {
+
+    @Test
+    public void parsesCommands() {
+        VideoJsBridge.CommandBatch batch = VideoJsBridge.CommandBatch.parse("[[1],[2,1500.5]]");
+        assertEquals(2, batch.size);
+        assertEquals(1, batch.codes[0]);
+        assertEquals(2, batch.codes[1]);
+        assertEquals(1500.5, batch.args[1], 0);
+        assertEquals(0, VideoJsBridge.CommandBatch.parse(" [ ] ").size);
+    }
+
+    @Test
+    public void rejectsMalformedInput() {
+        assertRejected("][");
+        assertRejected("[[1]]][[2]");
+        assertRejected("[[1]][[2]]");
+        assertRejected("[[1]");
+        assertRejected("[[[1]]]");
+        assertRejected("[[]]");
+        assertRejected("[[1,2,3]]");
+        assertRejected("[1]");
+        assertRejected("[[a]]");
+        assertRejected(null);
+    }
+
+    /**
+     * 断言解析失败
+     */
+    private static void assertRejected(String json) {
+        try {
+            VideoJsBridge.CommandBatch.parse(json);
+            fail("accepted " + json);
+        } catch (IllegalArgumentException expected) {
+            // 格式错误
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.baidu.swan.videoplayer.cache;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 缓存单元测试的工具方法
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+final class CacheTestUtils {
+
+    /**
+     * 工具类，不允许实例化
+     */
+    private CacheTestUtils() {
+    }
+
+    /**
+     * 创建临时目录
+     */
+    static File createTempDir() throws IOException {
+        File dir = File.createTempFile("cache", "");
+        if (!dir.delete() || !dir.mkdirs()) {
+            throw new IOException("can not create " + dir);
+        }
+        return dir;
+    }
+
+    /**
+     * 递归删除文件或目录
+     */
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * 生成可以区分块序号和块内位置的测试数据
+     */
+    static byte[] block(int index, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (index * 31 + i);
+        }
+        return data;
+    }
+
+    /**
+     * 生成整个文件的测试数据，与{@link #block(int, int)}逐块一致
+     */
+    static byte[] content(long length, int blockSize) {
+        byte[] data = new byte[(int) length];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ((i / blockSize) * 31 + i % blockSize);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,141 @@
+package com.baidu.swan.videoplayer.cache;
+
+import com.baidu.swan.videoplayer.testutil.RangeHttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@link RangeCacheDataSource}的单元测试，使用本地HTTP服务
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public class RangeCacheDataSourceTest {
+
+    /** 块大小 */
+    private static final int BLOCK = SparseCacheEntry.BLOCK_SIZE;
+    /** 视频长度 */
+    private static final long LENGTH = 4L * BLOCK + 1000;
+
+    /** 缓存目录 */
+    private File mDir;
+    /** 本地HTTP服务 */
+    private RangeHttpServer mServer;
+    /** 视频内容 */
+    private byte[] mContent;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = CacheTestUtils.createTempDir();
+        mContent = CacheTestUtils.content(LENGTH, BLOCK);
+        mServer = new RangeHttpServer(mContent, "\"v1\"");
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+        CacheTestUtils.deleteRecursively(mDir);
+    }
+
+    @Test
+    public void partialFillIsReusedAfterReopen() throws IOException {
+        SparseFileCache cache = new SparseFileCache(mDir);
+        cache.setIgnoredQueryParameters("sign");
+        RangeCacheDataSource source =
+                new RangeCacheDataSource(cache, mServer.url("/v.mp4?sign=1"), null);
+        assertEquals(LENGTH, source.getSize());
+        // 只读开头和中间的一部分
+        assertRead(source, 0, BLOCK);
+        assertRead(source, 2L * BLOCK + 10, 500);
+        source.close();
+        assertEquals(2L * BLOCK, source.getNetworkBytes());
+
+        // 新进程：鉴权参数变了，规范化后仍命中同一份缓存
+        cache = new SparseFileCache(mDir);
+        cache.setIgnoredQueryParameters("sign");
+        source = new RangeCacheDataSource(cache, mServer.url("/v.mp4?sign=2"), null);
+        assertEquals(LENGTH, source.getSize());
+        assertRead(source, 0, BLOCK);
+        assertRead(source, 2L * BLOCK, BLOCK);
+        assertEquals(0, source.getNetworkBytes());
+        // 未缓存的部分从网络补齐
+        assertRead(source, BLOCK, BLOCK);
+        assertRead(source, 4L * BLOCK, 1000);
+        assertEquals(BLOCK + 1000, source.getNetworkBytes());
+        source.close();
+    }
+
+    @Test
+    public void changedResourceResetsCache() throws IOException {
+        SparseFileCache cache = new SparseFileCache(mDir);
+        String url = mServer.url("/v.mp4");
+        RangeCacheDataSource source = new RangeCacheDataSource(cache, url, null);
+        assertRead(source, 0, BLOCK);
+        source.close();
+
+        // 长度不变、内容变化，只有ETag能发现
+        byte[] updated = mContent.clone();
+        Arrays.fill(updated, 0, BLOCK, (byte) 7);
+        mServer.setContent(updated, "\"v2\"");
+        mContent = updated;
+        source = new RangeCacheDataSource(new SparseFileCache(mDir), url, null);
+        assertRead(source, 0, BLOCK);
+        assertEquals(BLOCK, source.getNetworkBytes());
+        source.close();
+    }
+
+    @Test
+    public void callerKeySharesCache() throws IOException {
+        SparseFileCache cache = new SparseFileCache(mDir);
+        RangeCacheDataSource source =
+                new RangeCacheDataSource(cache, mServer.url("/a.mp4"), null, "video-42");
+        assertRead(source, 0, BLOCK);
+        source.close();
+        source = new RangeCacheDataSource(cache, mServer.url("/b.mp4"), null, "video-42");
+        assertRead(source, 0, BLOCK);
+        assertEquals(0, source.getNetworkBytes());
+        source.close();
+    }
+
+    @Test
+    public void requestLimitBoundsRangeRequests() throws IOException {
+        RangeCacheDataSource source = new RangeCacheDataSource(new SparseFileCache(mDir),
+                mServer.url("/v.mp4"), null);
+        // 按块对齐，只请求前两块
+        source.setRequestLimit(BLOCK + 10);
+        assertEquals(LENGTH, source.getSize());
+        assertRead(source, 0, 2 * BLOCK);
+        assertEquals(2L * BLOCK, mServer.getSentBytes());
+        // 超出限制的读取只下载所在的块
+        assertRead(source, 3L * BLOCK, 100);
+        assertEquals(3L * BLOCK, mServer.getSentBytes());
+        source.close();
+    }
+
+    /**
+     * 读取一段数据并和原始内容比较
+     */
+    private void assertRead(RangeCacheDataSource source, long position, int size)
+            throws IOException {
+        byte[] buffer = new byte[size];
+        int filled = 0;
+        while (filled < size) {
+            int read = source.readAt(position + filled, buffer, filled, size - filled);
+            if (read <= 0) {
+                throw new IOException("short read at " + (position + filled));
+            }
+            filled += read;
+        }
+        assertArrayEquals(Arrays.copyOfRange(mContent, (int) position, (int) position + size),
+                buffer);
+    }
+}
@@ -0,0 +1,116 @@
+package com.baidu.swan.videoplayer.cache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link SparseCacheEntry}和缓存key规范化的单元测试
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public class SparseCacheEntryTest {
+
+    /** 块大小 */
+    private static final int BLOCK = SparseCacheEntry.BLOCK_SIZE;
+    /** 视频长度，最后一块不满 */
+    private static final long LENGTH = 3L * BLOCK + 100;
+
+    /** 缓存目录 */
+    private File mDir;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = CacheTestUtils.createTempDir();
+    }
+
+    @After
+    public void tearDown() {
+        CacheTestUtils.deleteRecursively(mDir);
+    }
+
+    @Test
+    public void partialFillSurvivesReopen() throws IOException {
+        SparseCacheEntry entry = new SparseCacheEntry(mDir, "k");
+        assertEquals(-1, entry.getLength());
+        assertFalse(entry.revalidate(LENGTH, "\"v1\""));
+        entry.writeBlock(1, CacheTestUtils.block(1, BLOCK), BLOCK);
+        entry.writeBlock(3, CacheTestUtils.block(3, 100), 100);
+        entry.close();
+
+        entry = new SparseCacheEntry(mDir, "k");
+        assertEquals(LENGTH, entry.getLength());
+        assertEquals("\"v1\"", entry.getValidator());
+        assertFalse(entry.isCached(0));
+        assertTrue(entry.isCached(1));
+        assertFalse(entry.isCached(2));
+        assertTrue(entry.isCached(3));
+        assertEquals(2L * BLOCK, entry.getCachedBytes());
+        assertEquals(BLOCK, entry.nextCachedOffset(0));
+        assertEquals(3L * BLOCK, entry.nextCachedOffset(1));
+
+        byte[] buffer = new byte[BLOCK * 2];
+        // 未缓存的块读不到数据，读取在下一个未缓存块前停止
+        assertEquals(0, entry.read(10, buffer, 0, 100));
+        assertEquals(BLOCK - 10, entry.read(BLOCK + 10, buffer, 0, buffer.length));
+        assertArrayEquals(Arrays.copyOfRange(CacheTestUtils.block(1, BLOCK), 10, BLOCK),
+                Arrays.copyOf(buffer, BLOCK - 10));
+        assertEquals(100, entry.read(3L * BLOCK, buffer, 0, buffer.length));
+        entry.close();
+    }
+
+    @Test
+    public void changedValidatorResetsCache() throws IOException {
+        SparseCacheEntry entry = new SparseCacheEntry(mDir, "k");
+        entry.revalidate(LENGTH, "\"v1\"");
+        entry.writeBlock(0, CacheTestUtils.block(0, BLOCK), BLOCK);
+        // 服务端没有返回校验值时无法判断，保留缓存
+        assertTrue(entry.revalidate(LENGTH, null));
+        assertTrue(entry.revalidate(LENGTH, "\"v1\""));
+        assertTrue(entry.isCached(0));
+
+        assertFalse(entry.revalidate(LENGTH, "\"v2\""));
+        assertFalse(entry.isCached(0));
+        assertEquals("\"v2\"", entry.getValidator());
+        entry.writeBlock(0, CacheTestUtils.block(0, BLOCK), BLOCK);
+        // 长度变化同样清空
+        assertFalse(entry.revalidate(LENGTH + 1, "\"v2\""));
+        assertFalse(entry.isCached(0));
+        entry.close();
+    }
+
+    @Test
+    public void overlongValidatorIsNotStored() throws IOException {
+        char[] chars = new char[300];
+        Arrays.fill(chars, 'x');
+        SparseCacheEntry entry = new SparseCacheEntry(mDir, "k");
+        entry.revalidate(LENGTH, new String(chars));
+        assertNull(entry.getValidator());
+        entry.close();
+    }
+
+    @Test
+    public void normalizesUrl() {
+        HashSet<String> ignored = new HashSet<>(Arrays.asList("sign", "t"));
+        assertEquals("http://a.com/v.mp4?id=3",
+                SparseFileCache.normalizeUrl("http://a.com/v.mp4?sign=x&id=3&t=99#frag", ignored));
+        assertEquals("http://a.com/v.mp4",
+                SparseFileCache.normalizeUrl("http://a.com/v.mp4?sign=x", ignored));
+        assertEquals("http://a.com/v.mp4?sign=x",
+                SparseFileCache.normalizeUrl("http://a.com/v.mp4?sign=x",
+                        Collections.<String>emptySet()));
+    }
+}
@@ -0,0 +1,31 @@
+package com.baidu.swan.videoplayer.decoder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * {@link DecoderCapabilities#mimeOfCodec(String)}的单元测试
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public class DecoderCapabilitiesTest {
+
+    @Test
+    public void mapsSampleEntriesAndCodecNames() {
+        assertEquals("video/avc", DecoderCapabilities.mimeOfCodec("avc1"));
+        assertEquals("video/avc", DecoderCapabilities.mimeOfCodec("h264"));
+        assertEquals("video/hevc", DecoderCapabilities.mimeOfCodec("HEV1"));
+        assertEquals("video/x-vnd.on2.vp9", DecoderCapabilities.mimeOfCodec("vp09"));
+        assertEquals("video/av01", DecoderCapabilities.mimeOfCodec("av01"));
+    }
+
+    @Test
+    public void keepsMimeAndRejectsUnknown() {
+        assertEquals("video/hevc", DecoderCapabilities.mimeOfCodec("video/HEVC"));
+        assertNull(DecoderCapabilities.mimeOfCodec("mp4a"));
+        assertNull(DecoderCapabilities.mimeOfCodec(null));
+    }
+}
@@ -0,0 +1,220 @@
+package com.baidu.swan.videoplayer.download;
+
+import com.baidu.swan.videoplayer.local.LocalSource;
+import com.baidu.swan.videoplayer.testutil.RangeHttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link DownloadManager}的单元测试，使用本地HTTP服务下载单文件视频
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public class DownloadManagerTest {
+
+    /** 等待下载完成的超时时间，单位：ms */
+    private static final long TIMEOUT_MS = 30000;
+    /** 视频长度：3个完整分块加一个不满的分块 */
+    private static final int LENGTH = (int) (3 * DownloadManager.CHUNK_SIZE + 12345);
+
+    /** 下载根目录 */
+    private File mRoot;
+    /** 视频内容 */
+    private byte[] mContent;
+    /** 本地HTTP服务 */
+    private RangeHttpServer mServer;
+
+    @Before
+    public void setUp() throws IOException {
+        mRoot = File.createTempFile("download", "");
+        if (!mRoot.delete() || !mRoot.mkdirs()) {
+            throw new IOException("can not create " + mRoot);
+        }
+        mContent = new byte[LENGTH];
+        for (int i = 0; i < LENGTH; i++) {
+            mContent[i] = (byte) (i * 7 + i / 4096);
+        }
+        mServer = new RangeHttpServer(mContent, "\"v1\"");
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+        deleteRecursively(mRoot);
+    }
+
+    @Test
+    public void pauseAndResumeRepeatedly() throws Exception {
+        mServer.setChunkDelayMs(1);
+        DownloadManager manager = new DownloadManager(mRoot);
+        String id = manager.enqueue(mServer.url("/v.mp4"), null, 0);
+        awaitState(manager, id, DownloadTask.STATE_RUNNING);
+        // 暂停后立即继续，正在下载的部分可能还没有退出
+        for (int i = 0; i < 20; i++) {
+            manager.pause(id);
+            if (i % 2 == 0) {
+                Thread.sleep(5);
+            }
+            manager.resume(id, null);
+            Thread.sleep(20);
+        }
+        mServer.setChunkDelayMs(0);
+        assertCompleted(manager, id);
+    }
+
+    @Test
+    public void resumesPartialDownloadAfterRestart() throws Exception {
+        mServer.setChunkDelayMs(2);
+        DownloadManager manager = new DownloadManager(mRoot);
+        String id = manager.enqueue(mServer.url("/v.mp4"), null, 0);
+        manager.setMaxConcurrency(1);
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (getCompletedParts(manager, id) < 1) {
+            assertTrue("no part completed", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        manager.pause(id);
+        awaitState(manager, id, DownloadTask.STATE_PAUSED);
+        // 等正在下载的部分退出
+        Thread.sleep(200);
+        long sentBeforeRestart = mServer.getSentBytes();
+
+        // 模拟进程重启：新的实例从磁盘恢复进度，恢复后是暂停状态
+        mServer.setChunkDelayMs(0);
+        DownloadManager restarted = new DownloadManager(mRoot);
+        awaitState(restarted, id, DownloadTask.STATE_PAUSED);
+        int completedBefore = restarted.getTask(id).getCompletedParts();
+        assertTrue(completedBefore >= 1);
+        restarted.resume(id, null);
+        assertCompleted(restarted, id);
+        // 已完成的分块不再下载
+        long resumedBytes = mServer.getSentBytes() - sentBeforeRestart;
+        assertTrue("downloaded again : " + resumedBytes,
+                resumedBytes <= LENGTH - completedBefore * DownloadManager.CHUNK_SIZE);
+    }
+
+    @Test
+    public void retriesInterruptedParts() throws Exception {
+        DownloadManager manager = new DownloadManager(mRoot);
+        manager.setRetryBaseDelayMs(10);
+        manager.setMaxConcurrency(1);
+        // 长度探测之后的两次下载都在中途断开，第三次尝试成功
+        mServer.truncateNextResponses(0, 0);
+        String id = manager.enqueue(mServer.url("/v.mp4"), null, 0);
+        awaitState(manager, id, DownloadTask.STATE_RUNNING);
+        mServer.truncateNextResponses(2, 1000);
+        assertCompleted(manager, id);
+    }
+
+    @Test
+    public void failsAfterRetriesRunOut() throws Exception {
+        DownloadManager manager = new DownloadManager(mRoot);
+        manager.setRetryBaseDelayMs(10);
+        manager.setMaxConcurrency(1);
+        String id = manager.enqueue(mServer.url("/v.mp4"), null, 0);
+        awaitState(manager, id, DownloadTask.STATE_RUNNING);
+        mServer.truncateNextResponses(100, 1000);
+        awaitState(manager, id, DownloadTask.STATE_FAILED);
+        assertNotNull(manager.getTask(id).getError());
+
+        // 网络恢复后继续，只需要下载没有完成的部分
+        mServer.truncateNextResponses(0, 0);
+        manager.resume(id, null);
+        assertCompleted(manager, id);
+    }
+
+    @Test
+    public void downloadedHlsIsPlayedByPath() throws Exception {
+        String playlist = "#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:4\n"
+                + "#EXTINF:4.0,\n"
+                + "seg0.ts\n"
+                + "#EXTINF:4.0,\n"
+                + "seg1.ts\n"
+                + "#EXT-X-ENDLIST\n";
+        mServer.putFile("/h/index.m3u8", playlist.getBytes("UTF-8"));
+        DownloadManager manager = new DownloadManager(mRoot);
+        String id = manager.enqueue(mServer.url("/h/index.m3u8"), null, 0);
+        awaitState(manager, id, DownloadTask.STATE_COMPLETED);
+        String path = manager.getTask(id).getLocalPath();
+        assertTrue(path, new File(path).isFile());
+        // 本地播放列表中的分片是相对路径，不能通过文件描述符交给播放器
+        assertFalse(path, LocalSource.canOpenFd(path));
+
+        String file = manager.enqueue(mServer.url("/v.mp4"), null, 0);
+        assertCompleted(manager, file);
+        assertTrue(LocalSource.canOpenFd(manager.getTask(file).getLocalPath()));
+    }
+
+    /**
+     * 等待任务完成并校验文件内容
+     */
+    private void assertCompleted(DownloadManager manager, String id) throws Exception {
+        awaitState(manager, id, DownloadTask.STATE_COMPLETED);
+        DownloadTask task = manager.getTask(id);
+        assertEquals(task.getTotalParts(), task.getCompletedParts());
+        assertEquals(LENGTH, task.getDownloadedBytes());
+        String path = task.getLocalPath();
+        assertNotNull(path);
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        try {
+            byte[] data = new byte[(int) file.length()];
+            file.readFully(data);
+            assertArrayEquals(mContent, data);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * 等待任务进入指定状态
+     */
+    private static void awaitState(DownloadManager manager, String id, int state)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (true) {
+            DownloadTask task = manager.getTask(id);
+            if (task != null && task.getState() == state) {
+                return;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("expected state " + state + " but was " + task);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * 获取任务已完成的部分数
+     */
+    private static int getCompletedParts(DownloadManager manager, String id) {
+        DownloadTask task = manager.getTask(id);
+        return task == null ? 0 : task.getCompletedParts();
+    }
+
+    /**
+     * 递归删除目录
+     */
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,187 @@
+package com.baidu.swan.videoplayer.hls;
+
+import com.baidu.swan.videoplayer.testutil.RangeHttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link HlsLocalServer}和{@link HlsProxySession}的单元测试，源站为本地HTTP服务
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public class HlsLocalServerTest {
+
+    /** 媒体播放列表，测试服务对任意路径都返回这份内容，分片内容也是它 */
+    private static final String PLAYLIST = "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXTINF:4.0,\n"
+            + "seg0.ts\n"
+            + "#EXTINF:4.0,\n"
+            + "seg1.ts\n"
+            + "#EXT-X-ENDLIST\n";
+
+    /** 源站 */
+    private RangeHttpServer mOrigin;
+    /** 会话 */
+    private HlsProxySession mSession;
+
+    @Before
+    public void setUp() throws IOException {
+        mOrigin = new RangeHttpServer(PLAYLIST.getBytes("UTF-8"), null);
+        mSession = HlsProxySession.open(mOrigin.url("/v/index.m3u8"), null, 1);
+    }
+
+    @After
+    public void tearDown() {
+        mSession.close();
+        mOrigin.stop();
+    }
+
+    @Test
+    public void servesSessionWithToken() throws IOException {
+        String local = mSession.getLocalUrl();
+        assertTrue(local, local.endsWith("/" + mSession.getToken() + "/index.m3u8"));
+        assertEquals(32, mSession.getToken().length());
+
+        String playlist = new String(get(local, 200), "UTF-8");
+        assertTrue(playlist, playlist.contains("\n0/seg0.ts\n"));
+        // 没有预取的分片仍然指向源站
+        assertTrue(playlist, playlist.contains(mOrigin.url("/v/seg1.ts")));
+
+        String segment = local.substring(0, local.lastIndexOf('/') + 1) + "0/seg0.ts";
+        assertArrayEquals(PLAYLIST.getBytes("UTF-8"), get(segment, 200));
+        assertEquals(1, mSession.getHitCount());
+    }
+
+    @Test
+    public void rejectsRequestsWithoutToken() throws IOException {
+        String local = mSession.getLocalUrl();
+        String token = mSession.getToken();
+        String base = local.substring(0, local.indexOf(token));
+        // 缺少令牌
+        get(base + "index.m3u8", 403);
+        get(base + "0/seg0.ts", 403);
+        // 令牌错误
+        char last = token.charAt(token.length() - 1);
+        String wrong = token.substring(0, token.length() - 1) + (last == '0' ? '1' : '0');
+        get(base + wrong + "/index.m3u8", 403);
+        get(base + token.substring(1) + "/index.m3u8", 403);
+        // 会话不存在
+        get(local.replace("/hls/" + mSession.getId() + "/", "/hls/999999/"), 404);
+    }
+
+    @Test
+    public void tokensAreUniquePerSession() throws IOException {
+        HlsProxySession another = HlsProxySession.open(mOrigin.url("/v/index.m3u8"), null, 1);
+        try {
+            assertNotEquals(mSession.getId(), another.getId());
+            assertNotEquals(mSession.getToken(), another.getToken());
+            assertTrue(another.verifyToken(another.getToken()));
+            assertTrue(!another.verifyToken(mSession.getToken()));
+            assertTrue(!another.verifyToken(null));
+        } finally {
+            another.close();
+        }
+    }
+
+    @Test
+    public void decryptsSegmentOnlyForVerifiedRequest() throws Exception {
+        byte[] key = new byte[16];
+        byte[] iv = new byte[16];
+        for (int i = 0; i < 16; i++) {
+            key[i] = (byte) i;
+            iv[i] = (byte) (0xf0 + i);
+        }
+        byte[] plain = new byte[1000];
+        for (int i = 0; i < plain.length; i++) {
+            plain[i] = (byte) (i * 7);
+        }
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+        byte[] encrypted = cipher.doFinal(plain);
+        String playlist = "#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:4\n"
+                + "#EXT-X-KEY:METHOD=AES-128,URI=\"key.bin\","
+                + "IV=0xf0f1f2f3f4f5f6f7f8f9fafbfcfdfeff\n"
+                + "#EXTINF:4.0,\n"
+                + "seg0.ts\n"
+                + "#EXT-X-ENDLIST\n";
+        mOrigin.putFile("/e/index.m3u8", playlist.getBytes("UTF-8"));
+        mOrigin.putFile("/e/key.bin", key);
+        mOrigin.putFile("/e/seg0.ts", encrypted);
+        HlsProxySession session = HlsProxySession.open(mOrigin.url("/e/index.m3u8"), null, 1);
+        try {
+            String local = session.getLocalUrl();
+            String rewritten = new String(get(local, 200), "UTF-8");
+            assertFalse(rewritten, rewritten.contains("key.bin"));
+
+            String base = local.substring(0, local.lastIndexOf('/') + 1);
+            // 令牌错误的请求拿不到分片，也不会触发解密
+            String token = session.getToken();
+            String wrong = (token.charAt(0) == '0' ? "1" : "0") + token.substring(1);
+            get(base.replace(token, wrong) + "0/seg0.ts", 403);
+            assertArrayEquals(plain, get(base + "0/seg0.ts", 200));
+            // 再次请求不会重复解密
+            assertArrayEquals(plain, get(base + "0/seg0.ts", 200));
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void mapsReasonPhrases() {
+        assertEquals("OK", HlsLocalServer.reasonPhrase(200));
+        assertEquals("Partial Content", HlsLocalServer.reasonPhrase(206));
+        assertEquals("Forbidden", HlsLocalServer.reasonPhrase(403));
+        assertEquals("Not Found", HlsLocalServer.reasonPhrase(404));
+        assertEquals("Range Not Satisfiable", HlsLocalServer.reasonPhrase(416));
+        assertEquals("Service Unavailable", HlsLocalServer.reasonPhrase(503));
+        assertEquals("Client Error", HlsLocalServer.reasonPhrase(418));
+        assertEquals("Server Error", HlsLocalServer.reasonPhrase(599));
+    }
+
+    /**
+     * 请求本地地址并校验状态码
+     *
+     * @return 响应内容，错误状态时为空
+     */
+    private static byte[] get(String url, int expectedCode) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            assertEquals(url, expectedCode, connection.getResponseCode());
+            if (expectedCode >= 400) {
+                return new byte[0];
+            }
+            InputStream in = connection.getInputStream();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            in.close();
+            return out.toByteArray();
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
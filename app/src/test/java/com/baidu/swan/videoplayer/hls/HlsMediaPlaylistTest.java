@@ -0,0 +1,89 @@
+package com.baidu.swan.videoplayer.hls;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@link HlsMediaPlaylist#rewrite(Map)}的单元测试
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public class HlsMediaPlaylistTest {
+
+    /** 播放列表地址 */
+    private static final String URL = "http://cdn.example.com/v/index.m3u8?sign=abc";
+    /** 媒体播放列表，包含相对、绝对地址和带URI属性的标签 */
+    private static final String PLAYLIST = "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "\n"
+            + "#EXT-X-MAP:URI=\"init.mp4\"\n"
+            + "#EXTINF:4.0,\n"
+            + "seg0.m4s\n"
+            + "#EXTINF:4.0,\n"
+            + "../other/seg1.m4s\n"
+            + "#EXTINF:4.0,\n"
+            + "http://backup.example.com/seg2.m4s\n"
+            + "#EXT-X-ENDLIST\n";
+
+    @Test
+    public void mapsKnownUrlsAndResolvesTheRest() throws Exception {
+        HlsMediaPlaylist playlist = HlsPlaylistParser.parseMedia(URL, PLAYLIST);
+        Map<String, String> mapping = new HashMap<>();
+        mapping.put("http://cdn.example.com/v/seg0.m4s", "0/seg0.m4s");
+        mapping.put("http://cdn.example.com/v/init.mp4", "init/init.mp4");
+        String expected = "#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:4\n"
+                + "#EXT-X-MAP:URI=\"init/init.mp4\"\n"
+                + "#EXTINF:4.0,\n"
+                + "0/seg0.m4s\n"
+                + "#EXTINF:4.0,\n"
+                + "http://cdn.example.com/other/seg1.m4s\n"
+                + "#EXTINF:4.0,\n"
+                + "http://backup.example.com/seg2.m4s\n"
+                + "#EXT-X-ENDLIST\n";
+        assertEquals(expected, playlist.rewrite(mapping));
+    }
+
+    @Test
+    public void keepsReplacementCharactersLiteral() throws Exception {
+        HlsMediaPlaylist playlist = HlsPlaylistParser.parseMedia(URL, PLAYLIST);
+        String rewritten = playlist.rewrite(Collections.singletonMap(
+                "http://cdn.example.com/v/init.mp4", "/a$1\\b/init.mp4"));
+        assertEquals("#EXT-X-MAP:URI=\"/a$1\\b/init.mp4\"", rewritten.split("\n")[2]);
+    }
+
+    @Test
+    public void clearsKeysOnlyWhenRequested() throws Exception {
+        String encrypted = "#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:4\n"
+                + "#EXT-X-KEY:METHOD=AES-128,URI=\"key.bin\",IV=0x01\n"
+                + "#EXTINF:4.0,\n"
+                + "seg0.ts\n"
+                + "#EXT-X-ENDLIST\n";
+        HlsMediaPlaylist playlist = HlsPlaylistParser.parseMedia(URL, encrypted);
+        Map<String, String> mapping = Collections.singletonMap(
+                "http://cdn.example.com/v/seg0.ts", "0/seg0.ts");
+        String kept = playlist.rewrite(mapping);
+        assertEquals("#EXT-X-KEY:METHOD=AES-128,"
+                + "URI=\"http://cdn.example.com/v/key.bin\",IV=0x01", kept.split("\n")[2]);
+        String cleared = playlist.rewrite(mapping, true);
+        assertEquals("#EXTM3U\n#EXT-X-TARGETDURATION:4\n#EXTINF:4.0,\n0/seg0.ts\n"
+                + "#EXT-X-ENDLIST\n", cleared);
+    }
+
+    @Test
+    public void rewriteIsStableForLocalCopies() throws Exception {
+        // 离线下载把改写后的播放列表保存到本地，再次解析改写不应改变内容
+        HlsMediaPlaylist playlist = HlsPlaylistParser.parseMedia(URL, PLAYLIST);
+        String once = playlist.rewrite(Collections.<String, String>emptyMap());
+        String twice = HlsPlaylistParser.parseMedia(URL, once)
+                .rewrite(Collections.<String, String>emptyMap());
+        assertEquals(once, twice);
+    }
+}
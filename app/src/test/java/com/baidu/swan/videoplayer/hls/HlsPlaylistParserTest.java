@@ -0,0 +1,56 @@
+package com.baidu.swan.videoplayer.hls;
+
+import com.baidu.swan.videoplayer.rendition.Rendition;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link HlsPlaylistParser}的单元测试
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public class HlsPlaylistParserTest {
+
+    /** 多码率播放列表 */
+    private static final String MASTER = "#EXTM3U\n"
+            + "#EXT-X-STREAM-INF:BANDWIDTH=800000,RESOLUTION=640x360\n"
+            + "360p/index.m3u8\n"
+            + "#EXT-X-STREAM-INF:BANDWIDTH=2400000,RESOLUTION=1280x720\n"
+            + "http://cdn.example.com/720p/index.m3u8\n";
+
+    @Test
+    public void parsesMasterRenditions() throws Exception {
+        List<Rendition> renditions =
+                HlsPlaylistParser.parseMaster("http://example.com/v/master.m3u8", MASTER);
+        assertEquals(2, renditions.size());
+        assertEquals("http://example.com/v/360p/index.m3u8", renditions.get(0).getUrl());
+        assertEquals(720, renditions.get(1).getHeight());
+    }
+
+    @Test
+    public void detectsAlternativeMediaGroups() {
+        String master = "#EXTM3U\n"
+                + "#EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID=\"aac\",NAME=\"en\",URI=\"en/a.m3u8\"\n"
+                + "#EXT-X-STREAM-INF:BANDWIDTH=800000,AUDIO=\"aac\"\n"
+                + "360p/index.m3u8\n";
+        assertTrue(HlsPlaylistParser.hasAlternativeMedia(master));
+        assertFalse(HlsPlaylistParser.hasAlternativeMedia(MASTER));
+        // EXT-X-MEDIA-SEQUENCE不是备选媒体组
+        assertFalse(HlsPlaylistParser.hasAlternativeMedia(
+                "#EXTM3U\n#EXT-X-MEDIA-SEQUENCE:3\n#EXTINF:4,\na.ts\n"));
+        assertFalse(HlsPlaylistParser.hasAlternativeMedia(null));
+    }
+
+    @Test
+    public void mediaPlaylistIsNotMaster() {
+        assertTrue(HlsPlaylistParser.isMasterPlaylist(MASTER));
+        assertFalse(HlsPlaylistParser.isMasterPlaylist("#EXTM3U\n#EXTINF:4,\na.ts\n"));
+    }
+}
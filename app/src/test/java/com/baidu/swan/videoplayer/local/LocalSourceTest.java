@@ -0,0 +1,32 @@
+package com.baidu.swan.videoplayer.local;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link LocalSource}的单元测试。单元测试环境中android的Uri不可用，只校验基于字符串的判断
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public class LocalSourceTest {
+
+    @Test
+    public void playlistsAreNotOpenedAsFd() {
+        // 离线下载完成的HLS，DownloadTask.getLocalPath()返回的绝对路径
+        assertFalse(LocalSource.canOpenFd("/data/user/0/app/files/downloads/abc/index.m3u8"));
+        assertFalse(LocalSource.canOpenFd("file:///sdcard/Movies/index.M3U8"));
+        assertFalse(LocalSource.canOpenFd("/sdcard/Movies/index.m3u8?from=cache#t=10"));
+        assertFalse(LocalSource.canOpenFd(null));
+    }
+
+    @Test
+    public void mediaFilesAreOpenedAsFd() {
+        assertTrue(LocalSource.canOpenFd("/data/user/0/app/files/downloads/abc/video.mp4"));
+        assertTrue(LocalSource.canOpenFd("file:///sdcard/Movies/m3u8/video.mp4"));
+        assertTrue(LocalSource.canOpenFd("file:///android_asset/intro.mp4"));
+        assertTrue(LocalSource.canOpenFd("content://media/external/video/media/12"));
+    }
+}
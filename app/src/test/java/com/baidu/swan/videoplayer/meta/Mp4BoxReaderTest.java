@@ -0,0 +1,137 @@
+package com.baidu.swan.videoplayer.meta;
+
+import com.baidu.swan.videoplayer.testutil.RangeHttpServer;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import static com.baidu.swan.videoplayer.meta.Mp4TestFiles.box;
+import static com.baidu.swan.videoplayer.meta.Mp4TestFiles.concat;
+import static com.baidu.swan.videoplayer.meta.Mp4TestFiles.padding;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link Mp4BoxReader}的单元测试
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public class Mp4BoxReaderTest {
+
+    @Test
+    public void readsNestedBoxes() throws IOException {
+        byte[] data = concat(box("ftyp", new byte[8]),
+                box("moov", box("mvhd", new byte[4]), box("trak", new byte[12])));
+        Mp4BoxReader reader = new Mp4BoxReader(Mp4TestFiles.writeTemp(data).getPath(), null);
+        try {
+            Mp4BoxReader.Header moov = reader.findTopLevel("moov");
+            assertEquals(16, moov.start);
+            assertEquals(data.length, moov.end);
+            Mp4BoxReader.Header mvhd = reader.nextBox(moov.end);
+            assertEquals("mvhd", mvhd.type);
+            reader.skipTo(mvhd.end);
+            Mp4BoxReader.Header trak = reader.nextBox(moov.end);
+            assertEquals("trak", trak.type);
+            assertEquals(moov.end, trak.end);
+            reader.skipTo(trak.end);
+            assertNull(reader.nextBox(moov.end));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void readsLargeSizeAndToEndBoxes() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(out);
+        // size为1，64位大小紧跟在类型之后
+        data.writeInt(1);
+        data.writeBytes("mdat");
+        data.writeLong(16 + 4);
+        data.writeInt(0);
+        // size为0，延伸到文件末尾
+        data.writeInt(0);
+        data.writeBytes("moov");
+        data.write(new byte[12]);
+        File file = Mp4TestFiles.writeTemp(out.toByteArray());
+        Mp4BoxReader reader = new Mp4BoxReader(file.getPath(), null);
+        try {
+            Mp4BoxReader.Header mdat = reader.nextBox(Long.MAX_VALUE);
+            assertEquals(20, mdat.end);
+            reader.skipTo(mdat.end);
+            Mp4BoxReader.Header moov = reader.nextBox(file.length());
+            assertEquals("moov", moov.type);
+            assertEquals(file.length(), moov.end);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void rejectsInvalidBoxes() throws IOException {
+        // 类型不是可打印字符
+        assertInvalid(new byte[]{0, 0, 0, 16, 'm', 'o', 0, 'v', 0, 0, 0, 0, 0, 0, 0, 0});
+        // 子box超出上一级
+        Mp4BoxReader reader = new Mp4BoxReader(Mp4TestFiles.writeTemp(
+                box("moov", box("trak", new byte[8]))).getPath(), null);
+        try {
+            Mp4BoxReader.Header moov = reader.nextBox(Long.MAX_VALUE);
+            try {
+                reader.nextBox(moov.end - 1);
+                fail("child box exceeds parent");
+            } catch (IOException expected) {
+                // 期望抛出
+            }
+            try {
+                reader.skipTo(0);
+                fail("cannot seek backwards");
+            } catch (IOException expected) {
+                // 期望抛出
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void skipsLargeBoxWithRangeRequest() throws IOException {
+        byte[] data = concat(box("ftyp", new byte[8]), padding("mdat", 1024 * 1024),
+                box("moov", new byte[32]));
+        RangeHttpServer server = new RangeHttpServer(data, "\"v1\"");
+        try {
+            Mp4BoxReader reader = new Mp4BoxReader(server.url("/v.mp4"), null);
+            try {
+                Mp4BoxReader.Header moov = reader.findTopLevel("moov");
+                assertEquals(data.length - 40, moov.start);
+            } finally {
+                reader.close();
+            }
+            // mdat没有通过第一个连接读取，而是从moov的位置重新发起请求
+            assertEquals(2, server.getRequestCount());
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * 校验文件开头的box无法解析
+     */
+    private static void assertInvalid(byte[] data) throws IOException {
+        Mp4BoxReader reader = new Mp4BoxReader(Mp4TestFiles.writeTemp(data).getPath(), null);
+        try {
+            reader.nextBox(Long.MAX_VALUE);
+            fail("expected invalid box");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("box"));
+        } finally {
+            reader.close();
+        }
+    }
+}
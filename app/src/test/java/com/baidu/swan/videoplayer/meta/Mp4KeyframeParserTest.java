@@ -0,0 +1,125 @@
+package com.baidu.swan.videoplayer.meta;
+
+import com.baidu.swan.videoplayer.testutil.RangeHttpServer;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static com.baidu.swan.videoplayer.meta.Mp4TestFiles.box;
+import static com.baidu.swan.videoplayer.meta.Mp4TestFiles.concat;
+import static com.baidu.swan.videoplayer.meta.Mp4TestFiles.elst;
+import static com.baidu.swan.videoplayer.meta.Mp4TestFiles.hdlr;
+import static com.baidu.swan.videoplayer.meta.Mp4TestFiles.mdhd;
+import static com.baidu.swan.videoplayer.meta.Mp4TestFiles.mvhd;
+import static com.baidu.swan.videoplayer.meta.Mp4TestFiles.padding;
+import static com.baidu.swan.videoplayer.meta.Mp4TestFiles.stsd;
+import static com.baidu.swan.videoplayer.meta.Mp4TestFiles.stss;
+import static com.baidu.swan.videoplayer.meta.Mp4TestFiles.table;
+import static com.baidu.swan.videoplayer.meta.Mp4TestFiles.tkhd;
+import static com.baidu.swan.videoplayer.meta.Mp4TestFiles.trak;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link Mp4KeyframeParser}的单元测试
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public class Mp4KeyframeParserTest {
+
+    /** 音频轨道，放在视频轨道之前，解析时应当跳过 */
+    private static byte[] audioTrak() throws IOException {
+        return trak(tkhd(0, 0, 0), null, mdhd(44100, 0), hdlr("soun"), stsd("mp4a"),
+                table("stts", 1000, 1024), stss(1, 2, 3));
+    }
+
+    @Test
+    public void computesPresentationTimesWithCompositionOffset() throws IOException {
+        // 25fps，每25帧一个关键帧；B帧使显示时间整体延后2帧，elst把第一帧移回0
+        byte[] video = trak(tkhd(1280, 720, 0), box("edts", elst(new int[]{4000, 80})),
+                mdhd(1000, 4000), hdlr("vide"), stsd("avc1"),
+                table("stts", 100, 40), table("ctts", 100, 80), stss(1, 26, 51, 76));
+        KeyframeIndex index = parse(concat(box("ftyp", new byte[8]),
+                box("moov", mvhd(1000, 4000), audioTrak(), video)));
+        assertArrayEquals(new long[]{0, 1000, 2000, 3000}, times(index));
+    }
+
+    @Test
+    public void appliesEmptyEditAndRoundsUp() throws IOException {
+        // 时间刻度90000，采样时长3003（29.97fps），开头有500ms空白编辑（影片时间刻度600）
+        byte[] video = trak(tkhd(640, 360, 0),
+                box("edts", elst(new int[]{300, -1}, new int[]{60000, 0})),
+                mdhd(90000, 0), hdlr("vide"), stsd("avc1"),
+                table("stts", 10, 3003, 10, 1500), stss(1, 11, 15));
+        KeyframeIndex index = parse(box("moov", mvhd(600, 0), video));
+        // 第11帧：10 * 3003 / 90 = 333.67ms，向上取整为334；第15帧再加4 * 1500 / 90 = 66.67ms
+        assertArrayEquals(new long[]{500, 500 + 334, 500 + 401}, times(index));
+    }
+
+    @Test
+    public void cttsBeforeSttsIsSupported() throws IOException {
+        byte[] video = trak(tkhd(640, 360, 0), null, mdhd(1000, 0), hdlr("vide"), stsd("avc1"),
+                table("ctts", 2, 0, 2, 40), table("stts", 4, 40), stss(1, 3));
+        KeyframeIndex index = parse(box("moov", mvhd(1000, 0), video));
+        assertArrayEquals(new long[]{0, 120}, times(index));
+    }
+
+    @Test
+    public void allKeyframesYieldEmptyIndex() throws IOException {
+        // 没有stss表示每一帧都是关键帧，不需要吸附
+        byte[] video = trak(tkhd(640, 360, 0), null, mdhd(1000, 0), hdlr("vide"), stsd("avc1"),
+                table("stts", 100, 40));
+        assertEquals(0, parse(box("moov", mvhd(1000, 0), video)).size());
+    }
+
+    @Test
+    public void parsesMoovAtEndOverHttp() throws IOException {
+        byte[] video = trak(tkhd(1280, 720, 0), null, mdhd(1000, 0), hdlr("vide"),
+                stsd("avc1"), table("stts", 100, 40), stss(1, 51));
+        byte[] data = concat(box("ftyp", new byte[8]), padding("mdat", 256 * 1024),
+                box("moov", mvhd(1000, 0), audioTrak(), video));
+        RangeHttpServer server = new RangeHttpServer(data, null);
+        try {
+            KeyframeIndex index = Mp4KeyframeParser.parse(server.url("/v.mp4"), null);
+            assertArrayEquals(new long[]{0, 2000}, times(index));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void failsOnTruncatedSampleTable() throws IOException {
+        byte[] stts = table("stts", 100, 40);
+        // 声明两条记录，实际只有一条，第二个关键帧落在缺失的记录中
+        stts[15] = 2;
+        byte[] video = trak(tkhd(640, 360, 0), null, mdhd(1000, 0), hdlr("vide"), stsd("avc1"),
+                stts, stss(1, 101));
+        try {
+            parse(box("moov", mvhd(1000, 0), video));
+            fail("truncated stts");
+        } catch (IOException expected) {
+            // 期望抛出
+        }
+    }
+
+    /**
+     * 写入临时文件并解析
+     */
+    private static KeyframeIndex parse(byte[] data) throws IOException {
+        return Mp4KeyframeParser.parse(Mp4TestFiles.writeTemp(data).getPath(), null);
+    }
+
+    /**
+     * 取出全部关键帧时间
+     */
+    private static long[] times(KeyframeIndex index) {
+        long[] times = new long[index.size()];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = index.getTimeMs(i);
+        }
+        return times;
+    }
+}
@@ -0,0 +1,82 @@
+package com.baidu.swan.videoplayer.meta;
+
+import com.baidu.swan.videoplayer.testutil.RangeHttpServer;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static com.baidu.swan.videoplayer.meta.Mp4TestFiles.box;
+import static com.baidu.swan.videoplayer.meta.Mp4TestFiles.concat;
+import static com.baidu.swan.videoplayer.meta.Mp4TestFiles.hdlr;
+import static com.baidu.swan.videoplayer.meta.Mp4TestFiles.mdhd;
+import static com.baidu.swan.videoplayer.meta.Mp4TestFiles.mvhd;
+import static com.baidu.swan.videoplayer.meta.Mp4TestFiles.padding;
+import static com.baidu.swan.videoplayer.meta.Mp4TestFiles.stsd;
+import static com.baidu.swan.videoplayer.meta.Mp4TestFiles.table;
+import static com.baidu.swan.videoplayer.meta.Mp4TestFiles.tkhd;
+import static com.baidu.swan.videoplayer.meta.Mp4TestFiles.trak;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link Mp4Probe}的单元测试
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public class Mp4ProbeTest {
+
+    @Test
+    public void probesVideoTrackAfterAudio() throws IOException {
+        byte[] moov = box("moov", mvhd(600, 600 * 95),
+                trak(tkhd(0, 0, 0), null, mdhd(44100, 0), hdlr("soun"), stsd("mp4a")),
+                trak(tkhd(1280, 720, 90), null, mdhd(1000, 0), hdlr("vide"), stsd("avc1"),
+                        table("stts", 100, 40)));
+        byte[] data = concat(box("ftyp", new byte[8]), moov, padding("mdat", 4096));
+        MediaMetadata metadata = Mp4Probe.probe(Mp4TestFiles.writeTemp(data).getPath(), null);
+        assertEquals(1280, metadata.getWidth());
+        assertEquals(720, metadata.getHeight());
+        assertEquals(90, metadata.getRotation());
+        assertEquals(720, metadata.getDisplayWidth());
+        assertEquals(1280, metadata.getDisplayHeight());
+        assertEquals(95000, metadata.getDurationMs());
+        assertEquals("avc1", metadata.getCodec());
+    }
+
+    @Test
+    public void probesMoovAtEndOverHttp() throws IOException {
+        byte[] moov = box("moov", mvhd(1000, 12345),
+                trak(tkhd(640, 360, 180), null, mdhd(1000, 0), hdlr("vide"), stsd("hvc1")));
+        byte[] data = concat(box("ftyp", new byte[8]), padding("mdat", 512 * 1024), moov);
+        RangeHttpServer server = new RangeHttpServer(data, null);
+        try {
+            MediaMetadata metadata = Mp4Probe.probe(server.url("/v.mp4"), null);
+            assertEquals(180, metadata.getRotation());
+            assertEquals(12345, metadata.getDurationMs());
+            assertEquals("hvc1", metadata.getCodec());
+            // 跳过mdat时断开了第一个连接，只发送了很少的数据
+            assertEquals(2, server.getRequestCount());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void failsWithoutVideoTrack() throws IOException {
+        byte[] data = box("moov", mvhd(1000, 1000),
+                trak(tkhd(0, 0, 0), null, mdhd(44100, 0), hdlr("soun"), stsd("mp4a")));
+        try {
+            Mp4Probe.probe(Mp4TestFiles.writeTemp(data).getPath(), null);
+            fail("audio only file");
+        } catch (IOException expected) {
+            // 期望抛出
+        }
+        try {
+            Mp4Probe.probe(Mp4TestFiles.writeTemp(box("ftyp", new byte[8])).getPath(), null);
+            fail("no moov");
+        } catch (IOException expected) {
+            // 期望抛出
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.baidu.swan.videoplayer.meta;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * 在内存中拼装MP4文件，供MP4解析相关的单元测试使用。只写解析器会读取的字段，其余字段填0
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+final class Mp4TestFiles {
+
+    /** 16.16定点数的1 */
+    static final int FIXED_ONE = 0x10000;
+
+    /**
+     * 工具类，不允许实例化
+     */
+    private Mp4TestFiles() {
+    }
+
+    /**
+     * 生成box
+     *
+     * @param type    类型
+     * @param payload 内容，可以是多个子box拼接
+     */
+    static byte[] box(String type, byte[]... payload) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (byte[] part : payload) {
+            content.write(part);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(8 + content.size());
+        data.writeBytes(type);
+        content.writeTo(data);
+        return out.toByteArray();
+    }
+
+    /**
+     * 生成full box，version和flags之后按顺序写入32位整数
+     */
+    static byte[] fullBox(String type, int version, int... fields) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(version << 24);
+        for (int field : fields) {
+            data.writeInt(field);
+        }
+        return box(type, out.toByteArray());
+    }
+
+    /**
+     * 生成指定长度、内容为0的box，用于模拟mdat
+     */
+    static byte[] padding(String type, int size) throws IOException {
+        return box(type, new byte[size - 8]);
+    }
+
+    /**
+     * mvhd version 0
+     */
+    static byte[] mvhd(int timescale, int duration) throws IOException {
+        int[] fields = new int[24];
+        fields[2] = timescale;
+        fields[3] = duration;
+        return fullBox("mvhd", 0, fields);
+    }
+
+    /**
+     * tkhd version 0，按旋转角度写入变换矩阵
+     */
+    static byte[] tkhd(int width, int height, int rotation) throws IOException {
+        int a = FIXED_ONE;
+        int b = 0;
+        int c = 0;
+        int d = FIXED_ONE;
+        if (rotation == 90) {
+            a = 0;
+            b = FIXED_ONE;
+            c = -FIXED_ONE;
+            d = 0;
+        } else if (rotation == 180) {
+            a = -FIXED_ONE;
+            d = -FIXED_ONE;
+        } else if (rotation == 270) {
+            a = 0;
+            b = -FIXED_ONE;
+            c = FIXED_ONE;
+            d = 0;
+        }
+        // 创建、修改时间、track id、保留、时长，保留8字节，layer、alternate group、volume、保留
+        return fullBox("tkhd", 0, 0, 0, 1, 0, 0, 0, 0, 0, 0,
+                a, b, 0, c, d, 0, 0, 0, 0x40000000,
+                width * FIXED_ONE, height * FIXED_ONE);
+    }
+
+    /**
+     * mdhd version 0
+     */
+    static byte[] mdhd(int timescale, int duration) throws IOException {
+        return fullBox("mdhd", 0, 0, 0, timescale, duration, 0);
+    }
+
+    /**
+     * hdlr
+     */
+    static byte[] hdlr(String handler) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(0);
+        data.writeInt(0);
+        data.writeBytes(handler);
+        data.write(new byte[13]);
+        return box("hdlr", out.toByteArray());
+    }
+
+    /**
+     * 只有一个采样描述的stsd
+     */
+    static byte[] stsd(String codec) throws IOException {
+        return box("stsd", new byte[]{0, 0, 0, 0, 0, 0, 0, 1}, box(codec, new byte[8]));
+    }
+
+    /**
+     * elst version 0，每个编辑为{时长, 媒体起始时间}
+     */
+    static byte[] elst(int[]... edits) throws IOException {
+        int[] fields = new int[1 + edits.length * 3];
+        fields[0] = edits.length;
+        for (int i = 0; i < edits.length; i++) {
+            fields[1 + i * 3] = edits[i][0];
+            fields[2 + i * 3] = edits[i][1];
+            fields[3 + i * 3] = FIXED_ONE;
+        }
+        return fullBox("elst", 0, fields);
+    }
+
+    /**
+     * 按游程编码的采样表（stts、ctts），runs为{采样数, 值}交替排列
+     */
+    static byte[] table(String type, int... runs) throws IOException {
+        int[] fields = new int[1 + runs.length];
+        fields[0] = runs.length / 2;
+        System.arraycopy(runs, 0, fields, 1, runs.length);
+        return fullBox(type, 0, fields);
+    }
+
+    /**
+     * stss
+     */
+    static byte[] stss(int... samples) throws IOException {
+        int[] fields = new int[1 + samples.length];
+        fields[0] = samples.length;
+        System.arraycopy(samples, 0, fields, 1, samples.length);
+        return fullBox("stss", 0, fields);
+    }
+
+    /**
+     * 拼接多个box
+     */
+    static byte[] concat(byte[]... parts) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 生成轨道
+     *
+     * @param tkhd 轨道头
+     * @param edts 编辑列表，没有时为null
+     * @param mdhd 媒体头
+     * @param hdlr 轨道类型
+     * @param stbl 采样表中的box
+     */
+    static byte[] trak(byte[] tkhd, byte[] edts, byte[] mdhd, byte[] hdlr, byte[]... stbl)
+            throws IOException {
+        byte[] mdia = box("mdia", mdhd, hdlr, box("minf", box("stbl", stbl)));
+        return edts == null ? box("trak", tkhd, mdia) : box("trak", tkhd, edts, mdia);
+    }
+
+    /**
+     * 写入临时文件
+     */
+    static File writeTemp(byte[] data) throws IOException {
+        File file = File.createTempFile("mp4", ".mp4");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
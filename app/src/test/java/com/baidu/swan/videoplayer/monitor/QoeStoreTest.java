@@ -0,0 +1,75 @@
+package com.baidu.swan.videoplayer.monitor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@link QoeStore}文件修复的单元测试
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public class QoeStoreTest {
+
+    /** 记录文件 */
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("qoe", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void truncatesTornTail() throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(mFile));
+        writeRecord(out, 10);
+        writeRecord(out, 3);
+        // 半条记录：长度前缀声明20字节，只写了5字节
+        out.writeShort(20);
+        out.write(new byte[5]);
+        out.close();
+        QoeStore.truncateTornRecord(mFile);
+        assertEquals(2 + 10 + 2 + 3, mFile.length());
+    }
+
+    @Test
+    public void truncatesTornLengthPrefix() throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(mFile));
+        writeRecord(out, 4);
+        out.write(0);
+        out.close();
+        QoeStore.truncateTornRecord(mFile);
+        assertEquals(2 + 4, mFile.length());
+    }
+
+    @Test
+    public void keepsCompleteFile() throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(mFile));
+        writeRecord(out, 7);
+        writeRecord(out, 0);
+        out.close();
+        QoeStore.truncateTornRecord(mFile);
+        assertEquals(2 + 7 + 2, mFile.length());
+    }
+
+    /**
+     * 写入一条带长度前缀的记录
+     */
+    private static void writeRecord(DataOutputStream out, int length) throws IOException {
+        out.writeShort(length);
+        out.write(new byte[length]);
+    }
+}
@@ -0,0 +1,82 @@
+package com.baidu.swan.videoplayer.net;
+
+import com.baidu.swan.videoplayer.testutil.RangeHttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link HostPrewarmer}的单元测试，预热目标为本地HTTP服务
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public class HostPrewarmerTest {
+
+    /** 等待预热完成的超时时间，单位：ms */
+    private static final long TIMEOUT_MS = 10000;
+
+    /** 本地HTTP服务 */
+    private RangeHttpServer mServer;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new RangeHttpServer(new byte[1024], "\"v1\"");
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    @Test
+    public void ignoresNonHttpUrls() {
+        HostPrewarmer prewarmer = HostPrewarmer.getInstance();
+        int misses = prewarmer.getMissCount();
+        assertEquals(-1, prewarmer.onOpen("/sdcard/video.mp4"));
+        assertEquals(-1, prewarmer.onOpen("file:///sdcard/video.mp4"));
+        assertEquals(-1, prewarmer.onOpen("rtmp://live.example.com/app/stream"));
+        assertEquals(-1, prewarmer.onOpen(null));
+        assertEquals(misses, prewarmer.getMissCount());
+    }
+
+    @Test
+    public void countsMissForColdHost() {
+        HostPrewarmer prewarmer = HostPrewarmer.getInstance();
+        int misses = prewarmer.getMissCount();
+        assertEquals(0, prewarmer.onOpen("http://cold.example.com/v.mp4"));
+        assertEquals(misses + 1, prewarmer.getMissCount());
+    }
+
+    @Test
+    public void warmsHostOnceAndCreditsOnlyDns() throws InterruptedException {
+        HostPrewarmer prewarmer = HostPrewarmer.getInstance();
+        int prewarms = prewarmer.getPrewarmCount();
+        String url = mServer.url("/v.mp4");
+        prewarmer.preconnect(url, null);
+        // 正在预热时重复调用直接返回
+        prewarmer.preconnect(url, null);
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (prewarmer.getPrewarmCount() == prewarms && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(prewarms + 1, prewarmer.getPrewarmCount());
+        assertEquals(1, mServer.getRequestCount());
+        // 保活期内不再预热
+        prewarmer.preconnect(mServer.url("/other.mp4"), null);
+        Thread.sleep(100);
+        assertEquals(1, mServer.getRequestCount());
+
+        int hits = prewarmer.getHitCount();
+        long saved = prewarmer.onOpen(url);
+        // 预热请求的握手和首字节耗时不计入，只统计DNS解析耗时，本地地址几乎为0
+        assertTrue(String.valueOf(saved), saved >= 0 && saved < 1000);
+        assertEquals(hits + 1, prewarmer.getHitCount());
+    }
+}
@@ -0,0 +1,68 @@
+package com.baidu.swan.videoplayer.recovery;
+
+import com.baidu.cloud.media.player.IMediaPlayer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link ErrorClassifier}的单元测试
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public class ErrorClassifierTest {
+
+    /** 播放器内部错误 */
+    private static final int IJK_ERROR = -10000;
+
+    @Test
+    public void networkErrorsAreRetryable() {
+        assertEquals(ErrorClassifier.RETRYABLE,
+                ErrorClassifier.classify(IJK_ERROR, IMediaPlayer.MEDIA_ERROR_TIMED_OUT));
+        assertEquals(ErrorClassifier.RETRYABLE, ErrorClassifier.classify(IJK_ERROR, -110));
+        assertEquals(ErrorClassifier.RETRYABLE,
+                ErrorClassifier.classify(IJK_ERROR, fferrtag(0xF8, '5', 'X', 'X')));
+    }
+
+    @Test
+    public void clientErrorsFailOver() {
+        assertEquals(ErrorClassifier.FAILOVER,
+                ErrorClassifier.classify(IJK_ERROR, fferrtag(0xF8, '4', '0', '4')));
+        assertEquals(ErrorClassifier.FAILOVER,
+                ErrorClassifier.classify(IJK_ERROR, fferrtag(0xF8, '4', '0', '3')));
+        // 未知错误只切换镜像
+        assertEquals(ErrorClassifier.FAILOVER, ErrorClassifier.classify(1, 2));
+    }
+
+    @Test
+    public void contentErrorsAreFatal() {
+        assertEquals(ErrorClassifier.FATAL,
+                ErrorClassifier.classify(IJK_ERROR, fferrtag('I', 'N', 'D', 'A')));
+        assertEquals(ErrorClassifier.FATAL,
+                ErrorClassifier.classify(IMediaPlayer.MEDIA_ERROR_UNSUPPORTED, 0));
+        assertFalse(ErrorClassifier.isRecoverable(IMediaPlayer.MEDIA_ERROR_MALFORMED, 0));
+        assertTrue(ErrorClassifier.isRecoverable(IJK_ERROR, IMediaPlayer.MEDIA_ERROR_IO));
+    }
+
+    @Test
+    public void onlyCodecErrorsAreDecoderErrors() {
+        assertTrue(ErrorClassifier.isDecoderError(IMediaPlayer.MEDIA_ERROR_UNSUPPORTED, 0));
+        assertTrue(ErrorClassifier.isDecoderError(IJK_ERROR, fferrtag(0xF8, 'D', 'E', 'C')));
+        // 404、网络和数据损坏都是致命或可恢复错误，但与解码器无关
+        assertFalse(ErrorClassifier.isDecoderError(IJK_ERROR, fferrtag(0xF8, '4', '0', '4')));
+        assertFalse(ErrorClassifier.isDecoderError(IJK_ERROR, IMediaPlayer.MEDIA_ERROR_IO));
+        assertFalse(ErrorClassifier.isDecoderError(IJK_ERROR, fferrtag('I', 'N', 'D', 'A')));
+        assertFalse(ErrorClassifier.isDecoderError(IMediaPlayer.MEDIA_ERROR_MALFORMED, 0));
+    }
+
+    /**
+     * 计算ffmpeg的FFERRTAG错误码
+     */
+    private static int fferrtag(int a, int b, int c, int d) {
+        return -(a | (b << 8) | (c << 16) | (d << 24));
+    }
+}
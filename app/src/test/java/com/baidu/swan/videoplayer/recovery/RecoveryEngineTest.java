@@ -0,0 +1,75 @@
+package com.baidu.swan.videoplayer.recovery;
+
+import com.baidu.cloud.media.player.IMediaPlayer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link RecoveryEngine}的单元测试，重试任务投递到主线程，这里只验证决策
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public class RecoveryEngineTest {
+
+    /** 可重试的网络错误 */
+    private static final int WHAT = IMediaPlayer.MEDIA_ERROR_UNKNOWN;
+    /** 可重试的网络错误附加码 */
+    private static final int EXTRA = IMediaPlayer.MEDIA_ERROR_IO;
+
+    private RecoveryEngine mEngine;
+
+    @Before
+    public void setUp() {
+        RetryPolicy policy = new RetryPolicy(100, 1000, 2, 0f, new Random(1));
+        mEngine = new RecoveryEngine(policy, new RecoveryEngine.Host() {
+            @Override
+            public void reopen(String url, long positionMs) {
+            }
+        });
+        mEngine.startSession("http://a/v.mp4", Arrays.asList("http://b/v.mp4"));
+    }
+
+    @Test
+    public void errorAfterPrepareAtSamePositionEventuallyGivesUp() {
+        int handled = 0;
+        while (mEngine.onError(WHAT, EXTRA, 5000)) {
+            handled++;
+            assertTrue("retried forever", handled < 100);
+            mEngine.onPrepared();
+            // 续播后还没有越过出错位置就再次出错
+            mEngine.onPlaybackProgress(5500);
+        }
+        // 主地址2次，镜像地址2次
+        assertEquals(4, handled);
+        assertEquals("http://b/v.mp4", mEngine.getCurrentUrl());
+        assertFalse(mEngine.isRecovering());
+    }
+
+    @Test
+    public void progressPastResumePositionRefillsAttempts() {
+        assertTrue(mEngine.onError(WHAT, EXTRA, 5000));
+        mEngine.onPrepared();
+        assertTrue(mEngine.onError(WHAT, EXTRA, 5000));
+        mEngine.onPrepared();
+        mEngine.onPlaybackProgress(20000);
+
+        // 越过出错位置后是新的问题，仍在主地址重试
+        assertTrue(mEngine.onError(WHAT, EXTRA, 30000));
+        assertEquals("http://a/v.mp4", mEngine.getCurrentUrl());
+    }
+
+    @Test
+    public void fatalErrorIsNotRecovered() {
+        assertFalse(mEngine.onError(IMediaPlayer.MEDIA_ERROR_UNSUPPORTED, 0, 0));
+        assertEquals(1, mEngine.getStats().getFailed());
+    }
+}
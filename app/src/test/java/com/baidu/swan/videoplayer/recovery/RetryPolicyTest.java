@@ -0,0 +1,45 @@
+package com.baidu.swan.videoplayer.recovery;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link RetryPolicy}的单元测试
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public class RetryPolicyTest {
+
+    @Test
+    public void exponentialBackoffWithoutJitter() {
+        RetryPolicy policy = new RetryPolicy(500, 8000, 2, 0f, new Random(1));
+
+        assertEquals(500, policy.getDelayMs(0));
+        assertEquals(1000, policy.getDelayMs(1));
+        assertEquals(4000, policy.getDelayMs(3));
+        assertEquals(8000, policy.getDelayMs(4));
+        assertEquals(8000, policy.getDelayMs(30));
+    }
+
+    @Test
+    public void jitterOnlyShortensDelay() {
+        RetryPolicy policy = new RetryPolicy(500, 8000, 2, 0.5f, new Random(7));
+        for (int i = 0; i < 100; i++) {
+            long delay = policy.getDelayMs(2);
+            assertTrue(delay > 1000 && delay <= 2000);
+        }
+    }
+
+    @Test
+    public void argumentsAreClamped() {
+        RetryPolicy policy = new RetryPolicy(-1, -1, 0, 3f, new Random(1));
+
+        assertEquals(1, policy.getMaxAttemptsPerUrl());
+        assertEquals(0, policy.getDelayMs(5));
+    }
+}
@@ -0,0 +1,79 @@
+package com.baidu.swan.videoplayer.subtitle;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@link SubtitleParser}的单元测试
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public class SubtitleParserTest {
+
+    @Test
+    public void parseSrt() throws IOException {
+        SubtitleTrack track = parse("\uFEFF1\n"
+                + "00:00:01,000 --> 00:00:02,500\n"
+                + "<i>Hello</i>\n"
+                + "world\n"
+                + "\n"
+                + "2\n"
+                + "00:00:03,000 --> 00:00:04,000\n"
+                + "{\\an8}Tom &amp; Jerry\n");
+
+        assertEquals(2, track.size());
+        assertEquals("Hello\nworld", track.getText(track.findCueIndex(1200)));
+        assertEquals("Tom & Jerry", track.getText(track.findCueIndex(3500)));
+        assertEquals(SubtitleTrack.NO_CUE, track.findCueIndex(2600));
+    }
+
+    @Test
+    public void parseWebVtt() throws IOException {
+        SubtitleTrack track = parse("WEBVTT\n"
+                + "\n"
+                + "00:01.000 --> 00:02.000 align:start\n"
+                + "<c.red>first</c>\n"
+                + "\n"
+                + "01:00:00.5 --> 01:00:01.000\n"
+                + "second\n");
+
+        assertEquals(2, track.size());
+        assertEquals("first", track.getText(track.findCueIndex(1500)));
+        assertEquals("second", track.getText(track.findCueIndex(3600600)));
+    }
+
+    @Test
+    public void parseTime() {
+        assertEquals(3723004, SubtitleParser.parseTime("01:02:03,004", 0, 12));
+        assertEquals(61500, SubtitleParser.parseTime(" 01:01.5", 0, 8));
+        assertEquals(-1, SubtitleParser.parseTime("abc", 0, 3));
+    }
+
+    @Test
+    public void skipCueWithBadTimestamp() throws IOException {
+        SubtitleTrack track = parse("1\n"
+                + "xx --> 00:00:02,000\n"
+                + "bad\n"
+                + "\n"
+                + "2\n"
+                + "00:00:03,000 --> 00:00:04,000\n"
+                + "good\n");
+
+        assertEquals(1, track.size());
+        assertEquals("good", track.getText(0));
+    }
+
+    /**
+     * 解析字幕文本
+     */
+    private static SubtitleTrack parse(String content) throws IOException {
+        SubtitleTrack track = new SubtitleTrack("test");
+        new SubtitleParser().parse(new ByteArrayInputStream(content.getBytes("UTF-8")), track);
+        return track;
+    }
+}
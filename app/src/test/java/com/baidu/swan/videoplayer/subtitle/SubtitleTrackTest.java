@@ -0,0 +1,103 @@
+package com.baidu.swan.videoplayer.subtitle;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link SubtitleTrack}的单元测试
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public class SubtitleTrackTest {
+
+    @Test
+    public void findCueInOrder() {
+        SubtitleTrack track = new SubtitleTrack("zh");
+        track.append(1000, 2000, "a");
+        track.append(3000, 4000, "b");
+        track.complete();
+
+        assertEquals(SubtitleTrack.NO_CUE, track.findCueIndex(500));
+        assertEquals("a", track.getText(track.findCueIndex(1500)));
+        assertEquals(SubtitleTrack.NO_CUE, track.findCueIndex(2500));
+        assertEquals("b", track.getText(track.findCueIndex(3000)));
+        assertEquals(SubtitleTrack.NO_CUE, track.findCueIndex(4000));
+        assertTrue(track.isCompleted());
+    }
+
+    @Test
+    public void overlappingCues() {
+        SubtitleTrack track = new SubtitleTrack("zh");
+        track.append(0, 10000, "long");
+        track.append(2000, 3000, "short");
+        track.complete();
+
+        assertEquals("short", track.getText(track.findCueIndex(2500)));
+        // 短字幕结束后仍在长字幕区间内
+        assertEquals("long", track.getText(track.findCueIndex(5000)));
+    }
+
+    @Test
+    public void outOfOrderCueIsInsertedAndPublished() {
+        SubtitleTrack track = new SubtitleTrack("zh");
+        track.append(5000, 6000, "c");
+        track.append(1000, 2000, "a");
+        track.publish();
+        // 乱序条目不会阻塞发布
+        assertEquals(2, track.size());
+        assertEquals("a", track.getText(track.findCueIndex(1500)));
+        assertEquals("c", track.getText(track.findCueIndex(5500)));
+
+        track.append(3000, 4000, "b");
+        track.append(7000, 8000, "d");
+        track.publish();
+        assertEquals(4, track.size());
+        assertEquals("b", track.getText(track.findCueIndex(3500)));
+        assertEquals("d", track.getText(track.findCueIndex(7500)));
+        assertEquals(5000, track.nextChangeMs(4500, SubtitleTrack.NO_CUE));
+    }
+
+    @Test
+    public void publishedSnapshotIsNotModifiedByLaterInsert() {
+        SubtitleTrack track = new SubtitleTrack("zh");
+        track.append(1000, 2000, "a");
+        track.append(3000, 4000, "b");
+        track.publish();
+
+        track.append(0, 500, "early");
+        // 还没有发布，读线程看到的仍是之前的快照
+        assertEquals(2, track.size());
+        assertEquals("a", track.getText(0));
+        track.publish();
+        assertEquals("early", track.getText(0));
+        assertEquals("a", track.getText(1));
+    }
+
+    @Test
+    public void growBeyondInitialCapacity() {
+        SubtitleTrack track = new SubtitleTrack("zh");
+        for (int i = 0; i < 1000; i++) {
+            track.append(i * 1000, i * 1000 + 500, "cue" + i);
+            if (i % 64 == 0) {
+                track.publish();
+            }
+        }
+        track.complete();
+
+        assertEquals(1000, track.size());
+        assertEquals("cue999", track.getText(track.findCueIndex(999200)));
+        assertEquals(SubtitleTrack.NO_CUE, track.findCueIndex(999600));
+    }
+
+    @Test
+    public void invalidCueIsIgnored() {
+        SubtitleTrack track = new SubtitleTrack("zh");
+        track.append(2000, 1000, "bad");
+        track.complete();
+
+        assertEquals(0, track.size());
+    }
+}
@@ -0,0 +1,182 @@
+package com.baidu.swan.videoplayer.testutil;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单元测试使用的本地HTTP服务，支持Range和If-Range。
+ * 可以按路径提供不同的文件，没有单独设置的路径都返回默认文件
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public final class RangeHttpServer implements HttpHandler {
+
+    /** HTTP服务 */
+    private final HttpServer mServer;
+    /** 默认文件内容 */
+    private volatile byte[] mContent;
+    /** 按路径单独设置的文件内容 */
+    private final Map<String, byte[]> mFiles = new ConcurrentHashMap<>();
+    /** ETag */
+    private volatile String mEtag;
+    /** 接下来需要中途断开的响应数 */
+    private final AtomicInteger mTruncateCount = new AtomicInteger();
+    /** 中途断开的响应发送的字节数 */
+    private volatile int mTruncateBytes;
+    /** 每发送8KB后的等待时间，单位：ms，用于模拟慢速网络 */
+    private volatile int mChunkDelayMs;
+    /** 请求次数 */
+    private final AtomicInteger mRequests = new AtomicInteger();
+    /** 发送的字节数 */
+    private final AtomicLong mSentBytes = new AtomicLong();
+
+    /**
+     * 启动服务
+     *
+     * @param content 文件内容
+     * @param etag    ETag，为null时不返回
+     * @throws IOException 启动失败
+     */
+    public RangeHttpServer(byte[] content, String etag) throws IOException {
+        mContent = content;
+        mEtag = etag;
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/", this);
+        mServer.start();
+    }
+
+    /**
+     * 获取文件地址
+     *
+     * @param path 路径，如/v.mp4
+     * @return 地址
+     */
+    public String url(String path) {
+        return "http://127.0.0.1:" + mServer.getAddress().getPort() + path;
+    }
+
+    /**
+     * 更新文件，模拟服务端资源变化
+     */
+    public void setContent(byte[] content, String etag) {
+        mContent = content;
+        mEtag = etag;
+    }
+
+    /**
+     * 为指定路径单独设置文件内容
+     *
+     * @param path    路径，如/v/key.bin
+     * @param content 文件内容
+     */
+    public void putFile(String path, byte[] content) {
+        mFiles.put(path, content);
+    }
+
+    /**
+     * 接下来的几次响应只发送一部分就断开，模拟下载中断
+     *
+     * @param count    响应数
+     * @param maxBytes 每次响应发送的字节数
+     */
+    public void truncateNextResponses(int count, int maxBytes) {
+        mTruncateBytes = maxBytes;
+        mTruncateCount.set(count);
+    }
+
+    /**
+     * 设置每发送8KB后的等待时间，模拟慢速网络
+     *
+     * @param delayMs 等待时间，单位：ms
+     */
+    public void setChunkDelayMs(int delayMs) {
+        mChunkDelayMs = delayMs;
+    }
+
+    /**
+     * 获取请求次数
+     */
+    public int getRequestCount() {
+        return mRequests.get();
+    }
+
+    /**
+     * 获取发送的字节数
+     */
+    public long getSentBytes() {
+        return mSentBytes.get();
+    }
+
+    /**
+     * 停止服务
+     */
+    public void stop() {
+        mServer.stop(0);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        mRequests.incrementAndGet();
+        byte[] content = mFiles.get(exchange.getRequestURI().getPath());
+        if (content == null) {
+            content = mContent;
+        }
+        String etag = mEtag;
+        long start = 0;
+        long end = content.length - 1;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        boolean partial = range != null && range.startsWith("bytes=")
+                && (ifRange == null || ifRange.equals(etag));
+        if (partial) {
+            String[] bounds = range.substring("bytes=".length()).split("-", -1);
+            start = Long.parseLong(bounds[0]);
+            if (!bounds[1].isEmpty()) {
+                end = Math.min(end, Long.parseLong(bounds[1]));
+            }
+            if (start >= content.length) {
+                exchange.sendResponseHeaders(416, -1);
+                exchange.close();
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Range",
+                    "bytes " + start + "-" + end + "/" + content.length);
+        }
+        if (etag != null) {
+            exchange.getResponseHeaders().set("ETag", etag);
+        }
+        exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+        long length = end - start + 1;
+        exchange.sendResponseHeaders(partial ? 206 : 200, length);
+        OutputStream out = exchange.getResponseBody();
+        long limit = mTruncateCount.getAndDecrement() > 0 ? mTruncateBytes : length;
+        long sent = 0;
+        try {
+            while (sent < Math.min(limit, length)) {
+                int chunk = (int) Math.min(8192, Math.min(limit, length) - sent);
+                out.write(content, (int) (start + sent), chunk);
+                sent += chunk;
+                mSentBytes.addAndGet(chunk);
+                if (mChunkDelayMs > 0) {
+                    out.flush();
+                    Thread.sleep(mChunkDelayMs);
+                }
+            }
+            out.flush();
+        } catch (IOException | InterruptedException ex) {
+            // 客户端断开
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.baidu.swan.videoplayer.sim;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 带宽轨迹：按时间分段的恒定带宽，播放到末尾后从头循环。
+ * <p>
+ * 文本格式为每行"时长ms 带宽kbps"，#开头的行为注释，带宽为0表示断网；
+ * 可以用一行"rtt 毫秒数"指定每次请求的往返延迟
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public final class BandwidthTrace {
+
+    /** 轨迹名称，一般为文件名 */
+    private final String mName;
+    /** 每段的开始时间，单位：ms */
+    private final long[] mStartMs;
+    /** 每段的带宽，单位：字节/ms */
+    private final double[] mBytesPerMs;
+    /** 轨迹总时长，单位：ms */
+    private final long mDurationMs;
+    /** 每次请求到首字节的往返延迟，单位：ms */
+    private final long mRttMs;
+
+    /**
+     * 构造器
+     *
+     * @param name       轨迹名称
+     * @param durationMs 每段的时长，单位：ms，必须大于0
+     * @param kbps       每段的带宽，单位：kbps
+     */
+    public BandwidthTrace(String name, long[] durationMs, double[] kbps) {
+        this(name, durationMs, kbps, 0);
+    }
+
+    /**
+     * 构造器
+     *
+     * @param name       轨迹名称
+     * @param durationMs 每段的时长，单位：ms，必须大于0
+     * @param kbps       每段的带宽，单位：kbps
+     * @param rttMs      每次请求的往返延迟，单位：ms
+     */
+    public BandwidthTrace(String name, long[] durationMs, double[] kbps, long rttMs) {
+        if (durationMs.length == 0 || durationMs.length != kbps.length) {
+            throw new IllegalArgumentException("empty or mismatched trace : " + name);
+        }
+        mName = name;
+        mStartMs = new long[durationMs.length];
+        mBytesPerMs = new double[durationMs.length];
+        long start = 0;
+        boolean hasBandwidth = false;
+        for (int i = 0; i < durationMs.length; i++) {
+            if (durationMs[i] <= 0 || kbps[i] < 0) {
+                throw new IllegalArgumentException("invalid trace entry " + i + " : " + name);
+            }
+            mStartMs[i] = start;
+            mBytesPerMs[i] = kbps[i] / 8;
+            hasBandwidth |= kbps[i] > 0;
+            start += durationMs[i];
+        }
+        if (!hasBandwidth) {
+            throw new IllegalArgumentException("trace without bandwidth : " + name);
+        }
+        mDurationMs = start;
+        mRttMs = Math.max(0, rttMs);
+    }
+
+    /**
+     * 从文本文件读取轨迹
+     *
+     * @param file 轨迹文件
+     * @return 轨迹
+     * @throws IOException 读取失败或格式错误
+     */
+    public static BandwidthTrace load(File file) throws IOException {
+        List<Long> durations = new ArrayList<>();
+        List<Double> rates = new ArrayList<>();
+        long rttMs = 0;
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("[\\s,]+");
+                if (parts.length < 2) {
+                    throw new IOException("malformed trace line : " + line);
+                }
+                if ("rtt".equals(parts[0])) {
+                    rttMs = Long.parseLong(parts[1]);
+                    continue;
+                }
+                durations.add(Long.parseLong(parts[0]));
+                rates.add(Double.parseDouble(parts[1]));
+            }
+        } catch (NumberFormatException ex) {
+            throw new IOException("malformed trace : " + file, ex);
+        } finally {
+            reader.close();
+        }
+        long[] durationMs = new long[durations.size()];
+        double[] kbps = new double[rates.size()];
+        for (int i = 0; i < durationMs.length; i++) {
+            durationMs[i] = durations.get(i);
+            kbps[i] = rates.get(i);
+        }
+        try {
+            return new BandwidthTrace(file.getName(), durationMs, kbps, rttMs);
+        } catch (IllegalArgumentException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * 获取轨迹名称
+     *
+     * @return 名称
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * 获取轨迹一个循环的时长
+     *
+     * @return 时长，单位：ms
+     */
+    public long getDurationMs() {
+        return mDurationMs;
+    }
+
+    /**
+     * 获取每次请求的往返延迟
+     *
+     * @return 延迟，单位：ms
+     */
+    public long getRttMs() {
+        return mRttMs;
+    }
+
+    /**
+     * 计算从指定时间开始下载指定字节数的完成时间。连续断网达到超时时间时下载失败
+     *
+     * @param startMs   开始时间，单位：ms，可以超过轨迹时长
+     * @param bytes     字节数
+     * @param timeoutMs 超时，单位：ms，不大于0时不超时
+     * @return 完成时间，单位：ms；超时时返回负数，绝对值为超时发生的时间
+     */
+    public double downloadEnd(double startMs, long bytes, long timeoutMs) {
+        long loops = (long) (startMs / mDurationMs);
+        double base = loops * (double) mDurationMs;
+        int index = indexOf(startMs - base);
+        double now = startMs;
+        double remaining = bytes;
+        double idleSince = -1;
+        while (true) {
+            double segmentEnd = base + (index + 1 < mStartMs.length
+                    ? mStartMs[index + 1] : mDurationMs);
+            double rate = mBytesPerMs[index];
+            if (rate > 0) {
+                idleSince = -1;
+                double available = (segmentEnd - now) * rate;
+                if (available >= remaining) {
+                    return now + remaining / rate;
+                }
+                remaining -= available;
+            } else {
+                if (idleSince < 0) {
+                    idleSince = now;
+                }
+                if (timeoutMs > 0 && segmentEnd - idleSince >= timeoutMs) {
+                    return -(idleSince + timeoutMs);
+                }
+            }
+            now = segmentEnd;
+            index++;
+            if (index == mStartMs.length) {
+                index = 0;
+                base += mDurationMs;
+            }
+        }
+    }
+
+    /**
+     * 查找时间所在的分段
+     *
+     * @param offsetMs 一个循环内的时间，单位：ms
+     * @return 分段序号
+     */
+    private int indexOf(double offsetMs) {
+        int low = 0;
+        int high = mStartMs.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (mStartMs[mid] <= offsetMs) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public String toString() {
+        return "BandwidthTrace{" + mName + ", " + mStartMs.length + " entries, " + mDurationMs
+                + "ms, rtt=" + mRttMs + "ms}";
+    }
+}
@@ -0,0 +1,440 @@
+package com.baidu.swan.videoplayer.sim;
+
+import java.util.PriorityQueue;
+
+/**
+ * 播放器缓冲的离散事件仿真。
+ * <p>
+ * 模型：播放器串行下载分片，每次请求先经过一个往返延迟，再按带宽轨迹接收数据；
+ * 已缓冲未播放的数据达到最大缓存后暂停下载，播放消耗到可以放下下一个分片时继续；
+ * 缓冲达到起播时长后开始播放，缓冲耗尽时卡顿，缓冲重新达到恢复时长后继续播放；
+ * 一次请求连续没有数据超过超时时长时播放失败。
+ * 时钟是仿真时钟，只在事件之间跳跃，一次几分钟的播放只需要处理几百个事件。
+ * 实例不是线程安全的，可以重复调用{@link #run(BandwidthTrace, long)}
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public final class BufferSimulator {
+
+    /** 分片下载完成 */
+    private static final int EVENT_DOWNLOAD_DONE = 0;
+    /** 缓冲耗尽 */
+    private static final int EVENT_BUFFER_EMPTY = 1;
+    /** 缓存降到可以继续下载 */
+    private static final int EVENT_RESUME_DOWNLOAD = 2;
+    /** 请求超时 */
+    private static final int EVENT_TIMEOUT = 3;
+    /** 浮点误差容忍 */
+    private static final double EPSILON = 1e-6;
+
+    /** 缓冲策略 */
+    private final PlayerPolicy mPolicy;
+    /** 视频内容 */
+    private final SimContent mContent;
+    /** 事件队列 */
+    private final PriorityQueue<Event> mEvents = new PriorityQueue<>();
+    /** 已下载分片的字节数 */
+    private final long[] mSegmentBytes;
+    /** 已下载分片的码率 */
+    private final int[] mSegmentBitrates;
+    /** 最近的吞吐量样本，环形数组，单位：kbps */
+    private final double[] mSamples = new double[PlayerPolicy.ABR_SAMPLES];
+
+    /** 带宽轨迹 */
+    private BandwidthTrace mTrace;
+    /** 本次播放在轨迹中的起始时间，单位：ms */
+    private double mTraceOffset;
+    /** 当前仿真时间，单位：ms */
+    private double mNow;
+    /** 事件序号，时间相同时按加入顺序处理 */
+    private long mSequence;
+    /** 播放位置，单位：ms */
+    private double mPlayhead;
+    /** 已下载的分片数 */
+    private int mDownloaded;
+    /** 第一个没有播放完的分片 */
+    private int mHead;
+    /** 是否正在下载 */
+    private boolean mDownloading;
+    /** 正在下载的分片的码率序号 */
+    private int mPendingBitrate;
+    /** 正在下载的请求的开始时间，单位：ms */
+    private double mRequestStart;
+    /** 是否正在播放 */
+    private boolean mPlaying;
+    /** 是否已起播 */
+    private boolean mStarted;
+    /** 起播耗时，单位：ms */
+    private long mStartupMs;
+    /** 本次卡顿的开始时间，单位：ms */
+    private double mStallStart;
+    /** 卡顿次数 */
+    private int mStallCount;
+    /** 卡顿总时长，单位：ms */
+    private double mStallMs;
+    /** 吞吐量样本数 */
+    private int mSampleCount;
+    /** 码率切换次数 */
+    private int mSwitchCount;
+    /** 下载的字节数 */
+    private long mBytes;
+    /** 缓冲耗尽事件的版本，重新计算后旧事件作废 */
+    private int mEmptyGeneration;
+    /** 继续下载事件的版本 */
+    private int mResumeGeneration;
+
+    /**
+     * 仿真事件
+     */
+    private static final class Event implements Comparable<Event> {
+        /** 发生时间，单位：ms */
+        final double mTime;
+        /** 事件类型 */
+        final int mType;
+        /** 事件版本 */
+        final int mGeneration;
+        /** 加入顺序 */
+        final long mSequence;
+
+        Event(double time, int type, int generation, long sequence) {
+            mTime = time;
+            mType = type;
+            mGeneration = generation;
+            mSequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            int result = Double.compare(mTime, other.mTime);
+            return result != 0 ? result : Long.compare(mSequence, other.mSequence);
+        }
+    }
+
+    /**
+     * 构造器
+     *
+     * @param policy  缓冲策略
+     * @param content 视频内容
+     */
+    public BufferSimulator(PlayerPolicy policy, SimContent content) {
+        mPolicy = policy;
+        mContent = content;
+        mSegmentBytes = new long[content.getSegmentCount()];
+        mSegmentBitrates = new int[content.getSegmentCount()];
+    }
+
+    /**
+     * 仿真一次完整播放
+     *
+     * @param trace    带宽轨迹
+     * @param offsetMs 播放开始时在轨迹中的位置，单位：ms
+     * @return 播放结果
+     */
+    public SessionResult run(BandwidthTrace trace, long offsetMs) {
+        reset(trace, offsetMs);
+        startDownload();
+        Event event;
+        while ((event = mEvents.poll()) != null) {
+            switch (event.mType) {
+                case EVENT_DOWNLOAD_DONE:
+                    advance(event.mTime);
+                    onDownloadDone();
+                    break;
+                case EVENT_BUFFER_EMPTY:
+                    if (event.mGeneration != mEmptyGeneration) {
+                        break;
+                    }
+                    advance(event.mTime);
+                    if (mDownloaded == mSegmentBytes.length
+                            && mPlayhead >= mContent.getDurationMs() - EPSILON) {
+                        return finish(false);
+                    }
+                    onBufferEmpty();
+                    break;
+                case EVENT_RESUME_DOWNLOAD:
+                    if (event.mGeneration != mResumeGeneration) {
+                        break;
+                    }
+                    advance(event.mTime);
+                    scheduleNextDownload();
+                    break;
+                case EVENT_TIMEOUT:
+                    advance(event.mTime);
+                    return finish(true);
+                default:
+                    throw new IllegalStateException("unknown event " + event.mType);
+            }
+        }
+        return finish(false);
+    }
+
+    /**
+     * 重置状态
+     */
+    private void reset(BandwidthTrace trace, long offsetMs) {
+        mEvents.clear();
+        mTrace = trace;
+        mTraceOffset = offsetMs;
+        mNow = 0;
+        mSequence = 0;
+        mPlayhead = 0;
+        mDownloaded = 0;
+        mHead = 0;
+        mDownloading = false;
+        mPlaying = false;
+        mStarted = false;
+        mStartupMs = -1;
+        mStallCount = 0;
+        mStallMs = 0;
+        mSampleCount = 0;
+        mSwitchCount = 0;
+        mBytes = 0;
+    }
+
+    /**
+     * 推进仿真时钟，播放中时同时推进播放位置
+     *
+     * @param time 目标时间，单位：ms
+     */
+    private void advance(double time) {
+        if (mPlaying) {
+            mPlayhead = Math.min(mPlayhead + time - mNow, bufferEndMs());
+            long segmentMs = mContent.getSegmentDurationMs();
+            while (mHead < mDownloaded && mPlayhead >= (mHead + 1) * (double) segmentMs) {
+                mHead++;
+            }
+        }
+        mNow = time;
+    }
+
+    /**
+     * 开始下载下一个分片
+     */
+    private void startDownload() {
+        int bitrateIndex = chooseBitrate();
+        long bytes = mContent.getSegmentBytes(mDownloaded, bitrateIndex);
+        double start = mTraceOffset + mNow + mTrace.getRttMs();
+        double end = mTrace.downloadEnd(start, bytes, mPolicy.getTimeout());
+        mDownloading = true;
+        mPendingBitrate = bitrateIndex;
+        mRequestStart = mNow;
+        if (end < 0) {
+            push(-end - mTraceOffset, EVENT_TIMEOUT, 0);
+        } else {
+            push(end - mTraceOffset, EVENT_DOWNLOAD_DONE, 0);
+        }
+    }
+
+    /**
+     * 分片下载完成
+     */
+    private void onDownloadDone() {
+        int index = mDownloaded;
+        int bitrate = mContent.getBitrate(mPendingBitrate);
+        long bytes = mContent.getSegmentBytes(index, mPendingBitrate);
+        if (index > 0 && mSegmentBitrates[index - 1] != bitrate) {
+            mSwitchCount++;
+        }
+        mSegmentBytes[index] = bytes;
+        mSegmentBitrates[index] = bitrate;
+        mDownloaded++;
+        mBytes += bytes;
+        mDownloading = false;
+        double costMs = mNow - mRequestStart;
+        if (costMs > 0) {
+            mSamples[mSampleCount % mSamples.length] = bytes * 8 / costMs;
+            mSampleCount++;
+        }
+        if (mPlaying) {
+            scheduleBufferEmpty();
+        } else {
+            maybeStartPlayback();
+        }
+        scheduleNextDownload();
+    }
+
+    /**
+     * 缓冲耗尽，进入卡顿
+     */
+    private void onBufferEmpty() {
+        mPlaying = false;
+        mStallCount++;
+        mStallStart = mNow;
+        if (!mDownloading) {
+            mResumeGeneration++;
+            scheduleNextDownload();
+        }
+    }
+
+    /**
+     * 缓冲满足条件时开始或恢复播放。最大缓存放不下更多数据时直接播放，否则永远等不到缓冲达标
+     */
+    private void maybeStartPlayback() {
+        double threshold = mStarted ? mPolicy.getResumeBuffer() : mPolicy.getStartBuffer();
+        boolean allDownloaded = mDownloaded == mSegmentBytes.length;
+        if (bufferedMs() + EPSILON < threshold && !allDownloaded && canFetchNext()) {
+            return;
+        }
+        if (mStarted) {
+            mStallMs += mNow - mStallStart;
+        } else {
+            mStarted = true;
+            mStartupMs = Math.round(mNow);
+        }
+        mPlaying = true;
+        scheduleBufferEmpty();
+    }
+
+    /**
+     * 下载下一个分片，缓存已满时等播放消耗到可以放下下一个分片再下载
+     */
+    private void scheduleNextDownload() {
+        if (mDownloading || mDownloaded == mSegmentBytes.length) {
+            return;
+        }
+        if (canFetchNext()) {
+            startDownload();
+        } else if (mPlaying) {
+            long target = mPolicy.getMaxCacheBytes() - nextSegmentBytes();
+            mResumeGeneration++;
+            push(mNow + timeUntilBytesAhead(target), EVENT_RESUME_DOWNLOAD, mResumeGeneration);
+        }
+    }
+
+    /**
+     * 重新计算缓冲耗尽的时间
+     */
+    private void scheduleBufferEmpty() {
+        mEmptyGeneration++;
+        push(mNow + bufferedMs(), EVENT_BUFFER_EMPTY, mEmptyGeneration);
+    }
+
+    /**
+     * 最大缓存是否还能放下下一个分片。缓冲为空时总是可以下载
+     */
+    private boolean canFetchNext() {
+        double ahead = bytesAhead();
+        return ahead < EPSILON || ahead + nextSegmentBytes() <= mPolicy.getMaxCacheBytes() + 1;
+    }
+
+    /**
+     * 下一个分片按当前码率选择的大小
+     */
+    private long nextSegmentBytes() {
+        return mContent.getSegmentBytes(mDownloaded, chooseBitrate());
+    }
+
+    /**
+     * 选择下一个分片的码率：不自动切换或者还没有吞吐量样本时使用起播码率，
+     * 否则选择不超过最近几次吞吐量调和平均值乘以安全系数的最高码率
+     *
+     * @return 码率序号
+     */
+    private int chooseBitrate() {
+        int last = mContent.getBitrateCount() - 1;
+        if (!mPolicy.isAdaptive() || mSampleCount == 0) {
+            return Math.max(0, Math.min(last, mPolicy.getInitialBitrateIndex()));
+        }
+        int count = Math.min(mSampleCount, mSamples.length);
+        double inverse = 0;
+        for (int i = 0; i < count; i++) {
+            inverse += 1 / mSamples[i];
+        }
+        double estimate = count / inverse * mPolicy.getAbrSafety();
+        for (int i = last; i > 0; i--) {
+            if (mContent.getBitrate(i) <= estimate) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 已下载内容的结束位置，单位：ms
+     */
+    private double bufferEndMs() {
+        if (mDownloaded == mSegmentBytes.length) {
+            return mContent.getDurationMs();
+        }
+        return mDownloaded * (double) mContent.getSegmentDurationMs();
+    }
+
+    /**
+     * 已缓冲未播放的时长，单位：ms
+     */
+    private double bufferedMs() {
+        return Math.max(0, bufferEndMs() - mPlayhead);
+    }
+
+    /**
+     * 已缓冲未播放的字节数，播放中的分片按已播放比例扣除
+     */
+    private double bytesAhead() {
+        double ahead = 0;
+        for (int i = mHead; i < mDownloaded; i++) {
+            ahead += mSegmentBytes[i];
+        }
+        if (mHead < mDownloaded) {
+            double played = mPlayhead - mHead * (double) mContent.getSegmentDurationMs();
+            ahead -= mSegmentBytes[mHead] * played / mContent.getSegmentDurationMs(mHead);
+        }
+        return ahead;
+    }
+
+    /**
+     * 计算继续播放多久后缓冲的字节数降到目标值以下
+     *
+     * @param targetBytes 目标字节数，小于0时等到缓冲耗尽
+     * @return 时长，单位：ms
+     */
+    private double timeUntilBytesAhead(long targetBytes) {
+        double ahead = bytesAhead();
+        double elapsed = 0;
+        double position = mPlayhead;
+        for (int i = mHead; i < mDownloaded; i++) {
+            double segmentEnd = Math.min((i + 1) * (double) mContent.getSegmentDurationMs(),
+                    mContent.getDurationMs());
+            double remainingMs = segmentEnd - position;
+            double bytesPerMs = mSegmentBytes[i] / (double) mContent.getSegmentDurationMs(i);
+            double remainingBytes = remainingMs * bytesPerMs;
+            if (ahead - remainingBytes <= targetBytes) {
+                return elapsed + Math.max(0, (ahead - targetBytes) / bytesPerMs);
+            }
+            ahead -= remainingBytes;
+            elapsed += remainingMs;
+            position = segmentEnd;
+        }
+        return elapsed;
+    }
+
+    /**
+     * 加入事件
+     */
+    private void push(double time, int type, int generation) {
+        mEvents.add(new Event(time, type, generation, mSequence++));
+    }
+
+    /**
+     * 结束仿真并汇总结果
+     *
+     * @param failed 是否超时失败
+     * @return 播放结果
+     */
+    private SessionResult finish(boolean failed) {
+        mEvents.clear();
+        if (mStarted && !mPlaying) {
+            mStallMs += mNow - mStallStart;
+        }
+        double weighted = 0;
+        double duration = 0;
+        for (int i = 0; i < mDownloaded; i++) {
+            long segmentMs = mContent.getSegmentDurationMs(i);
+            weighted += (double) mSegmentBitrates[i] * segmentMs;
+            duration += segmentMs;
+        }
+        return new SessionResult(mStartupMs, mStallCount, Math.round(mStallMs),
+                Math.round(mPlayhead), duration == 0 ? 0 : weighted / duration, mSwitchCount,
+                mBytes, failed);
+    }
+}
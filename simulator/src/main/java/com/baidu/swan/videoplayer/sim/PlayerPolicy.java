@@ -0,0 +1,184 @@
+package com.baidu.swan.videoplayer.sim;
+
+/**
+ * 仿真使用的播放器缓冲策略。默认值与{@code SwanVideoView}设置给播放器的参数一致，所有时间单位均为ms
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public class PlayerPolicy {
+
+    /** 默认最大缓存，与SwanVideoView.MAX_CACHE一致 */
+    public static final int DEFAULT_MAX_CACHE_BYTES = 500 * 1000;
+    /** 默认起播缓冲时长 */
+    public static final int DEFAULT_START_BUFFER = 1000;
+    /** 默认超时，与SwanVideoView.PLAYER_TIME_OUT_US一致 */
+    public static final int DEFAULT_TIMEOUT = 15000;
+    /** 默认码率估计的安全系数 */
+    public static final float DEFAULT_ABR_SAFETY = 0.8f;
+    /** 码率估计使用的最近吞吐量样本数 */
+    static final int ABR_SAMPLES = 3;
+
+    /** 最大缓存 */
+    private int mMaxCacheBytes = DEFAULT_MAX_CACHE_BYTES;
+    /** 起播缓冲时长 */
+    private int mStartBuffer = DEFAULT_START_BUFFER;
+    /** 卡顿后恢复播放的缓冲时长，小于0时与起播相同 */
+    private int mResumeBuffer = -1;
+    /** 超时，连续没有数据超过这个时长播放失败 */
+    private int mTimeout = DEFAULT_TIMEOUT;
+    /** 是否根据吞吐量自动切换码率 */
+    private boolean mAdaptive;
+    /** 起播码率序号，不自动切换时一直使用这个码率 */
+    private int mInitialBitrateIndex;
+    /** 码率估计的安全系数 */
+    private float mAbrSafety = DEFAULT_ABR_SAFETY;
+
+    /**
+     * 获取最大缓存
+     *
+     * @return 最大缓存，单位：字节
+     */
+    public int getMaxCacheBytes() {
+        return mMaxCacheBytes;
+    }
+
+    /**
+     * 设置最大缓存，已缓冲未播放的数据达到这个大小后暂停下载
+     *
+     * @param maxCacheBytes 最大缓存，单位：字节
+     * @return this
+     */
+    public PlayerPolicy setMaxCacheBytes(int maxCacheBytes) {
+        mMaxCacheBytes = maxCacheBytes;
+        return this;
+    }
+
+    /**
+     * 获取起播缓冲时长
+     *
+     * @return 缓冲时长
+     */
+    public int getStartBuffer() {
+        return mStartBuffer;
+    }
+
+    /**
+     * 设置起播缓冲时长，缓冲达到这个时长后开始播放
+     *
+     * @param startBuffer 缓冲时长
+     * @return this
+     */
+    public PlayerPolicy setStartBuffer(int startBuffer) {
+        mStartBuffer = startBuffer;
+        return this;
+    }
+
+    /**
+     * 获取卡顿后恢复播放的缓冲时长
+     *
+     * @return 缓冲时长
+     */
+    public int getResumeBuffer() {
+        return mResumeBuffer < 0 ? mStartBuffer : mResumeBuffer;
+    }
+
+    /**
+     * 设置卡顿后恢复播放的缓冲时长
+     *
+     * @param resumeBuffer 缓冲时长，小于0时与起播相同
+     * @return this
+     */
+    public PlayerPolicy setResumeBuffer(int resumeBuffer) {
+        mResumeBuffer = resumeBuffer;
+        return this;
+    }
+
+    /**
+     * 获取超时
+     *
+     * @return 超时
+     */
+    public int getTimeout() {
+        return mTimeout;
+    }
+
+    /**
+     * 设置超时，连续没有收到数据超过这个时长播放失败
+     *
+     * @param timeout 超时，不大于0时不超时
+     * @return this
+     */
+    public PlayerPolicy setTimeout(int timeout) {
+        mTimeout = timeout;
+        return this;
+    }
+
+    /**
+     * 是否根据吞吐量自动切换码率
+     *
+     * @return 是否自动切换
+     */
+    public boolean isAdaptive() {
+        return mAdaptive;
+    }
+
+    /**
+     * 设置是否根据吞吐量自动切换码率。开启后每个分片选择不超过最近几次吞吐量调和平均值乘以安全系数的
+     * 最高码率
+     *
+     * @param adaptive 是否自动切换
+     * @return this
+     */
+    public PlayerPolicy setAdaptive(boolean adaptive) {
+        mAdaptive = adaptive;
+        return this;
+    }
+
+    /**
+     * 获取起播码率序号
+     *
+     * @return 码率序号
+     */
+    public int getInitialBitrateIndex() {
+        return mInitialBitrateIndex;
+    }
+
+    /**
+     * 设置起播码率序号，不自动切换码率时一直使用这个码率
+     *
+     * @param index 码率序号，从低到高，超出范围时取最近的码率
+     * @return this
+     */
+    public PlayerPolicy setInitialBitrateIndex(int index) {
+        mInitialBitrateIndex = index;
+        return this;
+    }
+
+    /**
+     * 获取码率估计的安全系数
+     *
+     * @return 安全系数
+     */
+    public float getAbrSafety() {
+        return mAbrSafety;
+    }
+
+    /**
+     * 设置码率估计的安全系数
+     *
+     * @param abrSafety 安全系数，(0, 1]
+     * @return this
+     */
+    public PlayerPolicy setAbrSafety(float abrSafety) {
+        mAbrSafety = abrSafety;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "PlayerPolicy{maxCache=" + mMaxCacheBytes + ", startBuffer=" + mStartBuffer
+                + ", resumeBuffer=" + getResumeBuffer() + ", timeout=" + mTimeout
+                + ", adaptive=" + mAdaptive + ", initialBitrate=" + mInitialBitrateIndex + "}";
+    }
+}
@@ -0,0 +1,132 @@
+package com.baidu.swan.videoplayer.sim;
+
+/**
+ * 单次仿真播放的结果
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public final class SessionResult {
+
+    /** 起播耗时，单位：ms，没有起播时为-1 */
+    final long mStartupMs;
+    /** 卡顿次数，不包括起播 */
+    final int mStallCount;
+    /** 卡顿总时长，单位：ms，不包括起播 */
+    final long mStallMs;
+    /** 播放时长，单位：ms */
+    final long mPlayMs;
+    /** 按播放时长加权的平均码率，单位：kbps */
+    final double mAvgBitrate;
+    /** 码率切换次数 */
+    final int mSwitchCount;
+    /** 下载的字节数 */
+    final long mBytes;
+    /** 是否因超时失败 */
+    final boolean mFailed;
+
+    /**
+     * 构造器
+     */
+    SessionResult(long startupMs, int stallCount, long stallMs, long playMs, double avgBitrate,
+                  int switchCount, long bytes, boolean failed) {
+        mStartupMs = startupMs;
+        mStallCount = stallCount;
+        mStallMs = stallMs;
+        mPlayMs = playMs;
+        mAvgBitrate = avgBitrate;
+        mSwitchCount = switchCount;
+        mBytes = bytes;
+        mFailed = failed;
+    }
+
+    /**
+     * 获取起播耗时
+     *
+     * @return 耗时，单位：ms，没有起播时返回-1
+     */
+    public long getStartupMs() {
+        return mStartupMs;
+    }
+
+    /**
+     * 获取卡顿次数
+     *
+     * @return 次数，不包括起播
+     */
+    public int getStallCount() {
+        return mStallCount;
+    }
+
+    /**
+     * 获取卡顿总时长
+     *
+     * @return 时长，单位：ms，不包括起播
+     */
+    public long getStallMs() {
+        return mStallMs;
+    }
+
+    /**
+     * 获取播放时长
+     *
+     * @return 时长，单位：ms
+     */
+    public long getPlayMs() {
+        return mPlayMs;
+    }
+
+    /**
+     * 获取卡顿率：卡顿时长 / (卡顿时长 + 播放时长)
+     *
+     * @return 卡顿率，没有播放时返回0
+     */
+    public double getStallRatio() {
+        long total = mStallMs + mPlayMs;
+        return total == 0 ? 0 : (double) mStallMs / total;
+    }
+
+    /**
+     * 获取平均码率
+     *
+     * @return 码率，单位：kbps
+     */
+    public double getAvgBitrate() {
+        return mAvgBitrate;
+    }
+
+    /**
+     * 获取码率切换次数
+     *
+     * @return 次数
+     */
+    public int getSwitchCount() {
+        return mSwitchCount;
+    }
+
+    /**
+     * 获取下载的字节数
+     *
+     * @return 字节数
+     */
+    public long getBytes() {
+        return mBytes;
+    }
+
+    /**
+     * 是否因超时失败
+     *
+     * @return 是否失败
+     */
+    public boolean isFailed() {
+        return mFailed;
+    }
+
+    @Override
+    public String toString() {
+        return "SessionResult{startup=" + mStartupMs + "ms, stalls=" + mStallCount + ", stall="
+                + mStallMs + "ms, play=" + mPlayMs + "ms, bitrate=" + Math.round(mAvgBitrate)
+                + "kbps, switches=" + mSwitchCount + ", bytes=" + mBytes + ", failed=" + mFailed
+                + "}";
+    }
+}
@@ -0,0 +1,109 @@
+package com.baidu.swan.videoplayer.sim;
+
+import java.util.Arrays;
+
+/**
+ * 仿真使用的视频内容：可选码率、分片时长和观看时长。
+ * <p>
+ * 单码率MP4可以看作只有一个码率、按固定时长切分的请求序列
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public final class SimContent {
+
+    /** 可选码率，升序，单位：kbps */
+    private final int[] mBitrates;
+    /** 分片时长，单位：ms */
+    private final long mSegmentDurationMs;
+    /** 观看时长，单位：ms */
+    private final long mDurationMs;
+
+    /**
+     * 构造器
+     *
+     * @param bitrates          可选码率，单位：kbps
+     * @param segmentDurationMs 分片时长，单位：ms
+     * @param durationMs        观看时长，单位：ms
+     */
+    public SimContent(int[] bitrates, long segmentDurationMs, long durationMs) {
+        if (bitrates.length == 0 || segmentDurationMs <= 0 || durationMs <= 0) {
+            throw new IllegalArgumentException("invalid content");
+        }
+        mBitrates = bitrates.clone();
+        Arrays.sort(mBitrates);
+        if (mBitrates[0] <= 0) {
+            throw new IllegalArgumentException("invalid bitrate : " + mBitrates[0]);
+        }
+        mSegmentDurationMs = segmentDurationMs;
+        mDurationMs = durationMs;
+    }
+
+    /**
+     * 获取码率数
+     *
+     * @return 码率数
+     */
+    public int getBitrateCount() {
+        return mBitrates.length;
+    }
+
+    /**
+     * 获取码率
+     *
+     * @param index 码率序号，从低到高
+     * @return 码率，单位：kbps
+     */
+    public int getBitrate(int index) {
+        return mBitrates[index];
+    }
+
+    /**
+     * 获取分片时长
+     *
+     * @return 时长，单位：ms
+     */
+    public long getSegmentDurationMs() {
+        return mSegmentDurationMs;
+    }
+
+    /**
+     * 获取观看时长
+     *
+     * @return 时长，单位：ms
+     */
+    public long getDurationMs() {
+        return mDurationMs;
+    }
+
+    /**
+     * 获取分片数，最后一个分片可能不足一个分片时长
+     *
+     * @return 分片数
+     */
+    public int getSegmentCount() {
+        return (int) ((mDurationMs + mSegmentDurationMs - 1) / mSegmentDurationMs);
+    }
+
+    /**
+     * 获取分片的实际时长
+     *
+     * @param index 分片序号
+     * @return 时长，单位：ms
+     */
+    public long getSegmentDurationMs(int index) {
+        return Math.min(mSegmentDurationMs, mDurationMs - index * mSegmentDurationMs);
+    }
+
+    /**
+     * 获取分片在指定码率下的大小
+     *
+     * @param index        分片序号
+     * @param bitrateIndex 码率序号
+     * @return 字节数
+     */
+    public long getSegmentBytes(int index, int bitrateIndex) {
+        // kbps * ms / 8 = 字节
+        return mBitrates[bitrateIndex] * getSegmentDurationMs(index) / 8;
+    }
+}
@@ -0,0 +1,342 @@
+package com.baidu.swan.videoplayer.sim;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * 多次仿真播放的汇总结果，以及在JVM上直接运行的入口。
+ * <p>
+ * 用法（也可以通过./gradlew :simulator:simReport -PsimArgs="..."运行）：
+ * <pre>
+ * java com.baidu.swan.videoplayer.sim.SimReport [选项] 轨迹文件...
+ *   --max-cache 500000,2000000   最大缓存，单位：字节，逗号分隔时逐个对比
+ *   --start-buffer 1000          起播缓冲时长，单位：ms，可逗号分隔
+ *   --resume-buffer 1000         卡顿恢复缓冲时长，单位：ms，默认与起播相同
+ *   --timeout 15000              超时，单位：ms，可逗号分隔
+ *   --bitrates 1500              码率，单位：kbps，逗号分隔
+ *   --abr                        根据吞吐量自动切换码率
+ *   --segment 2000               分片时长，单位：ms
+ *   --duration 60000             观看时长，单位：ms
+ *   --sessions 10000             仿真次数
+ *   --seed 1                     随机种子
+ * </pre>
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public final class SimReport {
+
+    /** 仿真次数 */
+    private final int mSessions;
+    /** 起播耗时，升序，单位：ms，不包括没有起播的 */
+    private final long[] mStartupMs;
+    /** 平均卡顿率 */
+    private final double mStallRatio;
+    /** 发生过卡顿的播放比例 */
+    private final double mStalledFraction;
+    /** 平均每次播放的卡顿次数 */
+    private final double mStallsPerSession;
+    /** 平均码率，单位：kbps */
+    private final double mAvgBitrate;
+    /** 平均码率切换次数 */
+    private final double mSwitchesPerSession;
+    /** 平均每次播放下载的字节数 */
+    private final double mBytesPerSession;
+    /** 失败比例 */
+    private final double mFailureRate;
+    /** 仿真耗时，单位：ms */
+    private final long mCostMs;
+
+    /**
+     * 构造器
+     *
+     * @param results 每次播放的结果
+     * @param costMs  仿真耗时，单位：ms
+     */
+    public SimReport(List<SessionResult> results, long costMs) {
+        mSessions = results.size();
+        mCostMs = costMs;
+        long[] startup = new long[mSessions];
+        int started = 0;
+        double stallRatio = 0;
+        int stalled = 0;
+        long stalls = 0;
+        double bitrate = 0;
+        long switches = 0;
+        double bytes = 0;
+        int failed = 0;
+        for (SessionResult result : results) {
+            if (result.mStartupMs >= 0) {
+                startup[started++] = result.mStartupMs;
+            }
+            stallRatio += result.getStallRatio();
+            stalled += result.mStallCount > 0 ? 1 : 0;
+            stalls += result.mStallCount;
+            bitrate += result.mAvgBitrate;
+            switches += result.mSwitchCount;
+            bytes += result.mBytes;
+            failed += result.mFailed ? 1 : 0;
+        }
+        mStartupMs = Arrays.copyOf(startup, started);
+        Arrays.sort(mStartupMs);
+        int count = Math.max(1, mSessions);
+        mStallRatio = stallRatio / count;
+        mStalledFraction = (double) stalled / count;
+        mStallsPerSession = (double) stalls / count;
+        mAvgBitrate = bitrate / count;
+        mSwitchesPerSession = (double) switches / count;
+        mBytesPerSession = bytes / count;
+        mFailureRate = (double) failed / count;
+    }
+
+    /**
+     * 用同一策略仿真多次播放。第i次播放使用第i % n条轨迹，从轨迹的随机位置开始
+     *
+     * @param traces   带宽轨迹
+     * @param policy   缓冲策略
+     * @param content  视频内容
+     * @param sessions 仿真次数
+     * @param seed     随机种子，相同的种子得到相同的结果，便于对比不同策略
+     * @return 汇总结果
+     */
+    public static SimReport evaluate(List<BandwidthTrace> traces, PlayerPolicy policy,
+                                     SimContent content, int sessions, long seed) {
+        if (traces.isEmpty()) {
+            throw new IllegalArgumentException("no trace");
+        }
+        long start = System.nanoTime();
+        Random random = new Random(seed);
+        BufferSimulator simulator = new BufferSimulator(policy, content);
+        List<SessionResult> results = new ArrayList<>(sessions);
+        for (int i = 0; i < sessions; i++) {
+            BandwidthTrace trace = traces.get(i % traces.size());
+            long offset = (long) (random.nextDouble() * trace.getDurationMs());
+            results.add(simulator.run(trace, offset));
+        }
+        return new SimReport(results, (System.nanoTime() - start) / 1000000);
+    }
+
+    /**
+     * 获取仿真次数
+     *
+     * @return 次数
+     */
+    public int getSessions() {
+        return mSessions;
+    }
+
+    /**
+     * 获取平均起播耗时
+     *
+     * @return 耗时，单位：ms，没有起播过时返回-1
+     */
+    public double getMeanStartupMs() {
+        if (mStartupMs.length == 0) {
+            return -1;
+        }
+        double total = 0;
+        for (long startup : mStartupMs) {
+            total += startup;
+        }
+        return total / mStartupMs.length;
+    }
+
+    /**
+     * 获取起播耗时的分位数
+     *
+     * @param percentile 分位，[0, 100]
+     * @return 耗时，单位：ms，没有起播过时返回-1
+     */
+    public long getStartupPercentileMs(int percentile) {
+        if (mStartupMs.length == 0) {
+            return -1;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * mStartupMs.length) - 1;
+        return mStartupMs[Math.max(0, Math.min(mStartupMs.length - 1, index))];
+    }
+
+    /**
+     * 获取平均卡顿率
+     *
+     * @return 卡顿率
+     */
+    public double getStallRatio() {
+        return mStallRatio;
+    }
+
+    /**
+     * 获取发生过卡顿的播放比例
+     *
+     * @return 比例
+     */
+    public double getStalledFraction() {
+        return mStalledFraction;
+    }
+
+    /**
+     * 获取平均每次播放的卡顿次数
+     *
+     * @return 次数
+     */
+    public double getStallsPerSession() {
+        return mStallsPerSession;
+    }
+
+    /**
+     * 获取平均码率
+     *
+     * @return 码率，单位：kbps
+     */
+    public double getAvgBitrate() {
+        return mAvgBitrate;
+    }
+
+    /**
+     * 获取平均码率切换次数
+     *
+     * @return 次数
+     */
+    public double getSwitchesPerSession() {
+        return mSwitchesPerSession;
+    }
+
+    /**
+     * 获取平均每次播放下载的字节数
+     *
+     * @return 字节数
+     */
+    public double getBytesPerSession() {
+        return mBytesPerSession;
+    }
+
+    /**
+     * 获取失败比例
+     *
+     * @return 比例
+     */
+    public double getFailureRate() {
+        return mFailureRate;
+    }
+
+    /**
+     * 获取仿真耗时
+     *
+     * @return 耗时，单位：ms
+     */
+    public long getCostMs() {
+        return mCostMs;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "sessions=%d startup(mean/p50/p90)=%.0f/%d/%dms"
+                        + " stallRatio=%.4f stalled=%.2f%% stalls=%.2f bitrate=%.0fkbps"
+                        + " switches=%.2f bytes=%.0f failed=%.2f%% cost=%dms",
+                mSessions, getMeanStartupMs(), getStartupPercentileMs(50),
+                getStartupPercentileMs(90), mStallRatio, mStalledFraction * 100,
+                mStallsPerSession, mAvgBitrate, mSwitchesPerSession, mBytesPerSession,
+                mFailureRate * 100, mCostMs);
+    }
+
+    /**
+     * 命令行入口，参数见类注释
+     *
+     * @param args 参数
+     * @throws IOException 读取轨迹失败
+     */
+    public static void main(String[] args) throws IOException {
+        int[] maxCaches = {PlayerPolicy.DEFAULT_MAX_CACHE_BYTES};
+        int[] startBuffers = {PlayerPolicy.DEFAULT_START_BUFFER};
+        int[] timeouts = {PlayerPolicy.DEFAULT_TIMEOUT};
+        int resumeBuffer = -1;
+        int[] bitrates = {1500};
+        boolean adaptive = false;
+        long segmentMs = 2000;
+        long durationMs = 60000;
+        int sessions = 10000;
+        long seed = 1;
+        List<BandwidthTrace> traces = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("--abr".equals(arg)) {
+                adaptive = true;
+            } else if (arg.startsWith("--")) {
+                if (i + 1 >= args.length) {
+                    usage("missing value for " + arg);
+                    return;
+                }
+                String value = args[++i];
+                if ("--max-cache".equals(arg)) {
+                    maxCaches = parseInts(value);
+                } else if ("--start-buffer".equals(arg)) {
+                    startBuffers = parseInts(value);
+                } else if ("--resume-buffer".equals(arg)) {
+                    resumeBuffer = Integer.parseInt(value);
+                } else if ("--timeout".equals(arg)) {
+                    timeouts = parseInts(value);
+                } else if ("--bitrates".equals(arg)) {
+                    bitrates = parseInts(value);
+                } else if ("--segment".equals(arg)) {
+                    segmentMs = Long.parseLong(value);
+                } else if ("--duration".equals(arg)) {
+                    durationMs = Long.parseLong(value);
+                } else if ("--sessions".equals(arg)) {
+                    sessions = Integer.parseInt(value);
+                } else if ("--seed".equals(arg)) {
+                    seed = Long.parseLong(value);
+                } else {
+                    usage("unknown option " + arg);
+                    return;
+                }
+            } else {
+                traces.add(BandwidthTrace.load(new File(arg)));
+            }
+        }
+        if (traces.isEmpty()) {
+            usage("no trace file");
+            return;
+        }
+        SimContent content = new SimContent(bitrates, segmentMs, durationMs);
+        for (int maxCache : maxCaches) {
+            for (int startBuffer : startBuffers) {
+                for (int timeout : timeouts) {
+                    PlayerPolicy policy = new PlayerPolicy()
+                            .setMaxCacheBytes(maxCache)
+                            .setStartBuffer(startBuffer)
+                            .setResumeBuffer(resumeBuffer)
+                            .setTimeout(timeout)
+                            .setAdaptive(adaptive);
+                    System.out.println(policy);
+                    System.out.println("    " + evaluate(traces, policy, content, sessions, seed));
+                }
+            }
+        }
+    }
+
+    /**
+     * 解析逗号分隔的整数
+     */
+    private static int[] parseInts(String value) {
+        String[] parts = value.split(",");
+        int[] result = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            result[i] = Integer.parseInt(parts[i].trim());
+        }
+        return result;
+    }
+
+    /**
+     * 打印用法
+     */
+    private static void usage(String error) {
+        System.err.println(error);
+        System.err.println("usage: SimReport [--max-cache bytes,...] [--start-buffer ms,...]"
+                + " [--resume-buffer ms] [--timeout ms,...] [--bitrates kbps,...] [--abr]"
+                + " [--segment ms] [--duration ms] [--sessions n] [--seed n] trace...");
+    }
+}
@@ -0,0 +1,138 @@
+package com.baidu.swan.videoplayer.sim;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link BufferSimulator}的单元测试，用手工构造的带宽轨迹校验缓冲策略的结果
+ *
+ * @author machao10
+ * @since 2019-03-13
+ */
+public class BufferSimulatorTest {
+
+    /** 单码率内容：1000kbps，2s分片，观看10s，每个分片250000字节 */
+    private static final SimContent CONTENT = new SimContent(new int[]{1000}, 2000, 10000);
+
+    @Test
+    public void startsWithoutStallOnFastNetwork() {
+        // 10000kbps = 1250字节/ms，一个分片200ms下载完
+        BandwidthTrace trace = constant(10000, 0);
+        SessionResult result = new BufferSimulator(new PlayerPolicy(), CONTENT).run(trace, 0);
+        assertEquals(200, result.getStartupMs());
+        assertEquals(0, result.getStallCount());
+        assertEquals(10000, result.getPlayMs());
+        assertEquals(5 * 250000, result.getBytes());
+        assertEquals(1000, result.getAvgBitrate(), 0.001);
+        assertFalse(result.isFailed());
+    }
+
+    @Test
+    public void rttDelaysStartup() {
+        SessionResult result = new BufferSimulator(new PlayerPolicy(), CONTENT)
+                .run(constant(10000, 300), 0);
+        assertEquals(500, result.getStartupMs());
+        assertEquals(0, result.getStallCount());
+    }
+
+    @Test
+    public void stallsWhenBandwidthBelowBitrate() {
+        SessionResult result = new BufferSimulator(new PlayerPolicy(), CONTENT)
+                .run(constant(800, 0), 0);
+        assertTrue(result.toString(), result.getStallCount() > 0);
+        assertTrue(result.toString(), result.getStallMs() > 0);
+        assertEquals(10000, result.getPlayMs());
+        assertFalse(result.isFailed());
+    }
+
+    @Test
+    public void largerStartBufferTradesStartupForStalls() {
+        BandwidthTrace trace = constant(800, 0);
+        SessionResult small = new BufferSimulator(new PlayerPolicy().setStartBuffer(1000),
+                CONTENT).run(trace, 0);
+        SessionResult large = new BufferSimulator(new PlayerPolicy().setStartBuffer(10000)
+                .setMaxCacheBytes(2000000), CONTENT).run(trace, 0);
+        assertTrue(large.getStartupMs() > small.getStartupMs());
+        // 全部缓冲完才起播，之后不会再卡顿
+        assertEquals(0, large.getStallCount());
+        assertTrue(small.getStallCount() > 0);
+    }
+
+    @Test
+    public void failsWhenOutageExceedsTimeout() {
+        // 前1s正常，之后断网20s
+        BandwidthTrace trace = new BandwidthTrace("outage", new long[]{1000, 20000},
+                new double[]{10000, 0});
+        SessionResult failed = new BufferSimulator(new PlayerPolicy().setTimeout(5000), CONTENT)
+                .run(trace, 0);
+        assertTrue(failed.toString(), failed.isFailed());
+        assertTrue(failed.getPlayMs() < CONTENT.getDurationMs());
+
+        SessionResult patient = new BufferSimulator(new PlayerPolicy().setTimeout(0), CONTENT)
+                .run(trace, 0);
+        assertFalse(patient.toString(), patient.isFailed());
+        assertEquals(10000, patient.getPlayMs());
+    }
+
+    @Test
+    public void maxCacheLimitsBufferAhead() {
+        // 最大缓存只能放下两个分片，下载会暂停，不影响播放完成
+        SessionResult result = new BufferSimulator(new PlayerPolicy().setMaxCacheBytes(500000),
+                CONTENT).run(constant(100000, 0), 0);
+        assertEquals(0, result.getStallCount());
+        assertEquals(10000, result.getPlayMs());
+        assertEquals(5 * 250000, result.getBytes());
+    }
+
+    @Test
+    public void adaptiveBitrateAvoidsStalls() {
+        SimContent content = new SimContent(new int[]{400, 1000, 3000}, 2000, 30000);
+        BandwidthTrace trace = constant(1200, 0);
+        SessionResult fixed = new BufferSimulator(new PlayerPolicy().setInitialBitrateIndex(2),
+                content).run(trace, 0);
+        SessionResult adaptive = new BufferSimulator(new PlayerPolicy().setInitialBitrateIndex(2)
+                .setAdaptive(true), content).run(trace, 0);
+        assertEquals(3000, fixed.getAvgBitrate(), 0.001);
+        assertTrue(adaptive.toString(), adaptive.getAvgBitrate() < fixed.getAvgBitrate());
+        assertTrue(adaptive.toString(), adaptive.getSwitchCount() > 0);
+        assertTrue(adaptive.getStallMs() < fixed.getStallMs());
+    }
+
+    @Test
+    public void downloadWrapsAroundTrace() {
+        // 1s 8kbps（1字节/ms）+ 1s断网，循环
+        BandwidthTrace trace = new BandwidthTrace("wrap", new long[]{1000, 1000},
+                new double[]{8, 0});
+        assertEquals(500, trace.downloadEnd(0, 500, 0), 0.001);
+        assertEquals(2500, trace.downloadEnd(500, 1000, 0), 0.001);
+        assertEquals(-1500, trace.downloadEnd(1200, 10, 300), 0.001);
+    }
+
+    @Test
+    public void reportIsDeterministicForSeed() {
+        BandwidthTrace trace = new BandwidthTrace("step", new long[]{3000, 3000},
+                new double[]{3000, 600});
+        PlayerPolicy policy = new PlayerPolicy();
+        SimReport first = SimReport.evaluate(Collections.singletonList(trace), policy, CONTENT,
+                200, 7);
+        SimReport second = SimReport.evaluate(Arrays.asList(trace), policy, CONTENT, 200, 7);
+        assertEquals(200, first.getSessions());
+        assertEquals(first.getMeanStartupMs(), second.getMeanStartupMs(), 0);
+        assertEquals(first.getStallRatio(), second.getStallRatio(), 0);
+        assertTrue(first.getStartupPercentileMs(50) <= first.getStartupPercentileMs(90));
+        assertEquals(0, first.getFailureRate(), 0);
+    }
+
+    /**
+     * 恒定带宽的轨迹
+     */
+    private static BandwidthTrace constant(double kbps, long rttMs) {
+        return new BandwidthTrace("constant", new long[]{60000}, new double[]{kbps}, rttMs);
+    }
+}